@@ -0,0 +1,375 @@
+package customers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import customers.dao.DbConnection;
+import customers.entity.Customer;
+import customers.entity.Project;
+import customers.exception.DbException;
+import customers.http.ProjectHttpServer;
+import customers.service.DataExporter;
+import customers.service.ProjectService;
+import customers.service.WarmUp;
+import provided.util.FixedPoint;
+
+/**
+ * This class runs the application without the interactive menu. Commands come from the command
+ * line or from a command file (one command per line, {@code #} starts a comment, double quotes
+ * group words), and all of them run in one JVM over one shared connection pool. When the commands finish, the time taken by each
+ * kind of command is printed to standard error.
+ *
+ * <pre>
+ * load [workers=4] [chunkSize=500]
+ * add-project name=Jane projectId=17 grossPrice=32000 systemSizeKw=8.2 repCommission=900
+ *             [dealerFees=] [adders=] [installed=Y|N] [installYear=] [installMonth=]
+ * list-customers [format=table|compact|csv]
+ * list-projects [format=table|compact|csv] [desc=true]
+ *               [sort=net_price|price_per_watt|commission_ratio|install_period]
+ *               [installed=2020-2023|none]
+ * top by=gross_price|system_size_kw|rep_commission|net_price|price_per_watt|...
+ *     [limit=50] [year=2024] [asc=true] [format=table|compact|csv]
+ * mark-installed ids=17,18,19 year=2024 month=5
+ * delete-customers ids=4,5
+ * report [from=2020 to=2023]
+ * archive before=2020 [batchSize=1000]
+ * rebalance
+ * export projects|customers file=out.csv [format=csv|json] [gzip=true]
+ * warmup
+ * serve [port=8080] [threads=16] [maxInFlight=32] [warmup=true]
+ * </pre>
+ *
+ */
+public class CommandRunner {
+  private final ProjectService projectService;
+  private final Map<String, long[]> timings = new LinkedHashMap<>();
+
+  public CommandRunner(ProjectService projectService) {
+    this.projectService = projectService;
+  }
+
+  /**
+   * Runs the commands given on the command line: either one command with its arguments, or
+   * {@code -f <file>} to run every command in a file.
+   *
+   * @param args The command line.
+   * @return The process exit code: 0 if every command succeeded, otherwise 1.
+   */
+  public int run(String[] args) {
+    List<List<String>> commands = new ArrayList<>();
+
+    if (args.length == 2 && "-f".equals(args[0])) {
+      try {
+        for (String line : Files.readAllLines(Paths.get(args[1]))) {
+          String trimmed = line.strip();
+
+          if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+            commands.add(tokenize(trimmed));
+          }
+        }
+      } catch (IOException e) {
+        System.err.println("Unable to read command file " + args[1] + ": " + e);
+        return 1;
+      }
+    } else {
+      commands.add(Arrays.asList(args));
+    }
+
+    DbConnection.enablePooling();
+    long start = System.nanoTime();
+    int failures = 0;
+
+    try {
+      for (List<String> command : commands) {
+        long commandStart = System.nanoTime();
+
+        try {
+          execute(command.get(0), parseOptions(command.subList(1, command.size())));
+        } catch (Exception e) {
+          failures++;
+          System.err.println("Error running '" + String.join(" ", command) + "': " + e);
+        } finally {
+          long[] timing = timings.computeIfAbsent(command.get(0), key -> new long[2]);
+          timing[0]++;
+          timing[1] += System.nanoTime() - commandStart;
+        }
+      }
+    } finally {
+      DbConnection.closePools();
+    }
+
+    printTimings(commands.size(), failures, System.nanoTime() - start);
+    return failures == 0 ? 0 : 1;
+  }
+
+  private void execute(String command, Map<String, String> options) {
+    switch (command) {
+      case "load":
+        if (options.containsKey("workers")) {
+          projectService.createAndPopulateTables(Integer.parseInt(options.get("workers")),
+              Integer.parseInt(options.getOrDefault("chunkSize", "500")));
+        } else {
+          projectService.createAndPopulateTables();
+        }
+        break;
+
+      case "add-project":
+        addProject(options);
+        break;
+
+      case "list-customers":
+        new ListingRenderer(format(options)).renderCustomers(projectService.fetchCustomers());
+        break;
+
+      case "list-projects":
+        new ListingRenderer(format(options)).renderProjects(projects(options));
+        break;
+
+      case "top":
+        new ListingRenderer(format(options)).renderProjects(projectService.fetchTopProjects(
+            required(options, "by"), !Boolean.parseBoolean(options.get("asc")),
+            integer(options.get("year")), Integer.parseInt(options.getOrDefault("limit", "50"))));
+        break;
+
+      case "mark-installed":
+        System.out.println("Marked " + projectService.markInstalled(ids(options),
+            Integer.parseInt(required(options, "year")),
+            Integer.parseInt(required(options, "month"))) + " project(s) installed");
+        break;
+
+      case "delete-customers":
+        System.out.println("Deleted " + projectService.deleteCustomers(ids(options))
+            + " customer(s)");
+        break;
+
+      case "report":
+        System.out.println(options.containsKey("from")
+            ? projectService.fetchProjectReport(Integer.parseInt(required(options, "from")),
+                Integer.parseInt(required(options, "to")))
+            : projectService.fetchProjectReport());
+        break;
+
+      case "archive":
+        System.out.println("Archived " + projectService.archiveProjects(
+            Integer.parseInt(required(options, "before")),
+            Integer.parseInt(options.getOrDefault("batchSize", "1000"))) + " project(s)");
+        break;
+
+      case "rebalance":
+        System.out.println("Moved " + projectService.rebalanceShards() + " customer(s)");
+        break;
+
+      case "export":
+        export(options);
+        break;
+
+      case "warmup":
+        System.out.println(new WarmUp(projectService).run());
+        break;
+
+      case "serve":
+        serve(options);
+        break;
+
+      default:
+        throw new DbException("Unknown command: " + command);
+    }
+  }
+
+  private void addProject(Map<String, String> options) {
+    Customer customer = new Customer();
+    customer.setCustomerName(required(options, "name"));
+
+    Project project = new Project();
+    project.setProjectId(Integer.valueOf(required(options, "projectId")));
+    project.setGrossPrice(FixedPoint.money(required(options, "grossPrice")));
+    project.setSystemSizeInKw(
+        FixedPoint.parse(required(options, "systemSizeKw"), FixedPoint.KW_SCALE));
+    project.setDealerFees(FixedPoint.money(options.get("dealerFees")));
+    project.setAdders(FixedPoint.money(options.get("adders")));
+    project.setInstalled("y".equalsIgnoreCase(options.getOrDefault("installed", "N")));
+    project.setInstallYear(integer(options.get("installYear")));
+    project.setInstallMonth(integer(options.get("installMonth")));
+    project.setRepCommission(FixedPoint.money(required(options, "repCommission")));
+    project.setInstallYearAndDate(project.getInstallYear(), project.getInstallMonth());
+
+    projectService.checkProjectIdAvailable(project.getProjectId());
+    projectService.addCustomer(customer);
+    project.setCustomerId(customer.getCustomerId());
+    projectService.addProject(project);
+    System.out.println("Added project " + project.getProjectId() + " for customer "
+        + customer.getCustomerId());
+  }
+
+  private void export(Map<String, String> options) {
+    String table = options.getOrDefault("", "projects");
+    Path file = Paths.get(required(options, "file"));
+    DataExporter.Format format = "json".equalsIgnoreCase(options.get("format"))
+        ? DataExporter.Format.JSON_LINES : DataExporter.Format.CSV;
+    boolean gzip = Boolean.parseBoolean(options.get("gzip"));
+
+    long rows = "customers".equals(table) ? projectService.exportCustomers(file, format, gzip)
+        : projectService.exportProjects(file, format, gzip);
+    System.out.println("Exported " + rows + " " + table + " to " + file);
+  }
+
+  /*
+   * Runs the HTTP API until the JVM is stopped. Requests beyond maxInFlight wait briefly for
+   * admission and are then turned away with 503. Unless warmup=false, the server answers 503 (and
+   * /ready reports WARMING_UP) until the warm-up has run. At shutdown, database operations still
+   * running are cancelled.
+   */
+  private void serve(Map<String, String> options) {
+    int port = Integer.parseInt(options.getOrDefault("port", "8080"));
+    int threads = Integer.parseInt(options.getOrDefault("threads", "16"));
+    int maxInFlight = Integer.parseInt(options.getOrDefault("maxInFlight", "32"));
+    boolean warm = Boolean.parseBoolean(options.getOrDefault("warmup", "true"));
+
+    try {
+      ProjectHttpServer server =
+          new ProjectHttpServer(projectService, port, threads, maxInFlight, 100);
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        server.stop(2);
+        projectService.cancelOperations();
+      }));
+      WarmUp warmUp = new WarmUp(projectService);
+
+      if (warm) {
+        server.setReadiness(warmUp::isReady);
+      }
+
+      server.start();
+      System.out.println("Serving the HTTP API on port " + server.getPort());
+
+      if (warm) {
+        System.out.println(warmUp.run());
+      }
+
+      server.awaitStop();
+    } catch (IOException e) {
+      throw new DbException("Unable to start the HTTP server on port " + port, e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /*
+   * key=value arguments become options. A bare argument is stored under the empty key.
+   */
+  private static Map<String, String> parseOptions(List<String> args) {
+    Map<String, String> options = new HashMap<>();
+
+    for (String arg : args) {
+      int equals = arg.indexOf('=');
+
+      if (equals < 0) {
+        options.put("", arg);
+      } else {
+        options.put(arg.substring(0, equals), arg.substring(equals + 1));
+      }
+    }
+
+    return options;
+  }
+
+  /*
+   * Splits a command file line on whitespace. Double quotes group words, so name="Jane Doe" is one
+   * argument.
+   */
+  private static List<String> tokenize(String line) {
+    List<String> tokens = new ArrayList<>();
+    StringBuilder token = new StringBuilder();
+    boolean quoted = false;
+
+    for (char ch : line.toCharArray()) {
+      if (ch == '"') {
+        quoted = !quoted;
+      } else if (Character.isWhitespace(ch) && !quoted) {
+        if (token.length() > 0) {
+          tokens.add(token.toString());
+          token.setLength(0);
+        }
+      } else {
+        token.append(ch);
+      }
+    }
+
+    if (token.length() > 0) {
+      tokens.add(token.toString());
+    }
+
+    return tokens;
+  }
+
+  private List<Project> projects(Map<String, String> options) {
+    String sort = options.get("sort");
+    String installed = options.get("installed");
+
+    if (Objects.nonNull(installed)) {
+      if ("none".equalsIgnoreCase(installed)) {
+        return projectService.fetchUninstalledProjects();
+      }
+
+      String[] years = installed.split("-", 2);
+      return projectService.fetchProjectsInstalled(Integer.parseInt(years[0]),
+          Integer.parseInt(years[years.length - 1]));
+    }
+
+    if (Objects.isNull(sort)) {
+      return projectService.fetchProjects();
+    }
+
+    return projectService.fetchProjectsSortedBy(Project.Metric.valueOf(sort.toUpperCase()),
+        Boolean.parseBoolean(options.get("desc")));
+  }
+
+  private static ListingRenderer.OutputFormat format(Map<String, String> options) {
+    return ListingRenderer.OutputFormat
+        .valueOf(options.getOrDefault("format", "table").toUpperCase());
+  }
+
+  private static String required(Map<String, String> options, String key) {
+    String value = options.get(key);
+
+    if (Objects.isNull(value) || value.isBlank()) {
+      throw new DbException("Missing required argument " + key + "=");
+    }
+
+    return value;
+  }
+
+  private static List<Integer> ids(Map<String, String> options) {
+    List<Integer> ids = new ArrayList<>();
+
+    for (String id : required(options, "ids").split(",")) {
+      ids.add(Integer.valueOf(id.strip()));
+    }
+
+    return ids;
+  }
+
+  private static Integer integer(String value) {
+    return Objects.isNull(value) || value.isBlank() ? null : Integer.valueOf(value);
+  }
+
+  private void printTimings(int commands, int failures, long elapsedNanos) {
+    System.err.printf("%n%d command(s), %d failed, %d ms total%n", commands, failures,
+        TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+
+    for (Map.Entry<String, long[]> timing : timings.entrySet()) {
+      long count = timing.getValue()[0];
+      long nanos = timing.getValue()[1];
+      System.err.printf("  %-15s %6d run(s) %10.1f ms total %10.3f ms avg%n", timing.getKey(),
+          count, nanos / 1e6, nanos / 1e6 / count);
+    }
+  }
+}
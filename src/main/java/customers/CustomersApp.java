@@ -1,14 +1,15 @@
 package customers;
 
-import java.math.BigDecimal;
 import java.util.List;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.Scanner;
+import customers.dao.DbConnection;
 import customers.entity.Customer;
 import customers.entity.Project;
 import customers.exception.DbException;
+import customers.service.CustomerNameIndex;
 import customers.service.ProjectService;
+import provided.util.FixedPoint;
 
 /**
  * This class is a menu-driven application that takes user input from the console and performs
@@ -17,24 +18,34 @@ import customers.service.ProjectService;
  */
 
 public class CustomersApp {
+  private static final String LIST_FORMAT = "customers.listFormat";
+
   private Scanner scanner = new Scanner(System.in);
   private ProjectService projectService = new ProjectService();
+  private ListingRenderer.OutputFormat listFormat = ListingRenderer.OutputFormat
+      .valueOf(DbConnection.getConfig().get(LIST_FORMAT, "table").toUpperCase());
 
   // @formatter:off
   private List<String> operations = List.of(
       "1) Create and populate database tables",
       "2) Add a project",
       "3) List all customers",
-      "4) List all projects"
+      "4) List all projects",
+      "5) Search customers by name"
   );
   // @formatter:on
 
   /**
-   * Entry point for Java application.
+   * Entry point for Java application. With no arguments the interactive menu runs. Otherwise the
+   * arguments are a command (or {@code -f <file>} of commands) for the {@link CommandRunner}.
    * 
-   * @param args Unused.
+   * @param args Empty, or a batch command.
    */
   public static void main(String[] args) {
+    if (args.length > 0) {
+      System.exit(new CommandRunner(new ProjectService()).run(args));
+    }
+
     new CustomersApp().processUserSelections();
   }
 
@@ -70,6 +81,10 @@ public class CustomersApp {
             listProjects();
             break;
 
+          case 5:
+            searchCustomers();
+            break;
+
           default:
             System.out.println("\n" + selection + " is not a valid selection. Try again.");
             break;
@@ -138,16 +153,20 @@ public class CustomersApp {
   private void addCustomer() {
     String customerName = getStringInput("Enter the customer's name: ");
     Integer projectId = getIntInput("Enter the project ID number: ");
-    BigDecimal grossPrice = getDecimalInput("Enter the project's gross price: ");
-    BigDecimal systemSizeInKw = getDecimalInput("Enter the system size in KW: ");
-    BigDecimal dealerFees = getDecimalInput("Enter any dealer fees or press the Enter key to skip: ");
-    BigDecimal adders = getDecimalInput("Enter the total adders cost or press the Enter key to skip: ");
+    projectService.checkProjectIdAvailable(projectId);
+    FixedPoint grossPrice = getDecimalInput("Enter the project's gross price: ", FixedPoint.MONEY_SCALE);
+    FixedPoint systemSizeInKw = getDecimalInput("Enter the system size in KW: ", FixedPoint.KW_SCALE);
+    FixedPoint dealerFees = getDecimalInput("Enter any dealer fees or press the Enter key to skip: ",
+        FixedPoint.MONEY_SCALE);
+    FixedPoint adders = getDecimalInput(
+        "Enter the total adders cost or press the Enter key to skip: ", FixedPoint.MONEY_SCALE);
     Boolean installed =
         getBooleanInput("Has this project been installed? Enter Y or N, or press the Enter key to skip: ");
     Integer installYear = getIntInput("Enter the year this project was installed, or press the Enter key to skip: ");
     Integer installMonth = getIntInput(
         "Enter the month this project was installed using 2 numeric digits, or press the Enter key to skip: ");
-    BigDecimal repCommission = getDecimalInput("Enter commission for project: ");
+    FixedPoint repCommission =
+        getDecimalInput("Enter commission for project: ", FixedPoint.MONEY_SCALE);
 
     Customer customer = new Customer();
     customer.setCustomerName(customerName);
@@ -167,6 +186,7 @@ public class CustomersApp {
 
 
     Customer dbCustomer = projectService.addCustomer(customer);
+    project.setCustomerId(dbCustomer.getCustomerId());
     Project dbProject = projectService.addProject(project);
     System.out
         .println("\nYou have successfully entered the following project to the database: " + dbCustomer + dbProject);
@@ -180,24 +200,7 @@ public class CustomersApp {
     List<Customer> customers = projectService.fetchCustomers();
 
     System.out.println("\nCustomers in the database:");
-    for (Customer customer : customers) {
-      // Print customer information
-      System.out.println("\n");
-      System.out.println("   Id: " + customer.getCustomerId());
-      System.out.println("   Name: " + customer.getCustomerName());
-      System.out.println("   Projects in the database:\n");
-
-
-      /**
-       * This is still being worked on. The goal is to print information from the Project object with a
-       * matching customerId
-       */
-      // List<Project> projects = customer.getProjects();
-      // for (Project project : projects) {
-      //
-      // }
-
-    }
+    new ListingRenderer(listFormat).renderCustomers(customers);
   }
 
   /**
@@ -207,28 +210,29 @@ public class CustomersApp {
     List<Project> projects = projectService.fetchProjects();
 
     System.out.println("   Projects in the database:");
-    for (Project project : projects) {
-      // Print projects information
-      System.out.println("\n");
-      System.out.println("   CustomerId: " + project.getCustomerId());
-      System.out.println("   ProjectId: " + project.getProjectId());
-      System.out.println("   Gross Price: " + project.getGrossPrice());
-      System.out.println("   System Size(KW): " + project.getSystemSizeInKw());
-      System.out.println("   Installed: " + project.getInstalled());
-      System.out.println("   Margin: " + project.getRepCommission());
-
-
-
-      /**
-       * This is still being worked on. The goal is to print the customer name from the Customer object
-       * with a matching customerId
-       */
-      // int customerId = project.getCustomerId();
-      // Optional<Customer> customerName = projectService.getCustomerNameFromId(customerId);
-      // if (customerName.isPresent()) {
-      // customerName.toString();
-      // } ;
+    new ListingRenderer(listFormat).renderProjects(projects);
+  }
+
+  /**
+   * Searches customers by name (prefix, substring or close spelling) and prints the best matches.
+   */
+  private void searchCustomers() {
+    String query = getStringInput("Enter all or part of the customer's name: ");
+
+    if (Objects.isNull(query)) {
+      return;
+    }
+
+    List<CustomerNameIndex.Match> matches = projectService.searchCustomers(query, 20);
+
+    if (matches.isEmpty()) {
+      System.out.println("\nNo customers match '" + query + "'.");
+      return;
+    }
 
+    System.out.println("\nMatching customers:");
+    for (CustomerNameIndex.Match match : matches) {
+      System.out.println("   " + match.getCustomerId() + ": " + match.getCustomerName());
     }
   }
 
@@ -284,13 +288,14 @@ public class CustomersApp {
   }
 
   /**
-   * Gets the user's input from the console and converts it to a BigDecimal.
+   * Gets the user's input from the console and converts it to a fixed-point number.
    * 
    * @param prompt The prompt to display on the console.
-   * @return A BigDecimal value if successful.
-   * @throws DbException Thrown if an error occurs converting the number to a BigDecimal.
+   * @param scale The number of decimal places of the column the value is stored in.
+   * @return A FixedPoint value if successful.
+   * @throws DbException Thrown if an error occurs converting the number.
    */
-  private BigDecimal getDecimalInput(String prompt) {
+  private FixedPoint getDecimalInput(String prompt, int scale) {
     String input = getStringInput(prompt);
 
     if (Objects.isNull(input)) {
@@ -298,8 +303,8 @@ public class CustomersApp {
     }
 
     try {
-      /* Create the BigDecimal object and set it to two decimal places (the scale). */
-      return new BigDecimal(input).setScale(3);
+      /* Round to the column's scale: two places for money, three for system size. */
+      return FixedPoint.parse(input, scale);
     } catch (NumberFormatException e) {
       throw new DbException(input + " is not a valid number.");
     }
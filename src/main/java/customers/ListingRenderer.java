@@ -0,0 +1,228 @@
+package customers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import customers.entity.Customer;
+import customers.entity.Project;
+import customers.exception.DbException;
+import provided.util.FixedPoint;
+
+/**
+ * This class renders customer and project listings. Rows are formatted into one reusable
+ * StringBuilder, which is written to the output in large chunks instead of one synchronized,
+ * flushed println call per field.
+ *
+ */
+public class ListingRenderer {
+  private static final int CHUNK_SIZE = 1 << 16;
+
+  /**
+   * The listing formats.
+   */
+  public enum OutputFormat {
+    /** Aligned columns with a header line. */
+    TABLE,
+
+    /** Space-separated values, one row per line, no header. */
+    COMPACT,
+
+    /** Comma-separated values with a header line. */
+    CSV
+  }
+
+  // @formatter:off
+  private static final String[] CUSTOMER_HEADERS = {"Id", "Name"};
+  private static final int[] CUSTOMER_WIDTHS = {10, 25};
+
+  private static final String[] PROJECT_HEADERS =
+      {"CustomerId", "ProjectId", "Gross Price", "System Size(KW)", "Installed", "Margin"};
+  private static final int[] PROJECT_WIDTHS = {10, 10, 12, 15, 9, 10};
+  // @formatter:on
+
+  private final Writer writer;
+  private final OutputFormat format;
+  private final StringBuilder buffer = new StringBuilder(CHUNK_SIZE + 1024);
+  private char[] chars = new char[CHUNK_SIZE + 1024];
+
+  /**
+   * Creates a renderer that writes to System.out, so redirection with System.setOut and output
+   * already buffered there are respected. Rows reach it in large chunks, so its per-call locking
+   * costs little.
+   *
+   * @param format The listing format.
+   */
+  public ListingRenderer(OutputFormat format) {
+    this(System.out, format);
+  }
+
+  public ListingRenderer(OutputStream out, OutputFormat format) {
+    this.writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+    this.format = format;
+  }
+
+  /**
+   * Renders the customers and flushes the output.
+   *
+   * @param customers The customers to list.
+   */
+  public void renderCustomers(Iterable<Customer> customers) {
+    header(CUSTOMER_HEADERS, CUSTOMER_WIDTHS);
+
+    for (Customer customer : customers) {
+      cell(0, customer.getCustomerId(), CUSTOMER_WIDTHS);
+      cell(1, customer.getCustomerName(), CUSTOMER_WIDTHS);
+      endRow();
+    }
+
+    flush();
+  }
+
+  /**
+   * Renders the projects and flushes the output.
+   *
+   * @param projects The projects to list.
+   */
+  public void renderProjects(Iterable<Project> projects) {
+    header(PROJECT_HEADERS, PROJECT_WIDTHS);
+
+    for (Project project : projects) {
+      cell(0, project.getCustomerId(), PROJECT_WIDTHS);
+      cell(1, project.getProjectId(), PROJECT_WIDTHS);
+      cell(2, project.getGrossPrice(), PROJECT_WIDTHS);
+      cell(3, project.getSystemSizeInKw(), PROJECT_WIDTHS);
+      cell(4, project.getInstalled(), PROJECT_WIDTHS);
+      cell(5, project.getRepCommission(), PROJECT_WIDTHS);
+      endRow();
+    }
+
+    flush();
+  }
+
+  /**
+   * Writes any buffered text to the output.
+   */
+  public void flush() {
+    try {
+      drain();
+      writer.flush();
+    } catch (IOException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /*
+   * Copies the buffer into a reusable char array and writes it, so no String is created per chunk.
+   */
+  private void drain() throws IOException {
+    int length = buffer.length();
+
+    if (length > chars.length) {
+      chars = new char[length];
+    }
+
+    buffer.getChars(0, length, chars, 0);
+    writer.write(chars, 0, length);
+    buffer.setLength(0);
+  }
+
+  private void header(String[] headers, int[] widths) {
+    if (format == OutputFormat.COMPACT) {
+      return;
+    }
+
+    for (int column = 0; column < headers.length; column++) {
+      cell(column, headers[column], widths);
+    }
+
+    endRow();
+
+    if (format == OutputFormat.TABLE) {
+      for (int column = 0; column < headers.length; column++) {
+        if (column > 0) {
+          buffer.append("  ");
+        }
+
+        for (int index = 0; index < widths[column]; index++) {
+          buffer.append('-');
+        }
+      }
+
+      endRow();
+    }
+  }
+
+  private void cell(int column, Object value, int[] widths) {
+    if (column > 0) {
+      buffer.append(format == OutputFormat.CSV ? "," : format == OutputFormat.TABLE ? "  " : " ");
+    }
+
+    int start = buffer.length();
+
+    if (Objects.isNull(value)) {
+      if (format != OutputFormat.CSV) {
+        buffer.append('-');
+      }
+    } else if (value instanceof Integer) {
+      buffer.append(((Integer) value).intValue());
+    } else if (value instanceof FixedPoint) {
+      ((FixedPoint) value).appendTo(buffer);
+    } else if (format == OutputFormat.CSV && value instanceof String) {
+      appendCsv((String) value);
+    } else {
+      buffer.append(value);
+    }
+
+    if (format == OutputFormat.TABLE) {
+      for (int length = buffer.length() - start; length < widths[column]; length++) {
+        buffer.append(' ');
+      }
+    }
+  }
+
+  private void endRow() {
+    if (format == OutputFormat.TABLE) {
+      int end = buffer.length();
+
+      while (end > 0 && buffer.charAt(end - 1) == ' ') {
+        end--;
+      }
+
+      buffer.setLength(end);
+    }
+
+    buffer.append('\n');
+
+    if (buffer.length() >= CHUNK_SIZE) {
+      try {
+        drain();
+      } catch (IOException e) {
+        throw new DbException(e);
+      }
+    }
+  }
+
+  private void appendCsv(String value) {
+    if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+      buffer.append(value);
+      return;
+    }
+
+    buffer.append('"');
+
+    for (int index = 0; index < value.length(); index++) {
+      char ch = value.charAt(index);
+
+      if (ch == '"') {
+        buffer.append('"');
+      }
+
+      buffer.append(ch);
+    }
+
+    buffer.append('"');
+  }
+}
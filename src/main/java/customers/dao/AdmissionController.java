@@ -0,0 +1,378 @@
+package customers.dao;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import customers.exception.DbException;
+import customers.exception.OverloadedException;
+
+/**
+ * Admits the operations of one database by {@link Workload} and keeps each one within its time
+ * budget. A workload with a concurrency limit runs at most that many operations at once; an
+ * operation beyond the limit waits up to the workload's queue time for a slot and is then turned
+ * away with an {@link OverloadedException}. Heavy scans and reports are limited this way while
+ * lookups are not, so a burst of heavy work cannot hold every connection and server thread that
+ * lookups need.
+ *
+ * Each admitted operation runs on a connection whose statements get the remaining time budget as
+ * their query timeout. A watchdog also cancels an operation's running statement when the budget
+ * runs out (including time spent between fetches of a cursor), when the thread that opened it is
+ * interrupted, or when {@link #cancel(Workload)} is called. A cancelled operation cannot start
+ * further statements, so a loop over several queries stops at its next one.
+ *
+ */
+public class AdmissionController {
+  public static final String WORKLOAD_PREFIX = "customers.db.workload.";
+
+  private static final long WATCHDOG_MILLIS = 100;
+
+  /* Every open operation of every controller, for the watchdog. */
+  private static final Set<Operation> RUNNING = ConcurrentHashMap.newKeySet();
+  private static ScheduledExecutorService watchdog;
+
+  private final Map<Workload, Limit> limits = new EnumMap<>(Workload.class);
+
+  /**
+   * Creates a controller with the configured limits of each workload.
+   *
+   * @param config The configuration.
+   */
+  public AdmissionController(DbConfig config) {
+    for (Workload workload : Workload.values()) {
+      String prefix = WORKLOAD_PREFIX + workload.configName() + ".";
+
+      limits.put(workload, new Limit(workload,
+          config.getInt(prefix + "timeoutSeconds", workload.defaultTimeoutSeconds()),
+          config.getInt(prefix + "maxConcurrent", workload.defaultMaxConcurrent()),
+          config.getInt(prefix + "queueMillis", workload.defaultQueueMillis())));
+    }
+  }
+
+  /**
+   * Admits an operation and opens its connection. Closing the connection ends the operation and
+   * frees its slot.
+   *
+   * @param workload The operation's workload.
+   * @param source Opens the underlying connection.
+   * @return The connection of the operation.
+   * @throws OverloadedException Thrown if the workload stayed at its limit for the queue time.
+   * @throws DbException Thrown if the connection cannot be opened.
+   */
+  public Connection open(Workload workload, Supplier<Connection> source) {
+    Limit limit = limits.get(workload);
+    limit.acquire();
+
+    try {
+      return open(limit, source.get(), true);
+    } catch (RuntimeException e) {
+      limit.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Opens a connection with the time budget and cancellation of the workload but without taking
+   * a slot, for the parts of an operation that was admitted with {@link #admit(Workload)}.
+   *
+   * @param workload The operation's workload.
+   * @param source Opens the underlying connection.
+   * @return The connection.
+   * @throws DbException Thrown if the connection cannot be opened.
+   */
+  public Connection guard(Workload workload, Supplier<Connection> source) {
+    return open(limits.get(workload), source.get(), false);
+  }
+
+  /**
+   * Admits an operation that spreads its work over several connections, such as a parallel scan.
+   * The operation holds one slot until the returned admission is closed.
+   *
+   * @param workload The operation's workload.
+   * @return The admission, to be closed when the operation ends.
+   * @throws OverloadedException Thrown if the workload stayed at its limit for the queue time.
+   */
+  public Admission admit(Workload workload) {
+    Limit limit = limits.get(workload);
+    limit.acquire();
+
+    boolean[] released = {false};
+
+    return () -> {
+      synchronized (released) {
+        if (!released[0]) {
+          released[0] = true;
+          limit.release();
+        }
+      }
+    };
+  }
+
+  /**
+   * A slot held by an operation admitted with {@link #admit(Workload)}.
+   */
+  public interface Admission extends AutoCloseable {
+    /**
+     * Frees the slot. Calling this again has no effect.
+     */
+    @Override
+    void close();
+  }
+
+  /**
+   * Cancels the running operations of a workload. Their current statements are cancelled on the
+   * server and they cannot start more.
+   *
+   * @param workload The workload, or null for every workload.
+   * @return The number of operations cancelled.
+   */
+  public int cancel(Workload workload) {
+    int cancelled = 0;
+
+    for (Operation operation : RUNNING) {
+      if (operation.controller == this
+          && (Objects.isNull(workload) || operation.limit.workload == workload)) {
+        operation.cancel("cancelled");
+        cancelled++;
+      }
+    }
+
+    return cancelled;
+  }
+
+  /**
+   * @param workload The workload.
+   * @return The number of its operations running now.
+   */
+  public int getRunningCount(Workload workload) {
+    return limits.get(workload).running.get();
+  }
+
+  /**
+   * @param workload The workload.
+   * @return The number of its operations turned away since this controller was created.
+   */
+  public long getRejectedCount(Workload workload) {
+    return limits.get(workload).rejected.sum();
+  }
+
+  @Override
+  public String toString() {
+    List<String> parts = new ArrayList<>();
+
+    for (Limit limit : limits.values()) {
+      parts.add(limit.workload.configName() + " " + limit.running.get() + " running, "
+          + limit.rejected.sum() + " rejected");
+    }
+
+    return "AdmissionController(" + String.join("; ", parts) + ")";
+  }
+
+  private Connection open(Limit limit, Connection conn, boolean admitted) {
+    Operation operation = new Operation(this, limit, conn, admitted);
+    RUNNING.add(operation);
+    startWatchdog();
+
+    return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+        new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "createStatement":
+            case "prepareStatement":
+            case "prepareCall":
+              return operation.track((Statement) invoke(conn, method, args));
+
+            case "close":
+              operation.close();
+              return null;
+
+            default:
+              return invoke(conn, method, args);
+          }
+        });
+  }
+
+  private static Object invoke(Connection conn, Method method, Object[] args)
+      throws Throwable {
+    try {
+      return method.invoke(conn, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  private static synchronized void startWatchdog() {
+    if (Objects.isNull(watchdog)) {
+      watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "statement-watchdog");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+      watchdog.scheduleWithFixedDelay(() -> RUNNING.forEach(Operation::check), WATCHDOG_MILLIS,
+          WATCHDOG_MILLIS, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /*
+   * The settings and slots of one workload.
+   */
+  private static final class Limit {
+    private final Workload workload;
+    private final int timeoutSeconds;
+    private final int maxConcurrent;
+    private final int queueMillis;
+    private final Semaphore slots;
+    private final AtomicInteger running = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    Limit(Workload workload, int timeoutSeconds, int maxConcurrent, int queueMillis) {
+      this.workload = workload;
+      this.timeoutSeconds = Math.max(0, timeoutSeconds);
+      this.maxConcurrent = Math.max(0, maxConcurrent);
+      this.queueMillis = Math.max(0, queueMillis);
+      this.slots = this.maxConcurrent > 0 ? new Semaphore(this.maxConcurrent, true) : null;
+    }
+
+    void acquire() {
+      if (Objects.nonNull(slots)) {
+        try {
+          if (!slots.tryAcquire(queueMillis, TimeUnit.MILLISECONDS)) {
+            rejected.increment();
+            throw new OverloadedException("Too many " + workload.configName()
+                + " operations are running (limit " + maxConcurrent + "); try again later");
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new DbException("Interrupted while waiting to run a " + workload.configName()
+              + " operation", e);
+        }
+      }
+
+      running.incrementAndGet();
+    }
+
+    void release() {
+      running.decrementAndGet();
+
+      if (Objects.nonNull(slots)) {
+        slots.release();
+      }
+    }
+  }
+
+  /*
+   * One operation's connection, its statements and the reason it was cancelled, if it was.
+   */
+  private static final class Operation {
+    private final AdmissionController controller;
+    private final Limit limit;
+    private final Connection conn;
+    private final boolean admitted;
+    private final Thread owner = Thread.currentThread();
+    private final long deadline;
+    private final List<Statement> statements = new ArrayList<>();
+    private volatile String cancelled;
+    private boolean closed;
+
+    Operation(AdmissionController controller, Limit limit, Connection conn, boolean admitted) {
+      this.controller = controller;
+      this.limit = limit;
+      this.conn = conn;
+      this.admitted = admitted;
+      this.deadline = limit.timeoutSeconds == 0 ? 0
+          : System.nanoTime() + TimeUnit.SECONDS.toNanos(limit.timeoutSeconds);
+    }
+
+    /*
+     * Gives a new statement the remaining budget as its timeout and keeps it for cancellation.
+     */
+    synchronized Statement track(Statement stmt) throws SQLException {
+      if (Objects.nonNull(cancelled)) {
+        stmt.close();
+        throw new SQLTimeoutException("The " + limit.workload.configName() + " operation was "
+            + cancelled);
+      }
+
+      if (deadline != 0) {
+        long remaining = deadline - System.nanoTime();
+        stmt.setQueryTimeout((int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remaining) + 1));
+      }
+
+      statements.removeIf(Operation::isClosed);
+      statements.add(stmt);
+      return stmt;
+    }
+
+    void check() {
+      if (owner.isInterrupted()) {
+        cancel("interrupted");
+      } else if (deadline != 0 && System.nanoTime() - deadline > 0) {
+        cancel("stopped after " + limit.timeoutSeconds + " s");
+      }
+    }
+
+    synchronized void cancel(String reason) {
+      if (Objects.nonNull(cancelled) || closed) {
+        return;
+      }
+
+      cancelled = reason;
+
+      for (Statement stmt : statements) {
+        try {
+          if (!stmt.isClosed()) {
+            stmt.cancel();
+          }
+        } catch (SQLException e) {
+          /* The statement finished or its connection broke; either way it is no longer running. */
+        }
+      }
+    }
+
+    void close() throws SQLException {
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+
+        closed = true;
+        statements.clear();
+      }
+
+      RUNNING.remove(this);
+
+      try {
+        conn.close();
+      } finally {
+        if (admitted) {
+          limit.release();
+        }
+      }
+    }
+
+    private static boolean isClosed(Statement stmt) {
+      try {
+        return stmt.isClosed();
+      } catch (SQLException e) {
+        return true;
+      }
+    }
+  }
+}
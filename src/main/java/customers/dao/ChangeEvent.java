@@ -0,0 +1,121 @@
+package customers.dao;
+
+import java.util.Arrays;
+import customers.exception.DbException;
+
+/**
+ * One committed write, as published on the {@link ChangeFeed}. An event names the table, the kind
+ * of change and the key values of the changed rows, so a consumer can refetch or drop exactly those
+ * rows. A {@link Operation#RELOAD} event has no keys and means the whole table was replaced.
+ *
+ */
+public class ChangeEvent {
+  public enum Operation {
+    INSERT, UPSERT, UPDATE, DELETE, RELOAD
+  }
+
+  private static final int[] NO_KEYS = {};
+
+  private final long sequence;
+  private final long timestamp;
+  private final String table;
+  private final Operation operation;
+  private final String keyColumn;
+  private final int[] keys;
+
+  ChangeEvent(long sequence, long timestamp, String table, Operation operation, String keyColumn,
+      int[] keys) {
+    this.sequence = sequence;
+    this.timestamp = timestamp;
+    this.table = table;
+    this.operation = operation;
+    this.keyColumn = keyColumn;
+    this.keys = keys.length == 0 ? NO_KEYS : keys;
+  }
+
+  /**
+   * @return The position of this event in the feed. Sequences start at 1 and increase by one for
+   *         each published event.
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * @return When the event was published, in epoch milliseconds.
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  public String getTable() {
+    return table;
+  }
+
+  public Operation getOperation() {
+    return operation;
+  }
+
+  /**
+   * @return The column the keys belong to, for example customer_id or project_id.
+   */
+  public String getKeyColumn() {
+    return keyColumn;
+  }
+
+  public int getKeyCount() {
+    return keys.length;
+  }
+
+  public int getKey(int index) {
+    return keys[index];
+  }
+
+  /**
+   * @return A copy of the keys.
+   */
+  public int[] getKeys() {
+    return keys.clone();
+  }
+
+  /*
+   * The change log stores one event per line, tab separated: sequence, timestamp, table, operation,
+   * key column and the keys separated by commas.
+   */
+
+  String toLogLine() {
+    StringBuilder line = new StringBuilder(48 + keys.length * 6);
+    line.append(sequence).append('\t').append(timestamp).append('\t').append(table).append('\t')
+        .append(operation).append('\t').append(keyColumn).append('\t');
+
+    for (int index = 0; index < keys.length; index++) {
+      if (index > 0) {
+        line.append(',');
+      }
+
+      line.append(keys[index]);
+    }
+
+    return line.toString();
+  }
+
+  static ChangeEvent fromLogLine(String line) {
+    String[] fields = line.split("\t", -1);
+
+    if (fields.length != 6) {
+      throw new DbException("Not a change log line: " + line);
+    }
+
+    int[] keys = fields[5].isEmpty() ? NO_KEYS
+        : Arrays.stream(fields[5].split(",")).mapToInt(Integer::parseInt).toArray();
+
+    return new ChangeEvent(Long.parseLong(fields[0]), Long.parseLong(fields[1]), fields[2],
+        Operation.valueOf(fields[3]), fields[4], keys);
+  }
+
+  @Override
+  public String toString() {
+    return "#" + sequence + " " + operation + " " + table + " " + keyColumn + "="
+        + Arrays.toString(keys);
+  }
+}
@@ -0,0 +1,313 @@
+package customers.dao;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import customers.exception.DbException;
+
+/**
+ * An in-process feed of committed writes. {@link CustomersDao} publishes a {@link ChangeEvent}
+ * after every commit, and subscribers receive the events in sequence order so they can update
+ * caches and reports incrementally instead of rescanning tables.
+ *
+ * Events are kept in a fixed-size ring buffer. Publishing claims a sequence number with one atomic
+ * increment and stores the event in its slot; it never takes a lock and never waits for a
+ * subscriber. Each subscription reads the ring on its own daemon thread. A subscriber that falls
+ * more than the ring's capacity behind is told about the lost events through
+ * {@link ChangeListener#onGap(long, long)}. Events can also be written to a durable
+ * {@link ChangeLog} for replay. The log is not a subscriber: publish appends to it and forces it to
+ * disk before returning, under a lock that keeps the log in sequence order, so the log never misses
+ * an event and a writer whose event could not be logged gets an exception.
+ *
+ * The feed also keeps a version number per table, raised synchronously by every publish. A reader
+ * that remembers a table's version can tell, without subscribing, whether the table has been
+ * written since.
+ *
+ */
+public class ChangeFeed {
+  public static final String CAPACITY = "customers.changes.capacity";
+  public static final String LOG_FILE = "customers.changes.log";
+
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+  private static ChangeFeed defaultFeed;
+
+  private final AtomicReferenceArray<ChangeEvent> ring;
+  private final int mask;
+  private final AtomicLong nextSequence = new AtomicLong(1);
+  private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+  private final Map<String, AtomicLong> tableVersions = new ConcurrentHashMap<>();
+  private volatile ChangeLog changeLog;
+
+  /**
+   * @param capacity The number of events kept for subscribers, rounded up to a power of two.
+   */
+  public ChangeFeed(int capacity) {
+    int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+    this.ring = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
+  }
+
+  /**
+   * Returns the feed the DAO publishes to, creating it on first use from the configuration. When
+   * {@link #LOG_FILE} is set, every event is also appended to that file and numbering continues
+   * from the last event in it.
+   *
+   * @return The shared feed.
+   */
+  public static synchronized ChangeFeed getDefault() {
+    if (Objects.isNull(defaultFeed)) {
+      DbConfig config = DbConnection.getConfig();
+      ChangeFeed feed = new ChangeFeed(config.getInt(CAPACITY, 8192));
+      String logFile = config.get(LOG_FILE, "");
+
+      if (!logFile.isBlank()) {
+        feed.attachLog(Paths.get(logFile));
+      }
+
+      defaultFeed = feed;
+    }
+
+    return defaultFeed;
+  }
+
+  public int getCapacity() {
+    return mask + 1;
+  }
+
+  /**
+   * @return The sequence of the most recently published event, or 0 if none has been published.
+   */
+  public long getLastSequence() {
+    return nextSequence.get() - 1;
+  }
+
+  /**
+   * Returns the table's version, which increases each time a change to the table is published.
+   * The version is raised before {@link #publish(String, ChangeEvent.Operation, String, int...)}
+   * returns, so a write is visible here as soon as the writer moves on.
+   *
+   * @param table The table.
+   * @return The table's version, or 0 if no change to it has been published.
+   */
+  public long getTableVersion(String table) {
+    AtomicLong version = tableVersions.get(table);
+    return Objects.isNull(version) ? 0 : version.get();
+  }
+
+  /**
+   * Publishes a change. Call this only after the transaction has committed.
+   *
+   * @param table The changed table.
+   * @param operation The kind of change.
+   * @param keyColumn The column the keys belong to.
+   * @param keys The key values of the changed rows; empty for {@link ChangeEvent.Operation#RELOAD}.
+   * @return The published event.
+   * @throws DbException Thrown if a change log is attached and the event cannot be written to it.
+   *         The event is still delivered to subscribers.
+   */
+  public ChangeEvent publish(String table, ChangeEvent.Operation operation, String keyColumn,
+      int... keys) {
+    tableVersions.computeIfAbsent(table, key -> new AtomicLong()).incrementAndGet();
+
+    ChangeLog log = changeLog;
+
+    if (Objects.isNull(log)) {
+      ChangeEvent event = store(table, operation, keyColumn, keys);
+      wakeSubscribers();
+      return event;
+    }
+
+    ChangeEvent event;
+    long position;
+
+    synchronized (log) {
+      event = store(table, operation, keyColumn, keys);
+
+      try {
+        position = log.append(event);
+      } finally {
+        wakeSubscribers();
+      }
+    }
+
+    log.sync(position);
+    return event;
+  }
+
+  private ChangeEvent store(String table, ChangeEvent.Operation operation, String keyColumn,
+      int... keys) {
+    long sequence = nextSequence.getAndIncrement();
+    ChangeEvent event =
+        new ChangeEvent(sequence, System.currentTimeMillis(), table, operation, keyColumn, keys);
+
+    ring.set((int) (sequence & mask), event);
+    return event;
+  }
+
+  private void wakeSubscribers() {
+    for (Subscription subscription : subscriptions) {
+      LockSupport.unpark(subscription.thread);
+    }
+  }
+
+  /**
+   * Subscribes to events published from now on.
+   *
+   * @param name A name for the subscriber's thread.
+   * @param listener The listener.
+   * @return The subscription, which must be closed to stop delivery.
+   */
+  public Subscription subscribe(String name, ChangeListener listener) {
+    return subscribe(name, listener, nextSequence.get());
+  }
+
+  /**
+   * Subscribes starting at the given sequence. Events older than the ring's capacity are reported
+   * as a gap.
+   *
+   * @param name A name for the subscriber's thread.
+   * @param listener The listener.
+   * @param fromSequence The first sequence to deliver.
+   * @return The subscription, which must be closed to stop delivery.
+   */
+  public Subscription subscribe(String name, ChangeListener listener, long fromSequence) {
+    Subscription subscription = new Subscription(name, listener, Math.max(1, fromSequence));
+    subscriptions.add(subscription);
+    subscription.thread.start();
+    return subscription;
+  }
+
+  /**
+   * Appends every event published from now on to a change log, replacing any log attached before.
+   * Numbering continues after the last event already in the log, so sequences stay unique across
+   * restarts.
+   *
+   * @param file The log file, created if it does not exist.
+   * @return The log, which stays attached until {@link #detachLog()}.
+   * @throws DbException Thrown if the log cannot be read or opened.
+   */
+  public synchronized ChangeLog attachLog(Path file) {
+    try {
+      long last = ChangeLog.lastSequence(file);
+      nextSequence.accumulateAndGet(last + 1, Math::max);
+      ChangeLog log = new ChangeLog(file);
+      detachLog();
+      changeLog = log;
+      return log;
+    } catch (IOException e) {
+      throw new DbException("Unable to open change log " + file, e);
+    }
+  }
+
+  /**
+   * Stops appending events to the change log, once the publishes already appending have finished,
+   * and closes it.
+   */
+  public synchronized void detachLog() {
+    ChangeLog log = changeLog;
+
+    if (Objects.nonNull(log)) {
+      changeLog = null;
+
+      synchronized (log) {
+        try {
+          log.close();
+        } catch (IOException e) {
+          throw new DbException(e);
+        }
+      }
+    }
+  }
+
+  /**
+   * A running delivery of events to one listener.
+   */
+  public class Subscription implements AutoCloseable {
+    private final ChangeListener listener;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile long cursor;
+
+    private Subscription(String name, ChangeListener listener, long fromSequence) {
+      this.listener = listener;
+      this.cursor = fromSequence;
+      this.thread = new Thread(this::deliver, "change-feed-" + name);
+      this.thread.setDaemon(true);
+    }
+
+    /**
+     * @return The sequence of the next event this subscription will deliver.
+     */
+    public long getCursor() {
+      return cursor;
+    }
+
+    /**
+     * Stops delivery once the events already published have been delivered.
+     */
+    @Override
+    public void close() {
+      running = false;
+      subscriptions.remove(this);
+      LockSupport.unpark(thread);
+
+      if (listener instanceof AutoCloseable) {
+        try {
+          thread.join(TimeUnit.SECONDS.toMillis(5));
+          ((AutoCloseable) listener).close();
+        } catch (Exception e) {
+          throw new DbException(e);
+        }
+      }
+    }
+
+    private void deliver() {
+      boolean delivered = false;
+
+      while (true) {
+        long expected = cursor;
+        ChangeEvent event = ring.get((int) (expected & mask));
+
+        if (Objects.isNull(event) || event.getSequence() < expected) {
+          /* Nothing new yet (or the slot's publisher has not stored its event). */
+          if (delivered) {
+            delivered = false;
+            safely(listener::endOfBatch);
+          }
+
+          if (!running) {
+            return;
+          }
+
+          LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        } else if (event.getSequence() == expected) {
+          safely(() -> listener.onChange(event));
+          cursor = expected + 1;
+          delivered = true;
+        } else {
+          /* The ring wrapped past this subscriber. Skip to the oldest event still held. */
+          long oldest = Math.max(expected + 1, getLastSequence() - mask);
+          safely(() -> listener.onGap(expected, oldest - 1));
+          cursor = oldest;
+        }
+      }
+    }
+
+    private void safely(Runnable call) {
+      try {
+        call.run();
+      } catch (RuntimeException e) {
+        System.err.println(thread.getName() + ": " + e);
+      }
+    }
+  }
+}
@@ -0,0 +1,30 @@
+package customers.dao;
+
+/**
+ * Receives events from a {@link ChangeFeed}. Each subscription calls its listener from one thread,
+ * in sequence order.
+ *
+ */
+public interface ChangeListener {
+  /**
+   * Called for each event.
+   *
+   * @param event The event.
+   */
+  void onChange(ChangeEvent event);
+
+  /**
+   * Called when the listener fell so far behind that the ring buffer overwrote events it had not
+   * seen yet. The listener should rebuild its state from the tables or replay the change log.
+   *
+   * @param firstMissed The sequence of the first lost event.
+   * @param lastMissed The sequence of the last lost event.
+   */
+  default void onGap(long firstMissed, long lastMissed) {}
+
+  /**
+   * Called when the listener has caught up with the feed, after one or more events. Listeners that
+   * buffer output can flush here rather than after every event.
+   */
+  default void endOfBatch() {}
+}
@@ -0,0 +1,163 @@
+package customers.dao;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import customers.exception.DbException;
+
+/**
+ * A durable, append-only file of change events, one line per event. Attached to a
+ * {@link ChangeFeed} it records every committed write; {@link #replay(Path, long, ChangeListener)}
+ * feeds the recorded events to a listener, for example to bring a cache up to date after a restart
+ * or after {@link ChangeListener#onGap(long, long)}.
+ *
+ * The feed appends each event while it publishes it, so the log has every event in sequence order
+ * and cannot fall behind the way a subscriber can. {@link #sync(long)} then forces the file to disk
+ * before the publish returns. Writers that publish at the same time share one force: a writer whose
+ * line was covered by another writer's force does not force again.
+ *
+ */
+public class ChangeLog implements AutoCloseable {
+  private final Path file;
+  private final FileChannel channel;
+
+  /* The end of the appended lines, guarded by this object's lock, and the end forced to disk. */
+  private volatile long appended;
+  private volatile long synced;
+  private final Object syncLock = new Object();
+
+  /**
+   * @param file The log file. It is created if needed and otherwise appended to.
+   * @throws IOException Thrown if the file cannot be opened.
+   */
+  public ChangeLog(Path file) throws IOException {
+    this.file = file;
+    this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND,
+        StandardOpenOption.WRITE);
+    this.appended = channel.size();
+    this.synced = appended;
+  }
+
+  /**
+   * Appends an event. Events must be appended in sequence order.
+   *
+   * @param event The event.
+   * @return The end of the event's line in the file, to pass to {@link #sync(long)}.
+   * @throws DbException Thrown if the line cannot be written.
+   */
+  public synchronized long append(ChangeEvent event) {
+    ByteBuffer line = StandardCharsets.UTF_8.encode(event.toLogLine() + "\n");
+
+    try {
+      while (line.hasRemaining()) {
+        appended += channel.write(line);
+      }
+
+      return appended;
+    } catch (IOException e) {
+      throw new DbException("Unable to append to change log " + file, e);
+    }
+  }
+
+  /**
+   * Forces the log to disk up to at least the given position, unless that part was forced already.
+   *
+   * @param position The end of the last line that must be durable.
+   * @throws DbException Thrown if the file cannot be forced.
+   */
+  public void sync(long position) {
+    if (synced >= position) {
+      return;
+    }
+
+    synchronized (syncLock) {
+      if (synced >= position) {
+        return;
+      }
+
+      long end = appended;
+
+      try {
+        channel.force(true);
+      } catch (IOException e) {
+        throw new DbException("Unable to force change log " + file, e);
+      }
+
+      synced = end;
+    }
+  }
+
+  /**
+   * Forces what was appended to disk and closes the file.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (syncLock) {
+      if (channel.isOpen()) {
+        channel.force(true);
+        synced = appended;
+      }
+
+      channel.close();
+    }
+  }
+
+  /**
+   * Reads the sequence of the last event in a log.
+   *
+   * @param file The log file.
+   * @return The last sequence, or 0 if the file does not exist or is empty.
+   * @throws IOException Thrown if the file cannot be read.
+   */
+  public static long lastSequence(Path file) throws IOException {
+    long[] last = {0};
+
+    if (Files.exists(file)) {
+      replay(file, 0, event -> last[0] = event.getSequence());
+    }
+
+    return last[0];
+  }
+
+  /**
+   * Delivers the events in a log that come after the given sequence.
+   *
+   * @param file The log file.
+   * @param afterSequence Events with this sequence or lower are skipped.
+   * @param listener The listener.
+   * @return The sequence of the last event delivered, or afterSequence if there were none.
+   * @throws IOException Thrown if the file cannot be read.
+   */
+  public static long replay(Path file, long afterSequence, ChangeListener listener)
+      throws IOException {
+    long last = afterSequence;
+
+    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      String line;
+
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty()) {
+          continue;
+        }
+
+        ChangeEvent event = ChangeEvent.fromLogLine(line);
+
+        if (event.getSequence() > afterSequence) {
+          listener.onChange(event);
+          last = event.getSequence();
+        }
+      }
+    }
+
+    if (last > afterSequence) {
+      listener.endOfBatch();
+    }
+
+    return last;
+  }
+}
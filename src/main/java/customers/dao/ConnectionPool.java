@@ -0,0 +1,289 @@
+package customers.dao;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * A small, bounded pool of physical connections in front of another {@link DataSource}. Callers
+ * use connections as usual; closing one returns it to the pool after rolling back any open
+ * transaction and restoring auto-commit, read-write mode and the isolation level the connection was
+ * opened with. A connection that has been closed by its borrower throws on any further use, since
+ * its physical connection may already belong to someone else. A connection that has been idle
+ * longer than the validation interval is checked with {@link Connection#isValid(int)} before it is
+ * handed out again.
+ *
+ */
+public class ConnectionPool implements DataSource {
+  private static final long VALIDATE_AFTER_IDLE_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+  private final DataSource delegate;
+  private final int maxSize;
+  private final long borrowTimeoutMillis;
+  private final Semaphore permits;
+  private final Deque<Idle> idle = new ArrayDeque<>();
+  private boolean closed;
+
+  /**
+   * @param delegate The data source that opens physical connections.
+   * @param maxSize The maximum number of connections open at once.
+   * @param borrowTimeoutMillis How long a caller waits for a free connection before failing.
+   */
+  public ConnectionPool(DataSource delegate, int maxSize, long borrowTimeoutMillis) {
+    this.delegate = delegate;
+    this.maxSize = maxSize;
+    this.borrowTimeoutMillis = borrowTimeoutMillis;
+    this.permits = new Semaphore(maxSize, true);
+  }
+
+  public DataSource getDelegate() {
+    return delegate;
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public synchronized int getIdleCount() {
+    return idle.size();
+  }
+
+  /**
+   * Opens physical connections until the given number are idle in the pool.
+   *
+   * @param count The number of idle connections wanted (at most the pool size).
+   * @throws SQLException Thrown if a connection cannot be opened.
+   */
+  public void prestart(int count) throws SQLException {
+    List<Connection> opened = new ArrayList<>();
+
+    try {
+      while (getIdleCount() + opened.size() < Math.min(count, maxSize)) {
+        opened.add(getConnection());
+      }
+    } finally {
+      for (Connection conn : opened) {
+        conn.close();
+      }
+    }
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    try {
+      if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+        throw new SQLException("Timed out after " + borrowTimeoutMillis
+            + " ms waiting for a pooled connection to " + delegate);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted waiting for a pooled connection", e);
+    }
+
+    try {
+      return wrap(takeIdleOrOpen());
+    } catch (SQLException | RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    throw new SQLFeatureNotSupportedException("A pool only hands out its own connections");
+  }
+
+  /**
+   * Closes the idle connections. Connections in use are closed when they are returned.
+   */
+  public void close() {
+    List<Idle> toClose;
+
+    synchronized (this) {
+      closed = true;
+      toClose = new ArrayList<>(idle);
+      idle.clear();
+    }
+
+    for (Idle entry : toClose) {
+      closeQuietly(entry.conn);
+    }
+  }
+
+  private Idle takeIdleOrOpen() throws SQLException {
+    while (true) {
+      Idle entry;
+
+      synchronized (this) {
+        entry = idle.pollFirst();
+      }
+
+      if (Objects.isNull(entry)) {
+        Connection conn = delegate.getConnection();
+
+        try {
+          return new Idle(conn, conn.getTransactionIsolation());
+        } catch (SQLException | RuntimeException e) {
+          closeQuietly(conn);
+          throw e;
+        }
+      }
+
+      boolean stale = System.nanoTime() - entry.since > VALIDATE_AFTER_IDLE_NANOS;
+
+      if (!stale || entry.conn.isValid(1)) {
+        return entry;
+      }
+
+      closeQuietly(entry.conn);
+    }
+  }
+
+  private void release(Idle entry) {
+    Connection conn = entry.conn;
+
+    try {
+      try {
+        if (!conn.getAutoCommit()) {
+          conn.rollback();
+          conn.setAutoCommit(true);
+        }
+
+        if (conn.isReadOnly()) {
+          conn.setReadOnly(false);
+        }
+
+        if (conn.getTransactionIsolation() != entry.isolation) {
+          conn.setTransactionIsolation(entry.isolation);
+        }
+      } catch (SQLException e) {
+        closeQuietly(conn);
+        return;
+      }
+
+      synchronized (this) {
+        if (!closed) {
+          idle.addFirst(new Idle(conn, entry.isolation));
+          return;
+        }
+      }
+
+      closeQuietly(conn);
+    } finally {
+      permits.release();
+    }
+  }
+
+  /*
+   * Hand out a proxy whose close() returns the physical connection to the pool exactly once. After
+   * that the proxy only answers isClosed(), isValid() and the Object methods; anything else would
+   * reach a connection that may have been handed to another borrower.
+   */
+  private Connection wrap(Idle entry) {
+    Connection conn = entry.conn;
+    AtomicBoolean returned = new AtomicBoolean();
+
+    return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+        new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "close":
+              if (returned.compareAndSet(false, true)) {
+                release(entry);
+              }
+              return null;
+
+            case "isClosed":
+              return returned.get() || conn.isClosed();
+
+            case "isValid":
+              return !returned.get() && conn.isValid((Integer) args[0]);
+
+            default:
+              if (returned.get() && method.getDeclaringClass() != Object.class) {
+                throw new SQLException("Connection returned to pool");
+              }
+
+              try {
+                return method.invoke(conn, args);
+              } catch (InvocationTargetException e) {
+                throw e.getCause();
+              }
+          }
+        });
+  }
+
+  private static void closeQuietly(Connection conn) {
+    try {
+      conn.close();
+    } catch (SQLException e) {
+      /* The connection is being discarded; there is nothing more to do. */
+    }
+  }
+
+  @Override
+  public PrintWriter getLogWriter() throws SQLException {
+    return delegate.getLogWriter();
+  }
+
+  @Override
+  public void setLogWriter(PrintWriter out) throws SQLException {
+    delegate.setLogWriter(out);
+  }
+
+  @Override
+  public void setLoginTimeout(int seconds) throws SQLException {
+    delegate.setLoginTimeout(seconds);
+  }
+
+  @Override
+  public int getLoginTimeout() throws SQLException {
+    return delegate.getLoginTimeout();
+  }
+
+  @Override
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    return delegate.getParentLogger();
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    return iface.isInstance(this) ? iface.cast(this) : delegate.unwrap(iface);
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> iface) throws SQLException {
+    return iface.isInstance(this) || delegate.isWrapperFor(iface);
+  }
+
+  @Override
+  public String toString() {
+    return "pool(" + maxSize + ") of " + delegate;
+  }
+
+  /*
+   * A physical connection with the isolation level it was opened with, idle since it was created.
+   */
+  private static class Idle {
+    private final Connection conn;
+    private final int isolation;
+    private final long since = System.nanoTime();
+
+    Idle(Connection conn, int isolation) {
+      this.conn = conn;
+      this.isolation = isolation;
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package customers.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.Map;
+import javax.sql.DataSource;
+import customers.exception.DbException;
+
+/**
+ * Where a DAO gets its connections. {@link #PRIMARY} is the configured database reached through
+ * {@link DbConnection}, with its pools and read replicas. A sharded setup gives the DAO of each
+ * shard its own source with {@link #of(Map)}.
+ *
+ */
+public interface ConnectionSource {
+  /**
+   * The configured database, through the static methods of {@link DbConnection}.
+   */
+  ConnectionSource PRIMARY = new ConnectionSource() {
+    @Override
+    public Connection getConnection(DbProfile profile) {
+      return DbConnection.getConnection(profile);
+    }
+
+    @Override
+    public Connection getReadConnection(DbProfile profile) {
+      return DbConnection.getReadConnection(profile);
+    }
+
+    @Override
+    public void markWrite() {
+      DbConnection.markWrite();
+    }
+
+    @Override
+    public String toString() {
+      return DbConnection.getConfig().getUrl();
+    }
+  };
+
+  /**
+   * @param profile The performance profile.
+   * @return A connection for a write, or for a read that must see the latest writes.
+   * @throws DbException Thrown if the connection cannot be opened.
+   */
+  Connection getConnection(DbProfile profile);
+
+  /**
+   * @param profile The performance profile.
+   * @return A connection for a read, possibly from a replica.
+   * @throws DbException Thrown if the connection cannot be opened.
+   */
+  Connection getReadConnection(DbProfile profile);
+
+  /**
+   * Called after a write commits.
+   */
+  void markWrite();
+
+  /**
+   * Returns a source that serves reads and writes from the given data sources, one per profile.
+   *
+   * @param dataSources The data sources keyed by profile.
+   * @return The source.
+   */
+  static ConnectionSource of(Map<DbProfile, DataSource> dataSources) {
+    Map<DbProfile, DataSource> copy = new EnumMap<>(dataSources);
+
+    return new ConnectionSource() {
+      @Override
+      public Connection getConnection(DbProfile profile) {
+        DataSource dataSource = copy.get(profile);
+
+        try {
+          return dataSource.getConnection();
+        } catch (SQLException e) {
+          throw new DbException("Unable to get connection at " + dataSource, e);
+        }
+      }
+
+      @Override
+      public Connection getReadConnection(DbProfile profile) {
+        return getConnection(profile);
+      }
+
+      @Override
+      public void markWrite() {}
+
+      @Override
+      public String toString() {
+        return String.valueOf(copy.get(DbProfile.DEFAULT));
+      }
+    };
+  }
+}
@@ -1,23 +1,48 @@
 
 package customers.dao;
 
-import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetProvider;
 import javax.print.attribute.standard.MediaSize.Other;
 import customers.entity.Customer;
+import customers.entity.LazyProjectList;
 import customers.entity.Project;
+import customers.entity.ProjectSummary;
+import customers.dao.ChangeEvent.Operation;
 import customers.exception.DbException;
+import customers.exception.InvalidInputException;
+import customers.exception.OverloadedException;
 import customers.dao.DbConnection;
 import provided.util.DaoBase;
+import provided.util.FixedPoint;
 
 /**
  * This class uses JDBC to perform CRUD operations on the project tables.
@@ -25,31 +50,1567 @@ import provided.util.DaoBase;
  */
 @SuppressWarnings("unused")
 public class CustomersDao extends DaoBase {
-  private static final String CUSTOMERS_TABLE = "customers";
-  private static final String PROJECTS_TABLE = "projects";
+  public static final String PARTITIONED = "customers.db.projects.partitioned";
 
+  /** The columns of the customer rows streamed by {@link #streamCustomers(RowHandler)}. */
+  public static final String CUSTOMER_COLUMNS = "customer_id, customer_name";
+
+  /** The columns of the project rows streamed by {@link #streamProjects(RowHandler)}. */
+  public static final String PROJECT_COLUMNS =
+      "customer_id, project_id, gross_price, system_size_kw, dealer_fees, adders, installed, install_year, install_month, rep_commission";
+
+  static final String CUSTOMERS_TABLE = "customers";
+  static final String PROJECTS_TABLE = "projects";
+  private static final String ARCHIVE_TABLE = "projects_archive";
+  private static final int IN_LIST_SIZE = 1000;
+
+  /*
+   * The fixed statements of the point reads and single-row writes, which warmUp(int) prepares ahead
+   * of traffic.
+   */
+  private static final String CUSTOMER_BY_ID_SQL =
+      "SELECT * FROM " + CUSTOMERS_TABLE + " WHERE customer_id = ?";
+  private static final String CUSTOMER_PAGE_SQL = "SELECT customer_id, customer_name FROM "
+      + CUSTOMERS_TABLE + " WHERE customer_id > ? ORDER BY customer_id LIMIT ?";
+  private static final String PROJECT_PAGE_SQL = "SELECT " + PROJECT_COLUMNS + " FROM "
+      + PROJECTS_TABLE + " WHERE customer_id > ? ORDER BY customer_id LIMIT ?";
+  private static final String PROJECT_KEY_RANGE_SQL =
+      "SELECT MIN(customer_id), MAX(customer_id) FROM " + PROJECTS_TABLE;
+  private static final String INSERT_CUSTOMER_SQL =
+      "INSERT INTO " + CUSTOMERS_TABLE + " (customer_name) VALUES (?)";
+  // @formatter:off
+  private static final String INSERT_PROJECT_SQL = ""
+      + "INSERT INTO " + PROJECTS_TABLE + " "
+      + "(project_id, gross_price, system_size_kw, dealer_fees, adders, installed, install_year, install_month, rep_commission) "
+      + "VALUES "
+      + "(?, ?, ?, ?, ?, ?, ?, ?, ?)";
+  // @formatter:on
+
+  /* True while the thread runs a job given to runAsBulk(), whose operations all run as BULK. */
+  private static final ThreadLocal<Boolean> BULK_JOB = ThreadLocal.withInitial(() -> false);
+
+  private final ConnectionSource connections;
+  private final ChangeFeed changeFeed;
+
+  /* Admits each operation by workload and enforces its timeout; see Workload for the classes. */
+  private final AdmissionController admission;
+
+  /*
+   * True for the DAO of one shard. Customer IDs are then allocated by the caller before the insert
+   * (so that the customer can be routed to its shard) instead of being generated by the table.
+   */
+  private final boolean callerAssignsIds;
+
+  /*
+   * True if the PROJECTS_TABLE is range-partitioned by install year (customers-schema-partitioned
+   * .sql). Period queries then also filter on the partitioning column so that MySQL prunes to the
+   * period's partitions, and deletes remove projects explicitly since there is no foreign key.
+   */
+  private final boolean partitioned;
+
+  /**
+   * Creates a DAO over the configured database that publishes its writes to the default
+   * {@link ChangeFeed}.
+   */
+  public CustomersDao() {
+    this(ChangeFeed.getDefault());
+  }
+
+  /**
+   * @param changeFeed The feed that committed writes are published to.
+   */
+  public CustomersDao(ChangeFeed changeFeed) {
+    this(ConnectionSource.PRIMARY, changeFeed);
+  }
+
+  /**
+   * @param connections Where the DAO gets its connections, for example one shard.
+   * @param changeFeed The feed that committed writes are published to.
+   */
+  public CustomersDao(ConnectionSource connections, ChangeFeed changeFeed) {
+    this(connections, changeFeed, false);
+  }
+
+  /**
+   * @param connections Where the DAO gets its connections.
+   * @param changeFeed The feed that committed writes are published to.
+   * @param callerAssignsIds True if inserted customers already carry their customer IDs, which
+   *        are then written as given rather than generated.
+   */
+  CustomersDao(ConnectionSource connections, ChangeFeed changeFeed, boolean callerAssignsIds) {
+    this.connections = connections;
+    this.changeFeed = changeFeed;
+    this.callerAssignsIds = callerAssignsIds;
+    this.admission = new AdmissionController(DbConnection.getConfig());
+    this.partitioned = Boolean.parseBoolean(DbConnection.getConfig().get(PARTITIONED, "false"));
+  }
+
+  public ChangeFeed getChangeFeed() {
+    return changeFeed;
+  }
+
+  public ConnectionSource getConnectionSource() {
+    return connections;
+  }
+
+  public AdmissionController getAdmissionController() {
+    return admission;
+  }
+
+  /**
+   * Cancels the running operations of a workload, for example the scans of a client that went away
+   * or everything at shutdown. Their statements are cancelled on the server and the calls fail with
+   * a {@link DbException}.
+   *
+   * @param workload The workload, or null for every workload.
+   * @return The number of operations cancelled.
+   */
+  public int cancelOperations(Workload workload) {
+    return admission.cancel(workload);
+  }
+
+  /*
+   * Opens the connection of one operation, admitted under its workload's limit and subject to its
+   * timeout. A read may be served by a replica.
+   */
+  private Connection readConnection(Workload workload, DbProfile profile) {
+    return admission.open(BULK_JOB.get() ? Workload.BULK : workload,
+        () -> connections.getReadConnection(profile));
+  }
+
+  private Connection writeConnection(Workload workload, DbProfile profile) {
+    return admission.open(BULK_JOB.get() ? Workload.BULK : workload,
+        () -> connections.getConnection(profile));
+  }
+
+  /*
+   * A primary connection for BULK work: admitted on its own, or under the admission of the job it
+   * belongs to.
+   */
+  private Connection bulkConnection(AdmissionController.Admission job) {
+    return Objects.isNull(job) ? writeConnection(Workload.BULK, DbProfile.BULK)
+        : admission.guard(Workload.BULK, () -> connections.getConnection(DbProfile.BULK));
+  }
+
+  /**
+   * Runs a job made of many ordinary DAO calls, such as moving customers between shards, with every
+   * operation it starts on this thread classed as {@link Workload#BULK}, so that no step is cut
+   * off by the time limit of its usual workload.
+   *
+   * @param <T> The job's result type.
+   * @param job The job.
+   * @return The job's result.
+   */
+  static <T> T runAsBulk(Supplier<T> job) {
+    boolean outer = BULK_JOB.get();
+    BULK_JOB.set(true);
+
+    try {
+      return job.get();
+    } finally {
+      BULK_JOB.set(outer);
+    }
+  }
+
+  /**
+   * This method fetches all customers in the database. Their projects load on first access; see
+   * {@link FetchPlan#LAZY_PROJECTS}.
+   * 
+   * @return list of customers from the CUSTOMERS_TABLE
+   */
+  public List<Customer> fetchAllCustomers() {
+    return fetchAllCustomers(FetchPlan.LAZY_PROJECTS);
+  }
+
+  /**
+   * This method fetches all customers in the database.
+   * 
+   * @param plan How the customers' projects are loaded.
+   * @return list of customers from the CUSTOMERS_TABLE
+   */
+  public List<Customer> fetchAllCustomers(FetchPlan plan) {
+    String sql = "SELECT * FROM " + CUSTOMERS_TABLE + " ORDER BY customer_id";
+
+    try (Connection conn = readConnection(Workload.SCAN, DbProfile.STREAMING)) {
+      startReadOnlyTransaction(conn);
+
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (ResultSet rs = stmt.executeQuery()) {
+          List<Customer> customers = extractAll(rs, Customer.class, stmt.getFetchSize());
+          attachProjects(conn, customers, plan);
+          return customers;
+        }
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      } finally {
+        endReadOnlyTransaction(conn);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * This method fetches all projects in the database
+   * 
+   * @return list of projects in the PROJECTS_TABLE
+   */
+  public List<Project> fetchAllProjects() {
+    String sql = "SELECT " + PROJECT_COLUMNS + " FROM " + PROJECTS_TABLE + " ORDER BY customer_id";
+  
+    try (Connection conn = readConnection(Workload.SCAN, DbProfile.STREAMING)) {
+      startReadOnlyTransaction(conn);
+  
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (ResultSet rs = stmt.executeQuery()) {
+          return extractAll(rs, Project.class, stmt.getFetchSize());
+        }
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      } finally {
+        endReadOnlyTransaction(conn);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * This method fetches all projects using a parallel scan. See
+   * {@link #scanProjects(int, boolean, Collector)}.
+   * 
+   * @param slices The number of customer_id ranges to fetch concurrently.
+   * @return list of projects in the PROJECTS_TABLE, ordered by customer_id
+   */
+  public List<Project> fetchAllProjects(int slices) {
+    return scanProjects(slices, true, Collectors.toList());
+  }
+
+  /**
+   * This method scans the PROJECTS_TABLE in parallel. The customer_id key range is split into the
+   * given number of slices and each slice is fetched on its own connection and thread. Each slice is
+   * accumulated into its own container, and the containers are combined either in key order or in
+   * the order the slices finish.
+   * 
+   * @param <A> The collector's accumulation type.
+   * @param <R> The result type.
+   * @param slices The number of customer_id ranges to fetch concurrently.
+   * @param ordered If true, the result is in customer_id order. If false, slices are combined as
+   *        they complete.
+   * @param collector The collector that receives the projects.
+   * @return The collector's result.
+   * @throws DbException Thrown if any slice fails. The slices still running are cancelled.
+   */
+  public <A, R> R scanProjects(int slices, boolean ordered, Collector<Project, A, R> collector) {
+    if (slices < 1) {
+      throw new DbException("The number of slices must be at least 1, not " + slices);
+    }
+
+    long[] bounds = fetchProjectKeyRange();
+
+    if (Objects.isNull(bounds)) {
+      return collector.finisher().apply(collector.supplier().get());
+    }
+
+    long min = bounds[0];
+    long end = bounds[1] + 1;
+    int count = (int) Math.max(1, Math.min(slices, end - min));
+    long width = (end - min + count - 1) / count;
+
+    /* The scan takes one SCAN slot however many slices it runs. */
+    AdmissionController.Admission scan = admission.admit(Workload.SCAN);
+    ExecutorService executor = Executors.newFixedThreadPool(count, runnable -> {
+      Thread thread = new Thread(runnable, "project-scan");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    try {
+      CompletionService<A> completion = new ExecutorCompletionService<>(executor);
+      List<Future<A>> futures = new ArrayList<>(count);
+
+      for (int slice = 0; slice < count; slice++) {
+        long low = min + slice * width;
+        long high = Math.min(end, low + width);
+
+        futures.add(completion.submit(() -> {
+          A container = collector.supplier().get();
+          fetchProjectSlice(low, high, container, collector.accumulator());
+          return container;
+        }));
+      }
+
+      A result = null;
+
+      for (int index = 0; index < count; index++) {
+        A next = ordered ? futures.get(index).get() : completion.take().get();
+        result = Objects.isNull(result) ? next : collector.combiner().apply(result, next);
+      }
+
+      return collector.finisher().apply(result);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof DbException ? (DbException) e.getCause()
+          : new DbException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DbException(e);
+    } finally {
+      /* Interrupting the slices that are still running cancels their statements. */
+      executor.shutdownNow();
+      scan.close();
+    }
+  }
+
+  /**
+   * Returns the lowest and highest customer_id in the PROJECTS_TABLE.
+   * 
+   * @return The range as {min, max}, or null if the table is empty.
+   */
+  private long[] fetchProjectKeyRange() {
+    String sql = PROJECT_KEY_RANGE_SQL;
+
+    try (Connection conn = readConnection(Workload.LOOKUP, DbProfile.OLTP)) {
+      startReadOnlyTransaction(conn);
+
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (ResultSet rs = stmt.executeQuery()) {
+          if (rs.next() && Objects.nonNull(rs.getObject(1))) {
+            return new long[] {rs.getLong(1), rs.getLong(2)};
+          }
+
+          return null;
+        }
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      } finally {
+        endReadOnlyTransaction(conn);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * Fetches the projects with low <= customer_id < high and hands each one to the accumulator.
+   */
+  private <A> void fetchProjectSlice(long low, long high, A container,
+      BiConsumer<A, ? super Project> accumulator) {
+    String sql = "SELECT " + PROJECT_COLUMNS + " FROM " + PROJECTS_TABLE
+        + " WHERE customer_id >= ? AND customer_id < ? ORDER BY customer_id";
+
+    try (Connection conn = admission.guard(Workload.SCAN,
+        () -> connections.getReadConnection(DbProfile.STREAMING))) {
+      startReadOnlyTransaction(conn);
+
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        stmt.setLong(1, low);
+        stmt.setLong(2, high);
+
+        try (ResultSet rs = stmt.executeQuery()) {
+          while (rs.next()) {
+            accumulator.accept(container, extract(rs, Project.class));
+          }
+        }
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      } finally {
+        endReadOnlyTransaction(conn);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * This method streams every row of the PROJECTS_TABLE to the handler in customer_id order. Rows
+   * are read from a server-side cursor, so memory use does not grow with the table.
+   * 
+   * @param handler Called once for each row. The columns are those of {@link #PROJECT_COLUMNS}.
+   */
+  public void streamProjects(RowHandler handler) {
+    streamQueries(Workload.BULK, Connection.TRANSACTION_READ_COMMITTED,
+        "SELECT " + PROJECT_COLUMNS + " FROM " + PROJECTS_TABLE + " ORDER BY customer_id", handler);
+  }
+
+  /**
+   * Fetches the top projects by a column, optionally only those installed in a given year. The
+   * ranking runs in the database as ORDER BY ... LIMIT; ties are broken by customer_id in the same
+   * direction, so the order is stable and the column's index can be read backwards for the largest
+   * values.
+   * 
+   * @param column The column to rank by.
+   * @param descending True for the largest values first.
+   * @param installYear If not null, only projects installed in this year are ranked.
+   * @param limit The number of projects returned, at least 1.
+   * @return The top projects, best first.
+   * @throws InvalidInputException Thrown if the limit is less than 1.
+   */
+  public List<Project> fetchTopProjects(RankColumn column, boolean descending, Integer installYear,
+      int limit) {
+    checkTopLimit(limit);
+    String sql = topProjectsSql(column, descending, Objects.nonNull(installYear));
+
+    try (Connection conn = readConnection(Workload.REPORT, DbProfile.OLTP)) {
+      startReadOnlyTransaction(conn);
+
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        int index = 1;
+
+        if (Objects.nonNull(installYear)) {
+          index = setYears(stmt, index, installYear, installYear);
+        }
+
+        setParameter(stmt, index, limit, Integer.class);
+
+        try (ResultSet rs = stmt.executeQuery()) {
+          return extractAll(rs, Project.class, limit);
+        }
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      } finally {
+        endReadOnlyTransaction(conn);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  static void checkTopLimit(int limit) {
+    if (limit < 1) {
+      throw new InvalidInputException(
+          "The number of top projects must be at least 1, not " + limit);
+    }
+  }
+
+  private String topProjectsSql(RankColumn column, boolean descending, boolean byYear) {
+    String direction = descending ? " DESC" : " ASC";
+
+    return "SELECT " + PROJECT_COLUMNS + " FROM " + PROJECTS_TABLE
+        + (byYear ? " WHERE " + installedBetween() : "") + " ORDER BY " + column.getColumn()
+        + direction + ", customer_id" + direction + " LIMIT ?";
+  }
+
+  /**
+   * Fetches the top projects by an order that SQL cannot compute, such as a derived metric. The
+   * projects are streamed and only the best {@code limit} of them are kept, in a bounded heap
+   * whose root is the worst project kept, so memory is proportional to the limit rather than the
+   * table.
+   * 
+   * @param order The ranking order: the first project in this order is the top one.
+   * @param installYear If not null, only projects installed in this year are ranked.
+   * @param limit The number of projects returned, at least 1.
+   * @return The top projects, best first.
+   * @throws InvalidInputException Thrown if the limit is less than 1.
+   */
+  public List<Project> fetchTopProjects(Comparator<Project> order, Integer installYear,
+      int limit) {
+    checkTopLimit(limit);
+    String sql = "SELECT " + PROJECT_COLUMNS + " FROM " + PROJECTS_TABLE
+        + (Objects.isNull(installYear) ? "" : " WHERE " + installedBetween());
+    Comparator<Project> ranking = order.thenComparing(Project::getCustomerId);
+    PriorityQueue<Project> heap = new PriorityQueue<>(limit + 1, ranking.reversed());
+
+    try (Connection conn = readConnection(Workload.REPORT, DbProfile.STREAMING)) {
+      startReadOnlyTransaction(conn);
+
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        if (Objects.nonNull(installYear)) {
+          setYears(stmt, 1, installYear, installYear);
+        }
+
+        try (ResultSet rs = stmt.executeQuery()) {
+          while (rs.next() && limit > 0) {
+            Project project = extract(rs, Project.class);
+
+            if (heap.size() < limit) {
+              heap.add(project);
+            } else if (ranking.compare(project, heap.peek()) < 0) {
+              heap.poll();
+              heap.add(project);
+            }
+          }
+        }
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      } finally {
+        endReadOnlyTransaction(conn);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+
+    List<Project> projects = new ArrayList<>(heap);
+    projects.sort(ranking);
+    return projects;
+  }
+
+  /**
+   * Fetches the projects installed in a range of years. On a partitioned table only those years'
+   * partitions are read.
+   * 
+   * @param fromYear The first install year.
+   * @param toYear The last install year.
+   * @return The projects, ordered by customer_id.
+   */
+  public List<Project> fetchProjectsInstalled(int fromYear, int toYear) {
+    String sql = "SELECT " + PROJECT_COLUMNS + " FROM " + PROJECTS_TABLE + " WHERE "
+        + installedBetween() + " ORDER BY customer_id";
+
+    return fetchProjectsWhere(sql, fromYear, toYear);
+  }
+
+  /**
+   * Fetches the projects that are not installed yet. On a partitioned table only the default
+   * partition is read.
+   * 
+   * @return The projects, ordered by customer_id.
+   */
+  public List<Project> fetchUninstalledProjects() {
+    String sql = "SELECT " + PROJECT_COLUMNS + " FROM " + PROJECTS_TABLE
+        + " WHERE installed = FALSE" + (partitioned ? " AND partition_year = 0" : "")
+        + " ORDER BY customer_id";
+
+    return fetchProjectsWhere(sql);
+  }
+
+  /*
+   * Runs a project query whose parameters are a range of years (see installedBetween()), or none.
+   */
+  private List<Project> fetchProjectsWhere(String sql, int... years) {
+    try (Connection conn = readConnection(Workload.SCAN, DbProfile.STREAMING)) {
+      startReadOnlyTransaction(conn);
+
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        if (years.length > 0) {
+          setYears(stmt, 1, years[0], years[1]);
+        }
+
+        try (ResultSet rs = stmt.executeQuery()) {
+          return extractAll(rs, Project.class, stmt.getFetchSize());
+        }
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      } finally {
+        endReadOnlyTransaction(conn);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /*
+   * The condition for projects installed from one year to another, whose parameters are set by
+   * setYears(). On a partitioned table it repeats the range on the partitioning column, which is
+   * what MySQL prunes partitions by.
+   */
+  private String installedBetween() {
+    return "installed = TRUE AND install_year BETWEEN ? AND ?"
+        + (partitioned ? " AND partition_year BETWEEN ? AND ?" : "");
+  }
+
+  private int setYears(PreparedStatement stmt, int index, int fromYear, int toYear)
+      throws SQLException {
+    int count = partitioned ? 2 : 1;
+
+    for (int range = 0; range < count; range++) {
+      setParameter(stmt, index++, fromYear, Integer.class);
+      setParameter(stmt, index++, toYear, Integer.class);
+    }
+
+    return index;
+  }
+
+  /**
+   * This method streams every row of the CUSTOMERS_TABLE to the handler in customer_id order.
+   * 
+   * @param handler Called once for each row (customer_id, customer_name).
+   */
+  public void streamCustomers(RowHandler handler) {
+    streamQueries(Workload.BULK, Connection.TRANSACTION_READ_COMMITTED,
+        "SELECT " + CUSTOMER_COLUMNS + " FROM " + CUSTOMERS_TABLE + " ORDER BY customer_id",
+        handler);
+  }
+
+  /**
+   * This method streams the CUSTOMERS_TABLE and then the PROJECTS_TABLE, both in customer_id order,
+   * from the same consistent snapshot of the database.
+   * 
+   * @param customerHandler Called once for each customer row (customer_id, customer_name).
+   * @param projectHandler Called once for each project row.
+   */
+  public void streamCustomersAndProjects(RowHandler customerHandler, RowHandler projectHandler) {
+    streamQueries(Workload.BULK, Connection.TRANSACTION_REPEATABLE_READ,
+        "SELECT " + CUSTOMER_COLUMNS + " FROM " + CUSTOMERS_TABLE + " ORDER BY customer_id",
+        customerHandler,
+        "SELECT " + PROJECT_COLUMNS + " FROM " + PROJECTS_TABLE + " ORDER BY customer_id",
+        projectHandler);
+  }
+
+  /**
+   * Runs each query in turn in one read-only transaction and passes its rows to the handler that
+   * follows it in the argument list. Exports stream as BULK; shorter whole-table reads, such as
+   * the ID streams behind the in-memory filters, as SCAN.
+   */
+  private void streamQueries(Workload workload, int isolation, Object... queriesAndHandlers) {
+    try (Connection conn = readConnection(workload, DbProfile.STREAMING)) {
+      startReadOnlyTransaction(conn, isolation);
+
+      try {
+        for (int index = 0; index < queriesAndHandlers.length; index += 2) {
+          RowHandler handler = (RowHandler) queriesAndHandlers[index + 1];
+
+          try (PreparedStatement stmt = conn.prepareStatement((String) queriesAndHandlers[index])) {
+            try (ResultSet rs = stmt.executeQuery()) {
+              while (rs.next()) {
+                handler.handle(rs);
+              }
+            }
+          }
+        }
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw e instanceof DbException ? (DbException) e : new DbException(e);
+      } finally {
+        endReadOnlyTransaction(conn);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * This method fetches one page of customers in customer_id order. Pages are addressed by the last
+   * customer_id of the previous page, so each page is an index range scan however deep it is.
+   * 
+   * @param afterCustomerId Only customers with a greater customer_id are returned. Use 0 for the
+   *        first page.
+   * @param limit The maximum number of customers returned.
+   * @return The page of customers.
+   */
+  public List<Customer> fetchCustomers(int afterCustomerId, int limit) {
+    return fetchCustomers(afterCustomerId, limit, FetchPlan.LAZY_PROJECTS);
+  }
+
+  /**
+   * This method fetches one page of customers in customer_id order. See
+   * {@link #fetchCustomers(int, int)}.
+   * 
+   * @param afterCustomerId Only customers with a greater customer_id are returned.
+   * @param limit The maximum number of customers returned.
+   * @param plan How the customers' projects are loaded.
+   * @return The page of customers.
+   */
+  public List<Customer> fetchCustomers(int afterCustomerId, int limit, FetchPlan plan) {
+    String sql = CUSTOMER_PAGE_SQL;
+
+    try (Connection conn = readConnection(Workload.LOOKUP, DbProfile.OLTP)) {
+      startReadOnlyTransaction(conn);
+
+      try {
+        List<Customer> page = readPage(conn, sql, afterCustomerId, limit, Customer.class);
+        attachProjects(conn, page, plan);
+        return page;
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      } finally {
+        endReadOnlyTransaction(conn);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * This method fetches one page of projects in customer_id order. See
+   * {@link #fetchCustomers(int, int)}.
+   * 
+   * @param afterCustomerId Only projects with a greater customer_id are returned.
+   * @param limit The maximum number of projects returned.
+   * @return The page of projects.
+   */
+  public List<Project> fetchProjects(int afterCustomerId, int limit) {
+    return fetchPage(PROJECT_PAGE_SQL, afterCustomerId, limit, Project.class);
+  }
+
+  private <T> List<T> fetchPage(String sql, int afterCustomerId, int limit, Class<T> classType) {
+    try (Connection conn = readConnection(Workload.LOOKUP, DbProfile.OLTP)) {
+      startReadOnlyTransaction(conn);
+
+      try {
+        return readPage(conn, sql, afterCustomerId, limit, classType);
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      } finally {
+        endReadOnlyTransaction(conn);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  private <T> List<T> readPage(Connection conn, String sql, int afterCustomerId, int limit,
+      Class<T> classType) throws SQLException {
+    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+      setParameter(stmt, 1, afterCustomerId, Integer.class);
+      setParameter(stmt, 2, limit, Integer.class);
+
+      try (ResultSet rs = stmt.executeQuery()) {
+        return extractAll(rs, classType, limit);
+      }
+    }
+  }
+
+  /**
+   * Streams every customer ID and every project ID, for building in-memory ID filters. Both queries
+   * read the same snapshot.
+   * 
+   * @param customerIdHandler Called for each row of customer_id.
+   * @param projectIdHandler Called for each row of project_id.
+   */
+  public void streamIds(RowHandler customerIdHandler, RowHandler projectIdHandler) {
+    streamQueries(Workload.SCAN, Connection.TRANSACTION_REPEATABLE_READ,
+        "SELECT customer_id FROM " + CUSTOMERS_TABLE, customerIdHandler,
+        "SELECT project_id FROM " + PROJECTS_TABLE, projectIdHandler);
+  }
+
+  /*
+   * Reads one page of a table's rows in customer_id order into memory, as part of a job admitted
+   * with admitJob(Workload). The sharded DAO streams its shards a page at a time this way, so that
+   * it only holds its placement lock while a page is read. The columns must include customer_id.
+   */
+  CachedRowSet fetchRowPage(String columns, String table, int afterCustomerId, int limit,
+      Workload workload) {
+    String sql = "SELECT " + columns + " FROM " + table
+        + " WHERE customer_id > ? ORDER BY customer_id LIMIT ?";
+
+    try (Connection conn =
+        admission.guard(workload, () -> connections.getReadConnection(DbProfile.OLTP))) {
+      startReadOnlyTransaction(conn);
+
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        setParameter(stmt, 1, afterCustomerId, Integer.class);
+        setParameter(stmt, 2, limit, Integer.class);
+
+        try (ResultSet rs = stmt.executeQuery()) {
+          CachedRowSet page = RowSetProvider.newFactory().createCachedRowSet();
+          page.populate(rs);
+          return page;
+        }
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      } finally {
+        endReadOnlyTransaction(conn);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * Returns which of the given project IDs are already used.
+   * 
+   * @param projectIds The project IDs to look up.
+   * @return The subset of the IDs that exist in the projects table.
+   */
+  public Set<Integer> fetchExistingProjectIds(Collection<Integer> projectIds) {
+    List<Integer> idList = new ArrayList<>(projectIds);
+
+    try (Connection conn = readConnection(Workload.LOOKUP, DbProfile.OLTP)) {
+      startReadOnlyTransaction(conn);
+
+      try {
+        return selectForIds(conn,
+            "SELECT project_id FROM " + PROJECTS_TABLE + " WHERE project_id IN ", idList);
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      } finally {
+        endReadOnlyTransaction(conn);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * This method totals the PROJECTS_TABLE in a single aggregate query.
+   * 
+   * @return The project counts and money totals.
+   */
+  public ProjectSummary fetchProjectSummary() {
+    return fetchSummary("");
+  }
+
+  /**
+   * This method totals the projects installed in a range of years. On a partitioned table only
+   * those years' partitions are read.
+   * 
+   * @param fromYear The first install year.
+   * @param toYear The last install year.
+   * @return The project counts and money totals.
+   */
+  public ProjectSummary fetchProjectSummary(int fromYear, int toYear) {
+    return fetchSummary(" WHERE " + installedBetween(), fromYear, toYear);
+  }
+
+  private ProjectSummary fetchSummary(String where, int... years) {
+    //@formatter:off
+    String sql = ""
+        + "SELECT COUNT(*) AS project_count, "
+        + "CAST(COALESCE(SUM(installed), 0) AS SIGNED) AS installed_count, "
+        + "COALESCE(SUM(gross_price), 0) AS total_gross_price, "
+        + "COALESCE(SUM(system_size_kw), 0) AS total_system_size_kw, "
+        + "COALESCE(SUM(dealer_fees), 0) AS total_dealer_fees, "
+        + "COALESCE(SUM(adders), 0) AS total_adders, "
+        + "COALESCE(SUM(rep_commission), 0) AS total_rep_commission "
+        + "FROM " + PROJECTS_TABLE + where;
+    //@formatter:on
+
+    try (Connection conn = readConnection(Workload.REPORT, DbProfile.DEFAULT)) {
+      startReadOnlyTransaction(conn);
+
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        if (years.length > 0) {
+          setYears(stmt, 1, years[0], years[1]);
+        }
+
+        try (ResultSet rs = stmt.executeQuery()) {
+          rs.next();
+          return extract(rs, ProjectSummary.class);
+        }
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      } finally {
+        endReadOnlyTransaction(conn);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * This method fetches a specific customer from the CUSTOMERS_TABLE by its customer_id number. The
+   * customer's projects load on first access; see {@link FetchPlan#LAZY_PROJECTS}.
+   * 
+   * @param Integer customerId
+   * @return customer object, if exists. If null, returns an optional.
+   */
+  public Optional<Customer> fetchCustomerById(Integer customerId) {
+    return fetchCustomerById(customerId, FetchPlan.LAZY_PROJECTS);
+  }
+
+  /**
+   * This method fetches a specific customer from the CUSTOMERS_TABLE by its customer_id number and
+   * loads its projects from the PROJECTS_TABLE as the fetch plan says. With
+   * {@link FetchPlan#CUSTOMERS_ONLY} this is a single query.
+   * 
+   * @param customerId The customer ID.
+   * @param plan How the customer's projects are loaded.
+   * @return customer object, if exists. If null, returns an optional.
+   */
+  public Optional<Customer> fetchCustomerById(Integer customerId, FetchPlan plan) {
+    String sql = CUSTOMER_BY_ID_SQL;
+
+    try (Connection conn = readConnection(Workload.LOOKUP, DbProfile.OLTP)) {
+      startReadOnlyTransaction(conn, Connection.TRANSACTION_REPEATABLE_READ);
+
+      try {
+        Customer customer = null;
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+          setParameter(stmt, 1, customerId, Integer.class);
+
+          try (ResultSet rs = stmt.executeQuery()) {
+            if (rs.next()) {
+              customer = extract(rs, Customer.class);
+            }
+          }
+        }
+
+        if (Objects.nonNull(customer)) {
+          attachProjects(conn, List.of(customer), plan);
+        }
+
+        return Optional.ofNullable(customer);
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      } finally {
+        endReadOnlyTransaction(conn);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * Fetches the customers with the given IDs, one IN-list query per {@link #IN_LIST_SIZE} IDs, all
+   * in one read-only transaction. IDs with no customer are skipped.
+   * 
+   * @param customerIds The customer IDs.
+   * @param plan How the customers' projects are loaded.
+   * @return The customers found, in customer_id order.
+   */
+  public List<Customer> fetchCustomersByIds(Collection<Integer> customerIds, FetchPlan plan) {
+    List<Integer> idList = new ArrayList<>(customerIds);
+    List<Customer> customers = new ArrayList<>(idList.size());
+
+    try (Connection conn = readConnection(Workload.LOOKUP, DbProfile.OLTP)) {
+      startReadOnlyTransaction(conn);
+
+      try {
+        for (int from = 0; from < idList.size(); from += IN_LIST_SIZE) {
+          List<Integer> chunk = idList.subList(from, Math.min(from + IN_LIST_SIZE, idList.size()));
+          String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+          String sql = "SELECT customer_id, customer_name FROM " + CUSTOMERS_TABLE
+              + " WHERE customer_id IN (" + placeholders + ")";
+
+          try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int index = 0; index < chunk.size(); index++) {
+              setParameter(stmt, index + 1, chunk.get(index), Integer.class);
+            }
+
+            try (ResultSet rs = stmt.executeQuery()) {
+              while (rs.next()) {
+                customers.add(extract(rs, Customer.class));
+              }
+            }
+          }
+        }
+
+        customers.sort(Comparator.comparing(Customer::getCustomerId));
+        attachProjects(conn, customers, plan);
+        return customers;
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      } finally {
+        endReadOnlyTransaction(conn);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+
+
+  /*
+   * Gives the customers their projects as the plan says. Lazy lists share one batch, so the first
+   * list touched loads the projects of every customer in the call.
+   */
+  private void attachProjects(Connection conn, List<Customer> customers, FetchPlan plan)
+      throws SQLException {
+    if (plan == FetchPlan.CUSTOMERS_ONLY || customers.isEmpty()) {
+      return;
+    }
+
+    int[] ids = customerIds(customers);
+
+    if (plan == FetchPlan.WITH_PROJECTS) {
+      Map<Integer, List<Project>> projectsByCustomer = fetchProjectsByCustomer(conn, ids);
+
+      for (Customer customer : customers) {
+        List<Project> projects = projectsByCustomer.get(customer.getCustomerId());
+
+        if (Objects.nonNull(projects)) {
+          customer.setProjects(projects);
+        }
+      }
+
+      return;
+    }
+
+    ProjectBatch batch = new ProjectBatch(ids);
+
+    for (Customer customer : customers) {
+      int customerId = customer.getCustomerId();
+      customer.setProjects(new LazyProjectList(() -> batch.projectsOf(customerId)));
+    }
+  }
+
+  private static String projectsByCustomerSql(int customerCount) {
+    return "SELECT " + PROJECT_COLUMNS + " FROM " + PROJECTS_TABLE + " WHERE customer_id IN ("
+        + String.join(", ", Collections.nCopies(customerCount, "?")) + ") ORDER BY customer_id";
+  }
+
+  /*
+   * Reads the projects of the given customers, one IN-list query per IN_LIST_SIZE customers,
+   * grouped by customer ID. The rows come in customer_id order, so each customer's projects are a
+   * run of rows and get a list of exactly that size.
+   */
+  private Map<Integer, List<Project>> fetchProjectsByCustomer(Connection conn, int[] customerIds)
+      throws SQLException {
+    Map<Integer, List<Project>> projectsByCustomer = new HashMap<>(customerIds.length * 4 / 3 + 1);
+
+    for (int from = 0; from < customerIds.length; from += IN_LIST_SIZE) {
+      int to = Math.min(from + IN_LIST_SIZE, customerIds.length);
+
+      try (PreparedStatement stmt = conn.prepareStatement(projectsByCustomerSql(to - from))) {
+        for (int index = from; index < to; index++) {
+          setParameter(stmt, index - from + 1, customerIds[index], Integer.class);
+        }
+
+        try (ResultSet rs = stmt.executeQuery()) {
+          List<Project> rows = extractAll(rs, Project.class, to - from);
+
+          for (int start = 0, end; start < rows.size(); start = end) {
+            Integer customerId = rows.get(start).getCustomerId();
+
+            for (end = start + 1; end < rows.size(); end++) {
+              if (!customerId.equals(rows.get(end).getCustomerId())) {
+                break;
+              }
+            }
+
+            projectsByCustomer.put(customerId, new ArrayList<>(rows.subList(start, end)));
+          }
+        }
+      }
+    }
+
+    return projectsByCustomer;
+  }
+
+  /*
+   * The projects of the customers returned by one lazy fetch. The first list to load reads them
+   * all in a new read-only transaction; each later list takes its share from the batch.
+   */
+  private class ProjectBatch {
+    private final int[] customerIds;
+    private Map<Integer, List<Project>> projectsByCustomer;
+
+    ProjectBatch(int[] customerIds) {
+      this.customerIds = customerIds;
+    }
+
+    synchronized List<Project> projectsOf(int customerId) {
+      if (Objects.isNull(projectsByCustomer)) {
+        projectsByCustomer = load();
+      }
+
+      List<Project> projects = projectsByCustomer.remove(customerId);
+      return Objects.isNull(projects) ? Customer.noProjects() : projects;
+    }
+
+    private Map<Integer, List<Project>> load() {
+      try (Connection conn = readConnection(Workload.SCAN, DbProfile.OLTP)) {
+        startReadOnlyTransaction(conn);
+
+        try {
+          return fetchProjectsByCustomer(conn, customerIds);
+        } catch (Exception e) {
+          rollbackTransaction(conn);
+          throw new DbException(e);
+        } finally {
+          endReadOnlyTransaction(conn);
+        }
+      } catch (SQLException e) {
+        throw new DbException(e);
+      }
+    }
+  }
+
+    /**
+   * Inserts a customer in the CUSTOMERS_TABLE
+   * 
+   * @param customer. The customer object to inserted.
+   * @return The Customer object with the primary key.
+   * @throws DbException Thrown if an error occurs inserting the row.
+   */
+  public Customer insertCustomer(Customer customer) {
+  
+    if (callerAssignsIds) {
+      insertCustomers(List.of(customer));
+      return customer;
+    }
+
+    String sql = INSERT_CUSTOMER_SQL;
+  
+  
+    try (Connection conn = writeConnection(Workload.WRITE, DbProfile.OLTP)) {
+      startTransaction(conn);
+  
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        setParameter(stmt, 1, customer.getCustomerName(), String.class);
+  
+  
+        stmt.executeUpdate();
+  
+        Integer customerId = getLastInsertId(conn, CUSTOMERS_TABLE);
+        commitTransaction(conn);
+        connections.markWrite();
+        changeFeed.publish(CUSTOMERS_TABLE, Operation.INSERT, "customer_id", customerId);
+  
+        customer.setCustomerId(customerId);
+        return customer;
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+
+  /**
+   * Inserts a project in the PROJECTS_TABLE
+   * 
+   * @param project. The project object to inserted.
+   * @return The project object with the primary key.
+   * @throws DbException Thrown if an error occurs inserting the row.
+   */
+  
+  public Project insertProject(Project project) {
+    if (callerAssignsIds) {
+      insertProjects(List.of(project));
+      return project;
+    }
+
+    String sql = INSERT_PROJECT_SQL;
+
+    try (Connection conn = writeConnection(Workload.WRITE, DbProfile.OLTP)) {
+      startTransaction(conn);
+
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        setProjectParameters(stmt, 1, project);
+
+        stmt.executeUpdate();
+
+        Integer customerId = getLastInsertId(conn, PROJECTS_TABLE);
+        commitTransaction(conn);
+        connections.markWrite();
+        changeFeed.publish(PROJECTS_TABLE, Operation.INSERT, "customer_id", customerId);
+
+        project.setCustomerId(customerId);
+        return project;
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * Inserts customers with their existing customer IDs in one batched transaction. This is used to
+   * bulk-load rows that were exported from another database.
+   * 
+   * @param customers The customers to insert. Each must have a customer ID.
+   * @throws DbException Thrown if an error occurs inserting the rows. No rows are inserted.
+   */
+  public void insertCustomers(Collection<Customer> customers) {
+    String sql = "INSERT INTO " + CUSTOMERS_TABLE + " (customer_id, customer_name) VALUES (?, ?)";
+
+    try (Connection conn = writeConnection(Workload.WRITE, DbProfile.BULK)) {
+      startTransaction(conn);
+
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        for (Customer customer : customers) {
+          setParameter(stmt, 1, customer.getCustomerId(), Integer.class);
+          setParameter(stmt, 2, customer.getCustomerName(), String.class);
+          stmt.addBatch();
+        }
+
+        stmt.executeBatch();
+        commitTransaction(conn);
+        connections.markWrite();
+        changeFeed.publish(CUSTOMERS_TABLE, Operation.INSERT, "customer_id",
+            customerIds(customers));
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * Inserts projects with their existing customer IDs in one batched transaction.
+   * 
+   * @param projects The projects to insert. Each must have a customer ID.
+   * @throws DbException Thrown if an error occurs inserting the rows. No rows are inserted.
+   */
+  public void insertProjects(Collection<Project> projects) {
+    // @formatter:off
+    String sql = ""
+        + "INSERT INTO " + PROJECTS_TABLE + " (" + PROJECT_COLUMNS + ") "
+        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    // @formatter:on
+
+    try (Connection conn = writeConnection(Workload.WRITE, DbProfile.BULK)) {
+      startTransaction(conn);
+
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        checkOneProjectPerCustomer(conn, projects);
+
+        for (Project project : projects) {
+          setParameter(stmt, 1, project.getCustomerId(), Integer.class);
+          setProjectParameters(stmt, 2, project);
+          stmt.addBatch();
+        }
+
+        stmt.executeBatch();
+        commitTransaction(conn);
+        connections.markWrite();
+        changeFeed.publish(PROJECTS_TABLE, Operation.INSERT, "customer_id",
+            projectCustomerIds(projects));
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * Inserts new customers together with their projects in one transaction. The customers are
+   * inserted as one batch; the generated customer IDs are then copied to each customer's projects,
+   * which are inserted as a second batch.
+   * 
+   * @param customers The new customers, each with its projects in {@link Customer#getProjects()}.
+   * @return The customers with their customer IDs set.
+   * @throws DbException Thrown if an error occurs. No rows are inserted.
+   */
+  public List<Customer> insertCustomersWithProjects(List<Customer> customers) {
+    try (Connection conn = writeConnection(Workload.WRITE, DbProfile.BULK)) {
+      startTransaction(conn);
+
+      try {
+        insertCustomerRows(conn, customers);
+        insertProjectRows(conn, customerProjects(customers));
+        commitTransaction(conn);
+        connections.markWrite();
+        changeFeed.publish(CUSTOMERS_TABLE, Operation.INSERT, "customer_id",
+            customerIds(customers));
+        changeFeed.publish(PROJECTS_TABLE, Operation.INSERT, "customer_id",
+            projectCustomerIds(customerProjects(customers)));
+        return customers;
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * Writes a unit of work in one transaction, in an order the foreign key allows: new customers
+   * (which receives their generated IDs), changed customer names, new projects (the new customers'
+   * projects and any others), then changed projects. Each step is one batched statement, so the
+   * whole flush is a handful of round trips however many entities it carries.
+   * 
+   * @param newCustomers Customers to insert, each with its new projects.
+   * @param newProjects Further projects to insert. Each must have a customer ID.
+   * @param changedCustomers Customers whose names are updated.
+   * @param changedProjects Projects whose columns are updated, by customer ID.
+   * @throws DbException Thrown if an error occurs. Nothing is written.
+   */
+  public void writeChanges(List<Customer> newCustomers, List<Project> newProjects,
+      List<Customer> changedCustomers, List<Project> changedProjects) {
+    String customerSql =
+        "UPDATE " + CUSTOMERS_TABLE + " SET customer_name = ? WHERE customer_id = ?";
+    // @formatter:off
+    String projectSql = ""
+        + "UPDATE " + PROJECTS_TABLE + " SET "
+        + "project_id = ?, gross_price = ?, system_size_kw = ?, dealer_fees = ?, adders = ?, "
+        + "installed = ?, install_year = ?, install_month = ?, rep_commission = ? "
+        + "WHERE customer_id = ?";
+    // @formatter:on
+
+    try (Connection conn = writeConnection(Workload.WRITE, DbProfile.BULK)) {
+      startTransaction(conn);
+
+      try {
+        insertCustomerRows(conn, newCustomers);
+
+        if (!changedCustomers.isEmpty()) {
+          try (PreparedStatement stmt = conn.prepareStatement(customerSql)) {
+            for (Customer customer : changedCustomers) {
+              setParameter(stmt, 1, customer.getCustomerName(), String.class);
+              setParameter(stmt, 2, customer.getCustomerId(), Integer.class);
+              stmt.addBatch();
+            }
+
+            stmt.executeBatch();
+          }
+        }
+
+        List<Project> insertedProjects = customerProjects(newCustomers);
+        insertedProjects.addAll(newProjects);
+        insertProjectRows(conn, insertedProjects);
+
+        if (!changedProjects.isEmpty()) {
+          try (PreparedStatement stmt = conn.prepareStatement(projectSql)) {
+            for (Project project : changedProjects) {
+              setProjectParameters(stmt, 1, project);
+              setParameter(stmt, 10, project.getCustomerId(), Integer.class);
+              stmt.addBatch();
+            }
+
+            stmt.executeBatch();
+          }
+        }
+
+        commitTransaction(conn);
+        connections.markWrite();
+
+        if (!newCustomers.isEmpty()) {
+          changeFeed.publish(CUSTOMERS_TABLE, Operation.INSERT, "customer_id",
+              customerIds(newCustomers));
+        }
+
+        if (!changedCustomers.isEmpty()) {
+          changeFeed.publish(CUSTOMERS_TABLE, Operation.UPDATE, "customer_id",
+              customerIds(changedCustomers));
+        }
+
+        if (!insertedProjects.isEmpty()) {
+          changeFeed.publish(PROJECTS_TABLE, Operation.INSERT, "customer_id",
+              projectCustomerIds(insertedProjects));
+        }
+
+        if (!changedProjects.isEmpty()) {
+          changeFeed.publish(PROJECTS_TABLE, Operation.UPDATE, "customer_id",
+              projectCustomerIds(changedProjects));
+        }
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /*
+   * Inserts the customers in one batch and sets their generated IDs, both on the customers and on
+   * their projects.
+   */
+  private void insertCustomerRows(Connection conn, List<Customer> customers) throws SQLException {
+    if (customers.isEmpty()) {
+      return;
+    }
+
+    if (callerAssignsIds) {
+      String sql =
+          "INSERT INTO " + CUSTOMERS_TABLE + " (customer_id, customer_name) VALUES (?, ?)";
+
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        for (Customer customer : customers) {
+          setParameter(stmt, 1, customer.getCustomerId(), Integer.class);
+          setParameter(stmt, 2, customer.getCustomerName(), String.class);
+          stmt.addBatch();
+
+          for (Project project : customer.getProjects()) {
+            project.setCustomerId(customer.getCustomerId());
+          }
+        }
+
+        stmt.executeBatch();
+      }
+
+      return;
+    }
+
+    String sql = "INSERT INTO " + CUSTOMERS_TABLE + " (customer_name) VALUES (?)";
+
+    try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+      for (Customer customer : customers) {
+        setParameter(stmt, 1, customer.getCustomerName(), String.class);
+        stmt.addBatch();
+      }
+
+      stmt.executeBatch();
+
+      try (ResultSet keys = stmt.getGeneratedKeys()) {
+        for (Customer customer : customers) {
+          if (!keys.next()) {
+            throw new SQLException("Missing generated key for " + customer.getCustomerName());
+          }
+
+          customer.setCustomerId(keys.getInt(1));
+
+          for (Project project : customer.getProjects()) {
+            project.setCustomerId(customer.getCustomerId());
+          }
+        }
+      }
+    }
+  }
+
+  private void insertProjectRows(Connection conn, List<Project> projects) throws SQLException {
+    if (projects.isEmpty()) {
+      return;
+    }
+
+    checkOneProjectPerCustomer(conn, projects);
+
+    // @formatter:off
+    String sql = ""
+        + "INSERT INTO " + PROJECTS_TABLE + " (" + PROJECT_COLUMNS + ") "
+        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    // @formatter:on
+
+    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+      for (Project project : projects) {
+        setParameter(stmt, 1, project.getCustomerId(), Integer.class);
+        setProjectParameters(stmt, 2, project);
+        stmt.addBatch();
+      }
+
+      stmt.executeBatch();
+    }
+  }
+
+  /*
+   * The partitioned table's primary key includes partition_year, so it does not stop a customer
+   * from having two projects in different partitions. Before projects are inserted on it, a locking
+   * read takes the customers' key ranges in every partition, so a concurrent insert for the same
+   * customer waits for this transaction, and the insert fails as it would on the plain table if a
+   * customer appears twice in the batch or already has a project.
+   */
+  private void checkOneProjectPerCustomer(Connection conn, Collection<Project> projects)
+      throws SQLException {
+    if (!partitioned) {
+      return;
+    }
+
+    Set<Integer> customerIds = new HashSet<>();
+
+    for (Project project : projects) {
+      if (!customerIds.add(project.getCustomerId())) {
+        throw new SQLIntegrityConstraintViolationException(
+            "Customer ID " + project.getCustomerId() + " has more than one project");
+      }
+    }
+
+    Set<Integer> existing = selectForIds(conn,
+        "SELECT customer_id FROM " + PROJECTS_TABLE + " WHERE customer_id IN ",
+        new ArrayList<>(customerIds), " FOR UPDATE");
+
+    if (!existing.isEmpty()) {
+      throw new SQLIntegrityConstraintViolationException(
+          "Customer ID(s) " + existing + " already have a project");
+    }
+  }
+
+  private static List<Project> customerProjects(List<Customer> customers) {
+    List<Project> projects = new ArrayList<>();
+    customers.forEach(customer -> projects.addAll(customer.getProjects()));
+    return projects;
+  }
+
+  /**
+   * Inserts projects, or updates them in place when a project with the same customer ID already
+   * exists (customer_id is the projects table's primary key). All rows go in one batched
+   * transaction, which the BULK profile's driver settings rewrite into multi-row statements.
+   * 
+   * @param projects The projects to insert or update. Each must have a customer ID, and a project ID
+   *        that no other customer's project has (project_id is unique too).
+   * @throws DbException Thrown if an error occurs. No rows are changed.
+   */
+  public void upsertProjects(Collection<Project> projects) {
+    // @formatter:off
+    String sql = ""
+        + "INSERT INTO " + PROJECTS_TABLE + " (" + PROJECT_COLUMNS + ") "
+        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) "
+        + "ON DUPLICATE KEY UPDATE "
+        + "project_id = VALUES(project_id), "
+        + "gross_price = VALUES(gross_price), "
+        + "system_size_kw = VALUES(system_size_kw), "
+        + "dealer_fees = VALUES(dealer_fees), "
+        + "adders = VALUES(adders), "
+        + "installed = VALUES(installed), "
+        + "install_year = VALUES(install_year), "
+        + "install_month = VALUES(install_month), "
+        + "rep_commission = VALUES(rep_commission)";
+    // @formatter:on
+
+    try (Connection conn = writeConnection(Workload.WRITE, DbProfile.BULK)) {
+      startTransaction(conn);
+
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        if (partitioned) {
+          /* The key includes the install year, so a row whose year changes would not collide. */
+          executeForIds(conn, "DELETE FROM " + PROJECTS_TABLE + " WHERE customer_id IN ",
+              projects.stream().map(Project::getCustomerId).collect(Collectors.toList()));
+        }
+
+        for (Project project : projects) {
+          setParameter(stmt, 1, project.getCustomerId(), Integer.class);
+          setProjectParameters(stmt, 2, project);
+          stmt.addBatch();
+        }
+
+        stmt.executeBatch();
+        commitTransaction(conn);
+        connections.markWrite();
+        changeFeed.publish(PROJECTS_TABLE, Operation.UPSERT, "customer_id",
+            projectCustomerIds(projects));
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
 
   /**
-   * This method fetches all customers in the database.
+   * Marks projects as installed in the given year and month. The project IDs are sent in IN lists
+   * of up to {@link #IN_LIST_SIZE} values, all in one transaction. If any row changed, the same
+   * transaction reads the projects' customer IDs, and the change is published keyed by them like
+   * every other change to the projects table.
    * 
-   * @return list of customers from the CUSTOMERS_TABLE
+   * @param projectIds The project IDs to mark.
+   * @param year The install year.
+   * @param month The install month.
+   * @return The number of project rows updated.
+   * @throws DbException Thrown if an error occurs. No rows are changed.
    */
-  public List<Customer> fetchAllCustomers() {
-    String sql = "SELECT * FROM " + CUSTOMERS_TABLE + " ORDER BY customer_id";
+  public int markInstalled(Collection<Integer> projectIds, int year, int month) {
+    if (projectIds.isEmpty()) {
+      return 0;
+    }
 
-    try (Connection conn = DbConnection.getConnection()) {
-      startTransaction(conn);
+    // @formatter:off
+    String sql = "UPDATE " + PROJECTS_TABLE
+        + " SET installed = TRUE, install_year = ?, install_month = ? WHERE project_id IN ";
+    String customerSql = "SELECT customer_id FROM " + PROJECTS_TABLE + " WHERE project_id IN ";
+    // @formatter:on
 
-      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-        try (ResultSet rs = stmt.executeQuery()) {
-          List<Customer> customers = new LinkedList<>();
+    List<Integer> idList = new ArrayList<>(projectIds);
+    Set<Integer> customerIds = Set.of();
+    int updated;
 
-          while (rs.next()) {
-            customers.add(extract(rs, Customer.class));
-          }
+    try (Connection conn = writeConnection(Workload.WRITE, DbProfile.BULK)) {
+      startTransaction(conn);
 
-          return customers;
+      try {
+        updated = executeForIds(conn, sql, idList, year, month);
+
+        if (updated > 0) {
+          customerIds = selectForIds(conn, customerSql, idList);
         }
+
+        commitTransaction(conn);
+        connections.markWrite();
       } catch (Exception e) {
         rollbackTransaction(conn);
         throw new DbException(e);
@@ -57,31 +1618,106 @@ public class CustomersDao extends DaoBase {
     } catch (SQLException e) {
       throw new DbException(e);
     }
+
+    if (updated > 0) {
+      changeFeed.publish(PROJECTS_TABLE, Operation.UPDATE, "customer_id", toArray(customerIds));
+    }
+
+    return updated;
   }
 
   /**
-   * This method fetches all projects in the database
+   * Deletes customers. Their projects are removed by the foreign key's ON DELETE CASCADE, or on a
+   * partitioned table, which cannot have a foreign key, by a delete in the same transaction.
+   * Archived projects are kept. Delete events are published only for the customers and projects
+   * that existed, so deleting IDs that are not there changes nothing and publishes nothing.
    * 
-   * @return list of projects in the PROJECTS_TABLE
+   * @param customerIds The customer IDs to delete.
+   * @return The number of customer rows deleted.
+   * @throws DbException Thrown if an error occurs. No rows are deleted.
    */
-  public List<Project> fetchAllProjects() {
-    String sql =
-        "SELECT customer_id, project_id, gross_price, system_size_kw, dealer_fees, adders, installed, install_year, install_month, rep_commission FROM "
-            + PROJECTS_TABLE + " ORDER BY customer_id";
-  
-    try (Connection conn = DbConnection.getConnection()) {
+  public int deleteCustomers(Collection<Integer> customerIds) {
+    if (customerIds.isEmpty()) {
+      return 0;
+    }
+
+    String sql = "DELETE FROM " + CUSTOMERS_TABLE + " WHERE customer_id IN ";
+    String projectSql = "DELETE FROM " + PROJECTS_TABLE + " WHERE customer_id IN ";
+    List<Integer> idList = new ArrayList<>(customerIds);
+
+    try (Connection conn = writeConnection(Workload.WRITE, DbProfile.BULK)) {
       startTransaction(conn);
-  
-      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-        try (ResultSet rs = stmt.executeQuery()) {
-          List<Project> projects = new LinkedList<>();
-  
-          while (rs.next()) {
-            projects.add(extract(rs, Project.class));
-          }
-  
-          return projects;
+
+      try {
+        /* The locking reads keep the rows found here until the deletes commit. */
+        Set<Integer> customers = selectForIds(conn,
+            "SELECT customer_id FROM " + CUSTOMERS_TABLE + " WHERE customer_id IN ", idList,
+            " FOR UPDATE");
+        Set<Integer> projects = selectForIds(conn,
+            "SELECT customer_id FROM " + PROJECTS_TABLE + " WHERE customer_id IN ", idList,
+            " FOR UPDATE");
+
+        if (partitioned) {
+          executeForIds(conn, projectSql, idList);
+        }
+
+        int deleted = executeForIds(conn, sql, idList);
+        commitTransaction(conn);
+
+        if (!customers.isEmpty() || !projects.isEmpty()) {
+          connections.markWrite();
+        }
+
+        if (!customers.isEmpty()) {
+          changeFeed.publish(CUSTOMERS_TABLE, Operation.DELETE, "customer_id", toArray(customers));
+        }
+
+        if (!projects.isEmpty()) {
+          changeFeed.publish(PROJECTS_TABLE, Operation.DELETE, "customer_id", toArray(projects));
+        }
+
+        return deleted;
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /*
+   * Runs sql once per chunk of IDs, appending a placeholder list "(?, ?, ...)" sized to the chunk.
+   * The leading parameters are bound before the IDs. Every chunk runs in the same transaction.
+   */
+  private int executeForIds(String sql, Collection<Integer> ids, Object... leading) {
+    return executeForIds(List.of(sql), ids, leading);
+  }
+
+  /*
+   * Runs each statement for the IDs as above, all in one transaction, and returns the number of
+   * rows changed by the last one.
+   */
+  private int executeForIds(List<String> statements, Collection<Integer> ids,
+      Object... leading) {
+    if (ids.isEmpty()) {
+      return 0;
+    }
+
+    List<Integer> idList = new ArrayList<>(ids);
+    int updated = 0;
+
+    try (Connection conn = writeConnection(Workload.WRITE, DbProfile.BULK)) {
+      startTransaction(conn);
+
+      try {
+        for (String sql : statements) {
+          updated = executeForIds(conn, sql, idList, leading);
         }
+
+        commitTransaction(conn);
+        connections.markWrite();
+        return updated;
       } catch (Exception e) {
         rollbackTransaction(conn);
         throw new DbException(e);
@@ -91,38 +1727,127 @@ public class CustomersDao extends DaoBase {
     }
   }
 
+  /*
+   * Runs a query once per chunk of IDs, as above, and returns the values of its first column.
+   */
+  private Set<Integer> selectForIds(Connection conn, String sql, List<Integer> idList)
+      throws SQLException {
+    return selectForIds(conn, sql, idList, "");
+  }
+
+  private Set<Integer> selectForIds(Connection conn, String sql, List<Integer> idList,
+      String suffix) throws SQLException {
+    Set<Integer> values = new HashSet<>();
+
+    for (int from = 0; from < idList.size(); from += IN_LIST_SIZE) {
+      List<Integer> chunk = idList.subList(from, Math.min(from + IN_LIST_SIZE, idList.size()));
+      String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+
+      try (PreparedStatement stmt =
+          conn.prepareStatement(sql + "(" + placeholders + ")" + suffix)) {
+        for (int index = 0; index < chunk.size(); index++) {
+          setParameter(stmt, index + 1, chunk.get(index), Integer.class);
+        }
+
+        try (ResultSet rs = stmt.executeQuery()) {
+          while (rs.next()) {
+            values.add(rs.getInt(1));
+          }
+        }
+      }
+    }
+
+    return values;
+  }
+
+  private int executeForIds(Connection conn, String sql, List<Integer> idList, Object... leading)
+      throws SQLException {
+    int updated = 0;
+
+    for (int from = 0; from < idList.size(); from += IN_LIST_SIZE) {
+      List<Integer> chunk = idList.subList(from, Math.min(from + IN_LIST_SIZE, idList.size()));
+      String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+
+      try (PreparedStatement stmt = conn.prepareStatement(sql + "(" + placeholders + ")")) {
+        int index = 1;
+
+        for (Object value : leading) {
+          setParameter(stmt, index++, value, value.getClass());
+        }
+
+        for (Integer id : chunk) {
+          setParameter(stmt, index++, id, Integer.class);
+        }
+
+        updated += stmt.executeUpdate();
+      }
+    }
+
+    return updated;
+  }
+
   /**
-   * This method fetches a specific customer from the CUSTOMERS_TABLE by its customer_id number and
-   * calls the method fetchCustomerProjects for that customer's respective project(s) from the
-   * PROJECTS_TABLE.
+   * Moves installed projects from before a given year to the archive table, in batches that each
+   * commit in their own transaction, so the projects table is never locked for long and a job
+   * that stops part way keeps what it moved. On a partitioned table each batch reads only the
+   * archived years' partitions.
    * 
-   * @param Integer customerId
-   * @return customer object, if exists. If null, returns an optional.
+   * @param beforeYear Projects installed before this year are archived.
+   * @param batchSize The number of projects moved per transaction.
+   * @return The number of projects archived.
+   * @throws DbException Thrown if a batch fails. Earlier batches stay archived.
    */
-  public Optional<Customer> fetchCustomerById(Integer customerId) {
-    String sql = "SELECT * FROM " + CUSTOMERS_TABLE + " WHERE customer_id = ?";
+  public int archiveProjects(int beforeYear, int batchSize) {
+    int archived = 0;
+    int moved;
+
+    do {
+      moved = archiveBatch(beforeYear, Math.max(1, batchSize));
+      archived += moved;
+    } while (moved == Math.max(1, batchSize));
+
+    return archived;
+  }
+
+  private int archiveBatch(int beforeYear, int batchSize) {
+    String select = "SELECT customer_id FROM " + PROJECTS_TABLE + " WHERE " + installedBetween()
+        + " ORDER BY customer_id LIMIT ? FOR UPDATE";
+    String copy = "INSERT INTO " + ARCHIVE_TABLE + " (" + PROJECT_COLUMNS + ") SELECT "
+        + PROJECT_COLUMNS + " FROM " + PROJECTS_TABLE + " WHERE customer_id IN ";
+    String delete = "DELETE FROM " + PROJECTS_TABLE + " WHERE customer_id IN ";
 
-    try (Connection conn = DbConnection.getConnection()) {
+    try (Connection conn = writeConnection(Workload.BULK, DbProfile.BULK)) {
       startTransaction(conn);
 
       try {
-        Customer customer = null;
+        List<Integer> customerIds = new ArrayList<>(batchSize);
 
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-          setParameter(stmt, 1, customerId, Integer.class);
+        try (PreparedStatement stmt = conn.prepareStatement(select)) {
+          /* Year 0 is the partition of projects without an install year. */
+          int index = setYears(stmt, 1, 1, beforeYear - 1);
+          setParameter(stmt, index, batchSize, Integer.class);
 
           try (ResultSet rs = stmt.executeQuery()) {
-            if (rs.next()) {
-              customer = extract(rs, Customer.class);
+            while (rs.next()) {
+              customerIds.add(rs.getInt(1));
             }
           }
         }
 
-        if (Objects.nonNull(customer)) {
-          customer.getProjects().addAll(fetchCustomerProjects(conn, customerId));
+        if (!customerIds.isEmpty()) {
+          executeForIds(conn, copy, customerIds);
+          executeForIds(conn, delete, customerIds);
         }
 
-        return Optional.ofNullable(customer);
+        commitTransaction(conn);
+
+        if (!customerIds.isEmpty()) {
+          connections.markWrite();
+          changeFeed.publish(PROJECTS_TABLE, Operation.DELETE, "customer_id",
+              toArray(customerIds));
+        }
+
+        return customerIds.size();
       } catch (Exception e) {
         rollbackTransaction(conn);
         throw new DbException(e);
@@ -132,132 +1857,213 @@ public class CustomersDao extends DaoBase {
     }
   }
 
+  /**
+   * Reads the IDs of the chunks recorded in the seed progress table. The read goes to the primary,
+   * since a lagging replica could miss committed chunks and have them loaded twice.
+   * 
+   * @param progressTable The progress table's name.
+   * @return The recorded chunk IDs, or an empty set if the table does not exist.
+   */
+  public Set<String> fetchSeedProgress(String progressTable) {
+    String sql = "SELECT chunk_id FROM " + progressTable;
+    Set<String> chunkIds = new HashSet<>();
+
+    try (Connection conn = writeConnection(Workload.LOOKUP, DbProfile.OLTP)) {
+      startReadOnlyTransaction(conn);
+
+      try {
+        if (!tableExists(conn, progressTable)) {
+          return chunkIds;
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+          try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+              chunkIds.add(rs.getString(1));
+            }
+          }
+        }
 
+        return chunkIds;
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      } finally {
+        endReadOnlyTransaction(conn);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
 
   /**
-   * This method is called inside the "fetchCustomerById" method to fetch projects from the projects
-   * table that match the customers fetched.
+   * Sets a table's AUTO_INCREMENT counter to one past its highest key. A rolled back insert does
+   * not give back the keys it took, so a load that resumes after a failure calls this first to give
+   * its rows the keys they would have had without the failure.
    * 
-   * @param conn
-   * @param customerId
-   * @return List of customer projects in the PROJECTS_TABLE
-   * @throws SQLException
+   * @param table The table.
+   * @param keyColumn The table's AUTO_INCREMENT column.
+   * @param job The admission of the bulk job this is part of (see {@link #admitBulkJob()}), or
+   *        null to admit it on its own.
    */
-  private List<Project> fetchCustomerProjects(Connection conn, Integer customerId) throws SQLException {
-    //@formatter:off
-    String sql = ""
-        + "SELECT c.*, p.project_id, p.gross_price, p.system_size_kw, p.dealer_fees, p.adders, p.installed, p.rep_commission "
-        + "FROM " + CUSTOMERS_TABLE + " c, " + PROJECTS_TABLE + " p "
-        + "WHERE c.customer_id = p.customer_id "
-        + "ORDER BY c.customer_id";
-    //@formatter:off
-    
-    try(PreparedStatement stmt = conn.prepareStatement(sql)){
-      setParameter(stmt, 1, customerId, Integer.class);;
-      try(ResultSet rs = stmt.executeQuery()){
-        List<Project> projects = new LinkedList<Project>();
-        
-        while (rs.next()) {
-          Project project = extract(rs, Project.class);
-          projects.add(project);
-          
-        /*
-         * Alternatively, you can use the code below inside this loop:
-         * projects.add(extract(rs, Project.class));
-         */
-          
-        }
-        
-        return projects;
-      }
-    }
-  }
-    
-  
-    /**
-   * Inserts a customer in the CUSTOMERS_TABLE
+  public void resetAutoIncrement(String table, String keyColumn,
+      AdmissionController.Admission job) {
+    String sql = "SELECT COALESCE(MAX(" + keyColumn + "), 0) + 1 FROM " + table;
+
+    try (Connection conn = bulkConnection(job)) {
+      long next;
+
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (ResultSet rs = stmt.executeQuery()) {
+          rs.next();
+          next = rs.getLong(1);
+        }
+      }
+
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute("ALTER TABLE " + table + " AUTO_INCREMENT = " + next);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  boolean tableExists(Connection conn, String table) throws SQLException {
+    try (ResultSet rs = conn.getMetaData().getTables(conn.getCatalog(), null, table, null)) {
+      return rs.next();
+    }
+  }
+
+  /**
+   * Reads the highest customer ID from the primary. The ID sequence starts after it, so it must
+   * not come from a replica that has not seen the latest inserts.
    * 
-   * @param customer. The customer object to inserted.
-   * @return The Customer object with the primary key.
-   * @throws DbException Thrown if an error occurs inserting the row.
+   * @return The highest customer ID in the CUSTOMERS_TABLE, or 0 if the table is empty.
    */
-  public Customer insertCustomer(Customer customer) {
-  
-    String sql = "INSERT INTO " + CUSTOMERS_TABLE + " " + "(customer_name) " + "VALUES " + "(?)";
-  
-  
-    try (Connection conn = DbConnection.getConnection()) {
-      startTransaction(conn);
-  
+  int fetchMaxCustomerId() {
+    String sql = "SELECT COALESCE(MAX(customer_id), 0) FROM " + CUSTOMERS_TABLE;
+
+    try (Connection conn = writeConnection(Workload.LOOKUP, DbProfile.OLTP)) {
+      startReadOnlyTransaction(conn);
+
       try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-        setParameter(stmt, 1, customer.getCustomerName(), String.class);
-  
-  
-        stmt.executeUpdate();
-  
-        Integer customerId = getLastInsertId(conn, CUSTOMERS_TABLE);
-        commitTransaction(conn);
-  
-        customer.setCustomerId(customerId);
-        return customer;
+        try (ResultSet rs = stmt.executeQuery()) {
+          rs.next();
+          return rs.getInt(1);
+        }
       } catch (Exception e) {
         rollbackTransaction(conn);
         throw new DbException(e);
+      } finally {
+        endReadOnlyTransaction(conn);
       }
     } catch (SQLException e) {
       throw new DbException(e);
     }
   }
 
-
   /**
-   * Inserts a project in the PROJECTS_TABLE
+   * Gets the DAO ready for traffic. The row mappers of the entities are built, and the statements
+   * of the point reads and single-row writes are prepared on up to the given number of OLTP
+   * connections held at once. The OLTP profile caches prepared statements per connection, so with
+   * a pool every pooled connection then serves its first request from its cache; without one
+   * this still loads and compiles the driver's code paths.
    * 
-   * @param project. The project object to inserted.
-   * @return The project object with the primary key.
-   * @throws DbException Thrown if an error occurs inserting the row.
+   * @param connectionCount The number of connections to prepare on, usually the pool size.
+   * @return The number of statements prepared.
+   * @throws DbException Thrown if a connection cannot be opened or a statement is invalid.
    */
-  
-  public Project insertProject(Project project) {
+  public int warmUp(int connectionCount) {
+    prepareMapper(Customer.class);
+    prepareMapper(Project.class);
+    prepareMapper(ProjectSummary.class);
 
-  // @formatter:off
-  String sql = ""
-      + "INSERT INTO " + PROJECTS_TABLE + " "
-      + "(project_id, gross_price, system_size_kw, dealer_fees, adders, installed, install_year, install_month, rep_commission) "
-      + "VALUES "
-      + "(?, ?, ?, ?, ?, ?, ?, ?, ?)";
-  // @formatter:on
+    List<String> reads = new ArrayList<>(List.of(CUSTOMER_BY_ID_SQL, CUSTOMER_PAGE_SQL,
+        PROJECT_PAGE_SQL, PROJECT_KEY_RANGE_SQL, projectsByCustomerSql(1)));
 
-    try (Connection conn = DbConnection.getConnection()) {
-      startTransaction(conn);
+    for (RankColumn column : RankColumn.values()) {
+      for (boolean descending : new boolean[] {true, false}) {
+        reads.add(topProjectsSql(column, descending, false));
+        reads.add(topProjectsSql(column, descending, true));
+      }
+    }
 
-      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-        setParameter(stmt, 1, project.getProjectId(), Integer.class);
-        setParameter(stmt, 2, project.getGrossPrice(), BigDecimal.class);
-        setParameter(stmt, 3, project.getSystemSizeInKw(), BigDecimal.class);
-        setParameter(stmt, 4, project.getDealerFees(), BigDecimal.class);
-        setParameter(stmt, 5, project.getAdders(), BigDecimal.class);
-        setParameter(stmt, 6, project.getInstalled(), Boolean.class);
-        setParameter(stmt, 7, project.getInstallYear(), Integer.class);
-        setParameter(stmt, 8, project.getInstallMonth(), Integer.class);
-        setParameter(stmt, 9, project.getRepCommission(), BigDecimal.class);
+    List<String> writes =
+        callerAssignsIds ? List.of() : List.of(INSERT_CUSTOMER_SQL, INSERT_PROJECT_SQL);
 
-        stmt.executeUpdate();
+    return prepare(connectionCount, () -> connections.getReadConnection(DbProfile.OLTP), reads)
+        + prepare(connectionCount, () -> connections.getConnection(DbProfile.OLTP), writes);
+  }
 
-        Integer customerId = getLastInsertId(conn, PROJECTS_TABLE);
-        commitTransaction(conn);
+  /*
+   * Prepares the statements on count connections. The connections are held until the end so that
+   * a pool hands out a different one each time.
+   */
+  private int prepare(int count, Supplier<Connection> source, List<String> statements) {
+    List<Connection> held = new ArrayList<>();
 
-        project.setCustomerId(customerId);
-        return project;
-      } catch (Exception e) {
-        rollbackTransaction(conn);
-        throw new DbException(e);
+    try {
+      for (int index = 0; index < Math.max(1, count) && !statements.isEmpty(); index++) {
+        Connection conn = source.get();
+        held.add(conn);
+
+        for (String sql : statements) {
+          /* Closing a cached statement returns it to the connection's statement cache. */
+          conn.prepareStatement(sql).close();
+        }
       }
+
+      return held.size() * statements.size();
     } catch (SQLException e) {
       throw new DbException(e);
+    } finally {
+      for (Connection conn : held) {
+        try {
+          conn.close();
+        } catch (SQLException e) {
+          /* The statements are prepared; a failed close does not matter here. */
+        }
+      }
     }
   }
 
+  /**
+   * Tells change subscribers that both tables were replaced.
+   */
+  public void publishReload() {
+    changeFeed.publish(CUSTOMERS_TABLE, Operation.RELOAD, "customer_id");
+    changeFeed.publish(PROJECTS_TABLE, Operation.RELOAD, "customer_id");
+  }
+
+  private static int[] customerIds(Collection<Customer> customers) {
+    return customers.stream().mapToInt(Customer::getCustomerId).toArray();
+  }
+
+  private static int[] projectCustomerIds(Collection<Project> projects) {
+    return projects.stream().mapToInt(Project::getCustomerId).toArray();
+  }
+
+  private static int[] toArray(Collection<Integer> ids) {
+    return ids.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  /**
+   * Sets the project columns from project_id to rep_commission, in {@link #PROJECT_COLUMNS} order,
+   * starting at the given parameter index.
+   */
+  private void setProjectParameters(PreparedStatement stmt, int index, Project project)
+      throws SQLException {
+    setParameter(stmt, index, project.getProjectId(), Integer.class);
+    setParameter(stmt, index + 1, project.getGrossPrice(), FixedPoint.class);
+    setParameter(stmt, index + 2, project.getSystemSizeInKw(), FixedPoint.class);
+    setParameter(stmt, index + 3, project.getDealerFees(), FixedPoint.class);
+    setParameter(stmt, index + 4, project.getAdders(), FixedPoint.class);
+    setParameter(stmt, index + 5, project.getInstalled(), Boolean.class);
+    setParameter(stmt, index + 6, project.getInstallYear(), Integer.class);
+    setParameter(stmt, index + 7, project.getInstallMonth(), Integer.class);
+    setParameter(stmt, index + 8, project.getRepCommission(), FixedPoint.class);
+  }
+
   /**
    * This method takes the formatted list of String that will populate the database using the data in
    * the DATA_FILE
@@ -266,8 +2072,54 @@ public class CustomersDao extends DaoBase {
    */
 
   public void executeBatch(List<String> sqlBatch) {
+    executeBatch(sqlBatch, true);
+  }
+
+  /**
+   * Runs SQL statements as one batch in one transaction, admitted as a {@link Workload#BULK}
+   * operation of its own.
+   * 
+   * @param sqlBatch The statements.
+   * @param publishReload True to publish a RELOAD change for both tables after the commit. Callers
+   *        that commit many chunks of one load pass false and call {@link #publishReload()} once.
+   */
+  public void executeBatch(List<String> sqlBatch, boolean publishReload) {
+    executeBatch(sqlBatch, publishReload, null);
+  }
+
+  /**
+   * Admits a bulk job made of many batches, such as a data load that commits its chunks on several
+   * threads at once. The job holds one {@link Workload#BULK} slot until the admission is closed,
+   * and the batches it passes to
+   * {@link #executeBatch(List, boolean, AdmissionController.Admission)} take no further slot, so
+   * the job's own parallelism is not capped by the BULK limit.
+   *
+   * @return The admission, to be closed when the job ends.
+   * @throws OverloadedException Thrown if the BULK workload stayed at its limit for the queue time.
+   */
+  public AdmissionController.Admission admitBulkJob() {
+    return admitJob(Workload.BULK);
+  }
+
+  /*
+   * Admits a job of the workload that spreads over several connections; see admitBulkJob().
+   */
+  AdmissionController.Admission admitJob(Workload workload) {
+    return admission.admit(workload);
+  }
+
+  /**
+   * Runs SQL statements as one batch in one transaction, as part of a bulk job.
+   * 
+   * @param sqlBatch The statements.
+   * @param publishReload True to publish a RELOAD change for both tables after the commit.
+   * @param job The admission of the job from {@link #admitBulkJob()}, or null to admit the batch
+   *        on its own.
+   */
+  public void executeBatch(List<String> sqlBatch, boolean publishReload,
+      AdmissionController.Admission job) {
 
-    try (Connection conn = DbConnection.getConnection()) {
+    try (Connection conn = bulkConnection(job)) {
       startTransaction(conn);
 
       try (Statement stmt = conn.createStatement()) {
@@ -276,6 +2128,11 @@ public class CustomersDao extends DaoBase {
         }
         stmt.executeBatch();
         commitTransaction(conn);
+        connections.markWrite();
+
+        if (publishReload) {
+          publishReload();
+        }
       } catch (Exception e) {
         rollbackTransaction(conn);
         throw new DbException(e);
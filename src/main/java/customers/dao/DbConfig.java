@@ -0,0 +1,193 @@
+package customers.dao;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import customers.exception.DbException;
+
+/**
+ * This class holds the application's configuration. Values are read from the classpath file
+ * {@value #CONFIG_FILE}. Any key starting with {@value #OVERRIDE_PREFIX} can be overridden by a
+ * system property with the same key or by an environment variable (dots in the key replaced by
+ * underscores). An environment variable matches a key in the file regardless of case, so
+ * CUSTOMERS_DB_POOL_BORROWTIMEOUTMILLIS sets customers.db.pool.borrowTimeoutMillis. A key that is
+ * not in the file keeps the case of the variable's name, such as
+ * customers_db_workload_bulk_timeoutSeconds, except that a name written all in upper case is taken
+ * as lower case. The configuration is read once; the driver properties for each {@link DbProfile}
+ * are resolved when it is loaded.
+ *
+ */
+public class DbConfig {
+  public static final String CONFIG_FILE = "customers-db.properties";
+  public static final String OVERRIDE_PREFIX = "customers.";
+
+  public static final String HOST = "customers.db.host";
+  public static final String PORT = "customers.db.port";
+  public static final String SCHEMA = "customers.db.schema";
+  public static final String USER = "customers.db.user";
+  public static final String PASSWORD = "customers.db.password";
+
+  private static final String PROFILE_PREFIX = "customers.db.profile.";
+
+  private final Properties properties;
+  private final Map<DbProfile, Properties> driverProperties = new EnumMap<>(DbProfile.class);
+
+  /**
+   * Create a configuration from the given properties. System properties and environment variables
+   * are not consulted; use {@link #load()} for that.
+   *
+   * @param properties The configuration values.
+   */
+  public DbConfig(Properties properties) {
+    this.properties = properties;
+
+    for (DbProfile profile : DbProfile.values()) {
+      Properties driverProps = profile.defaultDriverProperties();
+      String prefix = PROFILE_PREFIX + profile.configName() + ".";
+
+      for (String key : properties.stringPropertyNames()) {
+        if (key.startsWith(prefix)) {
+          driverProps.setProperty(key.substring(prefix.length()), properties.getProperty(key));
+        }
+      }
+
+      driverProperties.put(profile, driverProps);
+    }
+  }
+
+  /**
+   * Loads the configuration file from the classpath and applies any system property or environment
+   * variable overrides.
+   *
+   * @return The configuration.
+   * @throws DbException Thrown if the configuration file cannot be read.
+   */
+  public static DbConfig load() {
+    Properties properties = new Properties();
+
+    try (InputStream in = DbConfig.class.getClassLoader().getResourceAsStream(CONFIG_FILE)) {
+      if (Objects.nonNull(in)) {
+        properties.load(in);
+      }
+    } catch (IOException e) {
+      throw new DbException("Unable to read " + CONFIG_FILE, e);
+    }
+
+    Map<String, String> knownKeys = new HashMap<>();
+
+    for (String key : properties.stringPropertyNames()) {
+      knownKeys.put(toEnvironmentName(key), key);
+    }
+
+    for (Map.Entry<String, String> env : System.getenv().entrySet()) {
+      String name = env.getKey();
+      String key = knownKeys.get(name.toUpperCase(Locale.ROOT));
+
+      if (Objects.isNull(key)) {
+        key = (name.equals(name.toUpperCase(Locale.ROOT)) ? name.toLowerCase(Locale.ROOT) : name)
+            .replace('_', '.');
+      }
+
+      if (key.startsWith(OVERRIDE_PREFIX)) {
+        properties.setProperty(key, env.getValue());
+      }
+    }
+
+    for (String key : System.getProperties().stringPropertyNames()) {
+      if (key.startsWith(OVERRIDE_PREFIX)) {
+        properties.setProperty(key, System.getProperty(key));
+      }
+    }
+
+    return new DbConfig(properties);
+  }
+
+  /*
+   * The environment variable name of a key, in upper case.
+   */
+  private static String toEnvironmentName(String key) {
+    return key.toUpperCase(Locale.ROOT).replace('.', '_');
+  }
+
+  public String get(String key) {
+    return properties.getProperty(key);
+  }
+
+  public String get(String key, String defaultValue) {
+    return properties.getProperty(key, defaultValue);
+  }
+
+  public int getInt(String key, int defaultValue) {
+    String value = get(key);
+
+    if (Objects.isNull(value) || value.isBlank()) {
+      return defaultValue;
+    }
+
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      throw new DbException(key + "=" + value + " is not a valid number.");
+    }
+  }
+
+  /**
+   * Returns the JDBC URL without credentials or driver properties.
+   *
+   * @return The URL, for example jdbc:mysql://localhost:3306/customers_database.
+   */
+  public String getUrl() {
+    return getUrl(get(HOST, "localhost") + ":" + getInt(PORT, 3306));
+  }
+
+  /**
+   * Returns the JDBC URL of the configured schema on another server, for example a read replica.
+   *
+   * @param hostAndPort The server as host:port.
+   * @return The URL.
+   */
+  public String getUrl(String hostAndPort) {
+    return String.format("jdbc:mysql://%s/%s", hostAndPort.trim(), get(SCHEMA, "customers_database"));
+  }
+
+  /**
+   * Returns the JDBC URL of a schema given as host:port/schema, for example one shard. Without a
+   * schema the configured one is used.
+   *
+   * @param location The server and schema, for example localhost:3306/customers_shard1.
+   * @return The URL.
+   */
+  public String getSchemaUrl(String location) {
+    int slash = location.indexOf('/');
+
+    return slash < 0 ? getUrl(location)
+        : String.format("jdbc:mysql://%s/%s", location.substring(0, slash).trim(),
+            location.substring(slash + 1).trim());
+  }
+
+  /**
+   * Returns the driver properties for the given profile, including the user and password.
+   *
+   * @param profile The profile.
+   * @return A new Properties object that the caller may modify.
+   */
+  public Properties getDriverProperties(DbProfile profile) {
+    Properties props = new Properties();
+    props.putAll(driverProperties.get(profile));
+
+    if (Objects.nonNull(get(USER))) {
+      props.setProperty("user", get(USER));
+    }
+
+    if (Objects.nonNull(get(PASSWORD))) {
+      props.setProperty("password", get(PASSWORD));
+    }
+
+    return props;
+  }
+}
@@ -1,29 +1,258 @@
 package customers.dao;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import javax.sql.DataSource;
 import customers.exception.DbException;
 
+/**
+ * This class hands out connections to the customers database. The connection settings come from
+ * {@link DbConfig} and each {@link DbProfile} gets its own data source with the profile's driver
+ * properties. A different {@link DataSource} (a pool, or an in-process stand-in database for tests
+ * and benchmarks) can be plugged in with {@link #setDataSource(DataSource)}.
+ *
+ * Read operations ask for a connection with {@link #getReadConnection(DbProfile)}, which is routed
+ * by the {@link ReplicaRouter} to one of the configured read replicas. Write operations use
+ * {@link #getConnection(DbProfile)}, which always goes to the primary, and call
+ * {@link #markWrite()} after they commit.
+ *
+ */
 public class DbConnection {
-  private static String HOST = "localhost";
-  private static String USER = "customers_database";
-  private static String PASSWORD = "customers_database";
-  private static int PORT = 3306;
-  private static String SCHEMA = "customers_database";
-  
+  public static final String POOL_SIZE = "customers.db.pool.size";
+  public static final String POOL_BORROW_TIMEOUT_MILLIS = "customers.db.pool.borrowTimeoutMillis";
 
+  private static final DbConfig CONFIG = DbConfig.load();
+  private static final Map<DbProfile, DataSource> DATA_SOURCES = new EnumMap<>(DbProfile.class);
+  private static List<Map<DbProfile, DataSource>> replicaDataSources = List.of();
+  private static ReplicaRouter replicaRouter;
+
+  static {
+    resetDataSources();
+  }
+
+  public static DbConfig getConfig() {
+    return CONFIG;
+  }
+
+  /**
+   * Returns a connection using the {@link DbProfile#DEFAULT} profile.
+   *
+   * @return The connection.
+   * @throws DbException Thrown if the connection cannot be opened.
+   */
   public static Connection getConnection() {
-    String uri = String.format("jdbc:mysql://%s:%d/%s?user=%s&password=%s", HOST, PORT, SCHEMA,
-        USER, PASSWORD);
+    return getConnection(DbProfile.DEFAULT);
+  }
+
+  /**
+   * Returns a connection configured for the given profile.
+   *
+   * @param profile The performance profile.
+   * @return The connection.
+   * @throws DbException Thrown if the connection cannot be opened.
+   */
+  public static Connection getConnection(DbProfile profile) {
+    DataSource dataSource = getDataSource(profile);
 
     try {
-      Connection conn = DriverManager.getConnection(uri);
-//      System.out.println("Connection to schema '" + SCHEMA + "' is successful.");
-      return conn;
+      return dataSource.getConnection();
     } catch (SQLException e) {
-      System.out.println("Unable to get connection at " + uri);
-      throw new DbException("Unable to get connection at \" + uri");
+      throw new DbException("Unable to get connection at " + dataSource, e);
+    }
+  }
+
+  /**
+   * Returns a connection for a read operation. It comes from a read replica when replicas are
+   * configured, unless the current {@link ReadYourWrites} context wrote recently.
+   *
+   * @param profile The performance profile.
+   * @return The connection.
+   * @throws DbException Thrown if the connection cannot be opened.
+   */
+  public static Connection getReadConnection(DbProfile profile) {
+    return getReplicaRouter().getReadConnection(profile);
+  }
+
+  /**
+   * Called by write operations after they commit so that the next reads of the current
+   * {@link ReadYourWrites} context see the writes.
+   */
+  public static void markWrite() {
+    getReplicaRouter().markWrite();
+  }
+
+  public static synchronized ReplicaRouter getReplicaRouter() {
+    return replicaRouter;
+  }
+
+  /**
+   * Replace the read replicas, for example with local stand-in databases in a test. Each map holds
+   * the data sources of one replica keyed by profile.
+   *
+   * @param replicas The replicas. An empty list sends all reads to the primary.
+   */
+  public static synchronized void setReplicas(List<Map<DbProfile, DataSource>> replicas) {
+    if (Objects.nonNull(replicaRouter)) {
+      replicaRouter.stopHealthChecks();
     }
+
+    String selection = CONFIG.get(ReplicaRouter.SELECTION, "round-robin");
+
+    replicaDataSources = List.copyOf(replicas);
+
+    replicaRouter = new ReplicaRouter(DbConnection::getConnection, replicas,
+        ReplicaRouter.Selection.valueOf(selection.trim().toUpperCase().replace('-', '_')),
+        CONFIG.getInt(ReplicaRouter.STICKY_MILLIS, 5000),
+        CONFIG.getInt(ReplicaRouter.HEALTH_CHECK_MILLIS, 10000));
+    replicaRouter.startHealthChecks();
+  }
+
+  /**
+   * Puts a {@link ConnectionPool} in front of the data source of every profile, on the primary and
+   * on each read replica, so that a process running many operations reuses a few physical
+   * connections. The pool size and borrow timeout come from the configuration
+   * ({@value #POOL_SIZE}, {@value #POOL_BORROW_TIMEOUT_MILLIS}). Calling this again has no effect
+   * on data sources that are already pooled.
+   */
+  public static synchronized void enablePooling() {
+    for (DbProfile profile : DbProfile.values()) {
+      DATA_SOURCES.put(profile, pooled(DATA_SOURCES.get(profile)));
+    }
+
+    List<Map<DbProfile, DataSource>> replicas = new ArrayList<>();
+
+    for (Map<DbProfile, DataSource> dataSources : replicaDataSources) {
+      Map<DbProfile, DataSource> replica = new EnumMap<>(DbProfile.class);
+      dataSources.forEach((profile, dataSource) -> replica.put(profile, pooled(dataSource)));
+      replicas.add(replica);
+    }
+
+    if (!replicas.isEmpty()) {
+      setReplicas(replicas);
+    }
+  }
+
+  private static DataSource pooled(DataSource dataSource) {
+    return dataSource instanceof ConnectionPool ? dataSource
+        : new ConnectionPool(dataSource, CONFIG.getInt(POOL_SIZE, 4),
+            CONFIG.getInt(POOL_BORROW_TIMEOUT_MILLIS, 30000));
+  }
+
+  /**
+   * Opens connections in every primary pool created by {@link #enablePooling()} until the given
+   * number are idle, so that the first requests do not pay for the connects. Profiles that are not
+   * pooled are skipped, and so are the replicas, which may be down.
+   *
+   * @param count The number of idle connections wanted per pool (at most the pool size).
+   * @return The number of pools prestarted.
+   * @throws DbException Thrown if a connection cannot be opened.
+   */
+  public static synchronized int prestartPools(int count) {
+    int pools = 0;
+
+    for (DbProfile profile : DbProfile.values()) {
+      DataSource dataSource = DATA_SOURCES.get(profile);
+
+      if (dataSource instanceof ConnectionPool) {
+        try {
+          ((ConnectionPool) dataSource).prestart(count);
+          pools++;
+        } catch (SQLException e) {
+          throw new DbException("Unable to prestart the " + profile.configName() + " pool", e);
+        }
+      }
+    }
+
+    return pools;
+  }
+
+  /**
+   * Closes every pool created by {@link #enablePooling()} and goes back to the data sources they
+   * wrapped.
+   */
+  public static synchronized void closePools() {
+    for (DbProfile profile : DbProfile.values()) {
+      DATA_SOURCES.put(profile, unpooled(DATA_SOURCES.get(profile)));
+    }
+
+    List<Map<DbProfile, DataSource>> replicas = new ArrayList<>();
+
+    for (Map<DbProfile, DataSource> dataSources : replicaDataSources) {
+      Map<DbProfile, DataSource> replica = new EnumMap<>(DbProfile.class);
+      dataSources.forEach((profile, dataSource) -> replica.put(profile, unpooled(dataSource)));
+      replicas.add(replica);
+    }
+
+    if (!replicas.isEmpty()) {
+      setReplicas(replicas);
+    }
+  }
+
+  private static DataSource unpooled(DataSource dataSource) {
+    if (!(dataSource instanceof ConnectionPool)) {
+      return dataSource;
+    }
+
+    ConnectionPool pool = (ConnectionPool) dataSource;
+    pool.close();
+    return pool.getDelegate();
+  }
+
+  public static synchronized DataSource getDataSource(DbProfile profile) {
+    return DATA_SOURCES.get(profile);
+  }
+
+  /**
+   * Use the given data source for every profile.
+   *
+   * @param dataSource The data source.
+   */
+  public static synchronized void setDataSource(DataSource dataSource) {
+    for (DbProfile profile : DbProfile.values()) {
+      DATA_SOURCES.put(profile, dataSource);
+    }
+  }
+
+  /**
+   * Use the given data source for a single profile.
+   *
+   * @param profile The profile.
+   * @param dataSource The data source.
+   */
+  public static synchronized void setDataSource(DbProfile profile, DataSource dataSource) {
+    DATA_SOURCES.put(profile, dataSource);
+  }
+
+  /**
+   * Restore the configured {@link DriverManagerDataSource} for every profile and the configured read
+   * replicas.
+   */
+  public static synchronized void resetDataSources() {
+    for (DbProfile profile : DbProfile.values()) {
+      DATA_SOURCES.put(profile,
+          new DriverManagerDataSource(CONFIG.getUrl(), CONFIG.getDriverProperties(profile)));
+    }
+
+    List<Map<DbProfile, DataSource>> replicas = new ArrayList<>();
+
+    for (String hostAndPort : CONFIG.get(ReplicaRouter.REPLICAS, "").split(",")) {
+      if (!hostAndPort.isBlank()) {
+        Map<DbProfile, DataSource> replica = new EnumMap<>(DbProfile.class);
+
+        for (DbProfile profile : DbProfile.values()) {
+          replica.put(profile, new DriverManagerDataSource(CONFIG.getUrl(hostAndPort),
+              CONFIG.getDriverProperties(profile)));
+        }
+
+        replicas.add(replica);
+      }
+    }
+
+    setReplicas(replicas);
   }
 }
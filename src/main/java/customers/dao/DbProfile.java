@@ -0,0 +1,68 @@
+package customers.dao;
+
+import java.util.Properties;
+
+/**
+ * Named driver performance profiles. Each DAO call selects the profile that matches its workload
+ * and {@link DbConnection} opens the connection with that profile's driver properties. The
+ * properties listed here are defaults; they can be extended or overridden in the configuration
+ * with keys of the form {@code customers.db.profile.<profile>.<driverProperty>}.
+ *
+ */
+public enum DbProfile {
+  // @formatter:off
+  /** No extra driver properties. */
+  DEFAULT,
+
+  /**
+   * Large batches of inserts. The driver rewrites a batch into multi-row INSERT statements and uses
+   * large socket buffers.
+   */
+  BULK(
+      "rewriteBatchedStatements", "true",
+      "tcpSndBuf", "1048576",
+      "tcpRcvBuf", "1048576",
+      "socketTimeout", "0"),
+
+  /**
+   * Short point reads and single-row writes. Prepared statements are cached by the driver and
+   * timeouts are kept tight.
+   */
+  OLTP(
+      "cachePrepStmts", "true",
+      "useServerPrepStmts", "true",
+      "prepStmtCacheSize", "250",
+      "prepStmtCacheSqlLimit", "2048",
+      "connectTimeout", "2000",
+      "socketTimeout", "10000"),
+
+  /** Large reads. Rows are fetched from a server-side cursor instead of being buffered. */
+  STREAMING(
+      "useCursorFetch", "true",
+      "defaultFetchSize", "1000");
+  // @formatter:on
+
+  private final Properties driverProperties = new Properties();
+
+  DbProfile(String... keysAndValues) {
+    for (int index = 0; index < keysAndValues.length; index += 2) {
+      driverProperties.setProperty(keysAndValues[index], keysAndValues[index + 1]);
+    }
+  }
+
+  /**
+   * @return The name used for this profile in configuration keys, for example "bulk".
+   */
+  public String configName() {
+    return name().toLowerCase();
+  }
+
+  /**
+   * @return A copy of the default driver properties of this profile.
+   */
+  public Properties defaultDriverProperties() {
+    Properties properties = new Properties();
+    properties.putAll(driverProperties);
+    return properties;
+  }
+}
@@ -0,0 +1,90 @@
+package customers.dao;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * A {@link DataSource} that opens a new physical connection through {@link DriverManager} on every
+ * call. The URL and driver properties are fixed when the data source is created so nothing is
+ * formatted per connection.
+ *
+ */
+public class DriverManagerDataSource implements DataSource {
+  private final String url;
+  private final Properties driverProperties;
+  private PrintWriter logWriter;
+
+  public DriverManagerDataSource(String url, Properties driverProperties) {
+    this.url = url;
+    this.driverProperties = driverProperties;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    return DriverManager.getConnection(url, driverProperties);
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    Properties props = new Properties();
+    props.putAll(driverProperties);
+    props.setProperty("user", username);
+    props.setProperty("password", password);
+
+    return DriverManager.getConnection(url, props);
+  }
+
+  @Override
+  public PrintWriter getLogWriter() {
+    return logWriter;
+  }
+
+  @Override
+  public void setLogWriter(PrintWriter out) {
+    this.logWriter = out;
+  }
+
+  @Override
+  public void setLoginTimeout(int seconds) {
+    DriverManager.setLoginTimeout(seconds);
+  }
+
+  @Override
+  public int getLoginTimeout() {
+    return DriverManager.getLoginTimeout();
+  }
+
+  @Override
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    throw new SQLFeatureNotSupportedException();
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    if (iface.isInstance(this)) {
+      return iface.cast(this);
+    }
+
+    throw new SQLException(getClass().getName() + " does not wrap " + iface.getName());
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> iface) {
+    return iface.isInstance(this);
+  }
+
+  @Override
+  public String toString() {
+    return url;
+  }
+}
@@ -0,0 +1,29 @@
+package customers.dao;
+
+/**
+ * How much of a customer's object graph a DAO fetch loads. Callers that only need names should ask
+ * for {@link #CUSTOMERS_ONLY} so the fetch is a single query; callers that will render every
+ * customer's projects should ask for {@link #WITH_PROJECTS} so the projects come back on the same
+ * connection and snapshot.
+ *
+ */
+public enum FetchPlan {
+  /**
+   * Only the customer rows are read. {@code Customer.getProjects()} is an empty list.
+   */
+  CUSTOMERS_ONLY,
+
+  /**
+   * Only the customer rows are read. {@code Customer.getProjects()} loads on first access, and
+   * that first access loads the projects of every customer returned by the same call. Walking the
+   * whole result therefore costs one extra query per thousand customers rather than one per
+   * customer, and a caller that never touches the projects pays nothing for them.
+   */
+  LAZY_PROJECTS,
+
+  /**
+   * The customers and all their projects are read in the same read-only transaction, with the
+   * projects fetched in batches by customer ID.
+   */
+  WITH_PROJECTS
+}
@@ -0,0 +1,43 @@
+package customers.dao;
+
+import java.util.Comparator;
+import java.util.function.Function;
+import customers.entity.Project;
+import provided.util.FixedPoint;
+
+/**
+ * The project columns that projects can be ranked by in SQL. Ranking by one of these is pushed to
+ * the database as ORDER BY ... LIMIT, which reads only the top rows of the column's index.
+ *
+ */
+public enum RankColumn {
+  GROSS_PRICE("gross_price", Project::getGrossPrice),
+  SYSTEM_SIZE_KW("system_size_kw", Project::getSystemSizeInKw),
+  DEALER_FEES("dealer_fees", Project::getDealerFees),
+  ADDERS("adders", Project::getAdders),
+  REP_COMMISSION("rep_commission", Project::getRepCommission);
+
+  private final String column;
+  private final Comparator<Project> comparator;
+
+  RankColumn(String column, Function<Project, FixedPoint> getter) {
+    this.column = column;
+    this.comparator = Comparator.comparing(getter, Comparator.nullsFirst(Comparator.naturalOrder()))
+        .thenComparing(Project::getCustomerId);
+  }
+
+  /**
+   * @return The column name.
+   */
+  public String getColumn() {
+    return column;
+  }
+
+  /**
+   * @return The order the database ranks by in ascending order, with NULL first and ties broken
+   *         by customer ID, for merging rankings computed separately.
+   */
+  public Comparator<Project> comparator() {
+    return comparator;
+  }
+}
@@ -0,0 +1,94 @@
+package customers.dao;
+
+/**
+ * The last write of one caller, so that the {@link ReplicaRouter} keeps that caller's reads on the
+ * primary while the replicas may not have the write yet, without pinning anyone else's reads.
+ *
+ * Each thread has its own context by default, so a caller that writes and reads on one thread sees
+ * its writes. A caller whose requests are served by different threads, such as an HTTP client,
+ * carries the time of its last write from request to request (for example in a cookie), creates a
+ * context from it with {@link #since(long)} and binds it to the thread serving each request with
+ * {@link #bind()}.
+ *
+ */
+public final class ReadYourWrites {
+  private static final ThreadLocal<ReadYourWrites> CURRENT =
+      ThreadLocal.withInitial(ReadYourWrites::new);
+
+  /* Wall-clock time of the last write, so that it can travel between processes; 0 for none. */
+  private volatile long lastWriteMillis;
+
+  /**
+   * Creates a context with no write.
+   */
+  public ReadYourWrites() {}
+
+  /**
+   * Creates a context whose last write was at the given time.
+   *
+   * @param lastWriteMillis The time of the caller's last write in milliseconds since the epoch, or
+   *        0 if it has not written.
+   * @return The context.
+   */
+  public static ReadYourWrites since(long lastWriteMillis) {
+    ReadYourWrites context = new ReadYourWrites();
+    context.lastWriteMillis = Math.max(0, lastWriteMillis);
+    return context;
+  }
+
+  /**
+   * @return The context bound to the current thread.
+   */
+  public static ReadYourWrites current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Makes this the current thread's context until the returned scope is closed, when the previous
+   * one is restored.
+   *
+   * @return The scope.
+   */
+  public Scope bind() {
+    ReadYourWrites previous = CURRENT.get();
+    CURRENT.set(this);
+
+    return () -> CURRENT.set(previous);
+  }
+
+  /**
+   * A binding made by {@link #bind()}.
+   */
+  public interface Scope extends AutoCloseable {
+    @Override
+    void close();
+  }
+
+  /**
+   * Records a write committed now.
+   */
+  public void markWrite() {
+    lastWriteMillis = System.currentTimeMillis();
+  }
+
+  /**
+   * @return The time of the last write in milliseconds since the epoch, or 0 if there was none.
+   */
+  public long getLastWriteMillis() {
+    return lastWriteMillis;
+  }
+
+  /**
+   * @param windowMillis How long after a write reads must see it.
+   * @return True if the last write was less than the window ago.
+   */
+  public boolean wroteWithin(long windowMillis) {
+    long last = lastWriteMillis;
+    return last != 0 && System.currentTimeMillis() - last < windowMillis;
+  }
+
+  @Override
+  public String toString() {
+    return "ReadYourWrites(" + (lastWriteMillis == 0 ? "no write" : lastWriteMillis) + ")";
+  }
+}
@@ -0,0 +1,235 @@
+package customers.dao;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import javax.sql.DataSource;
+
+/**
+ * This class routes read operations to a set of read replicas. A replica is selected round-robin or
+ * by the lowest number of open connections. A replica that fails to hand out a connection is marked
+ * down and skipped until a health check (or a retry after {@code healthCheckMillis}) succeeds. If no
+ * replica is available, reads fall back to the primary.
+ *
+ * A caller's reads are sticky to the primary for {@code stickyMillis} after that caller writes, so
+ * it sees its own inserts even when the replicas lag behind. The caller is the
+ * {@link ReadYourWrites} context bound to the thread: the thread itself by default, or a context
+ * that a server carries between the requests of one client. Other callers' reads keep going to the
+ * replicas.
+ *
+ */
+public class ReplicaRouter {
+  public static final String REPLICAS = "customers.db.replicas";
+  public static final String SELECTION = "customers.db.replica.selection";
+  public static final String STICKY_MILLIS = "customers.db.replica.stickyMillis";
+  public static final String HEALTH_CHECK_MILLIS = "customers.db.replica.healthCheckMillis";
+
+  public enum Selection {
+    ROUND_ROBIN, LEAST_LOADED
+  }
+
+  private final Function<DbProfile, Connection> primary;
+  private final List<Replica> replicas;
+  private final Selection selection;
+  private final long stickyMillis;
+  private final long healthCheckNanos;
+  private final AtomicInteger nextReplica = new AtomicInteger();
+  private ScheduledExecutorService healthChecker;
+
+  /**
+   * @param primary Supplies a primary connection for a profile.
+   * @param replicas One map of data sources per replica, keyed by profile.
+   * @param selection How a replica is selected.
+   * @param stickyMillis How long a caller's reads stay on the primary after it writes.
+   * @param healthCheckMillis How often a replica that is down is probed again.
+   */
+  public ReplicaRouter(Function<DbProfile, Connection> primary,
+      List<Map<DbProfile, DataSource>> replicas, Selection selection, long stickyMillis,
+      long healthCheckMillis) {
+    this.primary = primary;
+    this.selection = selection;
+    this.stickyMillis = stickyMillis;
+    this.healthCheckNanos = TimeUnit.MILLISECONDS.toNanos(healthCheckMillis);
+
+    List<Replica> list = new ArrayList<>();
+
+    for (Map<DbProfile, DataSource> dataSources : replicas) {
+      list.add(new Replica(dataSources));
+    }
+
+    this.replicas = Collections.unmodifiableList(list);
+  }
+
+  public boolean hasReplicas() {
+    return !replicas.isEmpty();
+  }
+
+  /**
+   * Records that the current {@link ReadYourWrites} context has just committed a write. Its reads
+   * go to the primary until the stickiness window has passed.
+   */
+  public void markWrite() {
+    ReadYourWrites.current().markWrite();
+  }
+
+  /**
+   * Returns a connection for a read operation.
+   *
+   * @param profile The performance profile.
+   * @return A replica connection, or a primary connection if the current caller wrote recently or
+   *         no replica is available.
+   */
+  public Connection getReadConnection(DbProfile profile) {
+    if (!hasReplicas() || isSticky()) {
+      return primary.apply(profile);
+    }
+
+    long now = System.nanoTime();
+    int count = replicas.size();
+    int start = selection == Selection.LEAST_LOADED ? leastLoaded()
+        : Math.floorMod(nextReplica.getAndIncrement(), count);
+
+    for (int offset = 0; offset < count; offset++) {
+      Replica replica = replicas.get((start + offset) % count);
+
+      if (replica.isAvailable(now)) {
+        Connection conn = replica.getConnection(profile, now);
+
+        if (Objects.nonNull(conn)) {
+          return conn;
+        }
+      }
+    }
+
+    return primary.apply(profile);
+  }
+
+  /**
+   * Probes every replica with {@link Connection#isValid(int)} and updates its state.
+   */
+  public void checkHealth() {
+    long now = System.nanoTime();
+
+    for (Replica replica : replicas) {
+      replica.probe(now);
+    }
+  }
+
+  /**
+   * Starts a daemon thread that runs {@link #checkHealth()} every {@code healthCheckMillis}.
+   */
+  public synchronized void startHealthChecks() {
+    if (Objects.isNull(healthChecker) && hasReplicas() && healthCheckNanos > 0) {
+      healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "replica-health-check");
+        thread.setDaemon(true);
+        return thread;
+      });
+      healthChecker.scheduleWithFixedDelay(this::checkHealth, healthCheckNanos, healthCheckNanos,
+          TimeUnit.NANOSECONDS);
+    }
+  }
+
+  public synchronized void stopHealthChecks() {
+    if (Objects.nonNull(healthChecker)) {
+      healthChecker.shutdownNow();
+      healthChecker = null;
+    }
+  }
+
+  private boolean isSticky() {
+    return ReadYourWrites.current().wroteWithin(stickyMillis);
+  }
+
+  private int leastLoaded() {
+    int best = 0;
+
+    for (int index = 1; index < replicas.size(); index++) {
+      if (replicas.get(index).active.get() < replicas.get(best).active.get()) {
+        best = index;
+      }
+    }
+
+    return best;
+  }
+
+  /**
+   * One replica with its data sources, open connection count and health state.
+   */
+  private class Replica {
+    private final Map<DbProfile, DataSource> dataSources;
+    private final AtomicInteger active = new AtomicInteger();
+    private volatile boolean healthy = true;
+    private volatile long retryAt;
+
+    Replica(Map<DbProfile, DataSource> dataSources) {
+      this.dataSources = dataSources;
+    }
+
+    boolean isAvailable(long now) {
+      return healthy || now - retryAt >= 0;
+    }
+
+    Connection getConnection(DbProfile profile, long now) {
+      try {
+        Connection conn = dataSources.get(profile).getConnection();
+        healthy = true;
+        return track(conn);
+      } catch (SQLException e) {
+        markDown(now);
+        return null;
+      }
+    }
+
+    void probe(long now) {
+      try (Connection conn = dataSources.get(DbProfile.DEFAULT).getConnection()) {
+        if (conn.isValid(1)) {
+          healthy = true;
+        } else {
+          markDown(now);
+        }
+      } catch (SQLException e) {
+        markDown(now);
+      }
+    }
+
+    private void markDown(long now) {
+      healthy = false;
+      retryAt = now + healthCheckNanos;
+    }
+
+    /*
+     * Wrap the connection so that the open connection count is decremented exactly once when the
+     * caller closes it.
+     */
+    private Connection track(Connection conn) {
+      active.incrementAndGet();
+      AtomicBoolean closed = new AtomicBoolean();
+
+      return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+          new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+            if ("close".equals(method.getName()) && closed.compareAndSet(false, true)) {
+              active.decrementAndGet();
+            }
+
+            try {
+              return method.invoke(conn, args);
+            } catch (InvocationTargetException e) {
+              throw e.getCause();
+            }
+          });
+    }
+  }
+}
@@ -0,0 +1,14 @@
+package customers.dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Receives the rows of a streaming query. The handler is called once per row with the result set
+ * positioned on that row; it must not advance or close the result set.
+ *
+ */
+@FunctionalInterface
+public interface RowHandler {
+  void handle(ResultSet rs) throws SQLException;
+}
@@ -0,0 +1,116 @@
+package customers.dao;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A consistent-hash ring that maps a customer ID to one of a list of shards. Each shard is placed
+ * on the ring at a number of points (virtual nodes) derived from its name, and a customer belongs
+ * to the shard at the first point at or after the hash of its ID. Adding a shard therefore moves
+ * only the customers that now fall just before the new shard's points, about 1/N of them, and
+ * removing one moves only that shard's customers.
+ *
+ * The ring depends only on the shard names and the number of virtual nodes, never on the order of
+ * the list, so every process given the same shards computes the same owners.
+ *
+ */
+public class ShardRing {
+  private final List<String> names;
+  private final int virtualNodes;
+  private final long[] points;
+  private final int[] owners;
+
+  /**
+   * @param names The shard names, for example their host:port/schema. Index i of this list is
+   *        shard i.
+   * @param virtualNodes The number of points per shard. More points spread the customers more
+   *        evenly.
+   */
+  public ShardRing(List<String> names, int virtualNodes) {
+    this.names = List.copyOf(names);
+    this.virtualNodes = Math.max(1, virtualNodes);
+
+    int count = names.size() * this.virtualNodes;
+    long[] packed = new long[count];
+
+    for (int shard = 0; shard < names.size(); shard++) {
+      long seed = hash(names.get(shard).getBytes(StandardCharsets.UTF_8));
+
+      for (int node = 0; node < this.virtualNodes; node++) {
+        int point = (int) mix(seed + node);
+        /* Points in the high half, shard in the low half, so one sort orders both. */
+        packed[shard * this.virtualNodes + node] = ((long) point << 32) | shard;
+      }
+    }
+
+    Arrays.sort(packed);
+    this.points = new long[count];
+    this.owners = new int[count];
+
+    for (int index = 0; index < count; index++) {
+      points[index] = packed[index] >> 32;
+      owners[index] = (int) packed[index];
+    }
+  }
+
+  /**
+   * @param customerId The customer ID.
+   * @return The index of the shard that owns the customer.
+   */
+  public int shardFor(int customerId) {
+    long point = (int) mix(customerId);
+    int index = Arrays.binarySearch(points, point);
+
+    if (index < 0) {
+      index = -index - 1;
+    }
+
+    return owners[index == points.length ? 0 : index];
+  }
+
+  public int getShardCount() {
+    return names.size();
+  }
+
+  public List<String> getNames() {
+    return names;
+  }
+
+  /**
+   * @return A text that is equal for two rings exactly when they place every customer on the
+   *         same shard name, for recording which layout the data was placed with.
+   */
+  public String getSignature() {
+    String[] sorted = names.toArray(new String[0]);
+    Arrays.sort(sorted);
+    return virtualNodes + ":" + String.join(",", sorted);
+  }
+
+  @Override
+  public String toString() {
+    return "ShardRing(" + getSignature() + ")";
+  }
+
+  private static long hash(byte[] bytes) {
+    long hash = 0xCBF29CE484222325L;
+
+    for (byte b : bytes) {
+      hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+    }
+
+    return mix(hash);
+  }
+
+  /*
+   * The 64-bit finalizer from MurmurHash3.
+   */
+  private static long mix(long value) {
+    long hash = (value + 0x632BE59BD9B4E019L) * 0x9E3779B97F4A7C15L;
+    hash ^= hash >>> 33;
+    hash *= 0xFF51AFD7ED558CCDL;
+    hash ^= hash >>> 33;
+    hash *= 0xC4CEB9FE1A85EC53L;
+    return hash ^ (hash >>> 33);
+  }
+}
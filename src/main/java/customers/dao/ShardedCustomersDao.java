@@ -0,0 +1,1107 @@
+package customers.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+import javax.sql.DataSource;
+import javax.sql.rowset.CachedRowSet;
+import customers.entity.Customer;
+import customers.entity.Project;
+import customers.entity.ProjectSummary;
+import customers.exception.DbException;
+
+/**
+ * A {@link CustomersDao} over several schemas (shards), each holding the customers that a
+ * {@link ShardRing} assigns to it together with their projects. Every shard has the full schema
+ * and its own {@link CustomersDao}; this class decides which of them to use.
+ *
+ * Point reads and writes of a customer go to the shard that owns its ID. New customer IDs are
+ * allocated before the insert from a sequence on the first shard, since an AUTO_INCREMENT column
+ * per shard would hand out the same IDs on every shard. Listings and aggregates run on all shards
+ * in parallel and are merged in customer_id order, so callers see the same results as from one
+ * schema. Bulk statements from {@link #executeBatch(List, boolean)} load into the first shard, and
+ * {@link #rebalance()} then moves every customer to its owner.
+ *
+ * A write that spans shards commits one transaction per shard: if one shard fails, the others
+ * keep their part. Each shard's part is still all or nothing.
+ *
+ * {@link #rebalance()} runs online. It moves customers a chunk at a time, each under a short
+ * exclusive lock that the operations of this DAO wait on, so no reader sees a customer twice or
+ * not at all. Streams over whole tables read a page at a time and take the lock per page, so an
+ * export does not hold up a rebalance, and a chunk that cannot get the lock quickly backs off
+ * rather than making new readers queue behind it. Until the rebalance finishes, customers are
+ * looked up on every shard rather than only on their owner. Writes made by other processes during
+ * a rebalance are not coordinated.
+ *
+ */
+public class ShardedCustomersDao extends CustomersDao {
+  public static final String SHARDS = "customers.db.shards";
+  public static final String VIRTUAL_NODES = "customers.db.shard.virtualNodes";
+
+  private static final String LAYOUT_TABLE = "shard_layout";
+  private static final String SEQUENCE_TABLE = "id_sequences";
+  private static final String CUSTOMER_SEQUENCE = "customer_id";
+  private static final int ID_BLOCK_SIZE = 100;
+  private static final int MOVE_CHUNK_SIZE = 500;
+  private static final int MOVE_LOCK_WAIT_MILLIS = 100;
+  private static final int MOVE_LOCK_BACKOFF_MILLIS = 50;
+  private static final int STREAM_PAGE_SIZE = 5000;
+
+  private final List<CustomersDao> shards;
+  private final ShardRing ring;
+  private final ExecutorService executor;
+
+  /* Operations hold the read lock; moving a chunk of customers holds the write lock. */
+  private final ReentrantReadWriteLock placementLock = new ReentrantReadWriteLock();
+
+  /* Null until read from the layout table: true while customers may be on the wrong shard. */
+  private volatile Boolean placementPending;
+
+  private final Object idLock = new Object();
+  private int nextId;
+  private int endId;
+
+  /**
+   * @param shards The DAO of each shard, in the order of the ring's names. Their inserts must
+   *        write the customer IDs they are given.
+   * @param ring The ring that assigns customers to the shards.
+   * @param changeFeed The feed the shards publish to.
+   */
+  ShardedCustomersDao(List<CustomersDao> shards, ShardRing ring, ChangeFeed changeFeed) {
+    super(shards.get(0).getConnectionSource(), changeFeed, true);
+
+    if (shards.size() != ring.getShardCount()) {
+      throw new DbException("The ring has " + ring.getShardCount() + " shard(s) but "
+          + shards.size() + " were given");
+    }
+
+    this.shards = List.copyOf(shards);
+    this.ring = ring;
+    this.executor = Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "shard-query");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Creates a DAO over the given schemas, connecting to each with the configured user and driver
+   * properties. Each shard gets a {@link ConnectionPool} per profile, sized like the primary's
+   * ({@value DbConnection#POOL_SIZE}).
+   *
+   * @param locations The shards as host:port/schema.
+   * @param virtualNodes The number of ring points per shard.
+   * @param changeFeed The feed that committed writes are published to.
+   * @return The DAO.
+   */
+  public static ShardedCustomersDao create(List<String> locations, int virtualNodes,
+      ChangeFeed changeFeed) {
+    if (locations.isEmpty()) {
+      throw new DbException("At least one shard is needed");
+    }
+
+    DbConfig config = DbConnection.getConfig();
+    List<CustomersDao> shards = new ArrayList<>(locations.size());
+
+    for (String location : locations) {
+      Map<DbProfile, DataSource> dataSources = new EnumMap<>(DbProfile.class);
+
+      for (DbProfile profile : DbProfile.values()) {
+        dataSources.put(profile, new ConnectionPool(
+            new DriverManagerDataSource(config.getSchemaUrl(location),
+                config.getDriverProperties(profile)),
+            config.getInt(DbConnection.POOL_SIZE, 4),
+            config.getInt(DbConnection.POOL_BORROW_TIMEOUT_MILLIS, 30000)));
+      }
+
+      shards.add(new CustomersDao(ConnectionSource.of(dataSources), changeFeed, true));
+    }
+
+    return new ShardedCustomersDao(shards, new ShardRing(locations, virtualNodes), changeFeed);
+  }
+
+  /**
+   * Creates a DAO over the shards listed in the configuration ({@value #SHARDS}).
+   *
+   * @param changeFeed The feed that committed writes are published to.
+   * @return The DAO.
+   */
+  public static ShardedCustomersDao fromConfig(ChangeFeed changeFeed) {
+    DbConfig config = DbConnection.getConfig();
+    return create(getConfiguredShards(), config.getInt(VIRTUAL_NODES, 64), changeFeed);
+  }
+
+  /**
+   * @return True if shards are configured ({@value #SHARDS} is not empty).
+   */
+  public static boolean isConfigured() {
+    return !getConfiguredShards().isEmpty();
+  }
+
+  private static List<String> getConfiguredShards() {
+    List<String> locations = new ArrayList<>();
+
+    for (String location : DbConnection.getConfig().get(SHARDS, "").split(",")) {
+      if (!location.isBlank()) {
+        locations.add(location.trim());
+      }
+    }
+
+    return locations;
+  }
+
+  public ShardRing getRing() {
+    return ring;
+  }
+
+  public int getShardCount() {
+    return shards.size();
+  }
+
+  /*
+   * Reads
+   */
+
+  @Override
+  public List<Customer> fetchAllCustomers(FetchPlan plan) {
+    return read(() -> merge(onEachShard(shard -> shard.fetchAllCustomers(plan)),
+        Comparator.comparing(Customer::getCustomerId), Integer.MAX_VALUE));
+  }
+
+  @Override
+  public List<Project> fetchAllProjects() {
+    return read(() -> merge(onEachShard(CustomersDao::fetchAllProjects),
+        Comparator.comparing(Project::getCustomerId), Integer.MAX_VALUE));
+  }
+
+  /**
+   * Scans every shard in parallel, each with its own share of the slices. An ordered scan merges
+   * the shards' projects in customer_id order before collecting them.
+   */
+  @Override
+  public <A, R> R scanProjects(int slices, boolean ordered, Collector<Project, A, R> collector) {
+    if (slices < 1) {
+      throw new DbException("The number of slices must be at least 1, not " + slices);
+    }
+
+    int shardSlices = Math.max(1, slices / shards.size());
+
+    return read(() -> {
+      if (ordered) {
+        List<List<Project>> parts =
+            onEachShard(shard -> shard.scanProjects(shardSlices, true, Collectors.toList()));
+
+        return merge(parts, Comparator.comparing(Project::getCustomerId), Integer.MAX_VALUE)
+            .stream().collect(collector);
+      }
+
+      Collector<Project, A, A> containers = Collector.of(collector.supplier(),
+          collector.accumulator(), collector.combiner(), Collector.Characteristics.IDENTITY_FINISH);
+      A result = null;
+
+      for (A next : onEachShard(shard -> shard.scanProjects(shardSlices, false, containers))) {
+        result = Objects.isNull(result) ? next : collector.combiner().apply(result, next);
+      }
+
+      return collector.finisher().apply(result);
+    });
+  }
+
+  /**
+   * Streams the projects of every shard merged in customer_id order, a page at a time. See
+   * {@link #streamCustomersAndProjects(RowHandler, RowHandler)}.
+   */
+  @Override
+  public void streamProjects(RowHandler handler) {
+    try (AdmissionController.Admission job = admitJob(Workload.BULK)) {
+      streamPages(PROJECT_COLUMNS, PROJECTS_TABLE, handler, Workload.BULK);
+    }
+  }
+
+  /**
+   * Merges the top projects of each shard. Every shard ranks in SQL, so no shard returns more than
+   * the limit.
+   */
+  @Override
+  public List<Project> fetchTopProjects(RankColumn column, boolean descending, Integer installYear,
+      int limit) {
+    checkTopLimit(limit);
+    Comparator<Project> order = descending ? column.comparator().reversed() : column.comparator();
+
+    return read(() -> merge(
+        onEachShard(shard -> shard.fetchTopProjects(column, descending, installYear, limit)), order,
+        limit));
+  }
+
+  @Override
+  public List<Project> fetchTopProjects(Comparator<Project> order, Integer installYear,
+      int limit) {
+    checkTopLimit(limit);
+    return read(() -> merge(
+        onEachShard(shard -> shard.fetchTopProjects(order, installYear, limit)),
+        order.thenComparing(Project::getCustomerId), limit));
+  }
+
+  @Override
+  public List<Project> fetchProjectsInstalled(int fromYear, int toYear) {
+    return read(() -> merge(onEachShard(shard -> shard.fetchProjectsInstalled(fromYear, toYear)),
+        Comparator.comparing(Project::getCustomerId), Integer.MAX_VALUE));
+  }
+
+  @Override
+  public List<Project> fetchUninstalledProjects() {
+    return read(() -> merge(onEachShard(CustomersDao::fetchUninstalledProjects),
+        Comparator.comparing(Project::getCustomerId), Integer.MAX_VALUE));
+  }
+
+  /**
+   * Streams the customers of every shard merged in customer_id order, a page at a time. See
+   * {@link #streamCustomersAndProjects(RowHandler, RowHandler)}.
+   */
+  @Override
+  public void streamCustomers(RowHandler handler) {
+    try (AdmissionController.Admission job = admitJob(Workload.BULK)) {
+      streamPages(CUSTOMER_COLUMNS, CUSTOMERS_TABLE, handler, Workload.BULK);
+    }
+  }
+
+  /**
+   * Streams the customers of every shard, then the projects of every shard, each merged in
+   * customer_id order. Unlike on one schema, the rows do not come from one consistent snapshot:
+   * every page of {@value #STREAM_PAGE_SIZE} rows is read at its own point in time, so writes
+   * committed during the stream may show in later pages and not in earlier ones, and a project
+   * may be streamed whose customer was inserted after the customers were. A customer that is
+   * moved between shards during the stream is still streamed exactly once.
+   */
+  @Override
+  public void streamCustomersAndProjects(RowHandler customerHandler, RowHandler projectHandler) {
+    try (AdmissionController.Admission job = admitJob(Workload.BULK)) {
+      streamPages(CUSTOMER_COLUMNS, CUSTOMERS_TABLE, customerHandler, Workload.BULK);
+      streamPages(PROJECT_COLUMNS, PROJECTS_TABLE, projectHandler, Workload.BULK);
+    }
+  }
+
+  /**
+   * Asks every shard for the page and keeps the first {@code limit} customers of the merged pages.
+   */
+  @Override
+  public List<Customer> fetchCustomers(int afterCustomerId, int limit, FetchPlan plan) {
+    return read(() -> merge(
+        onEachShard(shard -> shard.fetchCustomers(afterCustomerId, limit, plan)),
+        Comparator.comparing(Customer::getCustomerId), limit));
+  }
+
+  @Override
+  public List<Project> fetchProjects(int afterCustomerId, int limit) {
+    return read(() -> merge(onEachShard(shard -> shard.fetchProjects(afterCustomerId, limit)),
+        Comparator.comparing(Project::getCustomerId), limit));
+  }
+
+  /**
+   * Streams the IDs a page at a time like
+   * {@link #streamCustomersAndProjects(RowHandler, RowHandler)}, so an ID is never missed while
+   * customers move, but the two streams are not read from one snapshot.
+   */
+  @Override
+  public void streamIds(RowHandler customerIdHandler, RowHandler projectIdHandler) {
+    try (AdmissionController.Admission job = admitJob(Workload.SCAN)) {
+      streamPages("customer_id", CUSTOMERS_TABLE, customerIdHandler, Workload.SCAN);
+      streamPages("project_id, customer_id", PROJECTS_TABLE, projectIdHandler, Workload.SCAN);
+    }
+  }
+
+  /*
+   * Streams a table from every shard in customer_id order. Each page is read from all shards
+   * together under the placement lock, so a customer being moved is in exactly one of them, and
+   * the rows are handed on after the lock is released, so a slow handler does not hold up a
+   * rebalance. A page ends at the lowest last customer_id of the shards that filled theirs; the
+   * rows after it are read again with the next page.
+   */
+  private void streamPages(String columns, String table, RowHandler handler, Workload workload) {
+    int afterCustomerId = 0;
+
+    try {
+      while (true) {
+        int after = afterCustomerId;
+        List<CachedRowSet> pages = read(() -> onEachShard(
+            shard -> shard.fetchRowPage(columns, table, after, STREAM_PAGE_SIZE, workload)));
+        int upTo = Integer.MAX_VALUE;
+
+        for (CachedRowSet page : pages) {
+          if (page.size() == STREAM_PAGE_SIZE && page.last()) {
+            upTo = Math.min(upTo, page.getInt("customer_id"));
+            page.beforeFirst();
+          }
+        }
+
+        mergePages(pages, upTo, handler);
+
+        if (upTo == Integer.MAX_VALUE) {
+          return;
+        }
+
+        afterCustomerId = upTo;
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /*
+   * Hands the rows of the shards' pages up to a customer ID to the handler in customer_id order.
+   * There are only a few shards, so the next row is found by comparing their current rows.
+   */
+  private static void mergePages(List<CachedRowSet> pages, int upTo, RowHandler handler)
+      throws SQLException {
+    List<CachedRowSet> open = new ArrayList<>(pages.size());
+
+    for (CachedRowSet page : pages) {
+      if (page.next() && page.getInt("customer_id") <= upTo) {
+        open.add(page);
+      }
+    }
+
+    while (!open.isEmpty()) {
+      CachedRowSet next = open.get(0);
+
+      for (CachedRowSet page : open) {
+        if (page.getInt("customer_id") < next.getInt("customer_id")) {
+          next = page;
+        }
+      }
+
+      handler.handle(next);
+
+      if (!next.next() || next.getInt("customer_id") > upTo) {
+        open.remove(next);
+      }
+    }
+  }
+
+  @Override
+  public Set<Integer> fetchExistingProjectIds(Collection<Integer> projectIds) {
+    return read(() -> {
+      Set<Integer> existing = new HashSet<>();
+      onEachShard(shard -> shard.fetchExistingProjectIds(projectIds)).forEach(existing::addAll);
+      return existing;
+    });
+  }
+
+  @Override
+  public ProjectSummary fetchProjectSummary() {
+    return read(() -> onEachShard(CustomersDao::fetchProjectSummary).stream()
+        .reduce(ProjectSummary::combine).orElseThrow());
+  }
+
+  @Override
+  public ProjectSummary fetchProjectSummary(int fromYear, int toYear) {
+    return read(() -> onEachShard(shard -> shard.fetchProjectSummary(fromYear, toYear)).stream()
+        .reduce(ProjectSummary::combine).orElseThrow());
+  }
+
+  /**
+   * Reads the customer from its owner. While a rebalance is pending, a customer not on its owner
+   * is looked for on the other shards.
+   */
+  @Override
+  public Optional<Customer> fetchCustomerById(Integer customerId, FetchPlan plan) {
+    return read(() -> {
+      int owner = ring.shardFor(customerId);
+      Optional<Customer> customer = shards.get(owner).fetchCustomerById(customerId, plan);
+
+      for (int shard = 0; customer.isEmpty() && isPlacementPending()
+          && shard < shards.size(); shard++) {
+        if (shard != owner) {
+          customer = shards.get(shard).fetchCustomerById(customerId, plan);
+        }
+      }
+
+      return customer;
+    });
+  }
+
+  @Override
+  public List<Customer> fetchCustomersByIds(Collection<Integer> customerIds, FetchPlan plan) {
+    return read(() -> {
+      List<List<Integer>> ids = isPlacementPending() ? everyShard(List.copyOf(customerIds))
+          : byShard(customerIds, Integer::intValue, ring::shardFor);
+
+      return merge(onShards(ids, (shard, part) -> shard.fetchCustomersByIds(part, plan)),
+          Comparator.comparing(Customer::getCustomerId), Integer.MAX_VALUE);
+    });
+  }
+
+  /*
+   * Writes
+   */
+
+  /**
+   * Inserts the customer on its owner, with a newly allocated customer ID.
+   */
+  @Override
+  public Customer insertCustomer(Customer customer) {
+    return write(() -> {
+      customer.setCustomerId(allocateIds(1)[0]);
+      return shards.get(ring.shardFor(customer.getCustomerId())).insertCustomer(customer);
+    });
+  }
+
+  /**
+   * Inserts the project on its customer's shard.
+   *
+   * @param project The project. It must have the ID of an existing customer.
+   */
+  @Override
+  public Project insertProject(Project project) {
+    if (Objects.isNull(project.getCustomerId())) {
+      throw new DbException("A sharded project insert needs the ID of its customer");
+    }
+
+    return write(() -> shards.get(locate(List.of(project.getCustomerId()))
+        .applyAsInt(project.getCustomerId())).insertProject(project));
+  }
+
+  @Override
+  public void insertCustomers(Collection<Customer> customers) {
+    write(() -> onShards(byShard(customers, Customer::getCustomerId, ring::shardFor),
+        (shard, part) -> {
+          shard.insertCustomers(part);
+          return null;
+        }));
+  }
+
+  @Override
+  public void insertProjects(Collection<Project> projects) {
+    write(() -> onShards(byCustomerLocation(projects, Project::getCustomerId), (shard, part) -> {
+      shard.insertProjects(part);
+      return null;
+    }));
+  }
+
+  /**
+   * Allocates the customers' IDs and inserts each customer with its projects on its owner, in one
+   * transaction per shard.
+   */
+  @Override
+  public List<Customer> insertCustomersWithProjects(List<Customer> customers) {
+    return write(() -> {
+      assignIds(customers);
+      onShards(byShard(customers, Customer::getCustomerId, ring::shardFor),
+          CustomersDao::insertCustomersWithProjects);
+      return customers;
+    });
+  }
+
+  /**
+   * Splits the unit of work by shard and writes each shard's part in one transaction.
+   */
+  @Override
+  public void writeChanges(List<Customer> newCustomers, List<Project> newProjects,
+      List<Customer> changedCustomers, List<Project> changedProjects) {
+    write(() -> {
+      assignIds(newCustomers);
+
+      List<List<Customer>> inserted =
+          byShard(newCustomers, Customer::getCustomerId, ring::shardFor);
+      List<Integer> existing = new ArrayList<>();
+      newProjects.forEach(project -> existing.add(project.getCustomerId()));
+      changedCustomers.forEach(customer -> existing.add(customer.getCustomerId()));
+      changedProjects.forEach(project -> existing.add(project.getCustomerId()));
+
+      IntUnaryOperator location = locate(existing);
+      List<List<Project>> added = byShard(newProjects, Project::getCustomerId, location);
+      List<List<Customer>> renamed = byShard(changedCustomers, Customer::getCustomerId, location);
+      List<List<Project>> updated = byShard(changedProjects, Project::getCustomerId, location);
+
+      return onEachIndex(index -> {
+        if (inserted.get(index).size() + added.get(index).size() + renamed.get(index).size()
+            + updated.get(index).size() > 0) {
+          shards.get(index).writeChanges(inserted.get(index), added.get(index),
+              renamed.get(index), updated.get(index));
+        }
+
+        return null;
+      });
+    });
+  }
+
+  @Override
+  public void upsertProjects(Collection<Project> projects) {
+    write(() -> onShards(byCustomerLocation(projects, Project::getCustomerId), (shard, part) -> {
+      shard.upsertProjects(part);
+      return null;
+    }));
+  }
+
+  /**
+   * Runs on every shard, since a project ID can be on any of them.
+   */
+  @Override
+  public int markInstalled(Collection<Integer> projectIds, int year, int month) {
+    return write(() -> onEachShard(shard -> shard.markInstalled(projectIds, year, month)).stream()
+        .mapToInt(Integer::intValue).sum());
+  }
+
+  /**
+   * Archives on every shard in parallel, each in its own batches.
+   */
+  @Override
+  public int archiveProjects(int beforeYear, int batchSize) {
+    return write(() -> onEachShard(shard -> shard.archiveProjects(beforeYear, batchSize)).stream()
+        .mapToInt(Integer::intValue).sum());
+  }
+
+  @Override
+  public int deleteCustomers(Collection<Integer> customerIds) {
+    return write(() -> onShards(byCustomerLocation(customerIds, Integer::intValue),
+        CustomersDao::deleteCustomers).stream().mapToInt(Integer::intValue).sum());
+  }
+
+  /**
+   * Runs DDL on every shard, so they keep the same schema, and then everything else on the first
+   * shard. A batch that mixes the two therefore runs its DDL first. Loaded rows are moved to their
+   * owners by {@link #publishReload()}, which this calls when asked to.
+   */
+  @Override
+  public void executeBatch(List<String> sqlBatch, boolean publishReload,
+      AdmissionController.Admission job) {
+    List<String> ddl = new ArrayList<>();
+    List<String> dml = new ArrayList<>();
+
+    for (String sql : sqlBatch) {
+      String verb = sql.stripLeading().split("\\s", 2)[0].toUpperCase(Locale.ROOT);
+      boolean isDml = List.of("INSERT", "UPDATE", "DELETE", "REPLACE").contains(verb);
+      (isDml ? dml : ddl).add(sql);
+    }
+
+    write(() -> {
+      if (!dml.isEmpty()) {
+        placementPending = true;
+      }
+
+      if (!ddl.isEmpty()) {
+        onEachShard(shard -> {
+          shard.executeBatch(ddl, false, job);
+          return null;
+        });
+      }
+
+      if (!dml.isEmpty()) {
+        shards.get(0).executeBatch(dml, false, job);
+      }
+
+      return null;
+    });
+
+    if (publishReload) {
+      publishReload();
+    }
+  }
+
+  /**
+   * Admits the job on every shard, one shard after another in shard order.
+   */
+  @Override
+  AdmissionController.Admission admitJob(Workload workload) {
+    List<AdmissionController.Admission> admitted = new ArrayList<>(shards.size());
+    AdmissionController.Admission job =
+        () -> admitted.forEach(AdmissionController.Admission::close);
+
+    try {
+      for (CustomersDao shard : shards) {
+        admitted.add(shard.admitJob(workload));
+      }
+    } catch (RuntimeException e) {
+      job.close();
+      throw e;
+    }
+
+    return job;
+  }
+
+  /**
+   * Resets the counter on the first shard, where bulk statements load.
+   */
+  @Override
+  public void resetAutoIncrement(String table, String keyColumn,
+      AdmissionController.Admission job) {
+    write(() -> {
+      shards.get(0).resetAutoIncrement(table, keyColumn, job);
+      return null;
+    });
+  }
+
+  /**
+   * Moves every customer to its owner and restarts the ID sequence after the highest loaded
+   * customer ID, then tells subscribers that both tables were replaced.
+   */
+  @Override
+  public void publishReload() {
+    rebalance();
+    resetIdSequence();
+    super.publishReload();
+  }
+
+  /**
+   * Warms up every shard's DAO in parallel.
+   */
+  @Override
+  public int warmUp(int connectionCount) {
+    return onEachShard(shard -> shard.warmUp(connectionCount)).stream()
+        .mapToInt(Integer::intValue).sum();
+  }
+
+  /**
+   * Cancels the running operations of the workload on every shard. Each shard admits its own
+   * operations, so a workload's limit applies per shard.
+   */
+  @Override
+  public int cancelOperations(Workload workload) {
+    int cancelled = super.cancelOperations(workload);
+
+    for (CustomersDao shard : shards) {
+      cancelled += shard.cancelOperations(workload);
+    }
+
+    return cancelled;
+  }
+
+  /*
+   * Placement
+   */
+
+  /**
+   * Moves every customer that is not on the shard the ring assigns it to, with its projects, to
+   * that shard. Run this after adding or removing a shard (every process must be given the same
+   * shard list) or after loading data. Customers are moved {@value #MOVE_CHUNK_SIZE} at a time:
+   * each chunk is copied to its owner and then deleted from its old shard while this DAO's other
+   * operations wait. A rebalance that is interrupted can be run again and finishes the moves.
+   *
+   * @return The number of customers moved.
+   * @throws DbException Thrown if a move fails. Chunks moved before the failure stay moved.
+   */
+  public synchronized int rebalance() {
+    return runAsBulk(this::moveMisplaced);
+  }
+
+  private int moveMisplaced() {
+    placementPending = true;
+    int moved = 0;
+
+    for (int source = 0; source < shards.size(); source++) {
+      int afterCustomerId = 0;
+      List<Customer> page;
+
+      while (!(page = shards.get(source).fetchCustomers(afterCustomerId, MOVE_CHUNK_SIZE,
+          FetchPlan.CUSTOMERS_ONLY)).isEmpty()) {
+        afterCustomerId = page.get(page.size() - 1).getCustomerId();
+        List<Integer> misplaced = new ArrayList<>();
+
+        for (Customer customer : page) {
+          if (ring.shardFor(customer.getCustomerId()) != source) {
+            misplaced.add(customer.getCustomerId());
+          }
+        }
+
+        if (!misplaced.isEmpty()) {
+          moved += move(source, misplaced);
+        }
+      }
+    }
+
+    recordLayout();
+    placementPending = false;
+    return moved;
+  }
+
+  /*
+   * Copies the customers to their owners and deletes them from the source, under the write lock.
+   * Anything left on a target by an interrupted move is deleted before the copy.
+   */
+  private int move(int source, List<Integer> customerIds) {
+    lockForMove();
+
+    try {
+      List<Customer> customers =
+          shards.get(source).fetchCustomersByIds(customerIds, FetchPlan.WITH_PROJECTS);
+      List<List<Customer>> targets = byShard(customers, Customer::getCustomerId, ring::shardFor);
+
+      for (int target = 0; target < shards.size(); target++) {
+        List<Customer> part = targets.get(target);
+
+        if (!part.isEmpty()) {
+          CustomersDao shard = shards.get(target);
+          shard.deleteCustomers(customerIds(part));
+          shard.writeChanges(part, List.of(), List.of(), List.of());
+        }
+      }
+
+      return shards.get(source).deleteCustomers(customerIds(customers));
+    } finally {
+      placementLock.writeLock().unlock();
+    }
+  }
+
+  /*
+   * Takes the write lock. A writer waiting on the lock makes new readers wait behind it, so rather
+   * than queue for as long as a long read runs, it gives up after a short wait and lets the
+   * readers through before trying again.
+   */
+  private void lockForMove() {
+    try {
+      while (!placementLock.writeLock().tryLock(MOVE_LOCK_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+        Thread.sleep(MOVE_LOCK_BACKOFF_MILLIS);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DbException("Interrupted while waiting to move customers", e);
+    }
+  }
+
+  private static List<Integer> customerIds(List<Customer> customers) {
+    return customers.stream().map(Customer::getCustomerId).collect(Collectors.toList());
+  }
+
+  /**
+   * @return True while customers may not be on their owners: the data was placed for a different
+   *         ring, or a load or rebalance has not finished.
+   */
+  public boolean isPlacementPending() {
+    Boolean pending = placementPending;
+
+    if (Objects.isNull(pending)) {
+      pending = !ring.getSignature().equals(fetchLayout());
+      placementPending = pending;
+    }
+
+    return pending;
+  }
+
+  private String fetchLayout() {
+    String sql = "SELECT signature FROM " + LAYOUT_TABLE + " WHERE name = 'ring'";
+
+    try (Connection conn = getConnectionSource().getConnection(DbProfile.OLTP)) {
+      if (!tableExists(conn, LAYOUT_TABLE)) {
+        return null;
+      }
+
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (ResultSet rs = stmt.executeQuery()) {
+          return rs.next() ? rs.getString(1) : null;
+        }
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  private void recordLayout() {
+    // @formatter:off
+    String create = "CREATE TABLE IF NOT EXISTS " + LAYOUT_TABLE + " ("
+        + "name VARCHAR(32) NOT NULL PRIMARY KEY, signature VARCHAR(4096) NOT NULL)";
+    String sql = "INSERT INTO " + LAYOUT_TABLE + " (name, signature) VALUES ('ring', ?) "
+        + "ON DUPLICATE KEY UPDATE signature = VALUES(signature)";
+    // @formatter:on
+
+    try (Connection conn = getConnectionSource().getConnection(DbProfile.OLTP)) {
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute(create);
+      }
+
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        setParameter(stmt, 1, ring.getSignature(), String.class);
+        stmt.executeUpdate();
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /*
+   * IDs
+   */
+
+  private void assignIds(List<Customer> customers) {
+    int[] ids = allocateIds(customers.size());
+
+    for (int index = 0; index < ids.length; index++) {
+      customers.get(index).setCustomerId(ids[index]);
+    }
+  }
+
+  /*
+   * Hands out IDs from the block reserved by this process, reserving another block from the
+   * sequence when it runs out.
+   */
+  private int[] allocateIds(int count) {
+    int[] ids = new int[count];
+
+    synchronized (idLock) {
+      for (int index = 0; index < count; index++) {
+        if (nextId == endId) {
+          reserveIds(Math.max(ID_BLOCK_SIZE, count - index));
+        }
+
+        ids[index] = nextId++;
+      }
+    }
+
+    return ids;
+  }
+
+  /*
+   * Reserves the next size IDs of the sequence row, which is locked for the reservation so that
+   * concurrent processes get disjoint blocks. A missing row starts after the highest customer ID
+   * on any shard.
+   */
+  private void reserveIds(int size) {
+    // @formatter:off
+    String create = "CREATE TABLE IF NOT EXISTS " + SEQUENCE_TABLE + " ("
+        + "name VARCHAR(32) NOT NULL PRIMARY KEY, next_id INT NOT NULL)";
+    String select = "SELECT next_id FROM " + SEQUENCE_TABLE + " WHERE name = ? FOR UPDATE";
+    String insert = "INSERT IGNORE INTO " + SEQUENCE_TABLE + " (name, next_id) VALUES (?, ?)";
+    String update = "UPDATE " + SEQUENCE_TABLE + " SET next_id = ? WHERE name = ?";
+    // @formatter:on
+
+    try (Connection conn = getConnectionSource().getConnection(DbProfile.OLTP)) {
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute(create);
+      }
+
+      startTransaction(conn);
+
+      try {
+        Integer start = readSequence(conn, select);
+
+        if (Objects.isNull(start)) {
+          int first = onEachShard(CustomersDao::fetchMaxCustomerId).stream()
+              .mapToInt(Integer::intValue).max().orElse(0) + 1;
+
+          try (PreparedStatement stmt = conn.prepareStatement(insert)) {
+            setParameter(stmt, 1, CUSTOMER_SEQUENCE, String.class);
+            setParameter(stmt, 2, first, Integer.class);
+            stmt.executeUpdate();
+          }
+
+          start = readSequence(conn, select);
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(update)) {
+          setParameter(stmt, 1, start + size, Integer.class);
+          setParameter(stmt, 2, CUSTOMER_SEQUENCE, String.class);
+          stmt.executeUpdate();
+        }
+
+        commitTransaction(conn);
+        nextId = start;
+        endId = start + size;
+      } catch (Exception e) {
+        rollbackTransaction(conn);
+        throw new DbException(e);
+      }
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
+  private Integer readSequence(Connection conn, String sql) throws SQLException {
+    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+      setParameter(stmt, 1, CUSTOMER_SEQUENCE, String.class);
+
+      try (ResultSet rs = stmt.executeQuery()) {
+        return rs.next() ? rs.getInt(1) : null;
+      }
+    }
+  }
+
+  /*
+   * Drops the sequence and this process's block, so the next ID follows the loaded data. Other
+   * processes keep the blocks they hold, so a reload should not run beside them.
+   */
+  private void resetIdSequence() {
+    synchronized (idLock) {
+      shards.get(0).executeBatch(List.of("DROP TABLE IF EXISTS " + SEQUENCE_TABLE), false);
+      nextId = 0;
+      endId = 0;
+    }
+  }
+
+  /*
+   * Routing
+   */
+
+  private <T> T read(Supplier<T> operation) {
+    placementLock.readLock().lock();
+
+    try {
+      return operation.get();
+    } finally {
+      placementLock.readLock().unlock();
+    }
+  }
+
+  private <T> T write(Supplier<T> operation) {
+    return read(operation);
+  }
+
+  /*
+   * Returns where each of the customers is. Normally that is its owner; while placement is pending
+   * the customers are looked up on every shard, and those not found anywhere go to their owners.
+   */
+  private IntUnaryOperator locate(Collection<Integer> customerIds) {
+    if (!isPlacementPending() || customerIds.isEmpty()) {
+      return ring::shardFor;
+    }
+
+    Set<Integer> distinct = new HashSet<>(customerIds);
+    List<List<Customer>> found = onEachShard(
+        shard -> shard.fetchCustomersByIds(distinct, FetchPlan.CUSTOMERS_ONLY));
+    Map<Integer, Integer> locations = new HashMap<>();
+
+    for (int shard = 0; shard < found.size(); shard++) {
+      for (Customer customer : found.get(shard)) {
+        locations.put(customer.getCustomerId(), shard);
+      }
+    }
+
+    return customerId -> locations.getOrDefault(customerId, ring.shardFor(customerId));
+  }
+
+  private <T> List<List<T>> byCustomerLocation(Collection<T> items,
+      ToIntFunction<T> customerId) {
+    List<Integer> customerIds = new ArrayList<>(items.size());
+    items.forEach(item -> customerIds.add(customerId.applyAsInt(item)));
+    return byShard(items, customerId, locate(customerIds));
+  }
+
+  /*
+   * Splits the items into one list per shard.
+   */
+  private <T> List<List<T>> byShard(Collection<T> items, ToIntFunction<T> customerId,
+      IntUnaryOperator shardOf) {
+    List<List<T>> parts = new ArrayList<>(shards.size());
+
+    for (int shard = 0; shard < shards.size(); shard++) {
+      parts.add(new ArrayList<>());
+    }
+
+    for (T item : items) {
+      parts.get(shardOf.applyAsInt(customerId.applyAsInt(item))).add(item);
+    }
+
+    return parts;
+  }
+
+  private <T> List<List<T>> everyShard(List<T> items) {
+    List<List<T>> parts = new ArrayList<>(shards.size());
+
+    for (int shard = 0; shard < shards.size(); shard++) {
+      parts.add(items);
+    }
+
+    return parts;
+  }
+
+  private <T> List<T> onEachShard(Function<CustomersDao, T> call) {
+    return onEachIndex(index -> call.apply(shards.get(index)));
+  }
+
+  /*
+   * Runs the call for every shard index in parallel and waits for all of them. The first failure
+   * is thrown after every call has finished.
+   */
+  private <T> List<T> onEachIndex(IntFunction<T> call) {
+    List<Future<T>> futures = new ArrayList<>(shards.size());
+
+    for (int shard = 0; shard < shards.size(); shard++) {
+      int index = shard;
+      futures.add(executor.submit(() -> call.apply(index)));
+    }
+
+    List<T> results = new ArrayList<>(futures.size());
+    DbException failure = null;
+
+    for (Future<T> future : futures) {
+      try {
+        results.add(future.get());
+      } catch (ExecutionException e) {
+        if (Objects.isNull(failure)) {
+          failure = e.getCause() instanceof DbException ? (DbException) e.getCause()
+              : new DbException(e.getCause());
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new DbException("Interrupted while waiting for a shard", e);
+      }
+    }
+
+    if (Objects.nonNull(failure)) {
+      throw failure;
+    }
+
+    return results;
+  }
+
+  /*
+   * Runs the call on each shard with a non-empty part, in parallel.
+   */
+  private <T, R> List<R> onShards(List<List<T>> parts, ShardCall<T, R> call) {
+    List<R> results = new ArrayList<>();
+
+    for (R result : onEachIndex(index -> parts.get(index).isEmpty() ? null
+        : call.apply(shards.get(index), parts.get(index)))) {
+      if (Objects.nonNull(result)) {
+        results.add(result);
+      }
+    }
+
+    return results;
+  }
+
+  /*
+   * Merges lists that are each sorted by the order into the first limit elements of their union.
+   */
+  private static <T> List<T> merge(List<List<T>> parts, Comparator<? super T> order, int limit) {
+    List<T> merged = new ArrayList<>();
+    parts.forEach(merged::addAll);
+    merged.sort(order);
+    return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+  }
+
+  @FunctionalInterface
+  private interface ShardCall<T, R> {
+    R apply(CustomersDao shard, List<T> part);
+  }
+
+  @Override
+  public String toString() {
+    return "ShardedCustomersDao(" + ring + ")";
+  }
+}
@@ -0,0 +1,77 @@
+package customers.dao;
+
+/**
+ * The kinds of work a DAO operation does, for admission control and timeouts. Each operation is
+ * admitted by an {@link AdmissionController} under its workload's concurrency limit and must finish
+ * within its workload's time budget. The defaults listed here can be overridden in the
+ * configuration with keys of the form {@code customers.db.workload.<workload>.<setting>}, where the
+ * settings are timeoutSeconds, maxConcurrent and queueMillis. A value of 0 turns the limit off.
+ *
+ */
+public enum Workload {
+  // @formatter:off
+  /**
+   * Point reads and short index range reads, such as a customer by ID or a page. Not limited, so
+   * lookups never wait behind heavy work.
+   */
+  LOOKUP(5, 0, 0),
+
+  /**
+   * Reads of a whole table or a large part of it: the unfiltered fetches, the parallel scan, the
+   * lazy load of the projects of such a fetch, and period queries.
+   */
+  SCAN(600, 2, 2000),
+
+  /** Aggregates and rankings over whole tables, such as the project summary. */
+  REPORT(120, 2, 2000),
+
+  /** Inserts, updates and deletes. */
+  WRITE(120, 0, 0),
+
+  /**
+   * Jobs that are meant to run over whole tables for as long as that takes: loading a data file,
+   * the streams behind exports, archival and moving customers between shards. No time limit, but
+   * few run at once. A job that spreads over several connections, such as a parallel load, is
+   * admitted once and takes one slot.
+   */
+  BULK(0, 2, 30000);
+  // @formatter:on
+
+  private final int timeoutSeconds;
+  private final int maxConcurrent;
+  private final int queueMillis;
+
+  Workload(int timeoutSeconds, int maxConcurrent, int queueMillis) {
+    this.timeoutSeconds = timeoutSeconds;
+    this.maxConcurrent = maxConcurrent;
+    this.queueMillis = queueMillis;
+  }
+
+  /**
+   * @return The name used for this workload in configuration keys, for example "scan".
+   */
+  public String configName() {
+    return name().toLowerCase();
+  }
+
+  /**
+   * @return The default time an operation may run, or 0 for no limit.
+   */
+  public int defaultTimeoutSeconds() {
+    return timeoutSeconds;
+  }
+
+  /**
+   * @return The default number of operations that may run at once, or 0 for no limit.
+   */
+  public int defaultMaxConcurrent() {
+    return maxConcurrent;
+  }
+
+  /**
+   * @return The default time an operation waits for admission before it is turned away.
+   */
+  public int defaultQueueMillis() {
+    return queueMillis;
+  }
+}
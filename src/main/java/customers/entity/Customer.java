@@ -3,35 +3,52 @@
  */
 package customers.entity;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 
 
 public class Customer {
-  private Integer customerId;
+  /*
+   * Every customer without projects shares this list until its own list is needed, so a large fetch
+   * of customers only does not allocate a list per customer. An unset ID is held as NONE.
+   */
+  private static final List<Project> NO_PROJECTS = Collections.emptyList();
+  private static final int NONE = Integer.MIN_VALUE;
+
+  private int customerId = NONE;
   private String customerName;
-  private List<Project> projects = new LinkedList<>();
+  private List<Project> projects = NO_PROJECTS;
 
 
   @Override
   public String toString() {
-  String result = "";
-  result += "\n Customer ID: " + customerId;
-  result += "\n Customer name: " + customerName;
-  return result;
+    return new StringBuilder(64)
+        .append("\n Customer ID: ").append(getCustomerId())
+        .append("\n Customer name: ").append(customerName)
+        .toString();
   }
 
 
+  /**
+   * @return The empty project list shared by customers without projects. It cannot be changed; a
+   *         holder that needs to add projects replaces it with its own list first.
+   */
+  public static List<Project> noProjects() {
+    return NO_PROJECTS;
+  }
+
   /*
    * Getters and Setters
    */
 
   public Integer getCustomerId() {
-    return customerId;
+    return customerId == NONE ? null : customerId;
   }
 
   public void setCustomerId(Integer customerId) {
-    this.customerId = customerId;
+    this.customerId = Objects.isNull(customerId) ? NONE : customerId;
   }
 
   public String getCustomerName() {
@@ -42,8 +59,26 @@ public class Customer {
     this.customerName = customerName;
   }
 
+  /**
+   * @return The customer's projects. The list can be changed; a customer that had no list yet gets
+   *         its own here.
+   */
   public List<Project> getProjects() {
+    if (projects == NO_PROJECTS) {
+      projects = new ArrayList<>();
+    }
+
     return projects;
   }
 
+  /**
+   * Replaces the project list. The DAO uses this to attach a {@link LazyProjectList}, or a list
+   * sized to the projects it read.
+   *
+   * @param projects The customer's projects.
+   */
+  public void setProjects(List<Project> projects) {
+    this.projects = projects;
+  }
+
 }
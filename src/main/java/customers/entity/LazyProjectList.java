@@ -0,0 +1,90 @@
+package customers.entity;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * A customer's project list that is not read until it is first used. The first call to any method
+ * runs the loader once and every later call goes to the loaded list, which is mutable. The loader
+ * runs on whichever thread touches the list first, outside the transaction that fetched the
+ * customer, so the projects are as of that first access. A customer without projects shares
+ * {@link Customer#noProjects()} until its list is first changed.
+ *
+ */
+public class LazyProjectList extends AbstractList<Project> {
+  private Supplier<List<Project>> loader;
+  private List<Project> projects;
+
+  /**
+   * @param loader Returns the customer's projects. It is called at most once.
+   */
+  public LazyProjectList(Supplier<List<Project>> loader) {
+    this.loader = loader;
+  }
+
+  /**
+   * @return True once the projects have been read.
+   */
+  public synchronized boolean isLoaded() {
+    return Objects.nonNull(projects);
+  }
+
+  private synchronized List<Project> loaded() {
+    if (Objects.isNull(projects)) {
+      projects = loader.get();
+      loader = null;
+    }
+
+    return projects;
+  }
+
+  private synchronized List<Project> modifiable() {
+    if (loaded() == Customer.noProjects()) {
+      projects = new ArrayList<>();
+    }
+
+    return projects;
+  }
+
+  @Override
+  public Project get(int index) {
+    return loaded().get(index);
+  }
+
+  @Override
+  public int size() {
+    return loaded().size();
+  }
+
+  @Override
+  public Project set(int index, Project project) {
+    return modifiable().set(index, project);
+  }
+
+  @Override
+  public void add(int index, Project project) {
+    modifiable().add(index, project);
+  }
+
+  @Override
+  public Project remove(int index) {
+    return modifiable().remove(index);
+  }
+
+  @Override
+  public Iterator<Project> iterator() {
+    return loaded().iterator();
+  }
+
+  /**
+   * Describes the list without loading it.
+   */
+  @Override
+  public String toString() {
+    return isLoaded() ? loaded().toString() : "[projects not loaded]";
+  }
+}
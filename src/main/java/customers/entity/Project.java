@@ -3,38 +3,181 @@
  */
 package customers.entity;
 
-import java.math.BigDecimal;
+import java.util.Comparator;
 import java.util.Objects;
-import customers.exception.DbException;
+import provided.util.FixedPoint;
 
 
 
 public class Project {
-  private Integer customerId;
-  private Integer projectId;
-  private BigDecimal grossPrice;
-  private BigDecimal systemSizeKw;
-  private BigDecimal dealerFees;
-  private BigDecimal adders;
+  /**
+   * Derived figures that can be used to sort or rank projects. Each one is computed from the
+   * project's columns the first time it is read and then cached on the project.
+   */
+  public enum Metric {
+    NET_PRICE(Comparator.comparing(Project::getNetPrice,
+        Comparator.nullsFirst(Comparator.naturalOrder()))),
+    PRICE_PER_WATT(Comparator.comparingDouble(Project::getPricePerWatt)),
+    COMMISSION_RATIO(Comparator.comparingDouble(Project::getCommissionRatio)),
+    INSTALL_PERIOD(Comparator.comparingInt(Project::getInstallPeriod));
+
+    private final Comparator<Project> comparator;
+
+    Metric(Comparator<Project> comparator) {
+      this.comparator = comparator;
+    }
+
+    /**
+     * @return A comparator that orders projects by this metric, smallest first.
+     */
+    public Comparator<Project> comparator() {
+      return comparator;
+    }
+  }
+
+  /*
+   * The columns are kept unboxed, since large fetches hold many projects. IDs, years and months are
+   * ints and amounts are longs in minor units at the scale of their DECIMAL column (cents, and
+   * thousandths of a kW); DaoBase.extract() maps DECIMAL columns to long fields that way. A column
+   * that is null holds NONE or NO_AMOUNT, and its getter returns null.
+   */
+  private static final int NONE = Integer.MIN_VALUE;
+  private static final long NO_AMOUNT = Long.MIN_VALUE;
+
+  private int customerId = NONE;
+  private int projectId = NONE;
+  private long grossPrice = NO_AMOUNT;
+  private long systemSizeKw = NO_AMOUNT;
+  private long dealerFees = NO_AMOUNT;
+  private long adders = NO_AMOUNT;
   private Boolean installed;
-  private Integer installYear;
-  private Integer installMonth;
-  private BigDecimal repCommission;
-  private String installYearAndDate;
-  
+  private int installYear = NONE;
+  private int installMonth = NONE;
+  private long repCommission = NO_AMOUNT;
+
+  /*
+   * Derived values. These are transient so that DaoBase.extract() skips them when mapping rows, and
+   * they are filled in on first use. Setters of the columns they depend on clear them.
+   */
+  private transient boolean metricsComputed;
+  private transient FixedPoint netPrice;
+  private transient double pricePerWatt;
+  private transient double commissionRatio;
+  private transient String installYearAndDate;
+
 
 
   @Override
   public String toString() {
-    String result = "";
-    result += "\n Project ID: " + projectId;
-    result += "\n Gross Price: " + grossPrice;
-    result += "\n System Size (KW): " + systemSizeKw;
-    result += "\n Dealer Fees ($): " + dealerFees;
-    result += "\n Adders ($): " + adders;
-    result += "\n Installed: " + installYearAndDate;
-    result += "\n Commission ($): " + repCommission;
-    return result;
+    return new StringBuilder(192)
+        .append("\n Project ID: ").append(getProjectId())
+        .append("\n Gross Price: ").append(getGrossPrice())
+        .append("\n System Size (KW): ").append(getSystemSizeInKw())
+        .append("\n Dealer Fees ($): ").append(getDealerFees())
+        .append("\n Adders ($): ").append(getAdders())
+        .append("\n Installed: ").append(getInstallYearAndDate())
+        .append("\n Commission ($): ").append(getRepCommission())
+        .toString();
+  }
+
+
+
+  /**
+   * Derived metrics
+   */
+
+  /**
+   * @return The gross price less dealer fees and adders, or null if there is no gross price.
+   */
+  public FixedPoint getNetPrice() {
+    computeMetrics();
+    return netPrice;
+  }
+
+  /**
+   * @return The gross price per watt of system size, or NaN if either is missing or zero.
+   */
+  public double getPricePerWatt() {
+    computeMetrics();
+    return pricePerWatt;
+  }
+
+  /**
+   * @return The rep commission as a fraction of the gross price, or NaN if either is missing.
+   */
+  public double getCommissionRatio() {
+    computeMetrics();
+    return commissionRatio;
+  }
+
+  /**
+   * @return The install year and month packed as yyyymm (202307 for July 2023), or 0 if either is
+   *         missing. Packed periods sort in date order.
+   */
+  public int getInstallPeriod() {
+    if (installYear == NONE || installMonth == NONE) {
+      return 0;
+    }
+
+    return installYear * 100 + installMonth;
+  }
+
+  /**
+   * @return The install year and month for display, built on first use, or null if the project is
+   *         not installed or has no install year.
+   */
+  public String getInstallYearAndDate() {
+    if (Objects.isNull(installYearAndDate) && Boolean.TRUE.equals(installed)
+        && Objects.nonNull(getInstallYear())) {
+      installYearAndDate = getInstallYear() + " / " + getInstallMonth();
+    }
+
+    return installYearAndDate;
+  }
+
+  private void computeMetrics() {
+    if (metricsComputed) {
+      return;
+    }
+
+    if (grossPrice == NO_AMOUNT) {
+      netPrice = null;
+      pricePerWatt = Double.NaN;
+      commissionRatio = Double.NaN;
+    } else {
+      long net = grossPrice - minorUnits(dealerFees) - minorUnits(adders);
+
+      netPrice = FixedPoint.ofUnscaled(net, FixedPoint.MONEY_SCALE);
+      pricePerWatt = systemSizeKw == NO_AMOUNT || systemSizeKw == 0 ? Double.NaN
+          : (double) grossPrice / systemSizeKw * 10 / 1000;
+      commissionRatio = repCommission == NO_AMOUNT || grossPrice == 0 ? Double.NaN
+          : (double) repCommission / grossPrice;
+    }
+
+    metricsComputed = true;
+  }
+
+  private static long minorUnits(long amount) {
+    return amount == NO_AMOUNT ? 0 : amount;
+  }
+
+  private static Integer value(int column) {
+    return column == NONE ? null : column;
+  }
+
+  private static int column(Integer value) {
+    return Objects.isNull(value) ? NONE : value;
+  }
+
+  private static FixedPoint amount(long column, int scale) {
+    return column == NO_AMOUNT ? null : FixedPoint.ofUnscaled(column, scale);
+  }
+
+  /*
+   * Amounts with more decimals than their column holds are rejected rather than rounded.
+   */
+  private static long column(FixedPoint amount, int scale) {
+    return Objects.isNull(amount) ? NO_AMOUNT : amount.unscaledAt(scale);
   }
 
 
@@ -42,64 +185,68 @@ public class Project {
   /**
    * Getters and Setters
    */
-  
+
+  /**
+   * Sets the install year and month together.
+   *
+   * @param year The install year, which may be null.
+   * @param month The install month, which may be null.
+   */
   public void setInstallYearAndDate(Integer year, Integer month) {
-    if (Objects.isNull(installed)) {
-      installYearAndDate = null;
-    } 
-    try {
-      installYearAndDate = String.valueOf(year) + " / " + String.valueOf(month);
-    } catch (NumberFormatException e) {
-      throw new DbException(installYear + " / " + installMonth + " is not a valid date.");
-    }
+    setInstallYear(year);
+    setInstallMonth(month);
   }
 
   public Integer getCustomerId() {
-    return customerId;
+    return value(customerId);
   }
 
   public void setCustomerId(Integer customerId) {
-    this.customerId = customerId;
+    this.customerId = column(customerId);
   }
 
   public Integer getProjectId() {
-    return projectId;
+    return value(projectId);
   }
 
   public void setProjectId(Integer projectId) {
-    this.projectId = projectId;
+    this.projectId = column(projectId);
   }
 
-  public BigDecimal getGrossPrice() {
-    return grossPrice;
+  public FixedPoint getGrossPrice() {
+    return amount(grossPrice, FixedPoint.MONEY_SCALE);
   }
 
-  public void setGrossPrice(BigDecimal grossPrice) {
-    this.grossPrice = grossPrice;
+  public void setGrossPrice(FixedPoint grossPrice) {
+    this.grossPrice = column(grossPrice, FixedPoint.MONEY_SCALE);
+    metricsComputed = false;
   }
 
-  public BigDecimal getSystemSizeInKw() {
-    return systemSizeKw;
+  public FixedPoint getSystemSizeInKw() {
+    return amount(systemSizeKw, FixedPoint.KW_SCALE);
   }
 
-  public void setSystemSizeInKw(BigDecimal systemSizeInKw) {
-    this.systemSizeKw = systemSizeInKw;
+  public void setSystemSizeInKw(FixedPoint systemSizeInKw) {
+    this.systemSizeKw = column(systemSizeInKw, FixedPoint.KW_SCALE);
+    metricsComputed = false;
   }
 
-  public BigDecimal getDealerFees() {
-    return dealerFees;
+  public FixedPoint getDealerFees() {
+    return amount(dealerFees, FixedPoint.MONEY_SCALE);
   }
 
-  public void setDealerFees(BigDecimal dealerFees) {
-    this.dealerFees = dealerFees;
+  public void setDealerFees(FixedPoint dealerFees) {
+    this.dealerFees = column(dealerFees, FixedPoint.MONEY_SCALE);
+    metricsComputed = false;
   }
 
-  public BigDecimal getAdders() {
-    return adders;
+  public FixedPoint getAdders() {
+    return amount(adders, FixedPoint.MONEY_SCALE);
   }
 
-  public void setAdders(BigDecimal adders) {
-    this.adders = adders;
+  public void setAdders(FixedPoint adders) {
+    this.adders = column(adders, FixedPoint.MONEY_SCALE);
+    metricsComputed = false;
   }
 
   public Boolean getInstalled() {
@@ -108,30 +255,34 @@ public class Project {
 
   public void setInstalled(boolean installed) {
     this.installed = installed;
+    installYearAndDate = null;
   }
 
   public Integer getInstallYear() {
-    return installYear;
+    return value(installYear);
   }
 
   public void setInstallYear(Integer installYear) {
-    this.installYear = installYear;
+    this.installYear = column(installYear);
+    installYearAndDate = null;
   }
 
   public Integer getInstallMonth() {
-    return installMonth;
+    return value(installMonth);
   }
 
   public void setInstallMonth(Integer installMonth) {
-    this.installMonth = installMonth;
+    this.installMonth = column(installMonth);
+    installYearAndDate = null;
   }
 
-  public BigDecimal getRepCommission() {
-    return repCommission;
+  public FixedPoint getRepCommission() {
+    return amount(repCommission, FixedPoint.MONEY_SCALE);
   }
 
-  public void setRepCommission(BigDecimal repCommission) {
-    this.repCommission = repCommission;
+  public void setRepCommission(FixedPoint repCommission) {
+    this.repCommission = column(repCommission, FixedPoint.MONEY_SCALE);
+    metricsComputed = false;
   }
 
 
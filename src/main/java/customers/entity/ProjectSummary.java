@@ -0,0 +1,96 @@
+/**
+ * 
+ */
+package customers.entity;
+
+import java.util.Objects;
+import provided.util.FixedPoint;
+
+/**
+ * Totals over the projects table, as returned by the project report.
+ *
+ */
+public class ProjectSummary {
+  private Long projectCount;
+  private Long installedCount;
+  private FixedPoint totalGrossPrice;
+  private FixedPoint totalSystemSizeKw;
+  private FixedPoint totalDealerFees;
+  private FixedPoint totalAdders;
+  private FixedPoint totalRepCommission;
+
+
+  @Override
+  public String toString() {
+    return new StringBuilder(256)
+        .append("\n Projects: ").append(projectCount)
+        .append("\n Installed: ").append(installedCount)
+        .append("\n Total Gross Price ($): ").append(totalGrossPrice)
+        .append("\n Total System Size (KW): ").append(totalSystemSizeKw)
+        .append("\n Total Dealer Fees ($): ").append(totalDealerFees)
+        .append("\n Total Adders ($): ").append(totalAdders)
+        .append("\n Total Commission ($): ").append(totalRepCommission)
+        .toString();
+  }
+
+
+  /**
+   * Adds two summaries, for example those of two shards. A total that is null in one summary (an
+   * empty table) counts as zero.
+   * 
+   * @param other The other summary.
+   * @return A new summary with the combined counts and totals.
+   */
+  public ProjectSummary combine(ProjectSummary other) {
+    ProjectSummary sum = new ProjectSummary();
+    sum.projectCount = add(projectCount, other.projectCount);
+    sum.installedCount = add(installedCount, other.installedCount);
+    sum.totalGrossPrice = add(totalGrossPrice, other.totalGrossPrice);
+    sum.totalSystemSizeKw = add(totalSystemSizeKw, other.totalSystemSizeKw);
+    sum.totalDealerFees = add(totalDealerFees, other.totalDealerFees);
+    sum.totalAdders = add(totalAdders, other.totalAdders);
+    sum.totalRepCommission = add(totalRepCommission, other.totalRepCommission);
+    return sum;
+  }
+
+  private static Long add(Long left, Long right) {
+    return Objects.isNull(left) ? right : Objects.isNull(right) ? left : Long.valueOf(left + right);
+  }
+
+  private static FixedPoint add(FixedPoint left, FixedPoint right) {
+    return Objects.isNull(left) ? right : Objects.isNull(right) ? left : left.add(right);
+  }
+
+  /*
+   * Getters
+   */
+
+  public Long getProjectCount() {
+    return projectCount;
+  }
+
+  public Long getInstalledCount() {
+    return installedCount;
+  }
+
+  public FixedPoint getTotalGrossPrice() {
+    return totalGrossPrice;
+  }
+
+  public FixedPoint getTotalSystemSizeKw() {
+    return totalSystemSizeKw;
+  }
+
+  public FixedPoint getTotalDealerFees() {
+    return totalDealerFees;
+  }
+
+  public FixedPoint getTotalAdders() {
+    return totalAdders;
+  }
+
+  public FixedPoint getTotalRepCommission() {
+    return totalRepCommission;
+  }
+
+}
@@ -0,0 +1,19 @@
+package customers.exception;
+
+/**
+ * Thrown when the input of an operation is invalid, for example a missing or mistyped field or a
+ * value out of range. Nothing was done, and the same input will fail again.
+ * 
+ */
+@SuppressWarnings("serial")
+public class InvalidInputException extends DbException {
+
+  /**
+   * Create an exception with a message.
+   * 
+   * @param message The message.
+   */
+  public InvalidInputException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,19 @@
+package customers.exception;
+
+/**
+ * Thrown when an operation is turned away because too many operations of its kind are already
+ * running. Nothing was done, and the operation can be tried again later.
+ * 
+ */
+@SuppressWarnings("serial")
+public class OverloadedException extends DbException {
+
+  /**
+   * Create an exception with a message.
+   * 
+   * @param message The message.
+   */
+  public OverloadedException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,401 @@
+package customers.http;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import customers.entity.Customer;
+import customers.entity.Project;
+import customers.entity.ProjectSummary;
+import customers.exception.InvalidInputException;
+import provided.util.FixedPoint;
+
+/**
+ * Minimal JSON support for the HTTP API: a parser that returns maps, lists, strings, BigDecimal
+ * numbers, booleans and nulls, and writers for the entities. Output is appended to a caller-owned
+ * StringBuilder.
+ *
+ */
+final class Json {
+  /* Deeper documents are rejected rather than risking a stack overflow in the recursive parser. */
+  private static final int MAX_DEPTH = 64;
+
+  private final String text;
+  private int position;
+  private int depth;
+
+  private Json(String text) {
+    this.text = text;
+  }
+
+  /**
+   * Parses a JSON document.
+   *
+   * @param text The document.
+   * @return The value.
+   * @throws InvalidInputException Thrown if the text is not valid JSON or nests objects and arrays
+   *         more than {@value #MAX_DEPTH} deep.
+   */
+  static Object parse(String text) {
+    Json parser = new Json(text);
+    Object value = parser.value();
+    parser.skipWhitespace();
+
+    if (parser.position != text.length()) {
+      throw parser.error("Unexpected trailing content");
+    }
+
+    return value;
+  }
+
+  private Object value() {
+    skipWhitespace();
+
+    if (position >= text.length()) {
+      throw error("Unexpected end of input");
+    }
+
+    char ch = text.charAt(position);
+
+    switch (ch) {
+      case '{':
+        return object();
+
+      case '[':
+        return array();
+
+      case '"':
+        return string();
+
+      case 't':
+        return literal("true", Boolean.TRUE);
+
+      case 'f':
+        return literal("false", Boolean.FALSE);
+
+      case 'n':
+        return literal("null", null);
+
+      default:
+        return number();
+    }
+  }
+
+  private Map<String, Object> object() {
+    Map<String, Object> map = new LinkedHashMap<>();
+    enter();
+    skipWhitespace();
+
+    if (peek() == '}') {
+      position++;
+      depth--;
+      return map;
+    }
+
+    while (true) {
+      skipWhitespace();
+      String key = string();
+      skipWhitespace();
+      expect(':');
+      map.put(key, value());
+      skipWhitespace();
+
+      if (peek() == ',') {
+        position++;
+      } else {
+        expect('}');
+        depth--;
+        return map;
+      }
+    }
+  }
+
+  private List<Object> array() {
+    List<Object> list = new ArrayList<>();
+    enter();
+    skipWhitespace();
+
+    if (peek() == ']') {
+      position++;
+      depth--;
+      return list;
+    }
+
+    while (true) {
+      list.add(value());
+      skipWhitespace();
+
+      if (peek() == ',') {
+        position++;
+      } else {
+        expect(']');
+        depth--;
+        return list;
+      }
+    }
+  }
+
+  /*
+   * Steps past the opening bracket of an object or array, one level deeper.
+   */
+  private void enter() {
+    if (++depth > MAX_DEPTH) {
+      throw error("Nested more than " + MAX_DEPTH + " levels deep");
+    }
+
+    position++;
+  }
+
+  private String string() {
+    expect('"');
+    StringBuilder builder = new StringBuilder();
+
+    while (position < text.length()) {
+      char ch = text.charAt(position++);
+
+      if (ch == '"') {
+        return builder.toString();
+      }
+
+      if (ch == '\\') {
+        if (position >= text.length()) {
+          break;
+        }
+
+        char escaped = text.charAt(position++);
+
+        switch (escaped) {
+          case 'b':
+            builder.append('\b');
+            break;
+
+          case 'f':
+            builder.append('\f');
+            break;
+
+          case 'n':
+            builder.append('\n');
+            break;
+
+          case 'r':
+            builder.append('\r');
+            break;
+
+          case 't':
+            builder.append('\t');
+            break;
+
+          case 'u':
+            builder.append(unicodeEscape());
+            break;
+
+          default:
+            builder.append(escaped);
+            break;
+        }
+      } else {
+        builder.append(ch);
+      }
+    }
+
+    throw error("Unterminated string");
+  }
+
+  /*
+   * The character of the four hex digits after backslash-u.
+   */
+  private char unicodeEscape() {
+    if (position + 4 > text.length()) {
+      throw error("Bad unicode escape");
+    }
+
+    int code = 0;
+
+    for (int end = position + 4; position < end; position++) {
+      int digit = "0123456789abcdef".indexOf(Character.toLowerCase(text.charAt(position)));
+
+      if (digit < 0) {
+        throw error("Bad unicode escape");
+      }
+
+      code = code * 16 + digit;
+    }
+
+    return (char) code;
+  }
+
+  private BigDecimal number() {
+    int start = position;
+
+    while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+      position++;
+    }
+
+    try {
+      return new BigDecimal(text.substring(start, position));
+    } catch (NumberFormatException e) {
+      throw error("Bad number");
+    }
+  }
+
+  private Object literal(String word, Object value) {
+    if (!text.startsWith(word, position)) {
+      throw error("Unexpected token");
+    }
+
+    position += word.length();
+    return value;
+  }
+
+  private void expect(char ch) {
+    if (peek() != ch) {
+      throw error("Expected '" + ch + "'");
+    }
+
+    position++;
+  }
+
+  private char peek() {
+    return position < text.length() ? text.charAt(position) : 0;
+  }
+
+  private void skipWhitespace() {
+    while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+      position++;
+    }
+  }
+
+  private InvalidInputException error(String message) {
+    return new InvalidInputException(message + " at position " + position + " of JSON input");
+  }
+
+  /*
+   * Writers
+   */
+
+  static StringBuilder customer(StringBuilder out, Customer customer, boolean withProjects) {
+    out.append("{\"customerId\":").append(customer.getCustomerId());
+    out.append(",\"customerName\":");
+    string(out, customer.getCustomerName());
+
+    if (withProjects) {
+      out.append(",\"projects\":");
+      projects(out, customer.getProjects());
+    }
+
+    return out.append('}');
+  }
+
+  static StringBuilder customers(StringBuilder out, List<Customer> customers) {
+    out.append('[');
+
+    for (int index = 0; index < customers.size(); index++) {
+      if (index > 0) {
+        out.append(',');
+      }
+
+      customer(out, customers.get(index), false);
+    }
+
+    return out.append(']');
+  }
+
+  static StringBuilder project(StringBuilder out, Project project) {
+    out.append("{\"customerId\":").append(project.getCustomerId());
+    out.append(",\"projectId\":").append(project.getProjectId());
+    out.append(",\"grossPrice\":");
+    number(out, project.getGrossPrice());
+    out.append(",\"systemSizeKw\":");
+    number(out, project.getSystemSizeInKw());
+    out.append(",\"dealerFees\":");
+    number(out, project.getDealerFees());
+    out.append(",\"adders\":");
+    number(out, project.getAdders());
+    out.append(",\"installed\":").append(project.getInstalled());
+    out.append(",\"installYear\":").append(project.getInstallYear());
+    out.append(",\"installMonth\":").append(project.getInstallMonth());
+    out.append(",\"repCommission\":");
+    number(out, project.getRepCommission());
+    return out.append('}');
+  }
+
+  static StringBuilder projects(StringBuilder out, List<Project> projects) {
+    out.append('[');
+
+    for (int index = 0; index < projects.size(); index++) {
+      if (index > 0) {
+        out.append(',');
+      }
+
+      project(out, projects.get(index));
+    }
+
+    return out.append(']');
+  }
+
+  static StringBuilder summary(StringBuilder out, ProjectSummary summary) {
+    out.append("{\"projectCount\":").append(summary.getProjectCount());
+    out.append(",\"installedCount\":").append(summary.getInstalledCount());
+    out.append(",\"totalGrossPrice\":");
+    number(out, summary.getTotalGrossPrice());
+    out.append(",\"totalSystemSizeKw\":");
+    number(out, summary.getTotalSystemSizeKw());
+    out.append(",\"totalDealerFees\":");
+    number(out, summary.getTotalDealerFees());
+    out.append(",\"totalAdders\":");
+    number(out, summary.getTotalAdders());
+    out.append(",\"totalRepCommission\":");
+    number(out, summary.getTotalRepCommission());
+    return out.append('}');
+  }
+
+  static StringBuilder number(StringBuilder out, FixedPoint value) {
+    return Objects.isNull(value) ? out.append("null") : value.appendTo(out);
+  }
+
+  static StringBuilder string(StringBuilder out, String value) {
+    if (Objects.isNull(value)) {
+      return out.append("null");
+    }
+
+    out.append('"');
+
+    for (int index = 0; index < value.length(); index++) {
+      char ch = value.charAt(index);
+
+      switch (ch) {
+        case '"':
+          out.append("\\\"");
+          break;
+
+        case '\\':
+          out.append("\\\\");
+          break;
+
+        case '\n':
+          out.append("\\n");
+          break;
+
+        case '\r':
+          out.append("\\r");
+          break;
+
+        case '\t':
+          out.append("\\t");
+          break;
+
+        default:
+          if (ch < 0x20) {
+            out.append(String.format("\\u%04x", (int) ch));
+          } else {
+            out.append(ch);
+          }
+          break;
+      }
+    }
+
+    return out.append('"');
+  }
+}
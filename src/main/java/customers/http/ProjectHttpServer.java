@@ -0,0 +1,504 @@
+package customers.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import customers.dao.FetchPlan;
+import customers.dao.ReadYourWrites;
+import customers.entity.Customer;
+import customers.entity.Project;
+import customers.entity.ProjectSummary;
+import customers.exception.DbException;
+import customers.exception.InvalidInputException;
+import customers.exception.OverloadedException;
+import customers.service.CustomerNameIndex;
+import customers.service.ProjectService;
+import provided.util.FixedPoint;
+
+/**
+ * An embedded HTTP/JSON server over {@link ProjectService}, built on the JDK's HttpServer. Each
+ * request runs on a virtual thread when the JVM supports them (Java 21 and later) and otherwise on
+ * a fixed pool of worker threads. Connections are kept alive between requests.
+ *
+ * Admission control caps the number of requests being processed at once. A request that cannot be
+ * admitted within a short wait is answered with 503 and a Retry-After header instead of queueing,
+ * so latency stays bounded under overload. A request whose scan or report the DAO turns away
+ * because too many are running ({@link OverloadedException}) is answered the same way. Invalid
+ * input, such as malformed JSON, a missing or mistyped field or a query parameter that is not a
+ * number, is answered with 400 ({@link InvalidInputException}). Request counts and latency
+ * percentiles per route are served at {@code /metrics}.
+ *
+ * A client reads its own writes even when reads go to lagging replicas: a response to a client that
+ * has written sets a {@code lastWrite} cookie with the time of its last write, and each request is
+ * served in the {@link ReadYourWrites} context the cookie carries, so only that client's reads are
+ * kept on the primary.
+ *
+ * <pre>
+ * GET  /customers?after=0&amp;limit=100   page of customers
+ * GET  /customers/{id}                 customer with projects
+ * GET  /customers/search?q=smi&amp;limit=10
+ * GET  /projects?after=0&amp;limit=100    page of projects
+ * GET  /projects/top?by=gross_price&amp;limit=50[&amp;year=2024][&amp;asc=true]
+ * POST /projects                       JSON array of {customerName, projectId, grossPrice, ...}
+ * GET  /reports/summary[?from=2020&amp;to=2023]  project totals, or those of the years' installs
+ * GET  /metrics
+ * GET  /health
+ * GET  /ready                          200 once warmed up, 503 before
+ * </pre>
+ *
+ */
+public class ProjectHttpServer {
+  private static final int MAX_PAGE_SIZE = 1000;
+  private static final int MAX_BATCH_SIZE = 1000;
+  private static final int MAX_BODY_BYTES = 4 << 20;
+  private static final String LAST_WRITE_COOKIE = "lastWrite";
+
+  private final ProjectService projectService;
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final Semaphore admission;
+  private final long admissionWaitMillis;
+  private final RequestMetrics metrics = new RequestMetrics();
+  private final CountDownLatch stopped = new CountDownLatch(1);
+  private volatile BooleanSupplier readiness = () -> true;
+
+  /**
+   * @param projectService The service that handles requests.
+   * @param port The TCP port to listen on.
+   * @param workerThreads The number of worker threads when virtual threads are not available.
+   * @param maxInFlight The maximum number of requests processed at once.
+   * @param admissionWaitMillis How long a request waits for admission before it is rejected.
+   * @throws IOException Thrown if the port cannot be bound.
+   */
+  public ProjectHttpServer(ProjectService projectService, int port, int workerThreads,
+      int maxInFlight, long admissionWaitMillis) throws IOException {
+    this.projectService = projectService;
+    this.admission = new Semaphore(maxInFlight);
+    this.admissionWaitMillis = admissionWaitMillis;
+    this.executor = newExecutor(workerThreads);
+    this.server = HttpServer.create(new InetSocketAddress(port), 1024);
+
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+  }
+
+  public void start() {
+    server.start();
+  }
+
+  /**
+   * Sets the check that admits traffic. Until it is true, every request except /health, /ready and
+   * /metrics is answered with 503 and a Retry-After header, for example while a warm-up runs.
+   *
+   * @param readiness True once the server may serve requests.
+   */
+  public void setReadiness(BooleanSupplier readiness) {
+    this.readiness = readiness;
+  }
+
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * Stops accepting requests, waits up to the given delay for requests in progress, and shuts down
+   * the worker threads.
+   *
+   * @param delaySeconds The maximum time to wait for requests in progress.
+   */
+  public void stop(int delaySeconds) {
+    server.stop(delaySeconds);
+    executor.shutdown();
+    stopped.countDown();
+  }
+
+  /**
+   * Blocks until {@link #stop(int)} is called.
+   *
+   * @throws InterruptedException Thrown if the waiting thread is interrupted.
+   */
+  public void awaitStop() throws InterruptedException {
+    stopped.await();
+  }
+
+  /*
+   * Use a virtual thread per request when the runtime has them; this class is compiled for Java 17,
+   * so the factory method is looked up reflectively.
+   */
+  private static ExecutorService newExecutor(int workerThreads) {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newFixedThreadPool(workerThreads, runnable -> {
+        Thread thread = new Thread(runnable, "http-worker");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    long start = System.nanoTime();
+    String route = routeName(exchange);
+    int status = 500;
+
+    try {
+      if (!admission.tryAcquire(admissionWaitMillis, TimeUnit.MILLISECONDS)) {
+        metrics.recordRejected();
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        status = send(exchange, 503, error("Server is busy, try again later"));
+        return;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      status = send(exchange, 503, error("Interrupted"));
+      return;
+    }
+
+    try (ReadYourWrites.Scope scope = ReadYourWrites.since(lastWrite(exchange)).bind()) {
+      status = dispatch(exchange);
+    } catch (OverloadedException e) {
+      metrics.recordRejected();
+      exchange.getResponseHeaders().set("Retry-After", "1");
+      status = send(exchange, 503, error(e.getMessage()));
+    } catch (InvalidInputException e) {
+      status = send(exchange, 400, error(e.getMessage()));
+    } catch (DbException e) {
+      status = send(exchange, 500, error(e.getMessage()));
+    } catch (RuntimeException e) {
+      status = send(exchange, 500, error(e.toString()));
+    } finally {
+      admission.release();
+      metrics.record(route, status, System.nanoTime() - start);
+    }
+  }
+
+  private int dispatch(HttpExchange exchange) throws IOException {
+    String method = exchange.getRequestMethod();
+    String path = exchange.getRequestURI().getPath();
+    Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+    if ("/ready".equals(path)) {
+      boolean ready = readiness.getAsBoolean();
+      return send(exchange, ready ? 200 : 503,
+          new StringBuilder(ready ? "{\"status\":\"READY\"}" : "{\"status\":\"WARMING_UP\"}"));
+    }
+
+    if (!readiness.getAsBoolean() && !"/health".equals(path) && !"/metrics".equals(path)) {
+      exchange.getResponseHeaders().set("Retry-After", "1");
+      return send(exchange, 503, error("Warming up, try again later"));
+    }
+
+    if ("GET".equals(method)) {
+      if ("/customers".equals(path)) {
+        List<Customer> page =
+            projectService.fetchCustomers(intParam(query, "after", 0), pageSize(query));
+        return send(exchange, 200, Json.customers(new StringBuilder(), page));
+      }
+
+      if ("/customers/search".equals(path)) {
+        return search(exchange, query);
+      }
+
+      if (path.startsWith("/customers/")) {
+        int customerId = parseInt("customer ID", path.substring("/customers/".length()));
+        Optional<Customer> customer =
+            projectService.fetchCustomerById(customerId, FetchPlan.WITH_PROJECTS);
+
+        return customer.isPresent()
+            ? send(exchange, 200, Json.customer(new StringBuilder(), customer.get(), true))
+            : send(exchange, 404, error("No customer with ID " + customerId));
+      }
+
+      if ("/projects".equals(path)) {
+        List<Project> page =
+            projectService.fetchProjects(intParam(query, "after", 0), pageSize(query));
+        return send(exchange, 200, Json.projects(new StringBuilder(), page));
+      }
+
+      if ("/projects/top".equals(path)) {
+        Integer year = Objects.isNull(query.get("year")) ? null : intParam(query, "year", 0);
+        List<Project> top = projectService.fetchTopProjects(query.getOrDefault("by", "gross_price"),
+            !Boolean.parseBoolean(query.get("asc")), year, pageSize(query));
+        return send(exchange, 200, Json.projects(new StringBuilder(), top));
+      }
+
+      if ("/reports/summary".equals(path)) {
+        ProjectSummary summary = query.containsKey("from")
+            ? projectService.fetchProjectReport(intParam(query, "from", 0),
+                intParam(query, "to", Integer.MAX_VALUE))
+            : projectService.fetchProjectReport();
+        return send(exchange, 200, Json.summary(new StringBuilder(), summary));
+      }
+
+      if ("/metrics".equals(path)) {
+        return send(exchange, 200, metrics.toJson(new StringBuilder()));
+      }
+
+      if ("/health".equals(path)) {
+        return send(exchange, 200, new StringBuilder("{\"status\":\"UP\"}"));
+      }
+    } else if ("POST".equals(method) && "/projects".equals(path)) {
+      return addProjects(exchange);
+    }
+
+    return send(exchange, 404, error("No route for " + method + " " + path));
+  }
+
+  private int search(HttpExchange exchange, Map<String, String> query) throws IOException {
+    String text = query.getOrDefault("q", "");
+    List<CustomerNameIndex.Match> matches =
+        projectService.searchCustomers(text, pageSize(query, 20));
+    StringBuilder out = new StringBuilder("[");
+
+    for (int index = 0; index < matches.size(); index++) {
+      CustomerNameIndex.Match match = matches.get(index);
+      out.append(index > 0 ? ",{" : "{").append("\"customerId\":").append(match.getCustomerId());
+      out.append(",\"customerName\":");
+      Json.string(out, match.getCustomerName());
+      out.append(",\"matchType\":\"").append(match.getMatchType()).append("\"}");
+    }
+
+    return send(exchange, 200, out.append(']'));
+  }
+
+  /*
+   * The body is a JSON array (or a single object) of flat project objects, each with the customer's
+   * name. All rows are inserted in one transaction.
+   */
+  private int addProjects(HttpExchange exchange) throws IOException {
+    byte[] body;
+
+    try (InputStream in = exchange.getRequestBody()) {
+      body = in.readNBytes(MAX_BODY_BYTES + 1);
+    }
+
+    if (body.length > MAX_BODY_BYTES) {
+      return send(exchange, 413, error("Request body is larger than " + MAX_BODY_BYTES + " bytes"));
+    }
+
+    Object parsed = Json.parse(new String(body, StandardCharsets.UTF_8));
+    List<?> items = parsed instanceof List ? (List<?>) parsed : List.of(parsed);
+
+    if (items.size() > MAX_BATCH_SIZE) {
+      return send(exchange, 400, error("At most " + MAX_BATCH_SIZE + " projects per request"));
+    }
+
+    List<Customer> customers = new ArrayList<>(items.size());
+
+    for (Object item : items) {
+      if (!(item instanceof Map)) {
+        throw new InvalidInputException("Each project must be a JSON object");
+      }
+
+      customers.add(toCustomer((Map<?, ?>) item));
+    }
+
+    projectService.addCustomersWithProjects(customers);
+
+    StringBuilder out = new StringBuilder("[");
+
+    for (int index = 0; index < customers.size(); index++) {
+      Json.customer(out.append(index > 0 ? "," : ""), customers.get(index), true);
+    }
+
+    return send(exchange, 201, out.append(']'));
+  }
+
+  private static Customer toCustomer(Map<?, ?> item) {
+    Customer customer = new Customer();
+    customer.setCustomerName(text(item, "customerName"));
+
+    Project project = new Project();
+    project.setProjectId(integer(item, "projectId", true));
+    project.setGrossPrice(decimal(item, "grossPrice", FixedPoint.MONEY_SCALE, true));
+    project.setSystemSizeInKw(decimal(item, "systemSizeKw", FixedPoint.KW_SCALE, true));
+    project.setDealerFees(decimal(item, "dealerFees", FixedPoint.MONEY_SCALE, false));
+    project.setAdders(decimal(item, "adders", FixedPoint.MONEY_SCALE, false));
+    project.setInstalled(Boolean.TRUE.equals(field(item, "installed", Boolean.class, false)));
+    project.setInstallYear(integer(item, "installYear", false));
+    project.setInstallMonth(integer(item, "installMonth", false));
+    project.setRepCommission(decimal(item, "repCommission", FixedPoint.MONEY_SCALE, true));
+
+    customer.getProjects().add(project);
+    return customer;
+  }
+
+  /*
+   * Returns a field of a project object, checking that it is present if required and that it has
+   * the JSON type given (strings, numbers and booleans are parsed as String, BigDecimal and
+   * Boolean).
+   */
+  private static <T> T field(Map<?, ?> item, String key, Class<T> type, boolean required) {
+    Object value = item.get(key);
+
+    if (Objects.isNull(value)) {
+      if (required) {
+        throw new InvalidInputException("Missing required field " + key);
+      }
+
+      return null;
+    }
+
+    if (!type.isInstance(value)) {
+      throw new InvalidInputException("Field " + key + " must be a "
+          + (type == BigDecimal.class ? "number" : type.getSimpleName().toLowerCase()));
+    }
+
+    return type.cast(value);
+  }
+
+  private static String text(Map<?, ?> item, String key) {
+    return field(item, key, String.class, true);
+  }
+
+  private static Integer integer(Map<?, ?> item, String key, boolean required) {
+    BigDecimal value = field(item, key, BigDecimal.class, required);
+
+    try {
+      return Objects.isNull(value) ? null : value.intValueExact();
+    } catch (ArithmeticException e) {
+      throw new InvalidInputException("Field " + key + " must be a whole number, not " + value);
+    }
+  }
+
+  private static FixedPoint decimal(Map<?, ?> item, String key, int scale, boolean required) {
+    BigDecimal value = field(item, key, BigDecimal.class, required);
+
+    try {
+      return FixedPoint.of(value, scale);
+    } catch (ArithmeticException e) {
+      throw new InvalidInputException("Field " + key + " is out of range: " + value);
+    }
+  }
+
+  private static int send(HttpExchange exchange, int status, CharSequence json) throws IOException {
+    byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+    long lastWrite = ReadYourWrites.current().getLastWriteMillis();
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+
+    if (lastWrite > 0) {
+      exchange.getResponseHeaders().set("Set-Cookie",
+          LAST_WRITE_COOKIE + "=" + lastWrite + "; Path=/; HttpOnly");
+    }
+
+    exchange.sendResponseHeaders(status, bytes.length);
+
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+
+    return status;
+  }
+
+  /*
+   * The time of the client's last write from its lastWrite cookie, or 0 if it has none. A cookie
+   * that is not a number is ignored rather than failing the request.
+   */
+  private static long lastWrite(HttpExchange exchange) {
+    List<String> headers = exchange.getRequestHeaders().get("Cookie");
+
+    if (Objects.isNull(headers)) {
+      return 0;
+    }
+
+    for (String header : headers) {
+      for (String cookie : header.split(";")) {
+        int equals = cookie.indexOf('=');
+
+        if (equals > 0 && LAST_WRITE_COOKIE.equals(cookie.substring(0, equals).trim())) {
+          try {
+            return Long.parseLong(cookie.substring(equals + 1).trim());
+          } catch (NumberFormatException e) {
+            return 0;
+          }
+        }
+      }
+    }
+
+    return 0;
+  }
+
+  private static StringBuilder error(String message) {
+    return Json.string(new StringBuilder("{\"error\":"), message).append('}');
+  }
+
+  /*
+   * Metrics are kept per route, with IDs collapsed so that /customers/1 and /customers/2 share one
+   * entry.
+   */
+  private static String routeName(HttpExchange exchange) {
+    String path = exchange.getRequestURI().getPath();
+
+    if (path.startsWith("/customers/") && !"/customers/search".equals(path)) {
+      path = "/customers/{id}";
+    }
+
+    return exchange.getRequestMethod() + " " + path;
+  }
+
+  private static int pageSize(Map<String, String> query) {
+    return pageSize(query, 100);
+  }
+
+  private static int pageSize(Map<String, String> query, int defaultSize) {
+    return Math.max(1, Math.min(MAX_PAGE_SIZE, intParam(query, "limit", defaultSize)));
+  }
+
+  private static int intParam(Map<String, String> query, String name, int defaultValue) {
+    String value = query.get(name);
+    return Objects.isNull(value) || value.isBlank() ? defaultValue : parseInt(name, value);
+  }
+
+  private static int parseInt(String name, String value) {
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      throw new InvalidInputException("The " + name + " must be a whole number, not " + value);
+    }
+  }
+
+  private static Map<String, String> parseQuery(String rawQuery) {
+    Map<String, String> query = new HashMap<>();
+
+    if (Objects.isNull(rawQuery)) {
+      return query;
+    }
+
+    for (String pair : rawQuery.split("&")) {
+      int equals = pair.indexOf('=');
+      String key = equals < 0 ? pair : pair.substring(0, equals);
+      String value = equals < 0 ? "" : pair.substring(equals + 1);
+      query.put(decode(key), decode(value));
+    }
+
+    return query;
+  }
+
+  private static String decode(String encoded) {
+    try {
+      return URLDecoder.decode(encoded, StandardCharsets.UTF_8);
+    } catch (IllegalArgumentException e) {
+      throw new InvalidInputException("Malformed query string: " + encoded);
+    }
+  }
+}
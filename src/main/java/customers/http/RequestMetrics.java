@@ -0,0 +1,116 @@
+package customers.http;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request counters and latency histograms, one set per route. Recording a request only touches
+ * {@link LongAdder}s, so concurrent handlers do not contend on a lock. Percentiles are estimated
+ * from the histogram bucket bounds.
+ *
+ */
+class RequestMetrics {
+  private static final long[] BUCKET_MICROS =
+      {250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000, 250_000, 500_000, 1_000_000,
+          2_500_000, 5_000_000, Long.MAX_VALUE};
+
+  private final Map<String, Route> routes = new ConcurrentHashMap<>();
+  private final LongAdder rejected = new LongAdder();
+
+  void record(String route, int status, long elapsedNanos) {
+    routes.computeIfAbsent(route, key -> new Route()).record(status, elapsedNanos);
+  }
+
+  void recordRejected() {
+    rejected.increment();
+  }
+
+  /**
+   * Appends the metrics as a JSON object.
+   *
+   * @param out The builder to append to.
+   * @return The builder.
+   */
+  StringBuilder toJson(StringBuilder out) {
+    out.append("{\"rejected\":").append(rejected.sum()).append(",\"routes\":{");
+    boolean first = true;
+
+    for (Map.Entry<String, Route> entry : routes.entrySet()) {
+      if (!first) {
+        out.append(',');
+      }
+
+      first = false;
+      Json.string(out, entry.getKey()).append(':');
+      entry.getValue().toJson(out);
+    }
+
+    return out.append("}}");
+  }
+
+  private static class Route {
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder[] buckets = new LongAdder[BUCKET_MICROS.length];
+
+    Route() {
+      for (int index = 0; index < buckets.length; index++) {
+        buckets[index] = new LongAdder();
+      }
+    }
+
+    void record(int status, long elapsedNanos) {
+      count.increment();
+      totalNanos.add(elapsedNanos);
+      maxNanos.accumulate(elapsedNanos);
+
+      if (status >= 500) {
+        errors.increment();
+      }
+
+      long micros = TimeUnit.NANOSECONDS.toMicros(elapsedNanos);
+      int bucket = 0;
+
+      while (micros > BUCKET_MICROS[bucket]) {
+        bucket++;
+      }
+
+      buckets[bucket].increment();
+    }
+
+    void toJson(StringBuilder out) {
+      long total = count.sum();
+      out.append("{\"count\":").append(total);
+      out.append(",\"errors\":").append(errors.sum());
+      out.append(",\"meanMillis\":").append(total == 0 ? 0 : totalNanos.sum() / 1e6 / total);
+      out.append(",\"p50Millis\":").append(percentileMillis(0.50, total));
+      out.append(",\"p99Millis\":").append(percentileMillis(0.99, total));
+      out.append(",\"maxMillis\":").append(maxNanos.get() / 1e6);
+      out.append('}');
+    }
+
+    /*
+     * The upper bound of the bucket that holds the requested percentile.
+     */
+    private double percentileMillis(double percentile, long total) {
+      long target = (long) Math.ceil(percentile * total);
+      long seen = 0;
+
+      for (int index = 0; index < buckets.length; index++) {
+        seen += buckets[index].sum();
+
+        if (seen >= target && total > 0) {
+          return BUCKET_MICROS[index] == Long.MAX_VALUE ? maxNanos.get() / 1e6
+              : BUCKET_MICROS[index] / 1e3;
+        }
+      }
+
+      return 0;
+    }
+  }
+}
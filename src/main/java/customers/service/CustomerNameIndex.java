@@ -0,0 +1,470 @@
+package customers.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import customers.entity.Customer;
+
+/**
+ * This class is an in-memory index of customer names. Names are normalized to lower case with
+ * single spaces. Prefix queries use a sorted map of the full names and of each word in a name;
+ * substring and fuzzy queries use an inverted index of trigrams (three-character sequences) to pick
+ * candidates, which are then verified. The index is safe for concurrent readers and writers.
+ *
+ */
+public class CustomerNameIndex {
+  private static final int GRAM = 3;
+
+  /**
+   * How a name matched the query. Matches are ranked in this order.
+   */
+  public enum MatchType {
+    EXACT, PREFIX, SUBSTRING, FUZZY
+  }
+
+  /**
+   * A customer that matched a query.
+   */
+  public static class Match {
+    private final Entry entry;
+    private final Integer customerId;
+    private final String customerName;
+    private final MatchType matchType;
+    private final int distance;
+
+    Match(Entry entry, MatchType matchType, int distance) {
+      this.entry = entry;
+      this.customerId = entry.customerId;
+      this.customerName = entry.customerName;
+      this.matchType = matchType;
+      this.distance = distance;
+    }
+
+    Entry entry() {
+      return entry;
+    }
+
+    public Integer getCustomerId() {
+      return customerId;
+    }
+
+    public String getCustomerName() {
+      return customerName;
+    }
+
+    public MatchType getMatchType() {
+      return matchType;
+    }
+
+    /**
+     * @return The edit distance between the query and the name for fuzzy matches; otherwise 0.
+     */
+    public int getDistance() {
+      return distance;
+    }
+
+    @Override
+    public String toString() {
+      return customerId + " " + customerName + " (" + matchType + ")";
+    }
+  }
+
+  private static final Comparator<Match> RANKING = Comparator.comparing(Match::getMatchType)
+      .thenComparingInt(Match::getDistance)
+      .thenComparingInt(match -> match.getCustomerName().length())
+      .thenComparing(Match::getCustomerId);
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final Map<Integer, Entry> entries = new HashMap<>();
+  private final NavigableMap<String, Set<Entry>> terms = new TreeMap<>();
+  private final Map<String, Set<Entry>> grams = new HashMap<>();
+
+  /**
+   * Builds an index of the given customers.
+   *
+   * @param customers The customers to index.
+   * @return The index.
+   */
+  public static CustomerNameIndex of(Collection<Customer> customers) {
+    CustomerNameIndex index = new CustomerNameIndex();
+
+    for (Customer customer : customers) {
+      index.add(customer);
+    }
+
+    return index;
+  }
+
+  /**
+   * Adds a customer to the index, replacing any entry with the same customer ID.
+   *
+   * @param customer The customer. Customers without an ID or name are ignored.
+   */
+  public void add(Customer customer) {
+    if (Objects.isNull(customer.getCustomerId()) || Objects.isNull(customer.getCustomerName())) {
+      return;
+    }
+
+    Entry entry = new Entry(customer.getCustomerId(), customer.getCustomerName());
+
+    lock.writeLock().lock();
+    try {
+      removeEntry(entries.get(entry.customerId));
+      entries.put(entry.customerId, entry);
+
+      for (String term : terms(entry.normalized)) {
+        terms.computeIfAbsent(term, key -> new HashSet<>()).add(entry);
+      }
+
+      for (String gram : grams(entry.normalized)) {
+        grams.computeIfAbsent(gram, key -> new HashSet<>()).add(entry);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Removes a customer from the index.
+   *
+   * @param customerId The customer ID.
+   */
+  public void remove(Integer customerId) {
+    lock.writeLock().lock();
+    try {
+      removeEntry(entries.remove(customerId));
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return entries.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Finds customers whose name, or any word in the name, starts with the query.
+   *
+   * @param query The prefix.
+   * @param limit The maximum number of matches to return.
+   * @return The ranked matches.
+   */
+  public List<Match> prefix(String query, int limit) {
+    String normalized = normalize(query);
+    Map<Entry, Match> matches = new HashMap<>();
+
+    lock.readLock().lock();
+    try {
+      collectPrefix(normalized, matches);
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    return rank(matches.values(), limit);
+  }
+
+  /**
+   * Finds customers whose name contains the query.
+   *
+   * @param query The substring.
+   * @param limit The maximum number of matches to return.
+   * @return The ranked matches.
+   */
+  public List<Match> substring(String query, int limit) {
+    String normalized = normalize(query);
+    Map<Entry, Match> matches = new HashMap<>();
+
+    lock.readLock().lock();
+    try {
+      collectSubstring(normalized, matches);
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    return rank(matches.values(), limit);
+  }
+
+  /**
+   * Finds customers whose name is within the given edit distance of the query.
+   *
+   * @param query The name to look for.
+   * @param maxDistance The maximum number of single-character insertions, deletions or
+   *        substitutions.
+   * @param limit The maximum number of matches to return.
+   * @return The ranked matches, closest first.
+   */
+  public List<Match> fuzzy(String query, int maxDistance, int limit) {
+    String normalized = normalize(query);
+    Map<Entry, Match> matches = new HashMap<>();
+
+    lock.readLock().lock();
+    try {
+      collectFuzzy(normalized, maxDistance, matches);
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    return rank(matches.values(), limit);
+  }
+
+  /**
+   * Runs a prefix, substring and fuzzy search and returns the best matches. Exact matches rank
+   * first, then prefix, substring and fuzzy matches. The fuzzy distance allowed grows with the
+   * length of the query (one edit per four characters, at most two).
+   *
+   * @param query The text to search for.
+   * @param limit The maximum number of matches to return.
+   * @return The ranked matches.
+   */
+  public List<Match> search(String query, int limit) {
+    String normalized = normalize(query);
+
+    if (normalized.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    Map<Entry, Match> matches = new HashMap<>();
+
+    lock.readLock().lock();
+    try {
+      collectPrefix(normalized, matches);
+      collectSubstring(normalized, matches);
+      collectFuzzy(normalized, Math.min(2, normalized.length() / 4), matches);
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    return rank(matches.values(), limit);
+  }
+
+  private void collectPrefix(String normalized, Map<Entry, Match> matches) {
+    if (normalized.isEmpty()) {
+      return;
+    }
+
+    for (Set<Entry> bucket : terms.subMap(normalized, true, normalized + Character.MAX_VALUE, false)
+        .values()) {
+      for (Entry entry : bucket) {
+        MatchType type = entry.normalized.equals(normalized) ? MatchType.EXACT : MatchType.PREFIX;
+        offer(matches, new Match(entry, type, 0));
+      }
+    }
+  }
+
+  private void collectSubstring(String normalized, Map<Entry, Match> matches) {
+    if (normalized.isEmpty()) {
+      return;
+    }
+
+    Collection<Entry> candidates;
+
+    if (normalized.length() < GRAM) {
+      candidates = entries.values();
+    } else {
+      candidates = null;
+
+      for (String gram : grams(normalized)) {
+        Set<Entry> bucket = grams.get(gram);
+
+        if (Objects.isNull(bucket)) {
+          return;
+        }
+
+        if (Objects.isNull(candidates) || bucket.size() < candidates.size()) {
+          candidates = bucket;
+        }
+      }
+    }
+
+    for (Entry entry : candidates) {
+      if (entry.normalized.contains(normalized)) {
+        MatchType type = entry.normalized.equals(normalized) ? MatchType.EXACT
+            : entry.normalized.startsWith(normalized) ? MatchType.PREFIX : MatchType.SUBSTRING;
+        offer(matches, new Match(entry, type, 0));
+      }
+    }
+  }
+
+  private void collectFuzzy(String normalized, int maxDistance, Map<Entry, Match> matches) {
+    if (normalized.isEmpty() || maxDistance < 0) {
+      return;
+    }
+
+    Collection<Entry> candidates;
+    Set<String> queryGrams = grams(normalized);
+
+    /*
+     * Each edit destroys at most GRAM trigrams, so a name within maxDistance shares at least this many
+     * trigrams with the query. When that bound is not positive every name has to be checked.
+     */
+    int minShared = queryGrams.size() - maxDistance * GRAM;
+
+    if (minShared <= 0) {
+      candidates = entries.values();
+    } else {
+      Map<Entry, Integer> shared = new HashMap<>();
+
+      for (String gram : queryGrams) {
+        for (Entry entry : grams.getOrDefault(gram, Collections.emptySet())) {
+          shared.merge(entry, 1, Integer::sum);
+        }
+      }
+
+      candidates = new ArrayList<>();
+
+      for (Map.Entry<Entry, Integer> candidate : shared.entrySet()) {
+        if (candidate.getValue() >= minShared) {
+          candidates.add(candidate.getKey());
+        }
+      }
+    }
+
+    for (Entry entry : candidates) {
+      int distance = editDistance(normalized, entry.normalized, maxDistance);
+
+      if (distance <= maxDistance) {
+        MatchType type = distance == 0 ? MatchType.EXACT : MatchType.FUZZY;
+        offer(matches, new Match(entry, type, distance));
+      }
+    }
+  }
+
+  private static void offer(Map<Entry, Match> matches, Match match) {
+    matches.merge(match.entry(), match,
+        (current, next) -> RANKING.compare(next, current) < 0 ? next : current);
+  }
+
+  private static List<Match> rank(Collection<Match> matches, int limit) {
+    List<Match> ranked = new ArrayList<>(matches);
+    ranked.sort(RANKING);
+
+    return ranked.size() > limit ? new ArrayList<>(ranked.subList(0, limit)) : ranked;
+  }
+
+  private void removeEntry(Entry entry) {
+    if (Objects.isNull(entry)) {
+      return;
+    }
+
+    for (String term : terms(entry.normalized)) {
+      removeFrom(terms, term, entry);
+    }
+
+    for (String gram : grams(entry.normalized)) {
+      removeFrom(grams, gram, entry);
+    }
+  }
+
+  private static void removeFrom(Map<String, Set<Entry>> map, String key, Entry entry) {
+    Set<Entry> bucket = map.get(key);
+
+    if (Objects.nonNull(bucket)) {
+      bucket.remove(entry);
+
+      if (bucket.isEmpty()) {
+        map.remove(key);
+      }
+    }
+  }
+
+  /*
+   * The full name and every word in it.
+   */
+  private static Set<String> terms(String normalized) {
+    Set<String> result = new HashSet<>();
+    result.add(normalized);
+    Collections.addAll(result, normalized.split(" "));
+    return result;
+  }
+
+  /*
+   * All distinct sequences of GRAM characters. Names shorter than GRAM have a single "gram" that is
+   * the whole name.
+   */
+  private static Set<String> grams(String normalized) {
+    Set<String> result = new HashSet<>();
+
+    if (normalized.length() < GRAM) {
+      result.add(normalized);
+    } else {
+      for (int index = 0; index + GRAM <= normalized.length(); index++) {
+        result.add(normalized.substring(index, index + GRAM));
+      }
+    }
+
+    return result;
+  }
+
+  static String normalize(String name) {
+    return Objects.isNull(name) ? "" : name.trim().replaceAll("\\s+", " ").toLowerCase();
+  }
+
+  /**
+   * Levenshtein distance using two rows. Stops early and returns maxDistance + 1 once every cell in a
+   * row exceeds maxDistance.
+   */
+  static int editDistance(String a, String b, int maxDistance) {
+    if (Math.abs(a.length() - b.length()) > maxDistance) {
+      return maxDistance + 1;
+    }
+
+    int[] previous = new int[b.length() + 1];
+    int[] current = new int[b.length() + 1];
+
+    for (int j = 0; j <= b.length(); j++) {
+      previous[j] = j;
+    }
+
+    for (int i = 1; i <= a.length(); i++) {
+      current[0] = i;
+      int rowMin = current[0];
+
+      for (int j = 1; j <= b.length(); j++) {
+        int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+        current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+        rowMin = Math.min(rowMin, current[j]);
+      }
+
+      if (rowMin > maxDistance) {
+        return maxDistance + 1;
+      }
+
+      int[] swap = previous;
+      previous = current;
+      current = swap;
+    }
+
+    return previous[b.length()];
+  }
+
+  /**
+   * One indexed customer. Entries are compared by identity.
+   */
+  private static class Entry {
+    private final Integer customerId;
+    private final String customerName;
+    private final String normalized;
+
+    Entry(Integer customerId, String customerName) {
+      this.customerId = customerId;
+      this.customerName = customerName;
+      this.normalized = normalize(customerName);
+    }
+  }
+}
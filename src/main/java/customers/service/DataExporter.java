@@ -0,0 +1,331 @@
+package customers.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Objects;
+import java.util.zip.GZIPOutputStream;
+import customers.dao.CustomersDao;
+import customers.dao.RowHandler;
+import customers.exception.DbException;
+
+/**
+ * This class exports the customers and projects tables as CSV or JSON Lines. Each row is written
+ * from the {@link ResultSet} straight into a large character buffer; no entity objects are created,
+ * and rows are read from a server-side cursor, so memory use stays constant whatever the table
+ * size.
+ *
+ */
+public class DataExporter {
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  /**
+   * The output formats.
+   */
+  public enum Format {
+    /** A header line with the column names, then one comma-separated line per row. */
+    CSV,
+
+    /** One JSON object per line, keyed by column name. */
+    JSON_LINES
+  }
+
+  private final CustomersDao customerDao;
+
+  public DataExporter(CustomersDao customerDao) {
+    this.customerDao = customerDao;
+  }
+
+  /**
+   * Exports every project to a file.
+   *
+   * @param path The file to create or overwrite.
+   * @param format The output format.
+   * @param gzip If true, the file is GZIP compressed.
+   * @return The number of rows written.
+   */
+  public long exportProjects(Path path, Format format, boolean gzip) {
+    try (OutputStream out = open(path, gzip)) {
+      return exportProjects(out, format);
+    } catch (IOException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * Exports every customer to a file.
+   *
+   * @param path The file to create or overwrite.
+   * @param format The output format.
+   * @param gzip If true, the file is GZIP compressed.
+   * @return The number of rows written.
+   */
+  public long exportCustomers(Path path, Format format, boolean gzip) {
+    try (OutputStream out = open(path, gzip)) {
+      return exportCustomers(out, format);
+    } catch (IOException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * Exports every project to a stream. The stream is flushed but not closed.
+   *
+   * @param out The stream.
+   * @param format The output format.
+   * @return The number of rows written.
+   */
+  public long exportProjects(OutputStream out, Format format) {
+    RowWriter rowWriter = new RowWriter(out, format);
+    rowWriter.start(CustomersDao.PROJECT_COLUMNS);
+    customerDao.streamProjects(rowWriter);
+    return rowWriter.finish();
+  }
+
+  /**
+   * Exports every customer to a stream. The stream is flushed but not closed.
+   *
+   * @param out The stream.
+   * @param format The output format.
+   * @return The number of rows written.
+   */
+  public long exportCustomers(OutputStream out, Format format) {
+    RowWriter rowWriter = new RowWriter(out, format);
+    rowWriter.start(CustomersDao.CUSTOMER_COLUMNS);
+    customerDao.streamCustomers(rowWriter);
+    return rowWriter.finish();
+  }
+
+  private static OutputStream open(Path path, boolean gzip) throws IOException {
+    OutputStream out = Channels.newOutputStream(FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+
+    return gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : out;
+  }
+
+  /**
+   * Formats rows into a buffered writer. The CSV header is written from the DAO's column list before
+   * the rows are streamed, so an empty table still gets one. Column names and kinds are read from
+   * the result set metadata once, on the first row.
+   */
+  private static class RowWriter implements RowHandler {
+    private static final int NUMBER = 0;
+    private static final int BOOLEAN = 1;
+    private static final int TEXT = 2;
+
+    private final Writer writer;
+    private final Format format;
+    private String[] names;
+    private String[] jsonKeys;
+    private int[] kinds;
+    private long rows;
+
+    RowWriter(OutputStream out, Format format) {
+      this.writer =
+          new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+      this.format = format;
+    }
+
+    /*
+     * Writes the CSV header of the given comma-separated column list. JSON Lines has no header.
+     */
+    void start(String columns) {
+      if (format == Format.CSV) {
+        try {
+          writer.write(String.join(",", columns.split(",\\s*")));
+          writer.write('\n');
+        } catch (IOException e) {
+          throw new DbException(e);
+        }
+      }
+    }
+
+    @Override
+    public void handle(ResultSet rs) throws SQLException {
+      try {
+        if (Objects.isNull(names)) {
+          describe(rs.getMetaData());
+        }
+
+        if (format == Format.CSV) {
+          writeCsv(rs);
+        } else {
+          writeJson(rs);
+        }
+
+        rows++;
+      } catch (IOException e) {
+        throw new DbException(e);
+      }
+    }
+
+    long finish() {
+      try {
+        writer.flush();
+        return rows;
+      } catch (IOException e) {
+        throw new DbException(e);
+      }
+    }
+
+    private void describe(ResultSetMetaData meta) throws SQLException {
+      int count = meta.getColumnCount();
+      names = new String[count];
+      jsonKeys = new String[count];
+      kinds = new int[count];
+
+      for (int column = 0; column < count; column++) {
+        names[column] = meta.getColumnLabel(column + 1);
+        jsonKeys[column] = (column == 0 ? "{\"" : ",\"") + names[column] + "\":";
+
+        switch (meta.getColumnType(column + 1)) {
+          case Types.BIT:
+          case Types.BOOLEAN:
+            kinds[column] = BOOLEAN;
+            break;
+
+          case Types.CHAR:
+          case Types.VARCHAR:
+          case Types.LONGVARCHAR:
+          case Types.DATE:
+          case Types.TIMESTAMP:
+            kinds[column] = TEXT;
+            break;
+
+          default:
+            kinds[column] = NUMBER;
+            break;
+        }
+      }
+    }
+
+    private void writeCsv(ResultSet rs) throws SQLException, IOException {
+      for (int column = 0; column < kinds.length; column++) {
+        if (column > 0) {
+          writer.write(',');
+        }
+
+        String value = value(rs, column);
+
+        if (Objects.nonNull(value)) {
+          if (kinds[column] == TEXT) {
+            writeCsvText(value);
+          } else {
+            writer.write(value);
+          }
+        }
+      }
+
+      writer.write('\n');
+    }
+
+    private void writeJson(ResultSet rs) throws SQLException, IOException {
+      for (int column = 0; column < kinds.length; column++) {
+        writer.write(jsonKeys[column]);
+
+        String value = value(rs, column);
+
+        if (Objects.isNull(value)) {
+          writer.write("null");
+        } else if (kinds[column] == TEXT) {
+          writeJsonText(value);
+        } else {
+          writer.write(value);
+        }
+      }
+
+      writer.write("}\n");
+    }
+
+    /*
+     * Numbers are taken as the driver's text form, which avoids creating BigDecimal objects.
+     */
+    private String value(ResultSet rs, int column) throws SQLException {
+      if (kinds[column] == BOOLEAN) {
+        boolean value = rs.getBoolean(column + 1);
+        return rs.wasNull() ? null : value ? "true" : "false";
+      }
+
+      return rs.getString(column + 1);
+    }
+
+    private void writeCsvText(String value) throws IOException {
+      boolean quote = false;
+
+      for (int index = 0; index < value.length() && !quote; index++) {
+        char ch = value.charAt(index);
+        quote = ch == ',' || ch == '"' || ch == '\n' || ch == '\r';
+      }
+
+      if (!quote) {
+        writer.write(value);
+        return;
+      }
+
+      writer.write('"');
+
+      for (int index = 0; index < value.length(); index++) {
+        char ch = value.charAt(index);
+
+        if (ch == '"') {
+          writer.write('"');
+        }
+
+        writer.write(ch);
+      }
+
+      writer.write('"');
+    }
+
+    private void writeJsonText(String value) throws IOException {
+      writer.write('"');
+
+      for (int index = 0; index < value.length(); index++) {
+        char ch = value.charAt(index);
+
+        switch (ch) {
+          case '"':
+            writer.write("\\\"");
+            break;
+
+          case '\\':
+            writer.write("\\\\");
+            break;
+
+          case '\n':
+            writer.write("\\n");
+            break;
+
+          case '\r':
+            writer.write("\\r");
+            break;
+
+          case '\t':
+            writer.write("\\t");
+            break;
+
+          default:
+            if (ch < 0x20) {
+              writer.write(String.format("\\u%04x", (int) ch));
+            } else {
+              writer.write(ch);
+            }
+            break;
+        }
+      }
+
+      writer.write('"');
+    }
+  }
+}
@@ -0,0 +1,251 @@
+package customers.service;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import customers.dao.AdmissionController;
+import customers.dao.CustomersDao;
+import customers.exception.DbException;
+
+/**
+ * This class loads the schema and data files with several connections at once. The schema DDL runs
+ * first. The data statements are then split by table into chunks that each commit in their own
+ * transaction: all customer chunks, then all project chunks (projects reference customers), then
+ * any other statements in file order.
+ *
+ * Within a table, chunks run in parallel on a pool of worker threads, one connection per chunk, as
+ * long as every statement names the table's key column. Without explicit keys the generated IDs
+ * would depend on the order the chunks commit in, so that table's chunks run one at a time in file
+ * order. A failed chunk still uses up the IDs it was given, so before such a table's remaining
+ * chunks run, its AUTO_INCREMENT counter is set back to one past its highest ID; a resumed load
+ * then gives the rows the same IDs as a load that never failed. The load is admitted once as a
+ * BULK job, so it takes one BULK slot however many workers commit its chunks.
+ *
+ * Each chunk's ID is written to a progress table in the chunk's own transaction, so the progress
+ * table always matches the data. If a load fails, running it again with the same files and chunk
+ * size skips the schema and every committed chunk and carries on from there. The progress table is
+ * dropped when the load completes.
+ *
+ */
+public class DataSeeder {
+  private static final String PROGRESS_TABLE = "seed_progress";
+  private static final Pattern INSERT_TABLE =
+      Pattern.compile("^\\s*insert\\s+(?:ignore\\s+)?into\\s+`?(\\w+)`?", Pattern.CASE_INSENSITIVE);
+  private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final CustomersDao customerDao;
+  private final int workers;
+  private final int chunkSize;
+  private final PrintStream progress;
+
+  private final AtomicLong committedStatements = new AtomicLong();
+  private final AtomicLong lastReport = new AtomicLong();
+  private long totalStatements;
+
+  /**
+   * @param customerDao The DAO that runs the statements.
+   * @param workers The number of chunks committed at once.
+   * @param chunkSize The number of statements per transaction.
+   * @param progress Where progress is reported.
+   */
+  public DataSeeder(CustomersDao customerDao, int workers, int chunkSize, PrintStream progress) {
+    this.customerDao = customerDao;
+    this.workers = Math.max(1, workers);
+    this.chunkSize = Math.max(1, chunkSize);
+    this.progress = progress;
+  }
+
+  /**
+   * Runs the schema and loads the data, resuming an earlier load of the same data if one failed.
+   *
+   * @param schemaStatements The DDL statements.
+   * @param dataStatements The data statements.
+   * @throws DbException Thrown if a chunk fails. Chunks committed before the failure are kept.
+   */
+  public void seed(List<String> schemaStatements, List<String> dataStatements) {
+    String planId = String.format("plan:%d:%d:%08x", chunkSize, dataStatements.size(),
+        dataStatements.hashCode());
+    Set<String> done = customerDao.fetchSeedProgress(PROGRESS_TABLE);
+    long start = System.nanoTime();
+
+    try (AdmissionController.Admission job = customerDao.admitBulkJob()) {
+      if (done.contains(planId)) {
+        progress.printf("Resuming the data load: %d chunk(s) already committed%n",
+            done.size() - 1);
+      } else {
+        customerDao.executeBatch(schemaStatements, false, job);
+
+        // @formatter:off
+        customerDao.executeBatch(List.of(
+            "DROP TABLE IF EXISTS " + PROGRESS_TABLE,
+            "CREATE TABLE " + PROGRESS_TABLE + " (chunk_id VARCHAR(64) NOT NULL PRIMARY KEY)",
+            "INSERT INTO " + PROGRESS_TABLE + " (chunk_id) VALUES ('" + planId + "')"), false,
+            job);
+        // @formatter:on
+        done = Set.of(planId);
+      }
+
+      loadData(dataStatements, done, job);
+    }
+
+    customerDao.executeBatch(List.of("DROP TABLE IF EXISTS " + PROGRESS_TABLE), false);
+    customerDao.publishReload();
+    progress.printf("Loaded %d statement(s) in %d ms%n", totalStatements,
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+  }
+
+  /*
+   * Splits the data statements by table and commits the chunks of each phase that are not done.
+   */
+  private void loadData(List<String> dataStatements, Set<String> done,
+      AdmissionController.Admission job) {
+
+    List<String> customers = new ArrayList<>();
+    List<String> projects = new ArrayList<>();
+    List<String> others = new ArrayList<>();
+
+    for (String sql : dataStatements) {
+      Matcher matcher = INSERT_TABLE.matcher(sql);
+      String table = matcher.find() ? matcher.group(1).toLowerCase(Locale.ROOT) : "";
+
+      if ("customers".equals(table)) {
+        customers.add(sql);
+      } else if ("projects".equals(table)) {
+        projects.add(sql);
+      } else {
+        others.add(sql);
+      }
+    }
+
+    totalStatements = dataStatements.size();
+    ExecutorService executor = Executors.newFixedThreadPool(workers, runnable -> {
+      Thread thread = new Thread(runnable, "seed-worker");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    try {
+      runPhase("customers", customers, "customer_id", done, executor, job);
+      runPhase("projects", projects, "customer_id", done, executor, job);
+      runPhase("other", others, null, done, executor, job);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /*
+   * Commits the phase's chunks that are not yet recorded. A phase with a key column loads the table
+   * it is named after; its chunks run in parallel if every statement gives the key, and otherwise
+   * one at a time after the table's AUTO_INCREMENT counter is reset. Parallel chunks stop being
+   * started after the first failure; chunks already running finish, and the first failure is
+   * rethrown.
+   */
+  private void runPhase(String phase, List<String> statements, String keyColumn, Set<String> done,
+      ExecutorService executor, AdmissionController.Admission job) {
+    boolean parallel = Objects.nonNull(keyColumn) && hasKeys(statements, keyColumn);
+    boolean counterReset = Objects.isNull(keyColumn) || parallel;
+    List<Future<?>> futures = new ArrayList<>();
+    AtomicBoolean failed = new AtomicBoolean();
+
+    for (int from = 0, chunk = 0; from < statements.size(); from += chunkSize, chunk++) {
+      String chunkId = phase + ":" + chunk;
+      List<String> sql = statements.subList(from, Math.min(from + chunkSize, statements.size()));
+
+      if (done.contains(chunkId)) {
+        committedStatements.addAndGet(sql.size());
+        continue;
+      }
+
+      if (!parallel) {
+        if (!counterReset) {
+          customerDao.resetAutoIncrement(phase, keyColumn, job);
+          counterReset = true;
+        }
+
+        commitChunk(chunkId, sql, job);
+        continue;
+      }
+
+      futures.add(executor.submit(() -> {
+        if (!failed.get()) {
+          try {
+            commitChunk(chunkId, sql, job);
+          } catch (RuntimeException e) {
+            failed.set(true);
+            throw e;
+          }
+        }
+      }));
+    }
+
+    DbException failure = null;
+
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure = new DbException("Data load failed; run it again to resume", e.getCause());
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new DbException("Interrupted while loading data", e);
+      }
+    }
+
+    if (failure != null) {
+      throw failure;
+    }
+
+    if (!statements.isEmpty()) {
+      report(true);
+    }
+  }
+
+  private void commitChunk(String chunkId, List<String> sql, AdmissionController.Admission job) {
+    List<String> batch = new ArrayList<>(sql.size() + 1);
+    batch.addAll(sql);
+    batch.add("INSERT INTO " + PROGRESS_TABLE + " (chunk_id) VALUES ('" + chunkId + "')");
+
+    customerDao.executeBatch(batch, false, job);
+    committedStatements.addAndGet(sql.size());
+    report(false);
+  }
+
+  private void report(boolean force) {
+    long now = System.nanoTime();
+    long last = lastReport.get();
+
+    if (force || now - last >= REPORT_INTERVAL_NANOS && lastReport.compareAndSet(last, now)) {
+      long committed = committedStatements.get();
+      progress.printf("Loaded %d of %d statement(s) (%d%%)%n", committed, totalStatements,
+          totalStatements == 0 ? 100 : committed * 100 / totalStatements);
+    }
+  }
+
+  /*
+   * True if every statement mentions the key column, so the rows carry their own keys and the
+   * chunks can commit in any order.
+   */
+  private static boolean hasKeys(List<String> statements, String keyColumn) {
+    for (String sql : statements) {
+      if (!sql.toLowerCase(Locale.ROOT).contains(keyColumn)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+}
@@ -0,0 +1,115 @@
+package customers.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter over int IDs. {@link #mightContain(int)} never answers false for an ID that was
+ * added, and answers true for an ID that was not added with about the false-positive rate the filter
+ * was sized for. A false answer therefore proves an ID does not exist, which lets callers skip the
+ * database round trip; a true answer still has to be confirmed.
+ *
+ * Bits are set with compare-and-set on an {@link AtomicLongArray}, so adds and lookups can run
+ * concurrently without locking. IDs cannot be removed; a deleted ID just becomes one more false
+ * positive until the filter is rebuilt.
+ *
+ */
+public class IdBloomFilter {
+  private final AtomicLongArray words;
+  private final long bitCount;
+  private final int hashCount;
+  private final int expectedIds;
+  private final AtomicInteger added = new AtomicInteger();
+
+  /**
+   * @param expectedIds The number of IDs the filter is sized for.
+   * @param falsePositiveRate The wanted false-positive rate at that size, for example 0.01.
+   */
+  public IdBloomFilter(int expectedIds, double falsePositiveRate) {
+    int expected = Math.max(expectedIds, 64);
+    double ln2 = Math.log(2);
+    long bits = (long) Math.ceil(-expected * Math.log(falsePositiveRate) / (ln2 * ln2));
+    int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, (bits + 63) / 64);
+
+    this.words = new AtomicLongArray(wordCount);
+    this.bitCount = wordCount * 64L;
+    this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expected * ln2));
+    this.expectedIds = expected;
+  }
+
+  /**
+   * Adds an ID.
+   *
+   * @param id The ID.
+   */
+  public void add(int id) {
+    long hash = mix(id);
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32) | 1;
+
+    for (int index = 0; index < hashCount; index++) {
+      long bit = Integer.toUnsignedLong(h1 + index * h2) % bitCount;
+      int word = (int) (bit >>> 6);
+      long mask = 1L << bit;
+      long current;
+
+      while (((current = words.get(word)) & mask) == 0
+          && !words.compareAndSet(word, current, current | mask)) {
+        /* Another thread changed the word; retry with its new value. */
+      }
+    }
+
+    added.incrementAndGet();
+  }
+
+  /**
+   * @param id The ID.
+   * @return False if the ID was certainly never added; true if it probably was.
+   */
+  public boolean mightContain(int id) {
+    long hash = mix(id);
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32) | 1;
+
+    for (int index = 0; index < hashCount; index++) {
+      long bit = Integer.toUnsignedLong(h1 + index * h2) % bitCount;
+
+      if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * @return True once more IDs have been added than the filter was sized for, after which the
+   *         false-positive rate climbs and the filter should be rebuilt larger.
+   */
+  public boolean isSaturated() {
+    return added.get() > expectedIds;
+  }
+
+  public int getAddedCount() {
+    return added.get();
+  }
+
+  /*
+   * The 64-bit finalizer from MurmurHash3. Its two halves are used as the two hashes for double
+   * hashing (Kirsch and Mitzenmacher).
+   */
+  private static long mix(int id) {
+    long hash = (id + 0x632BE59BD9B4E019L) * 0x9E3779B97F4A7C15L;
+    hash ^= hash >>> 33;
+    hash *= 0xFF51AFD7ED558CCDL;
+    hash ^= hash >>> 33;
+    hash *= 0xC4CEB9FE1A85EC53L;
+    return hash ^ (hash >>> 33);
+  }
+
+  @Override
+  public String toString() {
+    return "IdBloomFilter(" + added.get() + " ids, " + bitCount + " bits, " + hashCount
+        + " hashes)";
+  }
+}
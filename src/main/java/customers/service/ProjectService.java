@@ -3,16 +3,41 @@
  */
 package customers.service;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+import customers.dao.ChangeEvent;
+import customers.dao.ChangeFeed;
+import customers.dao.ChangeListener;
 import customers.dao.CustomersDao;
+import customers.dao.DbConnection;
+import customers.dao.FetchPlan;
+import customers.dao.RankColumn;
+import customers.dao.RowHandler;
+import customers.dao.ShardedCustomersDao;
 import customers.entity.Customer;
 import customers.entity.Project;
+import customers.entity.ProjectSummary;
 import customers.exception.DbException;
+import customers.exception.InvalidInputException;
+import customers.snapshot.MappedSnapshot;
+import customers.snapshot.SnapshotFormat;
+import customers.snapshot.SnapshotReader;
+import customers.snapshot.SnapshotWriter;
 
 /**
  * This class implements the service layer in the 3-tier application. The CRUD operations that the
@@ -22,13 +47,96 @@ import customers.exception.DbException;
  */
 public class ProjectService {
   private static final String SCHEMA_FILE = "customers-schema.sql";
+  private static final String PARTITIONED_SCHEMA_FILE = "customers-schema-partitioned.sql";
   private static final String DATA_FILE = "customers-data.sql";
+  private static final int SNAPSHOT_CHUNK_SIZE = 5000;
+  private static final double ID_FILTER_FALSE_POSITIVE_RATE = 0.01;
+  private static final String REPORT_CACHE_ENTRIES = "customers.cache.reports.entries";
+  private static final String ID_FILTER_REFRESH = "customers.cache.idFilters.refreshSeconds";
+  private static final List<String> PROJECTS_TABLES = List.of("projects");
 
-  private CustomersDao customerDao = new CustomersDao();
+  private final CustomersDao customerDao;
+  private final DataExporter exporter;
+  private CustomerNameIndex nameIndex;
+  private final QueryCache reportCache;
+
+  /*
+   * Bloom filters of the customer and project IDs in the tables, built on first use, updated by
+   * every insert made through this service or published on the DAO's change feed, and rebuilt from
+   * the tables once they are older than the refresh interval. Inserts made by other processes are
+   * only seen by a rebuild, so a customer ID above the highest one in the tables at the last build
+   * is always looked up.
+   *
+   * A rebuild streams the tables on a background thread without holding this object's lock, and
+   * the old filters keep answering until the new ones are swapped in. IDs added while it streams
+   * are kept in the pending lists and replayed into the new filters. The pending lists, the swap
+   * and the generation, which a reset bumps so that a build that started before it is discarded,
+   * are guarded by this object's lock; only one build runs at a time.
+   */
+  private volatile IdFilters idFilters;
+  private List<Integer> pendingCustomerIds;
+  private List<Integer> pendingProjectIds;
+  private long idFilterGeneration;
+  private final Object idFilterBuild = new Object();
+  private final AtomicBoolean idFilterRefreshing = new AtomicBoolean();
+  private final long idFilterRefreshNanos;
+
+  /**
+   * Creates a service over the configured database, or over the configured shards when
+   * {@value ShardedCustomersDao#SHARDS} lists any.
+   */
+  public ProjectService() {
+    this(ShardedCustomersDao.isConfigured()
+        ? ShardedCustomersDao.fromConfig(ChangeFeed.getDefault())
+        : new CustomersDao());
+  }
+
+  /**
+   * @param customerDao The DAO the service reads and writes through.
+   */
+  public ProjectService(CustomersDao customerDao) {
+    this.customerDao = customerDao;
+    this.exporter = new DataExporter(customerDao);
+    this.reportCache = new QueryCache(customerDao.getChangeFeed(),
+        DbConnection.getConfig().getInt(REPORT_CACHE_ENTRIES, 256));
+    this.idFilterRefreshNanos =
+        TimeUnit.SECONDS.toNanos(DbConnection.getConfig().getInt(ID_FILTER_REFRESH, 60));
+
+    customerDao.getChangeFeed().subscribe("id-filters", new IdFilterListener());
+  }
 
   public void createAndPopulateTables() {
-    loadFromFile(SCHEMA_FILE);
+    loadFromFile(getSchemaFile());
     loadFromFile(DATA_FILE);
+    resetNameIndex();
+    resetIdFilters();
+  }
+
+  /**
+   * Creates the tables and loads the data file over several connections, committing in chunks. A
+   * load that failed part way resumes from its last committed chunk when it is run again.
+   * 
+   * @param workers The number of chunks committed at once.
+   * @param chunkSize The number of statements committed per transaction.
+   */
+  public void createAndPopulateTables(int workers, int chunkSize) {
+    List<String> schema = convertFileContentToSqlStatements(readFileContent(getSchemaFile()));
+    List<String> data = convertFileContentToSqlStatements(readFileContent(DATA_FILE));
+
+    try {
+      new DataSeeder(customerDao, workers, chunkSize, System.out).seed(schema, data);
+    } finally {
+      resetNameIndex();
+      resetIdFilters();
+    }
+  }
+
+  /*
+   * The partitioned schema when the DAO is configured for it ({@value CustomersDao#PARTITIONED}).
+   */
+  private String getSchemaFile() {
+    return Boolean.parseBoolean(DbConnection.getConfig().get(CustomersDao.PARTITIONED, "false"))
+        ? PARTITIONED_SCHEMA_FILE : SCHEMA_FILE;
   }
 
   private void loadFromFile(String fileName) {
@@ -107,7 +215,10 @@ public class ProjectService {
    * @return The Customer object with the newly generated primary key value.
    */
   public Customer addCustomer(Customer customer) {
-    return customerDao.insertCustomer(customer);
+    Customer dbCustomer = customerDao.insertCustomer(customer);
+    indexCustomer(dbCustomer);
+    addIds(List.of(dbCustomer), List.of());
+    return dbCustomer;
   }
 
   /**
@@ -117,27 +228,727 @@ public class ProjectService {
    * @return The Project object
    */
   public Project addProject(Project project) {
-    return customerDao.insertProject(project);
+    checkNewProjectIds(List.of(project));
+
+    Project dbProject = customerDao.insertProject(project);
+    addIds(List.of(), List.of(dbProject));
+    return dbProject;
+  }
+
+  /**
+   * Checks that a project ID is not used yet. IDs the filter has never seen are accepted without a
+   * database query.
+   * 
+   * @param projectId The project ID.
+   * @throws DbException Thrown if a project with the ID exists.
+   */
+  public void checkProjectIdAvailable(Integer projectId) {
+    Project project = new Project();
+    project.setProjectId(projectId);
+    checkNewProjectIds(List.of(project));
   }
 
   public List<Customer> fetchCustomers() {
     return customerDao.fetchAllCustomers();
   }
 
+  /**
+   * Fetches one page of customers.
+   * 
+   * @param afterCustomerId The last customer ID of the previous page, or 0 for the first page.
+   * @param limit The page size.
+   * @return The customers on the page.
+   */
+  public List<Customer> fetchCustomers(int afterCustomerId, int limit) {
+    return customerDao.fetchCustomers(afterCustomerId, limit);
+  }
+
+  /**
+   * Fetches one page of projects.
+   * 
+   * @param afterCustomerId The last customer ID of the previous page, or 0 for the first page.
+   * @param limit The page size.
+   * @return The projects on the page.
+   */
+  public List<Project> fetchProjects(int afterCustomerId, int limit) {
+    return customerDao.fetchProjects(afterCustomerId, limit);
+  }
+
+  /**
+   * Fetches a customer. Its projects load on first access.
+   * 
+   * @param customerId The customer ID.
+   * @return The customer, if it exists.
+   */
+  public Optional<Customer> fetchCustomerById(int customerId) {
+    return fetchCustomerById(customerId, FetchPlan.LAZY_PROJECTS);
+  }
+
+  /**
+   * Fetches a customer, loading its projects as the plan says.
+   * 
+   * @param customerId The customer ID.
+   * @param plan How the customer's projects are loaded.
+   * @return The customer, if it exists.
+   */
+  public Optional<Customer> fetchCustomerById(int customerId, FetchPlan plan) {
+    if (!mightHaveCustomer(customerId)) {
+      return Optional.empty();
+    }
+
+    return customerDao.fetchCustomerById(customerId, plan);
+  }
+
+  /**
+   * Adds new customers and their projects in one transaction.
+   * 
+   * @param customers The customers, each with its projects.
+   * @return The customers with their generated IDs.
+   */
+  public List<Customer> addCustomersWithProjects(List<Customer> customers) {
+    List<Project> projects = new ArrayList<>();
+    customers.forEach(customer -> projects.addAll(customer.getProjects()));
+    checkNewProjectIds(projects);
+
+    List<Customer> dbCustomers = customerDao.insertCustomersWithProjects(customers);
+
+    for (Customer customer : dbCustomers) {
+      indexCustomer(customer);
+    }
+
+    addIds(dbCustomers, projects);
+
+    return dbCustomers;
+  }
+
+  /**
+   * Opens a unit of work. See {@link ProjectSession}.
+   * 
+   * @return The new session, which should be closed when done.
+   */
+  public ProjectSession openSession() {
+    return new ProjectSession(this, customerDao);
+  }
+
   public List<Project> fetchProjects() {
     return customerDao.fetchAllProjects();
   }
 
   /**
-   * This is still being worked on. It called by the method listProjects() in the I/O layer and calls
-   * the fetchCustomerById method in the DAO layer.
+   * Inserts projects, or updates the existing project of the same customer.
+   * 
+   * @param projects The projects. Each must have a customer ID.
+   */
+  public void upsertProjects(Collection<Project> projects) {
+    customerDao.upsertProjects(projects);
+    addIds(List.of(), projects);
+  }
+
+  /**
+   * Marks projects as installed.
+   * 
+   * @param projectIds The project IDs.
+   * @param year The install year.
+   * @param month The install month.
+   * @return The number of projects updated.
+   */
+  public int markInstalled(Collection<Integer> projectIds, int year, int month) {
+    return customerDao.markInstalled(projectIds, year, month);
+  }
+
+  /**
+   * Deletes customers together with their projects.
+   * 
+   * @param customerIds The customer IDs.
+   * @return The number of customers deleted.
+   */
+  public int deleteCustomers(Collection<Integer> customerIds) {
+    int deleted = customerDao.deleteCustomers(customerIds);
+    unindexCustomers(customerIds);
+    return deleted;
+  }
+
+  /**
+   * Moves installed projects from before a given year to the archive table. See
+   * {@link CustomersDao#archiveProjects(int, int)}.
+   * 
+   * @param beforeYear Projects installed before this year are archived.
+   * @param batchSize The number of projects moved per transaction.
+   * @return The number of projects archived.
+   */
+  public int archiveProjects(int beforeYear, int batchSize) {
+    return customerDao.archiveProjects(beforeYear, batchSize);
+  }
+
+  /**
+   * @param fromYear The first install year.
+   * @param toYear The last install year.
+   * @return The projects installed in those years, in customer_id order.
+   */
+  public List<Project> fetchProjectsInstalled(int fromYear, int toYear) {
+    return customerDao.fetchProjectsInstalled(fromYear, toYear);
+  }
+
+  /**
+   * @return The projects not installed yet, in customer_id order.
+   */
+  public List<Project> fetchUninstalledProjects() {
+    return customerDao.fetchUninstalledProjects();
+  }
+
+  /**
+   * Fetches all projects with a parallel scan over the given number of customer_id ranges.
    * 
-   * @param integer customerId
+   * @param slices The number of ranges fetched concurrently, each on its own connection.
+   * @return The projects in customer_id order.
    */
+  public List<Project> fetchProjects(int slices) {
+    return customerDao.fetchAllProjects(slices);
+  }
+
+  /**
+   * Fetches all projects sorted by one of the derived metrics. The metrics are computed during the
+   * sort and stay cached on the returned projects.
+   * 
+   * @param metric The metric to sort by.
+   * @param descending True to put the largest values first.
+   * @return The sorted projects.
+   */
+  public List<Project> fetchProjectsSortedBy(Project.Metric metric, boolean descending) {
+    List<Project> projects = new ArrayList<>(customerDao.fetchAllProjects());
+    projects.sort(descending ? metric.comparator().reversed() : metric.comparator());
+    return projects;
+  }
+
+  /**
+   * Fetches the top projects by a column. The ranking runs in the database on the column's index.
+   * 
+   * @param column The column to rank by.
+   * @param descending True for the largest values first.
+   * @param installYear If not null, only projects installed in this year are ranked.
+   * @param limit The number of projects returned.
+   * @return The top projects, best first.
+   */
+  public List<Project> fetchTopProjects(RankColumn column, boolean descending, Integer installYear,
+      int limit) {
+    return customerDao.fetchTopProjects(column, descending, installYear, limit);
+  }
+
+  /**
+   * Fetches the top projects by a derived metric. The projects are streamed through a heap that
+   * keeps only the top ones, so the table is never held in memory.
+   * 
+   * @param metric The metric to rank by.
+   * @param descending True for the largest values first.
+   * @param installYear If not null, only projects installed in this year are ranked.
+   * @param limit The number of projects returned.
+   * @return The top projects, best first.
+   */
+  public List<Project> fetchTopProjects(Project.Metric metric, boolean descending,
+      Integer installYear, int limit) {
+    return customerDao.fetchTopProjects(
+        descending ? metric.comparator().reversed() : metric.comparator(), installYear, limit);
+  }
+
+  /**
+   * Fetches the top projects by a column or derived metric given by name, for example
+   * {@code gross_price} or {@code price_per_watt}. Columns are ranked in the database and metrics
+   * in a bounded heap.
+   * 
+   * @param rankBy The name of a {@link RankColumn} or a {@link Project.Metric}, in any case.
+   * @param descending True for the largest values first.
+   * @param installYear If not null, only projects installed in this year are ranked.
+   * @param limit The number of projects returned.
+   * @return The top projects, best first.
+   * @throws DbException Thrown if the name is neither a column nor a metric.
+   */
+  public List<Project> fetchTopProjects(String rankBy, boolean descending, Integer installYear,
+      int limit) {
+    String name = rankBy.strip().toUpperCase();
+
+    for (RankColumn column : RankColumn.values()) {
+      if (column.name().equals(name)) {
+        return fetchTopProjects(column, descending, installYear, limit);
+      }
+    }
 
+    for (Project.Metric metric : Project.Metric.values()) {
+      if (metric.name().equals(name)) {
+        return fetchTopProjects(metric, descending, installYear, limit);
+      }
+    }
+
+    throw new InvalidInputException("Projects cannot be ranked by " + rankBy);
+  }
+
+  /**
+   * Totals the projects table: counts, gross price, system size, fees, adders and commission. The
+   * summary is cached until the projects table is next written.
+   * 
+   * @return The summary.
+   */
+  public ProjectSummary fetchProjectReport() {
+    return reportCache.get("project-summary", List.of(), PROJECTS_TABLES,
+        customerDao::fetchProjectSummary);
+  }
+
+  /**
+   * Totals the projects installed in a range of years, cached like {@link #fetchProjectReport()}.
+   * 
+   * @param fromYear The first install year.
+   * @param toYear The last install year.
+   * @return The summary.
+   */
+  public ProjectSummary fetchProjectReport(int fromYear, int toYear) {
+    return reportCache.get("project-summary-installed", List.of(fromYear, toYear),
+        PROJECTS_TABLES, () -> customerDao.fetchProjectSummary(fromYear, toYear));
+  }
+
+  /**
+   * @return The cache that holds report results.
+   */
+  public QueryCache getReportCache() {
+    return reportCache;
+  }
+
+  /**
+   * Moves every customer to the shard that owns it; see {@link ShardedCustomersDao#rebalance()}.
+   * 
+   * @return The number of customers moved.
+   * @throws DbException Thrown if no shards are configured.
+   */
+  public int rebalanceShards() {
+    if (!(customerDao instanceof ShardedCustomersDao)) {
+      throw new DbException("No shards are configured (" + ShardedCustomersDao.SHARDS + ")");
+    }
+
+    return ((ShardedCustomersDao) customerDao).rebalance();
+  }
+
+  /**
+   * Cancels every database operation that is running, for example at shutdown; see
+   * {@link CustomersDao#cancelOperations(customers.dao.Workload)}.
+   *
+   * @return The number of operations cancelled.
+   */
+  public int cancelOperations() {
+    return customerDao.cancelOperations(null);
+  }
+
+  /**
+   * Looks up a customer's name with a single query. The customer's projects are not loaded.
+   * 
+   * @param customerId The customer ID.
+   * @return The customer, if it exists.
+   */
   public Optional<Customer> getCustomerNameFromId(int customerId) {
-    return customerDao.fetchCustomerById(customerId);
+    return fetchCustomerById(customerId, FetchPlan.CUSTOMERS_ONLY);
+
+  }
+
+  /**
+   * Exports every project as CSV or JSON Lines, streamed straight from the database.
+   * 
+   * @param path The file to write.
+   * @param format The output format.
+   * @param gzip If true, the file is GZIP compressed.
+   * @return The number of projects written.
+   */
+  public long exportProjects(Path path, DataExporter.Format format, boolean gzip) {
+    return exporter.exportProjects(path, format, gzip);
+  }
+
+  /**
+   * Exports every customer as CSV or JSON Lines, streamed straight from the database.
+   * 
+   * @param path The file to write.
+   * @param format The output format.
+   * @param gzip If true, the file is GZIP compressed.
+   * @return The number of customers written.
+   */
+  public long exportCustomers(Path path, DataExporter.Format format, boolean gzip) {
+    return exporter.exportCustomers(path, format, gzip);
+  }
+
+  /**
+   * Writes every customer and project to a binary snapshot file. Rows are streamed from one
+   * consistent read of the database straight into the file. Over shards the read is not one
+   * snapshot; see {@link ShardedCustomersDao#streamCustomersAndProjects(RowHandler, RowHandler)}.
+   * 
+   * @param path The snapshot file to create.
+   * @param compress If true, the file body is GZIP compressed. Uncompressed snapshots can be memory
+   *        mapped with {@link MappedSnapshot}.
+   * @return The number of projects written.
+   */
+  public long exportSnapshot(Path path, boolean compress) {
+    try (SnapshotWriter writer = new SnapshotWriter(path, compress)) {
+      customerDao.streamCustomersAndProjects(
+          rs -> writeSnapshotCustomer(writer, rs),
+          rs -> writeSnapshotProject(writer, rs));
+      writer.finish();
+      return writer.getProjectCount();
+    } catch (IOException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * Bulk-loads a snapshot file into the (empty) customer and project tables. Rows are inserted in
+   * batched transactions of {@value #SNAPSHOT_CHUNK_SIZE} rows, customers before projects.
+   * 
+   * @param path The snapshot file.
+   * @return The number of projects loaded.
+   */
+  public long importSnapshot(Path path) {
+    List<Customer> customers = new ArrayList<>(SNAPSHOT_CHUNK_SIZE);
+    List<Project> projects = new ArrayList<>(SNAPSHOT_CHUNK_SIZE);
+
+    try (SnapshotReader reader = new SnapshotReader(path)) {
+      reader.read(customer -> {
+        customers.add(customer);
+        if (customers.size() == SNAPSHOT_CHUNK_SIZE) {
+          customerDao.insertCustomers(customers);
+          customers.clear();
+        }
+      }, project -> {
+        if (!customers.isEmpty()) {
+          customerDao.insertCustomers(customers);
+          customers.clear();
+        }
+        projects.add(project);
+        if (projects.size() == SNAPSHOT_CHUNK_SIZE) {
+          customerDao.insertProjects(projects);
+          projects.clear();
+        }
+      });
+
+      if (!customers.isEmpty()) {
+        customerDao.insertCustomers(customers);
+      }
+
+      if (!projects.isEmpty()) {
+        customerDao.insertProjects(projects);
+      }
+
+      resetNameIndex();
+      resetIdFilters();
+      return reader.getProjectCount();
+    } catch (IOException e) {
+      throw new DbException(e);
+    }
+  }
+
+  private void writeSnapshotCustomer(SnapshotWriter writer, ResultSet rs) throws SQLException {
+    try {
+      writer.writeCustomer(rs.getInt("customer_id"), rs.getString("customer_name"));
+    } catch (IOException e) {
+      throw new DbException(e);
+    }
+  }
+
+  private void writeSnapshotProject(SnapshotWriter writer, ResultSet rs) throws SQLException {
+    int installYear = rs.getInt("install_year");
+    installYear = rs.wasNull() ? SnapshotFormat.NULL_INT : installYear;
+    int installMonth = rs.getInt("install_month");
+    installMonth = rs.wasNull() ? SnapshotFormat.NULL_INT : installMonth;
+
+    try {
+      writer.writeProject(rs.getInt("customer_id"), rs.getInt("project_id"),
+          SnapshotFormat.toMinor(rs.getBigDecimal("gross_price"), SnapshotFormat.MONEY_SCALE),
+          (int) SnapshotFormat.toMinor(rs.getBigDecimal("system_size_kw"),
+              SnapshotFormat.SYSTEM_SIZE_SCALE),
+          SnapshotFormat.toMinor(rs.getBigDecimal("dealer_fees"), SnapshotFormat.MONEY_SCALE),
+          SnapshotFormat.toMinor(rs.getBigDecimal("adders"), SnapshotFormat.MONEY_SCALE),
+          rs.getBoolean("installed"), installYear, installMonth,
+          SnapshotFormat.toMinor(rs.getBigDecimal("rep_commission"), SnapshotFormat.MONEY_SCALE));
+    } catch (IOException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * Searches customers by name. The search matches name prefixes, substrings and names within a
+   * small edit distance, using an in-memory index that is built from the customers table on first
+   * use and kept current by {@link #addCustomer(Customer)}.
+   * 
+   * @param query The name, or part of it, to search for.
+   * @param limit The maximum number of results.
+   * @return The matches, best first.
+   */
+  public List<CustomerNameIndex.Match> searchCustomers(String query, int limit) {
+    return getNameIndex().search(query, limit);
+  }
+
+  /**
+   * Returns the customer name index, building it from the customers table if needed.
+   * 
+   * @return The index.
+   */
+  public synchronized CustomerNameIndex getNameIndex() {
+    if (Objects.isNull(nameIndex)) {
+      nameIndex =
+          CustomerNameIndex.of(customerDao.fetchAllCustomers(FetchPlan.CUSTOMERS_ONLY));
+    }
+
+    return nameIndex;
+  }
+
+  synchronized void indexCustomer(Customer customer) {
+    if (Objects.nonNull(nameIndex)) {
+      nameIndex.add(customer);
+    }
+  }
+
+  /*
+   * Rejects project IDs that repeat within the batch or already exist. Only the IDs the filter
+   * reports as possibly present are looked up, in one query.
+   */
+  void checkNewProjectIds(Collection<Project> projects) {
+    Set<Integer> seen = new HashSet<>();
+    List<Integer> candidates = new ArrayList<>();
+    IdBloomFilter filter = getProjectIdFilter();
+
+    for (Project project : projects) {
+      Integer projectId = project.getProjectId();
+
+      if (!seen.add(projectId)) {
+        throw new InvalidInputException("Project ID " + projectId + " appears more than once.");
+      }
+
+      if (Objects.nonNull(projectId) && filter.mightContain(projectId)) {
+        candidates.add(projectId);
+      }
+    }
+
+    if (!candidates.isEmpty()) {
+      Set<Integer> existing = customerDao.fetchExistingProjectIds(candidates);
+
+      if (!existing.isEmpty()) {
+        throw new InvalidInputException("Project ID(s) " + existing + " already exist.");
+      }
+    }
+  }
+
+  CustomersDao getCustomerDao() {
+    return customerDao;
+  }
+
+  /*
+   * False only if the customer cannot exist: the filter has not seen the ID and the ID is not above
+   * the highest customer ID in the tables when the filter was built, so it cannot be a row another
+   * process inserted since.
+   */
+  boolean mightHaveCustomer(int customerId) {
+    IdFilters filters = getIdFilters();
+    return customerId > filters.maxBuiltCustomerId || filters.customerIds.mightContain(customerId);
+  }
+
+  private IdBloomFilter getProjectIdFilter() {
+    return getIdFilters().projectIds;
+  }
+
+  /*
+   * Builds the ID filters if there are none yet, or starts a background rebuild if they are older
+   * than the refresh interval or more IDs have been added than they were sized for.
+   */
+  void loadIdFilters() {
+    getIdFilters();
+  }
+
+  /*
+   * The current ID filters. Only the first use, or the first use after a reset, waits for the
+   * tables to be streamed; a stale filter is served while it is rebuilt in the background.
+   */
+  private IdFilters getIdFilters() {
+    IdFilters filters = idFilters;
+
+    while (Objects.isNull(filters)) {
+      synchronized (idFilterBuild) {
+        filters = idFilters;
+
+        if (Objects.isNull(filters)) {
+          filters = buildIdFilters();
+        }
+      }
+    }
+
+    if (filters.needsRebuild(idFilterRefreshNanos)
+        && idFilterRefreshing.compareAndSet(false, true)) {
+      Thread thread = new Thread(this::refreshIdFilters, "id-filter-refresh");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    return filters;
+  }
+
+  private void refreshIdFilters() {
+    try {
+      synchronized (idFilterBuild) {
+        buildIdFilters();
+      }
+    } catch (RuntimeException e) {
+      System.err.println("Unable to rebuild the ID filters, keeping the old ones: " + e);
+    } finally {
+      idFilterRefreshing.set(false);
+    }
+  }
+
+  /*
+   * Streams the IDs from the tables and swaps in new filters, unless the filters were reset in the
+   * meantime. Called with the build lock held but not this object's lock.
+   *
+   * @return The new filters, or null if they were discarded.
+   */
+  private IdFilters buildIdFilters() {
+    long generation;
+
+    synchronized (this) {
+      generation = idFilterGeneration;
+      pendingCustomerIds = new ArrayList<>();
+      pendingProjectIds = new ArrayList<>();
+    }
+
+    try {
+      IntStream.Builder customerIdStream = IntStream.builder();
+      IntStream.Builder projectIdStream = IntStream.builder();
+
+      customerDao.streamIds(rs -> customerIdStream.add(rs.getInt(1)),
+          rs -> projectIdStream.add(rs.getInt(1)));
+
+      int[] customerIds = customerIdStream.build().toArray();
+      int[] projectIds = projectIdStream.build().toArray();
+      IdBloomFilter customerFilter =
+          new IdBloomFilter(customerIds.length * 2, ID_FILTER_FALSE_POSITIVE_RATE);
+      IdBloomFilter projectFilter =
+          new IdBloomFilter(projectIds.length * 2, ID_FILTER_FALSE_POSITIVE_RATE);
+
+      for (int customerId : customerIds) {
+        customerFilter.add(customerId);
+      }
+
+      for (int projectId : projectIds) {
+        projectFilter.add(projectId);
+      }
+
+      int maxCustomerId = IntStream.of(customerIds).max().orElse(0);
+
+      synchronized (this) {
+        if (generation != idFilterGeneration) {
+          return null;
+        }
+
+        pendingCustomerIds.forEach(customerFilter::add);
+        pendingProjectIds.forEach(projectFilter::add);
+        idFilters = new IdFilters(customerFilter, projectFilter, maxCustomerId);
+        return idFilters;
+      }
+    } finally {
+      synchronized (this) {
+        pendingCustomerIds = null;
+        pendingProjectIds = null;
+      }
+    }
+  }
+
+  synchronized void addIds(Collection<Customer> customers, Collection<Project> projects) {
+    for (Customer customer : customers) {
+      addCustomerId(customer.getCustomerId());
+    }
+
+    for (Project project : projects) {
+      addCustomerId(project.getCustomerId());
+
+      if (Objects.nonNull(idFilters)) {
+        idFilters.projectIds.add(project.getProjectId());
+      }
+
+      if (Objects.nonNull(pendingProjectIds)) {
+        pendingProjectIds.add(project.getProjectId());
+      }
+    }
+  }
+
+  private synchronized void addCustomerIds(int[] customerIds) {
+    for (int customerId : customerIds) {
+      addCustomerId(customerId);
+    }
+  }
+
+  private synchronized void addCustomerId(int customerId) {
+    if (Objects.nonNull(idFilters)) {
+      idFilters.customerIds.add(customerId);
+    }
+
+    if (Objects.nonNull(pendingCustomerIds)) {
+      pendingCustomerIds.add(customerId);
+    }
+  }
+
+  private synchronized void resetIdFilters() {
+    idFilters = null;
+    idFilterGeneration++;
+  }
+
+  /*
+   * One build of the ID filters.
+   */
+  private static final class IdFilters {
+    private final IdBloomFilter customerIds;
+    private final IdBloomFilter projectIds;
+    private final int maxBuiltCustomerId;
+    private final long builtAt = System.nanoTime();
+
+    IdFilters(IdBloomFilter customerIds, IdBloomFilter projectIds, int maxBuiltCustomerId) {
+      this.customerIds = customerIds;
+      this.projectIds = projectIds;
+      this.maxBuiltCustomerId = maxBuiltCustomerId;
+    }
+
+    boolean needsRebuild(long refreshNanos) {
+      return customerIds.isSaturated() || projectIds.isSaturated()
+          || System.nanoTime() - builtAt >= refreshNanos;
+    }
+  }
+
+  /*
+   * Adds the customer IDs of inserts made through the DAO by anyone in this process, and drops the
+   * filters when the tables are reloaded or events were missed.
+   */
+  private final class IdFilterListener implements ChangeListener {
+    @Override
+    public void onChange(ChangeEvent event) {
+      switch (event.getOperation()) {
+        case INSERT:
+        case UPSERT:
+          if ("customer_id".equals(event.getKeyColumn())) {
+            addCustomerIds(event.getKeys());
+          }
+          break;
+
+        case RELOAD:
+          resetIdFilters();
+          break;
+
+        default:
+          break;
+      }
+    }
+
+    @Override
+    public void onGap(long firstMissed, long lastMissed) {
+      resetIdFilters();
+    }
+  }
+
+  private synchronized void unindexCustomers(Collection<Integer> customerIds) {
+    if (Objects.nonNull(nameIndex)) {
+      customerIds.forEach(nameIndex::remove);
+    }
+  }
 
+  private synchronized void resetNameIndex() {
+    nameIndex = null;
   }
 
 }
@@ -0,0 +1,289 @@
+package customers.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import customers.dao.CustomersDao;
+import customers.dao.FetchPlan;
+import customers.entity.Customer;
+import customers.entity.Project;
+import customers.exception.DbException;
+
+/**
+ * A unit of work over the customer tables. Within a session each customer and each project is
+ * loaded at most once: finding it again returns the same object without a query. Changes are not
+ * written as they are made. New entities are queued by {@link #persist(Customer)} and
+ * {@link #persist(Project)}, loaded entities that were modified are detected when the session
+ * flushes, and {@link #commit()} writes all of it in one batched transaction.
+ *
+ * A session is meant to be short-lived and used by one thread. It does not see writes made outside
+ * it after an entity was loaded. Closing a session discards anything not yet committed.
+ *
+ */
+public class ProjectSession implements AutoCloseable {
+  private final ProjectService projectService;
+  private final CustomersDao customerDao;
+
+  /* The identity map. Projects are keyed by customer_id, the projects table's primary key. */
+  private final Map<Integer, Customer> customers = new HashMap<>();
+  private final Map<Integer, Project> projects = new HashMap<>();
+
+  /* The column values of each managed entity as last read or written, for dirty checking. */
+  private final Map<Object, Object[]> snapshots = new IdentityHashMap<>();
+
+  private final List<Customer> newCustomers = new ArrayList<>();
+  private final List<Project> newProjects = new ArrayList<>();
+  private boolean open = true;
+
+  ProjectSession(ProjectService projectService, CustomersDao customerDao) {
+    this.projectService = projectService;
+    this.customerDao = customerDao;
+  }
+
+  /**
+   * Finds a customer and its projects, querying only if the session has not loaded it yet.
+   *
+   * @param customerId The customer ID.
+   * @return The customer, if it exists.
+   */
+  public Optional<Customer> find(int customerId) {
+    checkOpen();
+    Customer customer = customers.get(customerId);
+
+    if (Objects.nonNull(customer)) {
+      return Optional.of(customer);
+    }
+
+    if (!projectService.mightHaveCustomer(customerId)) {
+      return Optional.empty();
+    }
+
+    return customerDao.fetchCustomerById(customerId, FetchPlan.WITH_PROJECTS).map(this::manage);
+  }
+
+  /**
+   * Finds several customers and their projects. Customers the session has already loaded are
+   * returned as they are; the rest are read in one batched query.
+   *
+   * @param customerIds The customer IDs.
+   * @return The customers found, in the order of the IDs given.
+   */
+  public List<Customer> findAll(Collection<Integer> customerIds) {
+    checkOpen();
+    List<Integer> missing = new ArrayList<>();
+
+    for (Integer customerId : customerIds) {
+      if (!customers.containsKey(customerId)) {
+        missing.add(customerId);
+      }
+    }
+
+    if (!missing.isEmpty()) {
+      customerDao.fetchCustomersByIds(missing, FetchPlan.WITH_PROJECTS).forEach(this::manage);
+    }
+
+    List<Customer> found = new ArrayList<>(customerIds.size());
+
+    for (Integer customerId : customerIds) {
+      Customer customer = customers.get(customerId);
+
+      if (Objects.nonNull(customer)) {
+        found.add(customer);
+      }
+    }
+
+    return found;
+  }
+
+  /**
+   * Queues a new customer, with any projects already in its project list, for insertion at the
+   * next commit. The customer ID is set when the commit runs.
+   *
+   * @param customer The new customer.
+   */
+  public void persist(Customer customer) {
+    checkOpen();
+
+    if (Objects.nonNull(customer.getCustomerId())) {
+      throw new DbException("Customer " + customer.getCustomerId() + " is not new");
+    }
+
+    newCustomers.add(customer);
+  }
+
+  /**
+   * Queues a new project of an existing customer for insertion at the next commit.
+   *
+   * @param project The new project. It must have a customer ID.
+   */
+  public void persist(Project project) {
+    checkOpen();
+
+    if (Objects.isNull(project.getCustomerId())) {
+      throw new DbException("A new project needs the ID of its customer");
+    }
+
+    newProjects.add(project);
+  }
+
+  /**
+   * Writes every queued insert and every change to a loaded entity in one transaction. The new
+   * project IDs are checked first, as {@link ProjectService#addCustomersWithProjects(List)} does.
+   * After the commit the new entities are part of the identity map.
+   *
+   * @return The number of entities written.
+   * @throws DbException Thrown if the write fails. Nothing is written and the session keeps its
+   *         pending changes.
+   */
+  public int commit() {
+    checkOpen();
+
+    List<Customer> changedCustomers = new ArrayList<>();
+    List<Project> changedProjects = new ArrayList<>();
+    List<Project> addedProjects = new ArrayList<>(newProjects);
+    Set<Project> added = Collections.newSetFromMap(new IdentityHashMap<>());
+    added.addAll(newProjects);
+
+    for (Customer customer : customers.values()) {
+      if (!Arrays.equals(snapshots.get(customer), state(customer))) {
+        changedCustomers.add(customer);
+      }
+
+      /* A project added to a loaded customer's list is new even if it was never persisted. */
+      for (Project project : customer.getProjects()) {
+        if (!snapshots.containsKey(project) && added.add(project)) {
+          project.setCustomerId(customer.getCustomerId());
+          addedProjects.add(project);
+        }
+      }
+    }
+
+    for (Project project : projects.values()) {
+      if (!Arrays.equals(snapshots.get(project), state(project))) {
+        changedProjects.add(project);
+      }
+    }
+
+    List<Project> checkedProjects = new ArrayList<>(addedProjects);
+    newCustomers.forEach(customer -> checkedProjects.addAll(customer.getProjects()));
+    projectService.checkNewProjectIds(checkedProjects);
+
+    int written = newCustomers.size() + checkedProjects.size() + changedCustomers.size()
+        + changedProjects.size();
+
+    if (written == 0) {
+      return 0;
+    }
+
+    try {
+      customerDao.writeChanges(newCustomers, addedProjects, changedCustomers, changedProjects);
+    } catch (DbException e) {
+      /* The rolled-back insert may have handed out IDs; the customers are still new. */
+      newCustomers.forEach(customer -> customer.setCustomerId(null));
+      throw e;
+    }
+
+    for (Customer customer : newCustomers) {
+      projectService.indexCustomer(customer);
+      manage(customer);
+    }
+
+    for (Customer customer : changedCustomers) {
+      projectService.indexCustomer(customer);
+      snapshots.put(customer, state(customer));
+    }
+
+    for (Project project : addedProjects) {
+      manage(project);
+    }
+
+    for (Project project : changedProjects) {
+      snapshots.put(project, state(project));
+    }
+
+    projectService.addIds(newCustomers, checkedProjects);
+    newCustomers.clear();
+    newProjects.clear();
+
+    return written;
+  }
+
+  /**
+   * Forgets every loaded entity and every pending change.
+   */
+  public void clear() {
+    customers.clear();
+    projects.clear();
+    snapshots.clear();
+    newCustomers.clear();
+    newProjects.clear();
+  }
+
+  /**
+   * Closes the session. Changes that were not committed are discarded.
+   */
+  @Override
+  public void close() {
+    clear();
+    open = false;
+  }
+
+  /*
+   * Adds a customer and its projects to the identity map. A project that is already managed
+   * replaces the copy in the customer's list, so each row has exactly one object.
+   */
+  private Customer manage(Customer customer) {
+    Customer existing = customers.putIfAbsent(customer.getCustomerId(), customer);
+
+    if (Objects.nonNull(existing)) {
+      return existing;
+    }
+
+    snapshots.put(customer, state(customer));
+    List<Project> customerProjects = customer.getProjects();
+
+    for (int index = 0; index < customerProjects.size(); index++) {
+      customerProjects.set(index, manage(customerProjects.get(index)));
+    }
+
+    return customer;
+  }
+
+  private Project manage(Project project) {
+    Project existing = projects.putIfAbsent(project.getCustomerId(), project);
+
+    if (Objects.nonNull(existing)) {
+      return existing;
+    }
+
+    snapshots.put(project, state(project));
+    return project;
+  }
+
+  private static Object[] state(Customer customer) {
+    return new Object[] {customer.getCustomerName()};
+  }
+
+  private static Object[] state(Project project) {
+    // @formatter:off
+    return new Object[] {
+        project.getProjectId(), project.getGrossPrice(), project.getSystemSizeInKw(),
+        project.getDealerFees(), project.getAdders(), project.getInstalled(),
+        project.getInstallYear(), project.getInstallMonth(), project.getRepCommission()};
+    // @formatter:on
+  }
+
+  private void checkOpen() {
+    if (!open) {
+      throw new DbException("The session is closed");
+    }
+  }
+}
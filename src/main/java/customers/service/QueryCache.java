@@ -0,0 +1,179 @@
+package customers.service;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import customers.dao.ChangeFeed;
+import customers.exception.DbException;
+
+/**
+ * A cache of query results keyed by the query's template and parameters. Each entry records the
+ * tables its query reads and their {@link ChangeFeed#getTableVersion(String) versions} at the time
+ * the query started. A lookup whose tables have been written since is a miss, so a write through
+ * the DAO invalidates exactly the results that depend on it, with no scan of the cache.
+ *
+ * Concurrent misses on the same key share one execution: the first caller runs the query and the
+ * others wait for its result. A query that fails is not cached. The cache holds at most the given
+ * number of entries and evicts the least recently used one beyond that.
+ *
+ * Results are shared between callers and must not be modified.
+ *
+ */
+public class QueryCache {
+  private final ChangeFeed changeFeed;
+  private final Map<Key, Entry> entries;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * @param changeFeed The feed whose table versions invalidate entries.
+   * @param maxEntries The most entries kept.
+   */
+  public QueryCache(ChangeFeed changeFeed, int maxEntries) {
+    this.changeFeed = changeFeed;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * Returns the cached result of a query, running the query if there is no current result.
+   *
+   * @param <T> The result type.
+   * @param template Identifies the query, for example its SQL.
+   * @param parameters The query's parameters.
+   * @param tables The tables the query reads.
+   * @param query Runs the query.
+   * @return The result.
+   * @throws DbException Thrown if the query fails. Callers waiting on the same execution receive
+   *         the same exception.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T get(String template, List<?> parameters, List<String> tables, Supplier<T> query) {
+    Key key = new Key(template, parameters);
+    Entry entry;
+    boolean owner = false;
+
+    synchronized (entries) {
+      entry = entries.get(key);
+
+      if (Objects.isNull(entry) || !entry.isCurrent()) {
+        entry = new Entry(tables, new FutureTask<>(query::get));
+        entries.put(key, entry);
+        owner = true;
+      }
+    }
+
+    if (owner) {
+      misses.increment();
+      entry.result.run();
+    } else {
+      hits.increment();
+    }
+
+    try {
+      return (T) entry.result.get();
+    } catch (ExecutionException e) {
+      synchronized (entries) {
+        entries.remove(key, entry);
+      }
+
+      throw e.getCause() instanceof DbException ? (DbException) e.getCause()
+          : new DbException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DbException("Interrupted while waiting for a query result", e);
+    }
+  }
+
+  /**
+   * Drops every entry.
+   */
+  public void clear() {
+    synchronized (entries) {
+      entries.clear();
+    }
+  }
+
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "QueryCache(" + size() + " entries, " + hits.sum() + " hits, " + misses.sum()
+        + " misses)";
+  }
+
+  private static final class Key {
+    private final String template;
+    private final List<?> parameters;
+
+    Key(String template, List<?> parameters) {
+      this.template = template;
+      this.parameters = Arrays.asList(parameters.toArray());
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof Key && template.equals(((Key) other).template)
+          && parameters.equals(((Key) other).parameters);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * template.hashCode() + parameters.hashCode();
+    }
+  }
+
+  /*
+   * A result, or the execution producing it, with the versions of its tables read before the query
+   * started. A write during the query raises a version, so the result is stale at the next lookup.
+   */
+  private final class Entry {
+    private final String[] tables;
+    private final long[] versions;
+    private final FutureTask<Object> result;
+
+    Entry(List<String> tables, FutureTask<Object> result) {
+      this.tables = tables.toArray(new String[0]);
+      this.versions = new long[this.tables.length];
+      this.result = result;
+
+      for (int index = 0; index < this.tables.length; index++) {
+        versions[index] = changeFeed.getTableVersion(this.tables[index]);
+      }
+    }
+
+    boolean isCurrent() {
+      for (int index = 0; index < tables.length; index++) {
+        if (changeFeed.getTableVersion(tables[index]) != versions[index]) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+  }
+}
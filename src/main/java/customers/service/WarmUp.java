@@ -0,0 +1,185 @@
+package customers.service;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import customers.dao.CustomersDao;
+import customers.dao.DbConfig;
+import customers.dao.DbConnection;
+import customers.dao.FetchPlan;
+import customers.dao.RankColumn;
+import customers.entity.Customer;
+import customers.exception.DbException;
+
+/**
+ * Gets a process ready for traffic before it is admitted. The first requests after a start would
+ * otherwise pay for opening connections, preparing statements, the reflection behind the row
+ * mappers, class loading and JIT compilation. The warm-up does that work up front:
+ * <ol>
+ * <li>The connection pools are filled.</li>
+ * <li>The DAO's row mappers are built and its statements prepared on the pooled connections.</li>
+ * <li>A short read-only workload (pages, point reads, a ranking, the summary and a name search)
+ * is run in rounds until a round takes no longer than {@value #STEADY_RATIO_PERCENT_DEFAULT}% of
+ * the fastest one for a few rounds in a row, or a maximum number of rounds has run.</li>
+ * </ol>
+ * {@link #isReady()} turns true when the warm-up ends, even if latency never settled; the report
+ * says whether it did.
+ *
+ */
+public class WarmUp {
+  public static final String MAX_ROUNDS = "customers.warmup.maxRounds";
+  public static final String STEADY_ROUNDS = "customers.warmup.steadyRounds";
+  public static final String STEADY_RATIO_PERCENT = "customers.warmup.steadyRatioPercent";
+
+  private static final int STEADY_RATIO_PERCENT_DEFAULT = 125;
+  private static final int PAGE_SIZE = 50;
+  private static final int POINT_READS = 10;
+
+  private final ProjectService projectService;
+  private final CustomersDao customerDao;
+  private final int maxRounds;
+  private final int steadyRounds;
+  private final int steadyRatioPercent;
+  private volatile boolean ready;
+  private volatile Report report;
+
+  /**
+   * Creates a warm-up with the configured number of rounds and steadiness ratio.
+   *
+   * @param projectService The service to warm up.
+   */
+  public WarmUp(ProjectService projectService) {
+    DbConfig config = DbConnection.getConfig();
+
+    this.projectService = projectService;
+    this.customerDao = projectService.getCustomerDao();
+    this.maxRounds = Math.max(1, config.getInt(MAX_ROUNDS, 30));
+    this.steadyRounds = Math.max(1, config.getInt(STEADY_ROUNDS, 3));
+    this.steadyRatioPercent =
+        Math.max(100, config.getInt(STEADY_RATIO_PERCENT, STEADY_RATIO_PERCENT_DEFAULT));
+  }
+
+  /**
+   * Runs the warm-up and marks the process ready.
+   *
+   * @return What the warm-up did and how long it took.
+   * @throws DbException Thrown if the database cannot be reached. The process is not marked ready.
+   */
+  public Report run() {
+    long start = System.nanoTime();
+    int poolSize = DbConnection.getConfig().getInt(DbConnection.POOL_SIZE, 4);
+
+    int pools = DbConnection.prestartPools(poolSize);
+    long poolNanos = System.nanoTime() - start;
+
+    int statements = customerDao.warmUp(poolSize);
+    long prepareNanos = System.nanoTime() - start - poolNanos;
+
+    long first = 0;
+    long last = 0;
+    long fastest = Long.MAX_VALUE;
+    int rounds = 0;
+    int steady = 0;
+
+    while (rounds < maxRounds && steady < steadyRounds) {
+      long roundStart = System.nanoTime();
+      runRound();
+      last = System.nanoTime() - roundStart;
+      first = rounds++ == 0 ? last : first;
+
+      /* The first round is never steady: it builds the in-memory indexes. */
+      steady = rounds > 1 && last * 100 <= fastest * steadyRatioPercent ? steady + 1 : 0;
+      fastest = Math.min(fastest, last);
+    }
+
+    report = new Report(pools, poolNanos, statements, prepareNanos, rounds, first, last,
+        steady >= steadyRounds, System.nanoTime() - start);
+    ready = true;
+    return report;
+  }
+
+  /*
+   * One pass over the read paths that requests use. Nothing is written.
+   */
+  private void runRound() {
+    List<Customer> customers = projectService.fetchCustomers(0, PAGE_SIZE);
+
+    for (int index = 0; index < Math.min(POINT_READS, customers.size()); index++) {
+      projectService.fetchCustomerById(customers.get(index).getCustomerId(),
+          FetchPlan.WITH_PROJECTS);
+    }
+
+    projectService.fetchProjects(0, PAGE_SIZE);
+    projectService.fetchTopProjects(RankColumn.GROSS_PRICE, true, null, PAGE_SIZE);
+    customerDao.fetchProjectSummary();
+    projectService.loadIdFilters();
+
+    if (!customers.isEmpty()) {
+      String name = customers.get(0).getCustomerName();
+      projectService.searchCustomers(name.substring(0, Math.min(3, name.length())), 10);
+    }
+  }
+
+  /**
+   * @return True once the warm-up has finished.
+   */
+  public boolean isReady() {
+    return ready;
+  }
+
+  /**
+   * @return The report of the finished warm-up, or null before it finishes.
+   */
+  public Report getReport() {
+    return report;
+  }
+
+  /**
+   * What a warm-up did and how long each part took.
+   */
+  public static final class Report {
+    private final int pools;
+    private final long poolNanos;
+    private final int statements;
+    private final long prepareNanos;
+    private final int rounds;
+    private final long firstRoundNanos;
+    private final long lastRoundNanos;
+    private final boolean steady;
+    private final long totalNanos;
+
+    Report(int pools, long poolNanos, int statements, long prepareNanos, int rounds,
+        long firstRoundNanos, long lastRoundNanos, boolean steady, long totalNanos) {
+      this.pools = pools;
+      this.poolNanos = poolNanos;
+      this.statements = statements;
+      this.prepareNanos = prepareNanos;
+      this.rounds = rounds;
+      this.firstRoundNanos = firstRoundNanos;
+      this.lastRoundNanos = lastRoundNanos;
+      this.steady = steady;
+      this.totalNanos = totalNanos;
+    }
+
+    public int getRounds() {
+      return rounds;
+    }
+
+    public boolean isSteady() {
+      return steady;
+    }
+
+    public long getTotalMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(totalNanos);
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "Warm-up took %d ms: %d pool(s) filled in %d ms, %d statement(s) prepared in %d ms, "
+              + "%d round(s) from %.1f ms to %.1f ms per round (%s)",
+          getTotalMillis(), pools, TimeUnit.NANOSECONDS.toMillis(poolNanos), statements,
+          TimeUnit.NANOSECONDS.toMillis(prepareNanos), rounds, firstRoundNanos / 1e6,
+          lastRoundNanos / 1e6, steady ? "steady" : "not yet steady");
+    }
+  }
+}
@@ -0,0 +1,220 @@
+package customers.snapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import customers.entity.Project;
+import customers.exception.DbException;
+
+/**
+ * A read-only, memory-mapped view of an uncompressed snapshot file. Opening the view only maps the
+ * file; pages are loaded by the operating system as they are touched. Project records have a fixed
+ * size, so any project can be read by index without scanning, and its columns can be read as
+ * primitives without creating a {@link Project}.
+ *
+ */
+public class MappedSnapshot {
+
+  /**
+   * Receives customers from {@link MappedSnapshot#forEachCustomer(CustomerVisitor)}.
+   */
+  @FunctionalInterface
+  public interface CustomerVisitor {
+    void visit(int customerId, String customerName);
+  }
+
+  private final long customerCount;
+  private final int projectCount;
+  private final MappedByteBuffer customers;
+  private final MappedByteBuffer projects;
+
+  private MappedSnapshot(long customerCount, int projectCount, MappedByteBuffer customers,
+      MappedByteBuffer projects) {
+    this.customerCount = customerCount;
+    this.projectCount = projectCount;
+    this.customers = customers;
+    this.projects = projects;
+  }
+
+  /**
+   * Maps a snapshot file.
+   *
+   * @param path The file.
+   * @return The mapped view.
+   * @throws IOException Thrown if the file cannot be read or mapped.
+   * @throws DbException Thrown if the file is compressed or a section is larger than 2 GB.
+   */
+  public static MappedSnapshot open(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer header = SnapshotReader.readHeader(channel);
+
+      if ((header.getShort(6) & SnapshotFormat.FLAG_COMPRESSED) != 0) {
+        throw new DbException("A compressed snapshot cannot be memory mapped: " + path);
+      }
+
+      long customerCount = header.getLong(8);
+      long projectCount = header.getLong(16);
+      long projectsOffset = header.getLong(24);
+      long customersSize = projectsOffset - SnapshotFormat.HEADER_SIZE;
+      long projectsSize = projectCount * SnapshotFormat.PROJECT_RECORD_SIZE;
+
+      if (customersSize > Integer.MAX_VALUE || projectsSize > Integer.MAX_VALUE) {
+        throw new DbException("Snapshot section too large to map: " + path);
+      }
+
+      /* The mappings stay valid after the channel is closed. */
+      MappedByteBuffer customers =
+          channel.map(FileChannel.MapMode.READ_ONLY, SnapshotFormat.HEADER_SIZE, customersSize);
+      MappedByteBuffer projects =
+          channel.map(FileChannel.MapMode.READ_ONLY, projectsOffset, projectsSize);
+
+      return new MappedSnapshot(customerCount, (int) projectCount, customers, projects);
+    }
+  }
+
+  public long getCustomerCount() {
+    return customerCount;
+  }
+
+  public int getProjectCount() {
+    return projectCount;
+  }
+
+  /**
+   * Visits every customer in the snapshot in customer_id order.
+   *
+   * @param visitor The visitor.
+   */
+  public void forEachCustomer(CustomerVisitor visitor) {
+    ByteBuffer buffer = customers.duplicate();
+    byte[] name = new byte[64];
+
+    for (long index = 0; index < customerCount; index++) {
+      int customerId = buffer.getInt();
+      int length = Short.toUnsignedInt(buffer.getShort());
+
+      if (length > name.length) {
+        name = new byte[length];
+      }
+
+      buffer.get(name, 0, length);
+      visitor.visit(customerId, new String(name, 0, length, StandardCharsets.UTF_8));
+    }
+  }
+
+  public int getCustomerId(int project) {
+    return projects.getInt(offset(project));
+  }
+
+  public int getProjectId(int project) {
+    return projects.getInt(offset(project) + 4);
+  }
+
+  /**
+   * @return The gross price in cents.
+   */
+  public long getGrossPrice(int project) {
+    return projects.getLong(offset(project) + 8);
+  }
+
+  /**
+   * @return The system size in thousandths of a kW.
+   */
+  public int getSystemSizeKw(int project) {
+    return projects.getInt(offset(project) + 16);
+  }
+
+  /**
+   * @return The dealer fees in cents, or {@link SnapshotFormat#NULL_MONEY}.
+   */
+  public long getDealerFees(int project) {
+    return isSet(project, SnapshotFormat.NULL_DEALER_FEES) ? SnapshotFormat.NULL_MONEY
+        : projects.getLong(offset(project) + 20);
+  }
+
+  /**
+   * @return The adders in cents, or {@link SnapshotFormat#NULL_MONEY}.
+   */
+  public long getAdders(int project) {
+    return isSet(project, SnapshotFormat.NULL_ADDERS) ? SnapshotFormat.NULL_MONEY
+        : projects.getLong(offset(project) + 28);
+  }
+
+  /**
+   * @return The rep commission in cents.
+   */
+  public long getRepCommission(int project) {
+    return projects.getLong(offset(project) + 36);
+  }
+
+  /**
+   * @return The install year, or {@link SnapshotFormat#NULL_INT}.
+   */
+  public int getInstallYear(int project) {
+    return isSet(project, SnapshotFormat.NULL_INSTALL_YEAR) ? SnapshotFormat.NULL_INT
+        : projects.getShort(offset(project) + 44);
+  }
+
+  /**
+   * @return The install month, or {@link SnapshotFormat#NULL_INT}.
+   */
+  public int getInstallMonth(int project) {
+    return isSet(project, SnapshotFormat.NULL_INSTALL_MONTH) ? SnapshotFormat.NULL_INT
+        : projects.get(offset(project) + 46);
+  }
+
+  public boolean isInstalled(int project) {
+    return isSet(project, SnapshotFormat.INSTALLED);
+  }
+
+  /**
+   * Creates a Project entity from the record at the given index.
+   *
+   * @param project The zero-based project index.
+   * @return The project.
+   */
+  public Project getProject(int project) {
+    int base = offset(project);
+
+    return toProject(projects.getInt(base), projects.getInt(base + 4), projects.getLong(base + 8),
+        projects.getInt(base + 16), projects.getLong(base + 20), projects.getLong(base + 28),
+        projects.getLong(base + 36), projects.getShort(base + 44), projects.get(base + 46),
+        projects.get(base + 47));
+  }
+
+  private int offset(int project) {
+    if (project < 0 || project >= projectCount) {
+      throw new IndexOutOfBoundsException("Project " + project + " of " + projectCount);
+    }
+
+    return project * SnapshotFormat.PROJECT_RECORD_SIZE;
+  }
+
+  private boolean isSet(int project, int flag) {
+    return (projects.get(offset(project) + 47) & flag) != 0;
+  }
+
+  static Project toProject(int customerId, int projectId, long grossPrice, int systemSizeKw,
+      long dealerFees, long adders, long repCommission, int installYear, int installMonth,
+      int flags) {
+    Project project = new Project();
+    project.setCustomerId(customerId);
+    project.setProjectId(projectId);
+    project.setGrossPrice(SnapshotFormat.fromMinor(grossPrice, SnapshotFormat.MONEY_SCALE));
+    project.setSystemSizeInKw(
+        SnapshotFormat.fromMinor(systemSizeKw, SnapshotFormat.SYSTEM_SIZE_SCALE));
+    project.setDealerFees((flags & SnapshotFormat.NULL_DEALER_FEES) != 0 ? null
+        : SnapshotFormat.fromMinor(dealerFees, SnapshotFormat.MONEY_SCALE));
+    project.setAdders((flags & SnapshotFormat.NULL_ADDERS) != 0 ? null
+        : SnapshotFormat.fromMinor(adders, SnapshotFormat.MONEY_SCALE));
+    project.setRepCommission(SnapshotFormat.fromMinor(repCommission, SnapshotFormat.MONEY_SCALE));
+    project.setInstalled((flags & SnapshotFormat.INSTALLED) != 0);
+    project.setInstallYear((flags & SnapshotFormat.NULL_INSTALL_YEAR) != 0 ? null : installYear);
+    project.setInstallMonth((flags & SnapshotFormat.NULL_INSTALL_MONTH) != 0 ? null : installMonth);
+    return project;
+  }
+}
@@ -0,0 +1,84 @@
+package customers.snapshot;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Objects;
+import provided.util.FixedPoint;
+
+/**
+ * Constants and conversions for the binary snapshot format. A snapshot file is laid out as follows
+ * (all numbers big-endian):
+ *
+ * <pre>
+ * header (uncompressed, 32 bytes)
+ *   int   magic            "CSNP"
+ *   short version
+ *   short flags            bit 0: body is GZIP compressed
+ *   long  customer count
+ *   long  project count
+ *   long  projects offset  byte offset of the project section in an uncompressed file
+ * body (optionally GZIP compressed)
+ *   customer records       int customer_id, short name length, UTF-8 name bytes
+ *   project records        fixed {@value #PROJECT_RECORD_SIZE} bytes each, see below
+ * </pre>
+ *
+ * A project record holds customer_id (int), project_id (int), gross_price (long cents),
+ * system_size_kw (int thousandths), dealer_fees (long cents), adders (long cents), rep_commission
+ * (long cents), install_year (short), install_month (byte) and a flags byte. Money is stored as
+ * fixed-point minor units with the scale of its DECIMAL column. Null columns are recorded in the
+ * flags byte.
+ *
+ */
+public final class SnapshotFormat {
+  public static final int MAGIC = 0x43534E50;
+  public static final short VERSION = 1;
+  public static final int HEADER_SIZE = 32;
+  public static final int PROJECT_RECORD_SIZE = 48;
+
+  public static final short FLAG_COMPRESSED = 1;
+
+  public static final int MONEY_SCALE = FixedPoint.MONEY_SCALE;
+  public static final int SYSTEM_SIZE_SCALE = FixedPoint.KW_SCALE;
+
+  /** Passed for a null money or integer value. */
+  public static final long NULL_MONEY = Long.MIN_VALUE;
+  public static final int NULL_INT = Integer.MIN_VALUE;
+
+  static final int INSTALLED = 1;
+  static final int NULL_DEALER_FEES = 1 << 1;
+  static final int NULL_ADDERS = 1 << 2;
+  static final int NULL_INSTALL_YEAR = 1 << 3;
+  static final int NULL_INSTALL_MONTH = 1 << 4;
+
+  private SnapshotFormat() {}
+
+  /**
+   * Converts a decimal to fixed-point minor units, rounding half up to the given scale.
+   *
+   * @param value The value, which may be null.
+   * @param scale The number of decimal places kept.
+   * @return The minor units, or {@link #NULL_MONEY} if the value is null.
+   */
+  public static long toMinor(BigDecimal value, int scale) {
+    if (Objects.isNull(value)) {
+      return NULL_MONEY;
+    }
+
+    return value.setScale(scale, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+  }
+
+  /**
+   * Converts minor units to a fixed-point value.
+   *
+   * @param minor The minor units or {@link #NULL_MONEY}.
+   * @param scale The number of decimal places.
+   * @return The value, or null.
+   */
+  public static FixedPoint fromMinor(long minor, int scale) {
+    return minor == NULL_MONEY ? null : FixedPoint.ofUnscaled(minor, scale);
+  }
+
+  static Integer nullableInt(int value) {
+    return value == NULL_INT ? null : value;
+  }
+}
@@ -0,0 +1,131 @@
+package customers.snapshot;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import customers.entity.Customer;
+import customers.entity.Project;
+import customers.exception.DbException;
+
+/**
+ * Reads a binary snapshot file (see {@link SnapshotFormat}) sequentially, compressed or not, and
+ * hands each row to the caller as an entity.
+ *
+ */
+public class SnapshotReader implements Closeable {
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final DataInputStream in;
+  private final long customerCount;
+  private final long projectCount;
+
+  public SnapshotReader(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+
+    try {
+      ByteBuffer header = readHeader(channel);
+      short flags = header.getShort(6);
+      customerCount = header.getLong(8);
+      projectCount = header.getLong(16);
+
+      channel.position(SnapshotFormat.HEADER_SIZE);
+      InputStream body = Channels.newInputStream(channel);
+
+      if ((flags & SnapshotFormat.FLAG_COMPRESSED) != 0) {
+        body = new GZIPInputStream(body, BUFFER_SIZE);
+      }
+
+      in = new DataInputStream(new BufferedInputStream(body, BUFFER_SIZE));
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Reads and validates the header of a snapshot file.
+   *
+   * @param channel The file, positioned anywhere.
+   * @return The header bytes.
+   * @throws IOException Thrown if the header cannot be read.
+   * @throws DbException Thrown if the file is not a snapshot of a supported version.
+   */
+  static ByteBuffer readHeader(FileChannel channel) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(SnapshotFormat.HEADER_SIZE);
+
+    while (header.hasRemaining()) {
+      if (channel.read(header, header.position()) < 0) {
+        throw new DbException("Snapshot file is truncated.");
+      }
+    }
+
+    if (header.getInt(0) != SnapshotFormat.MAGIC) {
+      throw new DbException("Not a customers snapshot file.");
+    }
+
+    if (header.getShort(4) != SnapshotFormat.VERSION) {
+      throw new DbException("Unsupported snapshot version " + header.getShort(4));
+    }
+
+    return header;
+  }
+
+  public long getCustomerCount() {
+    return customerCount;
+  }
+
+  public long getProjectCount() {
+    return projectCount;
+  }
+
+  /**
+   * Reads the whole snapshot: every customer first, then every project.
+   *
+   * @param customers Receives each customer. Its project list is left empty.
+   * @param projects Receives each project.
+   * @throws IOException Thrown if the file cannot be read.
+   */
+  public void read(Consumer<Customer> customers, Consumer<Project> projects) throws IOException {
+    for (long index = 0; index < customerCount; index++) {
+      Customer customer = new Customer();
+      customer.setCustomerId(in.readInt());
+
+      byte[] name = new byte[in.readUnsignedShort()];
+      in.readFully(name);
+      customer.setCustomerName(new String(name, StandardCharsets.UTF_8));
+
+      customers.accept(customer);
+    }
+
+    for (long index = 0; index < projectCount; index++) {
+      int customerId = in.readInt();
+      int projectId = in.readInt();
+      long grossPrice = in.readLong();
+      int systemSizeKw = in.readInt();
+      long dealerFees = in.readLong();
+      long adders = in.readLong();
+      long repCommission = in.readLong();
+      int installYear = in.readShort();
+      int installMonth = in.readByte();
+      int flags = in.readByte();
+
+      projects.accept(MappedSnapshot.toProject(customerId, projectId, grossPrice, systemSizeKw,
+          dealerFees, adders, repCommission, installYear, installMonth, flags));
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+}
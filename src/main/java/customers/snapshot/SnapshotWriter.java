@@ -0,0 +1,188 @@
+package customers.snapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+import customers.exception.DbException;
+
+/**
+ * Writes a binary snapshot file (see {@link SnapshotFormat}). All customers must be written before
+ * the first project. The file starts with a blank header, which readers reject, and the real header
+ * with the counts is only written by {@link #finish()}. A writer closed without finishing, because
+ * the export failed, deletes the file, so a partial snapshot is never mistaken for a complete one.
+ *
+ */
+public class SnapshotWriter implements Closeable {
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final Path path;
+  private final boolean compressed;
+  private final DataOutputStream out;
+  private long customerCount;
+  private long projectCount;
+  private long projectsOffset = -1;
+  private long bytesWritten;
+  private boolean finished;
+
+  /**
+   * Creates (or truncates) the snapshot file.
+   *
+   * @param path The file.
+   * @param compressed If true, the body is GZIP compressed. Compressed snapshots cannot be memory
+   *        mapped.
+   * @throws IOException Thrown if the file cannot be created. No file is left behind.
+   */
+  public SnapshotWriter(Path path, boolean compressed) throws IOException {
+    this.path = path;
+    this.compressed = compressed;
+
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING);
+
+    try {
+      channel.write(ByteBuffer.allocate(SnapshotFormat.HEADER_SIZE), 0);
+      channel.position(SnapshotFormat.HEADER_SIZE);
+
+      OutputStream body = Channels.newOutputStream(channel);
+
+      if (compressed) {
+        body = new GZIPOutputStream(body, BUFFER_SIZE);
+      }
+
+      this.out = new DataOutputStream(new BufferedOutputStream(body, BUFFER_SIZE));
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      Files.deleteIfExists(path);
+      throw e;
+    }
+  }
+
+  public void writeCustomer(int customerId, String customerName) throws IOException {
+    if (projectsOffset >= 0) {
+      throw new DbException("Customers must be written before projects.");
+    }
+
+    byte[] name = customerName.getBytes(StandardCharsets.UTF_8);
+
+    out.writeInt(customerId);
+    out.writeShort(name.length);
+    out.write(name);
+
+    bytesWritten += 6 + name.length;
+    customerCount++;
+  }
+
+  /**
+   * Writes one project record. Money values are minor units; pass {@link SnapshotFormat#NULL_MONEY}
+   * or {@link SnapshotFormat#NULL_INT} for null columns.
+   */
+  public void writeProject(int customerId, int projectId, long grossPrice, int systemSizeKw,
+      long dealerFees, long adders, boolean installed, int installYear, int installMonth,
+      long repCommission) throws IOException {
+    if (projectsOffset < 0) {
+      projectsOffset = SnapshotFormat.HEADER_SIZE + bytesWritten;
+    }
+
+    int flags = installed ? SnapshotFormat.INSTALLED : 0;
+
+    if (dealerFees == SnapshotFormat.NULL_MONEY) {
+      flags |= SnapshotFormat.NULL_DEALER_FEES;
+      dealerFees = 0;
+    }
+
+    if (adders == SnapshotFormat.NULL_MONEY) {
+      flags |= SnapshotFormat.NULL_ADDERS;
+      adders = 0;
+    }
+
+    if (installYear == SnapshotFormat.NULL_INT) {
+      flags |= SnapshotFormat.NULL_INSTALL_YEAR;
+      installYear = 0;
+    }
+
+    if (installMonth == SnapshotFormat.NULL_INT) {
+      flags |= SnapshotFormat.NULL_INSTALL_MONTH;
+      installMonth = 0;
+    }
+
+    out.writeInt(customerId);
+    out.writeInt(projectId);
+    out.writeLong(grossPrice);
+    out.writeInt(systemSizeKw);
+    out.writeLong(dealerFees);
+    out.writeLong(adders);
+    out.writeLong(repCommission);
+    out.writeShort(installYear);
+    out.writeByte(installMonth);
+    out.writeByte(flags);
+
+    bytesWritten += SnapshotFormat.PROJECT_RECORD_SIZE;
+    projectCount++;
+  }
+
+  public long getCustomerCount() {
+    return customerCount;
+  }
+
+  public long getProjectCount() {
+    return projectCount;
+  }
+
+  /**
+   * Completes the snapshot: flushes and closes the body, then writes the header with the final
+   * counts and forces the file to disk.
+   *
+   * @throws IOException Thrown if the file cannot be completed. It is deleted when the writer is
+   *         closed.
+   */
+  public void finish() throws IOException {
+    out.close();
+
+    try (FileChannel file = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      file.write(header(), 0);
+      file.force(true);
+    }
+
+    finished = true;
+  }
+
+  /**
+   * Closes the file. A snapshot that was not finished is deleted.
+   */
+  @Override
+  public void close() throws IOException {
+    if (finished) {
+      return;
+    }
+
+    try {
+      out.close();
+    } catch (IOException e) {
+      /* The file is deleted anyway. */
+    }
+
+    Files.deleteIfExists(path);
+  }
+
+  private ByteBuffer header() {
+    ByteBuffer header = ByteBuffer.allocate(SnapshotFormat.HEADER_SIZE);
+    header.putInt(SnapshotFormat.MAGIC);
+    header.putShort(SnapshotFormat.VERSION);
+    header.putShort(compressed ? SnapshotFormat.FLAG_COMPRESSED : 0);
+    header.putLong(customerCount);
+    header.putLong(projectCount);
+    header.putLong(projectsOffset < 0 ? SnapshotFormat.HEADER_SIZE + bytesWritten : projectsOffset);
+    header.flip();
+    return header;
+  }
+}
@@ -5,10 +5,13 @@ package provided.util;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.ref.WeakReference;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Time;
@@ -16,7 +19,16 @@ import java.sql.Timestamp;
 import java.sql.Types;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class contains utility methods for the DAO class.
@@ -25,6 +37,19 @@ import java.util.Objects;
  *
  */
 public abstract class DaoBase {
+  /* The reflective mapping of each class passed to extract(), built on first use. */
+  private static final Map<Class<?>, RowMapper<?>> MAPPERS = new ConcurrentHashMap<>();
+
+  /* The most distinct strings extractAll() remembers per result set for sharing repeated values. */
+  private static final int SHARED_STRINGS_MAX = 8192;
+
+  /*
+   * The isolation level each connection had before its read-only transaction started, restored
+   * when the transaction ends. Keyed by identity, since pooled connections are proxies.
+   */
+  private final Map<Connection, Integer> isolationsBeforeReadOnly =
+      Collections.synchronizedMap(new IdentityHashMap<>());
+
   /**
    * This starts a MySQL transaction. Normally MySQL starts a transaction before every request and
    * commits it after each request. By turning auto-commit off, the transaction is only committed when
@@ -37,6 +62,63 @@ public abstract class DaoBase {
     conn.setAutoCommit(false);
   }
 
+  /**
+   * This starts a read-only transaction with READ COMMITTED isolation. A read-only transaction lets
+   * InnoDB skip the bookkeeping it does for read-write transactions (no transaction ID or rollback
+   * segment is assigned). Every read-only transaction must be ended with
+   * {@link #endReadOnlyTransaction(Connection)}.
+   * 
+   * @param conn The connection on which to start the transaction.
+   * @throws SQLException Thrown if an error occurs starting the transaction.
+   */
+  protected void startReadOnlyTransaction(Connection conn) throws SQLException {
+    startReadOnlyTransaction(conn, Connection.TRANSACTION_READ_COMMITTED);
+  }
+
+  /**
+   * This starts a read-only transaction with the given isolation level. Use
+   * {@link Connection#TRANSACTION_REPEATABLE_READ} when several queries must see the same snapshot.
+   * 
+   * @param conn The connection on which to start the transaction.
+   * @param isolation One of the {@link Connection} isolation level constants.
+   * @throws SQLException Thrown if an error occurs starting the transaction.
+   */
+  protected void startReadOnlyTransaction(Connection conn, int isolation) throws SQLException {
+    int previous = conn.getTransactionIsolation();
+
+    if (previous != isolation) {
+      conn.setTransactionIsolation(isolation);
+    }
+
+    conn.setReadOnly(true);
+    conn.setAutoCommit(false);
+    isolationsBeforeReadOnly.put(conn, previous);
+  }
+
+  /**
+   * Ends a read-only transaction and puts the connection back in the state it had before the
+   * transaction started (auto-commit, read-write and its previous isolation level) so that a pooled
+   * connection is returned clean. This is safe to call after
+   * {@link #rollbackTransaction(Connection)}.
+   * 
+   * @param conn The connection on which the read-only transaction was started.
+   * @throws SQLException Thrown if an error occurs ending the transaction.
+   */
+  protected void endReadOnlyTransaction(Connection conn) throws SQLException {
+    try {
+      conn.commit();
+    } finally {
+      Integer previous = isolationsBeforeReadOnly.remove(conn);
+
+      conn.setAutoCommit(true);
+      conn.setReadOnly(false);
+
+      if (Objects.nonNull(previous) && conn.getTransactionIsolation() != previous) {
+        conn.setTransactionIsolation(previous);
+      }
+    }
+  }
+
   /**
    * Commit the transaction. This will write all the changes, if any, to the database.
    * 
@@ -79,7 +161,8 @@ public abstract class DaoBase {
     } else {
       switch (sqlType) {
         case Types.DECIMAL:
-          stmt.setBigDecimal(parameterIndex, (BigDecimal) value);
+          stmt.setBigDecimal(parameterIndex, value instanceof FixedPoint
+              ? ((FixedPoint) value).toBigDecimal() : (BigDecimal) value);
           break;
 
         case Types.DOUBLE:
@@ -127,7 +210,7 @@ public abstract class DaoBase {
       return Types.DOUBLE;
     }
 
-    if (BigDecimal.class.equals(classType)) {
+    if (BigDecimal.class.equals(classType) || FixedPoint.class.equals(classType)) {
       return Types.DECIMAL;
     }
 
@@ -204,13 +287,17 @@ public abstract class DaoBase {
    * <ol>
    * <li>The zero-argument constructor is obtained.</li>
    * <li>An object of the given class type is created.</li>
-   * <li>A list of fields is obtained using reflection.</li>
+   * <li>A list of fields is obtained using reflection. Static and transient fields are skipped.</li>
    * <li>The field name is converted from Java naming to SQL naming conventions (camel case to snake
    * case). Obviously, for this to work, the Java name must match the column name. So, if the Java
    * name is numServings, the column name must be num_servings.</li>
    * <li>The value is assigned to the field in the object.</li>
    * </ol>
    * 
+   * The constructor and the fields of a class are looked up once and cached, and the position of
+   * each column is looked up once per result set, so extracting a row does no reflection and no
+   * lookup by column name. See {@link #prepareMapper(Class)}.
+   * 
    * Example: if a query returns values for a recipe, a Recipe object is returned. So:
    * 
    * <pre>
@@ -220,6 +307,10 @@ public abstract class DaoBase {
    * Recipe recipe = extract(rs, Recipe.class);
    * </pre>
    * 
+   * A DECIMAL column mapped to a {@code long} field is stored as minor units at the column's scale
+   * (12.34 in a DECIMAL(7,2) column is 1234), which keeps amounts unboxed. Integer columns can be
+   * mapped to {@code int} fields. A null column leaves such a field at its initial value.
+   * 
    * Note: if the Java field does not exist in the result set, the value of the field is left
    * unchanged. So, class Recipe has an instance variable:
    * 
@@ -238,75 +329,218 @@ public abstract class DaoBase {
    */
   protected <T> T extract(ResultSet rs, Class<T> classType) {
     try {
-      /* Obtain the constructor and create an object of the correct type. */
-      Constructor<T> con = classType.getConstructor();
-      T obj = con.newInstance();
+      return mapperFor(classType).map(rs, null);
+    } catch (DaoException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new DaoException("Unable to create object of type " + classType.getName(), e);
+    }
+  }
+
+  /**
+   * Extracts every remaining row of a result set, as {@link #extract(ResultSet, Class)} does, for
+   * large fetches that are kept in memory. The rows are collected in an ArrayList sized for the
+   * expected number of rows and trimmed to the rows read, and a String value that repeats within
+   * the result set (such as a common name) is held once and shared by every object that has it.
+   * 
+   * @param <T> The type of object to create.
+   * @param rs The result set, positioned before the first row to read.
+   * @param classType The class of the objects.
+   * @param expectedRows The number of rows expected, for example the page size or the fetch size.
+   * @return The objects, in row order.
+   * @throws SQLException Thrown if an error occurs reading the rows.
+   */
+  protected <T> List<T> extractAll(ResultSet rs, Class<T> classType, int expectedRows)
+      throws SQLException {
+    RowMapper<T> mapper = mapperFor(classType);
+    ArrayList<T> rows = new ArrayList<>(Math.max(expectedRows, 0));
+    Map<String, String> strings = new HashMap<>();
+
+    while (rs.next()) {
+      try {
+        rows.add(mapper.map(rs, strings));
+      } catch (DaoException | SQLException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new DaoException("Unable to create object of type " + classType.getName(), e);
+      }
+    }
+
+    rows.trimToSize();
+    return rows;
+  }
+
+  /**
+   * Builds and caches the mapping that {@link #extract(ResultSet, Class)} uses for a class, so that
+   * the reflection is done before the first row of that type is read.
+   * 
+   * @param classType The class.
+   */
+  protected static void prepareMapper(Class<?> classType) {
+    mapperFor(classType);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> RowMapper<T> mapperFor(Class<T> classType) {
+    return (RowMapper<T>) MAPPERS.computeIfAbsent(classType, RowMapper::new);
+  }
+
+  /**
+   * This converts a camel case value (rowInsertTime) to snake case (row_insert_time).
+   * 
+   * @param identifier The name in camel case to convert.
+   * @return The name converted to snake case.
+   */
+  private static String camelCaseToSnakeCase(String identifier) {
+    StringBuilder nameBuilder = new StringBuilder();
+
+    for (char ch : identifier.toCharArray()) {
+      if (Character.isUpperCase(ch)) {
+        nameBuilder.append('_').append(Character.toLowerCase(ch));
+      } else {
+        nameBuilder.append(ch);
+      }
+    }
+
+    return nameBuilder.toString();
+  }
+
+  /**
+   * The mapping of one class: its zero-argument constructor and its mapped fields with their column
+   * names. Each thread's last result set is kept with its column positions, so threads reading
+   * different queries at once do not evict each other.
+   */
+  private static final class RowMapper<T> {
+    private final Constructor<T> constructor;
+    private final Field[] fields;
+    private final String[] columns;
+    private final ThreadLocal<Binding> binding = new ThreadLocal<>();
+
+    RowMapper(Class<T> classType) {
+      try {
+        this.constructor = classType.getConstructor();
+      } catch (NoSuchMethodException e) {
+        throw new DaoException("Unable to create object of type " + classType.getName(), e);
+      }
+
+      Map<Field, String> mapped = new LinkedHashMap<>();
 
-      /* Get the list of fields and loop through them. */
       for (Field field : classType.getDeclaredFields()) {
-        String colName = camelCaseToSnakeCase(field.getName());
-        Class<?> fieldType = field.getType();
+        /* Static fields and transient (derived) fields are never mapped from columns. */
+        if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers())) {
+          continue;
+        }
 
-        /*
-         * Set the field accessible flag which means that we can populate even private fields without using
-         * the setter.
-         */
+        /* Populate even private fields without using the setter. */
         field.setAccessible(true);
-        Object fieldValue = null;
+        mapped.put(field, camelCaseToSnakeCase(field.getName()));
+      }
 
-        try {
-          fieldValue = rs.getObject(colName);
-        } catch (SQLException e) {
-          /*
-           * An exception caught here means that the field name isn't in the result set. Don't take any
-           * action.
-           */
-        }
+      this.fields = mapped.keySet().toArray(new Field[0]);
+      this.columns = mapped.values().toArray(new String[0]);
+    }
 
+    /*
+     * Maps the current row. Strings are shared through the given map unless it is null.
+     */
+    T map(ResultSet rs, Map<String, String> strings) throws Exception {
+      T obj = constructor.newInstance();
+      Binding columns = bind(rs);
+      int[] indexes = columns.indexes;
+
+      for (int index = 0; index < fields.length; index++) {
         /*
-         * Only set the value in the object if there is a value with the same name in the result set. This
-         * will preserve instance variables (like lists) that are assigned values when the object is
-         * created.
+         * Only set the value in the object if there is a value with the same name in the result
+         * set. This preserves instance variables (like lists) that are assigned values when the
+         * object is created.
          */
+        Object fieldValue = indexes[index] == 0 ? null : rs.getObject(indexes[index]);
+
         if (Objects.nonNull(fieldValue)) {
+          Class<?> fieldType = fields[index].getType();
+
           /*
-           * Convert the following types: Time -> LocalTime, and Timestamp -> LocalDateTime.
+           * Convert the following types: Time -> LocalTime, Timestamp -> LocalDateTime, and
+           * BigDecimal -> FixedPoint (keeping the column's scale).
            */
           if (fieldValue instanceof Time && fieldType.equals(LocalTime.class)) {
             fieldValue = ((Time) fieldValue).toLocalTime();
           } else if (fieldValue instanceof Timestamp && fieldType.equals(LocalDateTime.class)) {
             fieldValue = ((Timestamp) fieldValue).toLocalDateTime();
+          } else if (fieldValue instanceof BigDecimal && fieldType.equals(FixedPoint.class)) {
+            fieldValue = FixedPoint.of((BigDecimal) fieldValue);
+          } else if (fieldValue instanceof BigDecimal && fieldType.equals(long.class)) {
+            fieldValue = ((BigDecimal) fieldValue).movePointRight(columns.scales[index])
+                .longValueExact();
+          } else if (fieldValue instanceof String && Objects.nonNull(strings)) {
+            fieldValue = share(strings, (String) fieldValue);
           }
 
-          field.set(obj, fieldValue);
+          fields[index].set(obj, fieldValue);
         }
       }
 
       return obj;
+    }
 
-    } catch (Exception e) {
-      throw new DaoException("Unable to create object of type " + classType.getName(), e);
+    private static String share(Map<String, String> strings, String value) {
+      String shared = strings.get(value);
+
+      if (Objects.nonNull(shared)) {
+        return shared;
+      }
+
+      if (strings.size() < SHARED_STRINGS_MAX) {
+        strings.put(value, value);
+      }
+
+      return value;
     }
-  }
 
-  /**
-   * This converts a camel case value (rowInsertTime) to snake case (row_insert_time).
-   * 
-   * @param identifier The name in camel case to convert.
-   * @return The name converted to snake case.
-   */
-  private String camelCaseToSnakeCase(String identifier) {
-    StringBuilder nameBuilder = new StringBuilder();
+    /*
+     * The 1-based column of each field in the result set (or 0 if the result set does not have
+     * it) and its scale. Worked out from the metadata once per result set; the result set is held
+     * weakly so that a closed one can be collected.
+     */
+    private Binding bind(ResultSet rs) throws SQLException {
+      Binding current = binding.get();
 
-    for (char ch : identifier.toCharArray()) {
-      if (Character.isUpperCase(ch)) {
-        nameBuilder.append('_').append(Character.toLowerCase(ch));
-      } else {
-        nameBuilder.append(ch);
+      if (Objects.nonNull(current) && current.resultSet.get() == rs) {
+        return current;
       }
+
+      ResultSetMetaData meta = rs.getMetaData();
+      Map<String, Integer> byLabel = new HashMap<>();
+
+      /* Backwards, so that the first of two columns with the same label wins, as by name. */
+      for (int column = meta.getColumnCount(); column >= 1; column--) {
+        byLabel.put(meta.getColumnLabel(column).toLowerCase(Locale.ROOT), column);
+      }
+
+      int[] indexes = new int[columns.length];
+      int[] scales = new int[columns.length];
+
+      for (int index = 0; index < columns.length; index++) {
+        indexes[index] = byLabel.getOrDefault(columns[index], 0);
+        scales[index] = indexes[index] == 0 ? 0 : meta.getScale(indexes[index]);
+      }
+
+      current = new Binding(rs, indexes, scales);
+      binding.set(current);
+      return current;
     }
+  }
 
-    return nameBuilder.toString();
+  private static final class Binding {
+    private final WeakReference<ResultSet> resultSet;
+    private final int[] indexes;
+    private final int[] scales;
+
+    Binding(ResultSet resultSet, int[] indexes, int[] scales) {
+      this.resultSet = new WeakReference<>(resultSet);
+      this.indexes = indexes;
+      this.scales = scales;
+    }
   }
 
   /**
@@ -0,0 +1,367 @@
+package provided.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Objects;
+
+/**
+ * An immutable decimal number held as a long count of minor units with a fixed scale. A price of
+ * 1234.50 at scale 2 is stored as 123450. The scales used by the application match the database
+ * columns: {@link #MONEY_SCALE} for {@code DECIMAL(7,2)} and {@link #KW_SCALE} for
+ * {@code DECIMAL(5,3)}.
+ *
+ * Arithmetic is done on longs and fails with an {@link ArithmeticException} rather than overflow or
+ * silently lose digits. Values of different scales are brought to the larger scale first. For sums
+ * over many rows use a {@link Sum}, which adds into a long and does not allocate per value.
+ *
+ * {@link DaoBase#setParameter} binds a FixedPoint as a DECIMAL, and {@link DaoBase#extract} maps
+ * DECIMAL columns onto FixedPoint fields.
+ */
+public final class FixedPoint implements Comparable<FixedPoint> {
+  public static final int MONEY_SCALE = 2;
+  public static final int KW_SCALE = 3;
+
+  private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1_000L, 10_000L, 100_000L,
+      1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L, 10_000_000_000L, 100_000_000_000L,
+      1_000_000_000_000L, 10_000_000_000_000L, 100_000_000_000_000L, 1_000_000_000_000_000L,
+      10_000_000_000_000_000L, 100_000_000_000_000_000L, 1_000_000_000_000_000_000L};
+
+  private static final FixedPoint ZERO_MONEY = new FixedPoint(0, MONEY_SCALE);
+
+  private final long unscaled;
+  private final int scale;
+
+  private FixedPoint(long unscaled, int scale) {
+    this.unscaled = unscaled;
+    this.scale = scale;
+  }
+
+  /**
+   * Creates a value from minor units.
+   *
+   * @param unscaled The value multiplied by ten to the power of the scale.
+   * @param scale The number of decimal places (0 to 18).
+   * @return The value.
+   */
+  public static FixedPoint ofUnscaled(long unscaled, int scale) {
+    checkScale(scale);
+    return unscaled == 0 && scale == MONEY_SCALE ? ZERO_MONEY : new FixedPoint(unscaled, scale);
+  }
+
+  /**
+   * Converts a BigDecimal, keeping its scale. This is how DECIMAL column values are mapped, so the
+   * scale is the column's.
+   *
+   * @param value The value, which may be null.
+   * @return The value, or null.
+   * @throws ArithmeticException Thrown if the value does not fit in a long at its scale.
+   */
+  public static FixedPoint of(BigDecimal value) {
+    if (Objects.isNull(value)) {
+      return null;
+    }
+
+    return value.scale() < 0 ? of(value, 0) : ofUnscaled(value.unscaledValue().longValueExact(),
+        value.scale());
+  }
+
+  /**
+   * Converts a BigDecimal to the given scale, rounding half up.
+   *
+   * @param value The value, which may be null.
+   * @param scale The number of decimal places kept.
+   * @return The value, or null.
+   */
+  public static FixedPoint of(BigDecimal value, int scale) {
+    if (Objects.isNull(value)) {
+      return null;
+    }
+
+    return ofUnscaled(value.setScale(scale, RoundingMode.HALF_UP).unscaledValue().longValueExact(),
+        scale);
+  }
+
+  /**
+   * Parses a plain decimal string such as {@code -12.5} at the given scale, rounding half up any
+   * digits beyond it.
+   *
+   * @param text The text, which may be null or blank.
+   * @param scale The number of decimal places kept.
+   * @return The value, or null if the text is null or blank.
+   * @throws NumberFormatException Thrown if the text is not a plain decimal number.
+   */
+  public static FixedPoint parse(String text, int scale) {
+    if (Objects.isNull(text) || text.isBlank()) {
+      return null;
+    }
+
+    checkScale(scale);
+    String trimmed = text.strip();
+    int index = 0;
+    boolean negative = false;
+
+    if (trimmed.charAt(0) == '-' || trimmed.charAt(0) == '+') {
+      negative = trimmed.charAt(0) == '-';
+      index++;
+    }
+
+    long unscaled = 0;
+    int decimals = -1;
+    boolean roundUp = false;
+    boolean digits = false;
+
+    try {
+      for (; index < trimmed.length(); index++) {
+        char ch = trimmed.charAt(index);
+
+        if (ch == '.' && decimals < 0) {
+          decimals = 0;
+        } else if (ch >= '0' && ch <= '9') {
+          digits = true;
+
+          if (decimals < 0 || decimals < scale) {
+            unscaled = Math.addExact(Math.multiplyExact(unscaled, 10), ch - '0');
+            decimals = decimals < 0 ? -1 : decimals + 1;
+          } else if (decimals++ == scale) {
+            roundUp = ch >= '5';
+          }
+        } else {
+          throw new NumberFormatException("Not a decimal number: \"" + text + "\"");
+        }
+      }
+    } catch (ArithmeticException e) {
+      throw new NumberFormatException("Number out of range: \"" + text + "\"");
+    }
+
+    if (!digits) {
+      throw new NumberFormatException("Not a decimal number: \"" + text + "\"");
+    }
+
+    int kept = Math.max(decimals, 0);
+    unscaled = Math.multiplyExact(unscaled, POWERS_OF_TEN[Math.max(scale - kept, 0)]);
+
+    if (roundUp) {
+      unscaled++;
+    }
+
+    return ofUnscaled(negative ? -unscaled : unscaled, scale);
+  }
+
+  /**
+   * Parses a money amount with two decimal places.
+   *
+   * @param text The text, which may be null or blank.
+   * @return The value, or null if the text is null or blank.
+   */
+  public static FixedPoint money(String text) {
+    return parse(text, MONEY_SCALE);
+  }
+
+  public long getUnscaled() {
+    return unscaled;
+  }
+
+  public int getScale() {
+    return scale;
+  }
+
+  public FixedPoint add(FixedPoint other) {
+    int common = Math.max(scale, other.scale);
+    return ofUnscaled(Math.addExact(unscaledAt(common), other.unscaledAt(common)), common);
+  }
+
+  public FixedPoint subtract(FixedPoint other) {
+    int common = Math.max(scale, other.scale);
+    return ofUnscaled(Math.subtractExact(unscaledAt(common), other.unscaledAt(common)), common);
+  }
+
+  public FixedPoint multiply(long factor) {
+    return ofUnscaled(Math.multiplyExact(unscaled, factor), scale);
+  }
+
+  public FixedPoint negate() {
+    return ofUnscaled(Math.negateExact(unscaled), scale);
+  }
+
+  public int signum() {
+    return Long.signum(unscaled);
+  }
+
+  /**
+   * The ratio of this value to another, for figures such as commission as a share of price.
+   *
+   * @param divisor The value to divide by.
+   * @return The ratio, or NaN if the divisor is zero.
+   */
+  public double ratio(FixedPoint divisor) {
+    if (divisor.unscaled == 0) {
+      return Double.NaN;
+    }
+
+    return (double) unscaled / divisor.unscaled * Math.pow(10, divisor.scale - scale);
+  }
+
+  /**
+   * Returns the minor units of this value at another scale. Going to a smaller scale is allowed only
+   * when the dropped digits are zero.
+   *
+   * @param target The scale wanted.
+   * @return The minor units at that scale.
+   * @throws ArithmeticException Thrown if digits would be lost or the result overflows.
+   */
+  public long unscaledAt(int target) {
+    if (target < scale) {
+      long divisor = POWERS_OF_TEN[scale - target];
+
+      if (unscaled % divisor != 0) {
+        throw new ArithmeticException("Rescaling " + this + " to scale " + target
+            + " would lose digits");
+      }
+
+      return unscaled / divisor;
+    }
+
+    return Math.multiplyExact(unscaled, POWERS_OF_TEN[target - scale]);
+  }
+
+  public BigDecimal toBigDecimal() {
+    return BigDecimal.valueOf(unscaled, scale);
+  }
+
+  public double doubleValue() {
+    return (double) unscaled / POWERS_OF_TEN[scale];
+  }
+
+  /**
+   * Appends the plain decimal form (no exponent) without creating intermediate objects.
+   *
+   * @param out The builder to append to.
+   * @return The builder.
+   */
+  public StringBuilder appendTo(StringBuilder out) {
+    long whole = unscaled / POWERS_OF_TEN[scale];
+    long fraction = Math.abs(unscaled % POWERS_OF_TEN[scale]);
+
+    if (unscaled < 0 && whole == 0) {
+      out.append('-');
+    }
+
+    out.append(whole);
+
+    if (scale > 0) {
+      out.append('.');
+
+      for (long power = POWERS_OF_TEN[scale - 1]; power > fraction && power > 1; power /= 10) {
+        out.append('0');
+      }
+
+      out.append(fraction);
+    }
+
+    return out;
+  }
+
+  @Override
+  public String toString() {
+    return appendTo(new StringBuilder(24)).toString();
+  }
+
+  /**
+   * Compares numerically, so 1.5 at scale 1 equals 1.50 at scale 2 here even though
+   * {@link #equals(Object)} treats them as different.
+   */
+  @Override
+  public int compareTo(FixedPoint other) {
+    if (scale == other.scale) {
+      return Long.compare(unscaled, other.unscaled);
+    }
+
+    return toBigDecimal().compareTo(other.toBigDecimal());
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+
+    if (!(obj instanceof FixedPoint)) {
+      return false;
+    }
+
+    FixedPoint other = (FixedPoint) obj;
+    return unscaled == other.unscaled && scale == other.scale;
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(unscaled) * 31 + scale;
+  }
+
+  private static void checkScale(int scale) {
+    if (scale < 0 || scale >= POWERS_OF_TEN.length) {
+      throw new ArithmeticException("Unsupported scale " + scale);
+    }
+  }
+
+  /**
+   * A mutable running total at a fixed scale. Adding a value changes a long in place, so summing a
+   * column over many rows allocates nothing until {@link #get()} is called.
+   */
+  public static final class Sum {
+    private final int scale;
+    private long unscaled;
+    private long count;
+
+    public Sum(int scale) {
+      checkScale(scale);
+      this.scale = scale;
+    }
+
+    /**
+     * Adds a value. Null values are skipped and not counted.
+     *
+     * @param value The value to add.
+     * @return This sum.
+     */
+    public Sum add(FixedPoint value) {
+      if (Objects.nonNull(value)) {
+        unscaled = Math.addExact(unscaled, value.unscaledAt(scale));
+        count++;
+      }
+
+      return this;
+    }
+
+    public Sum subtract(FixedPoint value) {
+      if (Objects.nonNull(value)) {
+        unscaled = Math.subtractExact(unscaled, value.unscaledAt(scale));
+      }
+
+      return this;
+    }
+
+    public Sum merge(Sum other) {
+      unscaled = Math.addExact(unscaled, other.get().unscaledAt(scale));
+      count += other.count;
+      return this;
+    }
+
+    public long getUnscaled() {
+      return unscaled;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public FixedPoint get() {
+      return ofUnscaled(unscaled, scale);
+    }
+
+    @Override
+    public String toString() {
+      return get().toString();
+    }
+  }
+}
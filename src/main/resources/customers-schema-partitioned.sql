@@ -0,0 +1,80 @@
+-- The schema with the projects table range-partitioned by install year, used when
+-- customers.db.projects.partitioned=true. partition_year is the install year of an installed
+-- project and 0 otherwise, so uninstalled projects share the first partition and queries that name
+-- a period read only its partitions. MySQL requires the partitioning column in every unique key,
+-- so the primary key includes partition_year and project_id has a plain index rather than a unique
+-- one. It does not allow foreign keys on partitioned tables, so projects has no foreign key here and
+-- the DAO deletes a customer's projects itself. Because partition_year is part of the primary key,
+-- the table no longer keeps a customer to one project on its own: two rows with one customer_id
+-- in different partitions are allowed. The DAO enforces one project per customer instead, with a
+-- locking read of the customer IDs in the transaction that inserts projects (and a delete before
+-- an upsert). Rows written by other means, such as a data file, are not checked. Add a year by
+-- splitting p_future with
+-- ALTER TABLE projects REORGANIZE PARTITION p_future INTO (...).
+DROP TABLE IF EXISTS projects_archive;
+DROP TABLE IF EXISTS projects;
+DROP TABLE IF EXISTS customers;
+
+CREATE TABLE customers(
+  customer_id INT AUTO_INCREMENT NOT NULL,
+  customer_name VARCHAR(25) NOT NULL,
+  PRIMARY KEY (customer_id),
+  INDEX (customer_name)
+);
+
+CREATE TABLE projects(
+  customer_id INT AUTO_INCREMENT NOT NULL,
+  project_id INT NOT NULL,
+  gross_price DECIMAL(7,2) NOT NULL,
+  system_size_kw DECIMAL(5,3) NOT NULL,
+  dealer_fees DECIMAL (7,2),
+  adders DECIMAL (7,2),
+  installed BOOLEAN NOT NULL,
+  install_year INT,
+  install_month INT,
+  rep_commission DECIMAL(7,2) NOT NULL,
+  partition_year INT AS (IF(installed, COALESCE(install_year, 0), 0)) STORED NOT NULL,
+  PRIMARY KEY (customer_id, partition_year),
+  INDEX (project_id),
+  INDEX (gross_price),
+  INDEX (system_size_kw),
+  INDEX (rep_commission),
+  INDEX (install_year, system_size_kw)
+)
+PARTITION BY RANGE (partition_year) (
+  PARTITION p_uninstalled VALUES LESS THAN (1),
+  PARTITION p_before_2015 VALUES LESS THAN (2015),
+  PARTITION p2015 VALUES LESS THAN (2016),
+  PARTITION p2016 VALUES LESS THAN (2017),
+  PARTITION p2017 VALUES LESS THAN (2018),
+  PARTITION p2018 VALUES LESS THAN (2019),
+  PARTITION p2019 VALUES LESS THAN (2020),
+  PARTITION p2020 VALUES LESS THAN (2021),
+  PARTITION p2021 VALUES LESS THAN (2022),
+  PARTITION p2022 VALUES LESS THAN (2023),
+  PARTITION p2023 VALUES LESS THAN (2024),
+  PARTITION p2024 VALUES LESS THAN (2025),
+  PARTITION p2025 VALUES LESS THAN (2026),
+  PARTITION p2026 VALUES LESS THAN (2027),
+  PARTITION p2027 VALUES LESS THAN (2028),
+  PARTITION p_future VALUES LESS THAN MAXVALUE
+);
+
+-- Installed projects moved out of the projects table by the archive job.
+CREATE TABLE projects_archive(
+  archive_id BIGINT AUTO_INCREMENT NOT NULL,
+  customer_id INT NOT NULL,
+  project_id INT NOT NULL,
+  gross_price DECIMAL(7,2) NOT NULL,
+  system_size_kw DECIMAL(5,3) NOT NULL,
+  dealer_fees DECIMAL (7,2),
+  adders DECIMAL (7,2),
+  installed BOOLEAN NOT NULL,
+  install_year INT,
+  install_month INT,
+  rep_commission DECIMAL(7,2) NOT NULL,
+  archived_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (archive_id),
+  INDEX (customer_id),
+  INDEX (install_year)
+);
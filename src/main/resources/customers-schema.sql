@@ -1,10 +1,12 @@
+DROP TABLE IF EXISTS projects_archive;
 DROP TABLE IF EXISTS projects;
 DROP TABLE IF EXISTS customers;
 
 CREATE TABLE customers(
   customer_id INT AUTO_INCREMENT NOT NULL,
   customer_name VARCHAR(25) NOT NULL,
-  PRIMARY KEY (customer_id)
+  PRIMARY KEY (customer_id),
+  INDEX (customer_name)
 );
 
 CREATE TABLE projects(
@@ -19,5 +21,29 @@ CREATE TABLE projects(
   install_month INT,
   rep_commission DECIMAL(7,2) NOT NULL,
   PRIMARY KEY (customer_id),
+  UNIQUE INDEX (project_id),
+  INDEX (gross_price),
+  INDEX (system_size_kw),
+  INDEX (rep_commission),
+  INDEX (install_year, system_size_kw),
   FOREIGN KEY (customer_id) REFERENCES customers (customer_id) ON DELETE CASCADE
-);
\ No newline at end of file
+);
+
+-- Installed projects moved out of the projects table by the archive job.
+CREATE TABLE projects_archive(
+  archive_id BIGINT AUTO_INCREMENT NOT NULL,
+  customer_id INT NOT NULL,
+  project_id INT NOT NULL,
+  gross_price DECIMAL(7,2) NOT NULL,
+  system_size_kw DECIMAL(5,3) NOT NULL,
+  dealer_fees DECIMAL (7,2),
+  adders DECIMAL (7,2),
+  installed BOOLEAN NOT NULL,
+  install_year INT,
+  install_month INT,
+  rep_commission DECIMAL(7,2) NOT NULL,
+  archived_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (archive_id),
+  INDEX (customer_id),
+  INDEX (install_year)
+);
@@ -0,0 +1,77 @@
+package customers.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ShardRingTest {
+  private static final List<String> NAMES = List.of("db1:3306/customers", "db2:3306/customers",
+      "db3:3306/customers");
+
+  @Test
+  void placesEachCustomerOnTheSameShardEveryTime() {
+    ShardRing first = new ShardRing(NAMES, 64);
+    ShardRing second = new ShardRing(NAMES, 64);
+
+    for (int customerId = 1; customerId <= 10_000; customerId++) {
+      assertEquals(first.shardFor(customerId), second.shardFor(customerId));
+    }
+  }
+
+  @Test
+  void placementDependsOnNamesNotTheirOrder() {
+    ShardRing ring = new ShardRing(NAMES, 64);
+    ShardRing reversed = new ShardRing(List.of(NAMES.get(2), NAMES.get(1), NAMES.get(0)), 64);
+
+    for (int customerId = 1; customerId <= 10_000; customerId++) {
+      assertEquals(ring.getNames().get(ring.shardFor(customerId)),
+          reversed.getNames().get(reversed.shardFor(customerId)));
+    }
+
+    assertEquals(ring.getSignature(), reversed.getSignature());
+  }
+
+  @Test
+  void addingAShardOnlyMovesCustomersOntoIt() {
+    ShardRing before = new ShardRing(NAMES, 64);
+    ShardRing after = new ShardRing(List.of(NAMES.get(0), NAMES.get(1), NAMES.get(2),
+        "db4:3306/customers"), 64);
+    int moved = 0;
+
+    for (int customerId = 1; customerId <= 10_000; customerId++) {
+      int oldShard = before.shardFor(customerId);
+      int newShard = after.shardFor(customerId);
+
+      if (oldShard != newShard) {
+        assertEquals(3, newShard, "Customer " + customerId + " moved between old shards");
+        moved++;
+      }
+    }
+
+    assertTrue(moved > 1_000 && moved < 4_000, moved + " of 10000 customers moved");
+  }
+
+  @Test
+  void spreadsCustomersRoughlyEvenly() {
+    ShardRing ring = new ShardRing(NAMES, 128);
+    int[] counts = new int[NAMES.size()];
+
+    for (int customerId = 1; customerId <= 30_000; customerId++) {
+      counts[ring.shardFor(customerId)]++;
+    }
+
+    for (int count : counts) {
+      assertTrue(count > 7_000 && count < 13_000, count + " of 30000 customers on one shard");
+    }
+  }
+
+  @Test
+  void signatureChangesWithTheLayout() {
+    ShardRing ring = new ShardRing(NAMES, 64);
+
+    assertNotEquals(ring.getSignature(), new ShardRing(NAMES, 32).getSignature());
+    assertNotEquals(ring.getSignature(), new ShardRing(NAMES.subList(0, 2), 64).getSignature());
+  }
+}
@@ -0,0 +1,66 @@
+package customers.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import customers.exception.InvalidInputException;
+
+class JsonTest {
+
+  @Test
+  void parsesObjectsArraysAndLiterals() {
+    Object value =
+        Json.parse(" {\"name\": \"Ann\", \"ids\": [1, 2.50, -3e2], \"ok\": true, \"x\": null} ");
+
+    @SuppressWarnings("unchecked")
+    Map<String, Object> object = (Map<String, Object>) value;
+
+    assertEquals("Ann", object.get("name"));
+    assertEquals(List.of(new BigDecimal("1"), new BigDecimal("2.50"), new BigDecimal("-3e2")),
+        object.get("ids"));
+    assertEquals(Boolean.TRUE, object.get("ok"));
+    assertNull(object.get("x"));
+    assertEquals(List.of("name", "ids", "ok", "x"), List.copyOf(object.keySet()));
+  }
+
+  @Test
+  void decodesStringEscapes() {
+    assertEquals("a\"b\\c/d\n\t\u00e9\u20ac",
+        Json.parse("\"a\\\"b\\\\c\\/d\\n\\t\\u00e9\\u20AC\""));
+  }
+
+  @Test
+  void rejectsBadUnicodeEscape() {
+    assertThrows(InvalidInputException.class, () -> Json.parse("\"\\u12G4\""));
+    assertThrows(InvalidInputException.class, () -> Json.parse("\"\\u12\""));
+  }
+
+  @Test
+  void rejectsDeepNesting() {
+    String allowed = "[".repeat(64) + "]".repeat(64);
+    String tooDeep = "[".repeat(65) + "]".repeat(65);
+
+    Json.parse(allowed);
+    assertThrows(InvalidInputException.class, () -> Json.parse(tooDeep));
+  }
+
+  @Test
+  void rejectsMalformedDocuments() {
+    assertThrows(InvalidInputException.class, () -> Json.parse("{\"a\": 1} x"));
+    assertThrows(InvalidInputException.class, () -> Json.parse("\"unterminated"));
+    assertThrows(InvalidInputException.class, () -> Json.parse("{\"a\" 1}"));
+    assertThrows(InvalidInputException.class, () -> Json.parse("[1,"));
+    assertThrows(InvalidInputException.class, () -> Json.parse("nul"));
+    assertThrows(InvalidInputException.class, () -> Json.parse("1.2.3"));
+    assertThrows(InvalidInputException.class, () -> Json.parse(""));
+  }
+
+  @Test
+  void writesEscapedStrings() {
+    assertEquals("\"a\\\"b\\\\c\\n\"", Json.string(new StringBuilder(), "a\"b\\c\n").toString());
+  }
+}
@@ -0,0 +1,67 @@
+package customers.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+class IdBloomFilterTest {
+
+  @Test
+  void neverMissesAnAddedId() {
+    IdBloomFilter filter = new IdBloomFilter(10_000, 0.01);
+
+    for (int id = 1; id <= 10_000; id++) {
+      filter.add(id * 7);
+    }
+
+    for (int id = 1; id <= 10_000; id++) {
+      assertTrue(filter.mightContain(id * 7), "Missing " + id * 7);
+    }
+
+    assertEquals(10_000, filter.getAddedCount());
+  }
+
+  @Test
+  void keepsFalsePositivesNearTheRequestedRate() {
+    IdBloomFilter filter = new IdBloomFilter(10_000, 0.01);
+
+    for (int id = 0; id < 10_000; id++) {
+      filter.add(id);
+    }
+
+    int falsePositives = 0;
+
+    for (int id = 1_000_000; id < 1_100_000; id++) {
+      if (filter.mightContain(id)) {
+        falsePositives++;
+      }
+    }
+
+    assertTrue(falsePositives < 3_000, falsePositives + " false positives in 100000 probes");
+  }
+
+  @Test
+  void reportsSaturationPastItsSize() {
+    IdBloomFilter filter = new IdBloomFilter(10, 0.01);
+
+    /* Sizes below 64 are raised to 64. */
+    for (int id = 0; id < 64; id++) {
+      filter.add(id);
+    }
+
+    assertFalse(filter.isSaturated());
+
+    filter.add(64);
+    assertTrue(filter.isSaturated());
+  }
+
+  @Test
+  void emptyFilterContainsNothing() {
+    IdBloomFilter filter = new IdBloomFilter(100, 0.01);
+
+    assertFalse(filter.mightContain(0));
+    assertFalse(filter.mightContain(-1));
+    assertFalse(filter.mightContain(Integer.MAX_VALUE));
+  }
+}
@@ -0,0 +1,148 @@
+package customers.snapshot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import customers.entity.Customer;
+import customers.entity.Project;
+import customers.exception.DbException;
+import provided.util.FixedPoint;
+
+class SnapshotRoundTripTest {
+  @TempDir
+  Path directory;
+
+  @Test
+  void readsBackWhatWasWritten() throws IOException {
+    Path path = write("plain.snap", false);
+    List<Customer> customers = new ArrayList<>();
+    List<Project> projects = new ArrayList<>();
+
+    try (SnapshotReader reader = new SnapshotReader(path)) {
+      assertEquals(2, reader.getCustomerCount());
+      assertEquals(2, reader.getProjectCount());
+      reader.read(customers::add, projects::add);
+    }
+
+    assertCustomers(customers);
+    assertProjects(projects);
+  }
+
+  @Test
+  void readsBackACompressedSnapshot() throws IOException {
+    Path path = write("compressed.snap", true);
+    List<Customer> customers = new ArrayList<>();
+    List<Project> projects = new ArrayList<>();
+
+    try (SnapshotReader reader = new SnapshotReader(path)) {
+      reader.read(customers::add, projects::add);
+    }
+
+    assertCustomers(customers);
+    assertProjects(projects);
+    assertThrows(DbException.class, () -> MappedSnapshot.open(path));
+  }
+
+  @Test
+  void mapsAnUncompressedSnapshot() throws IOException {
+    MappedSnapshot snapshot = MappedSnapshot.open(write("mapped.snap", false));
+    List<Customer> customers = new ArrayList<>();
+
+    snapshot.forEachCustomer((customerId, customerName) -> {
+      Customer customer = new Customer();
+      customer.setCustomerId(customerId);
+      customer.setCustomerName(customerName);
+      customers.add(customer);
+    });
+
+    assertEquals(2, snapshot.getCustomerCount());
+    assertEquals(2, snapshot.getProjectCount());
+    assertCustomers(customers);
+
+    assertEquals(1, snapshot.getCustomerId(0));
+    assertEquals(10, snapshot.getProjectId(0));
+    assertEquals(2_500_000, snapshot.getGrossPrice(0));
+    assertEquals(7_250, snapshot.getSystemSizeKw(0));
+    assertEquals(15_000, snapshot.getDealerFees(0));
+    assertEquals(2023, snapshot.getInstallYear(0));
+    assertTrue(snapshot.isInstalled(0));
+
+    assertEquals(SnapshotFormat.NULL_MONEY, snapshot.getDealerFees(1));
+    assertEquals(SnapshotFormat.NULL_MONEY, snapshot.getAdders(1));
+    assertEquals(SnapshotFormat.NULL_INT, snapshot.getInstallYear(1));
+    assertEquals(SnapshotFormat.NULL_INT, snapshot.getInstallMonth(1));
+    assertFalse(snapshot.isInstalled(1));
+
+    assertProjects(List.of(snapshot.getProject(0), snapshot.getProject(1)));
+    assertThrows(IndexOutOfBoundsException.class, () -> snapshot.getProject(2));
+  }
+
+  @Test
+  void deletesASnapshotThatWasNotFinished() throws IOException {
+    Path path = directory.resolve("partial.snap");
+
+    try (SnapshotWriter writer = new SnapshotWriter(path, false)) {
+      writer.writeCustomer(1, "Partial");
+      assertTrue(Files.exists(path));
+    }
+
+    assertFalse(Files.exists(path));
+  }
+
+  private Path write(String name, boolean compressed) throws IOException {
+    Path path = directory.resolve(name);
+
+    try (SnapshotWriter writer = new SnapshotWriter(path, compressed)) {
+      writer.writeCustomer(1, "Ann Smith");
+      writer.writeCustomer(2, "Zo\u00eb \u00d3 Briain");
+      writer.writeProject(1, 10, 2_500_000, 7_250, 15_000, 30_000, true, 2023, 6, 125_000);
+      writer.writeProject(2, 20, 1_000_000, 4_000, SnapshotFormat.NULL_MONEY,
+          SnapshotFormat.NULL_MONEY, false, SnapshotFormat.NULL_INT, SnapshotFormat.NULL_INT, 0);
+      writer.finish();
+    }
+
+    return path;
+  }
+
+  private static void assertCustomers(List<Customer> customers) {
+    assertEquals(2, customers.size());
+    assertEquals(1, customers.get(0).getCustomerId());
+    assertEquals("Ann Smith", customers.get(0).getCustomerName());
+    assertEquals(2, customers.get(1).getCustomerId());
+    assertEquals("Zo\u00eb \u00d3 Briain", customers.get(1).getCustomerName());
+  }
+
+  private static void assertProjects(List<Project> projects) {
+    assertEquals(2, projects.size());
+
+    Project installed = projects.get(0);
+    assertEquals(1, installed.getCustomerId());
+    assertEquals(10, installed.getProjectId());
+    assertEquals(FixedPoint.money("25000.00"), installed.getGrossPrice());
+    assertEquals(FixedPoint.parse("7.25", FixedPoint.KW_SCALE), installed.getSystemSizeInKw());
+    assertEquals(FixedPoint.money("150.00"), installed.getDealerFees());
+    assertEquals(FixedPoint.money("300.00"), installed.getAdders());
+    assertEquals(FixedPoint.money("1250.00"), installed.getRepCommission());
+    assertEquals(Boolean.TRUE, installed.getInstalled());
+    assertEquals(2023, installed.getInstallYear());
+    assertEquals(6, installed.getInstallMonth());
+
+    Project pending = projects.get(1);
+    assertEquals(20, pending.getProjectId());
+    assertNull(pending.getDealerFees());
+    assertNull(pending.getAdders());
+    assertNull(pending.getInstallYear());
+    assertNull(pending.getInstallMonth());
+    assertEquals(Boolean.FALSE, pending.getInstalled());
+    assertEquals(FixedPoint.money("0.00"), pending.getRepCommission());
+  }
+}
@@ -0,0 +1,85 @@
+package provided.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.math.BigDecimal;
+import org.junit.jupiter.api.Test;
+
+class FixedPointTest {
+
+  @Test
+  void parsesMoneyRoundingHalfUp() {
+    assertEquals("12.35", FixedPoint.money("12.345").toString());
+    assertEquals("-0.13", FixedPoint.money("-0.125").toString());
+    assertEquals("7.00", FixedPoint.money(" +7 ").toString());
+    assertEquals("0.10", FixedPoint.money(".1").toString());
+    assertNull(FixedPoint.money("  "));
+    assertNull(FixedPoint.money(null));
+  }
+
+  @Test
+  void rejectsTextThatIsNotAPlainNumber() {
+    assertThrows(NumberFormatException.class, () -> FixedPoint.money("1.2.3"));
+    assertThrows(NumberFormatException.class, () -> FixedPoint.money("abc"));
+    assertThrows(NumberFormatException.class, () -> FixedPoint.money("1e3"));
+    assertThrows(NumberFormatException.class, () -> FixedPoint.money("-"));
+    assertThrows(NumberFormatException.class, () -> FixedPoint.money("99999999999999999999"));
+  }
+
+  @Test
+  void formatsWithoutExponent() {
+    assertEquals("-0.05", FixedPoint.ofUnscaled(-5, 2).toString());
+    assertEquals("0.00", FixedPoint.ofUnscaled(0, 2).toString());
+    assertEquals("-12.001", FixedPoint.ofUnscaled(-12_001, 3).toString());
+    assertEquals("42", FixedPoint.ofUnscaled(42, 0).toString());
+  }
+
+  @Test
+  void addsAndSubtractsAcrossScales() {
+    FixedPoint money = FixedPoint.money("10.25");
+    FixedPoint kw = FixedPoint.parse("0.125", FixedPoint.KW_SCALE);
+
+    assertEquals(FixedPoint.ofUnscaled(10_375, 3), money.add(kw));
+    assertEquals(FixedPoint.ofUnscaled(10_125, 3), money.subtract(kw));
+    assertEquals(FixedPoint.money("30.75"), money.multiply(3));
+    assertEquals(FixedPoint.money("-10.25"), money.negate());
+  }
+
+  @Test
+  void detectsOverflowAndLostDigits() {
+    FixedPoint value = FixedPoint.money("1.25");
+
+    assertThrows(ArithmeticException.class, () -> value.multiply(Long.MAX_VALUE));
+    assertThrows(ArithmeticException.class, () -> value.unscaledAt(1));
+    assertEquals(1_250, value.unscaledAt(3));
+    assertEquals(12, FixedPoint.money("1.20").unscaledAt(1));
+  }
+
+  @Test
+  void comparesNumericallyButEqualsByScale() {
+    FixedPoint oneScale = FixedPoint.ofUnscaled(15, 1);
+    FixedPoint twoScale = FixedPoint.ofUnscaled(150, 2);
+
+    assertEquals(0, oneScale.compareTo(twoScale));
+    assertNotEquals(oneScale, twoScale);
+    assertEquals(new BigDecimal("1.50"), twoScale.toBigDecimal());
+  }
+
+  @Test
+  void sumSkipsNullsAndCountsValues() {
+    FixedPoint.Sum sum = new FixedPoint.Sum(FixedPoint.MONEY_SCALE)
+        .add(FixedPoint.money("1.10"))
+        .add(null)
+        .add(FixedPoint.ofUnscaled(2, 0))
+        .subtract(FixedPoint.money("0.05"));
+
+    assertEquals(FixedPoint.money("3.05"), sum.get());
+    assertEquals(2, sum.getCount());
+
+    FixedPoint.Sum other = new FixedPoint.Sum(FixedPoint.MONEY_SCALE).add(FixedPoint.money("1"));
+    assertEquals(FixedPoint.money("4.05"), sum.merge(other).get());
+    assertEquals(3, sum.getCount());
+  }
+}